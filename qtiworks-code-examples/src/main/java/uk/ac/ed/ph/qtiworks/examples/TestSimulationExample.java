@@ -0,0 +1,57 @@
+/* $Id:SAXErrorHandler.java 2824 2008-08-01 15:46:17Z davemckain $
+ *
+ * Copyright (c) 2012-2013, The University of Edinburgh.
+ * All Rights Reserved
+ */
+package uk.ac.ed.ph.qtiworks.examples;
+
+import uk.ac.ed.ph.jqtiplus.SimpleJqtiFacade;
+import uk.ac.ed.ph.jqtiplus.reading.ModelLoadingProfile;
+import uk.ac.ed.ph.jqtiplus.resolution.ResolvedAssessmentTest;
+import uk.ac.ed.ph.jqtiplus.running.TestProcessingInitializer;
+import uk.ac.ed.ph.jqtiplus.running.simulation.RandomResponseStrategy;
+import uk.ac.ed.ph.jqtiplus.running.simulation.SimulationReport;
+import uk.ac.ed.ph.jqtiplus.running.simulation.TestSimulator;
+import uk.ac.ed.ph.jqtiplus.state.TestProcessingMap;
+import uk.ac.ed.ph.jqtiplus.validation.TestValidationResult;
+import uk.ac.ed.ph.jqtiplus.xmlutils.locators.ClassPathResourceLocator;
+import uk.ac.ed.ph.jqtiplus.xmlutils.locators.ResourceLocator;
+
+import java.net.URI;
+
+/**
+ * Example showing how to use the {@link TestSimulator} to run lots of simulated candidates through
+ * an assessmentTest, e.g. for capacity planning.
+ * <p>
+ * Usage: TestSimulationExample [candidateCount] [threadCount]
+ *
+ * @author David McKain
+ */
+public final class TestSimulationExample {
+
+    public static void main(final String[] args) throws Exception {
+        final int candidateCount = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        final int threadCount = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        final ResourceLocator inputResourceLocator = new ClassPathResourceLocator();
+        final URI inputUri = URI.create("classpath:/testimplementation/selection.xml");
+
+        final SimpleJqtiFacade simpleJqtiFacade = new SimpleJqtiFacade();
+        final TestValidationResult testValidationResult = simpleJqtiFacade.loadResolveAndValidateTest(inputResourceLocator, inputUri);
+
+        /* Nothing gets rendered during the simulation, so reload the test without its content */
+        final ResolvedAssessmentTest resolvedAssessmentTest = simpleJqtiFacade.loadAndResolveAssessmentTest(inputResourceLocator,
+                inputUri, ModelLoadingProfile.PROCESSING);
+        final TestProcessingMap testProcessingMap = new TestProcessingInitializer(resolvedAssessmentTest,
+                testValidationResult.isValid()).initialize();
+
+        /* Candidates will answer each interaction correctly 60% of the time */
+        final TestSimulator testSimulator = new TestSimulator(simpleJqtiFacade.getJqtiExtensionManager(),
+                testProcessingMap, new RandomResponseStrategy(0.6));
+        testSimulator.setThreadCount(threadCount);
+        testSimulator.setRandomSeed(Long.valueOf(1L));
+
+        final SimulationReport simulationReport = testSimulator.runSimulation(candidateCount);
+        System.out.println(simulationReport.summarize());
+    }
+}
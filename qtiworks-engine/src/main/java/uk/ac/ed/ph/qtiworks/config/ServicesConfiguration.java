@@ -36,11 +36,14 @@ package uk.ac.ed.ph.qtiworks.config;
 import uk.ac.ed.ph.qtiworks.config.beans.QtiWorksDeploymentSettings;
 import uk.ac.ed.ph.qtiworks.mathassess.MathAssessExtensionPackage;
 import uk.ac.ed.ph.qtiworks.services.RequestTimestampContext;
+import uk.ac.ed.ph.qtiworks.services.TemplateVariantPoolService;
 
 import uk.ac.ed.ph.jqtiplus.JqtiExtensionManager;
 import uk.ac.ed.ph.jqtiplus.JqtiExtensionPackage;
 import uk.ac.ed.ph.jqtiplus.reading.QtiXmlReader;
+import uk.ac.ed.ph.jqtiplus.reading.SharedQtiObjectCache;
 import uk.ac.ed.ph.jqtiplus.serialization.QtiSerializer;
+import uk.ac.ed.ph.jqtiplus.validation.ItemValidationCache;
 import uk.ac.ed.ph.jqtiplus.xmlutils.SchemaCache;
 import uk.ac.ed.ph.jqtiplus.xmlutils.SimpleSchemaCache;
 import uk.ac.ed.ph.jqtiplus.xmlutils.xslt.SimpleXsltStylesheetCache;
@@ -65,6 +68,7 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.dao.annotation.PersistenceExceptionTranslationPostProcessor;
 import org.springframework.orm.jpa.JpaTransactionManager;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
@@ -170,8 +174,25 @@ public class ServicesConfiguration {
     }
 
     @Bean
+    public SharedQtiObjectCache sharedQtiObjectCache() {
+        return new SharedQtiObjectCache();
+    }
+
+    /**
+     * (The core QTI schemas are compiled at startup so that validating reads don't have to wait.)
+     */
+    @Bean(initMethod="preloadSchemas")
     public QtiXmlReader qtiXmlReader() {
-        return new QtiXmlReader(jqtiExtensionManager(), schemaCache());
+        return new QtiXmlReader(jqtiExtensionManager(), schemaCache(), sharedQtiObjectCache());
+    }
+
+    /**
+     * Records items known to be valid, so that re-uploaded packages only have their changed items
+     * validated again.
+     */
+    @Bean
+    public ItemValidationCache itemValidationCache() {
+        return new ItemValidationCache();
     }
 
     @Bean
@@ -179,6 +200,39 @@ public class ServicesConfiguration {
         return new QtiSerializer(jqtiExtensionManager());
     }
 
+    /**
+     * Executor for low priority background work, such as generating template variant pools
+     * in the {@link TemplateVariantPoolService}.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor backgroundTaskExecutor() {
+        final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(100);
+        executor.setThreadNamePrefix("qtiworks-background-");
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        return executor;
+    }
+
+    /**
+     * Executor used to initialize and run template processing on the items in a test in
+     * parallel (and to validate the items in an uploaded test in parallel), when enabled via
+     * {@link QtiWorksDeploymentSettings#getItemProcessingThreads()}.
+     * Work rejected when the queue is full is simply run on the calling Thread.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor itemProcessingTaskExecutor() {
+        final int threads = Math.max(1, qtiWorksDeploymentSettings.getItemProcessingThreads());
+        final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(threads * 50);
+        executor.setThreadNamePrefix("qtiworks-item-processing-");
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        return executor;
+    }
+
     /**
      * MIME type definitions used when serving up content. I have copied a generic Linux
      * <code>/etc/mime.types</code> into the project so that we don't get OS-specific results.
@@ -59,6 +59,8 @@ public final class QtiWorksDeploymentSettings implements Serializable {
     private @Value("${qtiworks.jdbc.username}") String jdbcUsername;
     private @Value("${qtiworks.jdbc.password}") String jdbcPassword;
     private @Value("${qtiworks.filesystem.base}") String filesystemBase;
+    private @Value("${qtiworks.filesystem.zipped.packages:false}") boolean zippedPackageStorage; /* (Optional - default false) */
+    private @Value("${qtiworks.filesystem.deduplicated.packages:false}") boolean deduplicatedPackageStorage; /* (Optional - default false) */
     private @Value("${qtiworks.extensions.mathassess:false}") boolean enableMathAssessExtension;
     private @Value("${qtiworks.hibernate.dialect}") String hibernateDialect;
     private @Value("${qtiworks.admin.name}") String adminName;
@@ -67,6 +69,11 @@ public final class QtiWorksDeploymentSettings implements Serializable {
     private @Value("${qtiworks.web.authn.fake.login:}") String fakeLoginName; /* (Optional - default null) */
     private @Value("${qtiworks.features.publicdemos:false}") boolean publicDemosEnabled; /* (Optional - default false) */
     private @Value("${qtiworks.features.rest:false}") boolean restEnabled; /* (Optional - default false) */
+    private @Value("${qtiworks.processing.step.limit:1000000}") int processingStepLimit; /* (Optional - 0 means no limit) */
+    private @Value("${qtiworks.processing.time.limit:10000}") long processingTimeLimit; /* (Optional - 0 means no limit) */
+    private @Value("${qtiworks.processing.lazy.items:false}") boolean lazyItemSessionInitialization; /* (Optional - default false) */
+    private @Value("${qtiworks.processing.variant.pool.size:0}") int templateVariantPoolSize; /* (Optional - 0 means disabled) */
+    private @Value("${qtiworks.processing.item.threads:0}") int itemProcessingThreads; /* (Optional - 0 means disabled) */
 
 
     public String getJdbcDriverClassName() {
@@ -101,6 +108,14 @@ public final class QtiWorksDeploymentSettings implements Serializable {
         return filesystemBase;
     }
 
+    public boolean isZippedPackageStorage() {
+        return zippedPackageStorage;
+    }
+
+    public boolean isDeduplicatedPackageStorage() {
+        return deduplicatedPackageStorage;
+    }
+
     public String getBaseUrl() {
         return baseUrl;
     }
@@ -121,6 +136,26 @@ public final class QtiWorksDeploymentSettings implements Serializable {
         return restEnabled;
     }
 
+    public int getProcessingStepLimit() {
+        return processingStepLimit;
+    }
+
+    public long getProcessingTimeLimit() {
+        return processingTimeLimit;
+    }
+
+    public boolean isLazyItemSessionInitialization() {
+        return lazyItemSessionInitialization;
+    }
+
+    public int getTemplateVariantPoolSize() {
+        return templateVariantPoolSize;
+    }
+
+    public int getItemProcessingThreads() {
+        return itemProcessingThreads;
+    }
+
     @Override
     public String toString() {
         return ObjectUtilities.beanToString(this);
@@ -101,6 +101,12 @@ public class AssessmentPackage implements BaseEntity, TimestampedOnCreation {
 
     private static final long serialVersionUID = -4330181851974184912L;
 
+    /** Name of the file within the sandbox holding the package's files when {@link #isZipped()} */
+    public static final String PACKAGE_ZIP_FILE_NAME = "package.zip";
+
+    /** Name of the file within the sandbox mapping hrefs to {@link PackageBlob}s when {@link #isDeduplicated()} */
+    public static final String PACKAGE_BLOB_MANIFEST_FILE_NAME = "package-blobs.properties";
+
     @Id
     @GeneratedValue(generator="assessmentPackageSequence")
     @Column(name="apid")
@@ -155,6 +161,23 @@ public class AssessmentPackage implements BaseEntity, TimestampedOnCreation {
     @Column(name="sandbox_path")
     private String sandboxPath;
 
+    /**
+     * Set if this package's files are stored within the originally uploaded ZIP file (named
+     * {@link #PACKAGE_ZIP_FILE_NAME}) within the sandbox, rather than being unpacked into it.
+     */
+    @Basic(optional=false)
+    @Column(name="zipped")
+    private boolean zipped;
+
+    /**
+     * Set if this package's files have been moved into the shared {@link PackageBlob} store, in which
+     * case the sandbox only contains a manifest (named {@link #PACKAGE_BLOB_MANIFEST_FILE_NAME})
+     * mapping each href to the hash of its content.
+     */
+    @Basic(optional=false)
+    @Column(name="deduplicated")
+    private boolean deduplicated;
+
     /** Href of the assessment item/test within this package */
     @Lob
     @Type(type="org.hibernate.type.TextType")
@@ -297,6 +320,24 @@ public class AssessmentPackage implements BaseEntity, TimestampedOnCreation {
     }
 
 
+    public boolean isZipped() {
+        return zipped;
+    }
+
+    public void setZipped(final boolean zipped) {
+        this.zipped = zipped;
+    }
+
+
+    public boolean isDeduplicated() {
+        return deduplicated;
+    }
+
+    public void setDeduplicated(final boolean deduplicated) {
+        this.deduplicated = deduplicated;
+    }
+
+
     public String getAssessmentHref() {
         return assessmentHref;
     }
@@ -87,6 +87,12 @@ public enum CandidateItemEventType {
      */
     EXIT,
 
+    /**
+     * Session has been rescored by an instructor, e.g. after fixing the item's
+     * response processing. (This is not a candidate action.)
+     */
+    RESCORE,
+
     ;
 
 }
@@ -106,6 +106,12 @@ public enum CandidateTestEventType {
     /** Solution of a particular item (in review state) */
     SOLUTION_ITEM,
 
+    /**
+     * Session has been rescored by an instructor, e.g. after fixing items or the test's
+     * outcome processing. (This is not a candidate action.)
+     */
+    RESCORE,
+
     ;
 
 }
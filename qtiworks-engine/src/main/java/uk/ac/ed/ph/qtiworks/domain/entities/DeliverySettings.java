@@ -175,6 +175,16 @@ public class DeliverySettings implements BaseEntity, TimestampedOnCreation {
     @Column(name="template_processing_limit")
     private Integer templateProcessingLimit;
 
+    /**
+     * If true, then candidate sessions launched in author mode will record an
+     * {@link uk.ac.ed.ph.jqtiplus.running.EvaluationProfile} of the expressions and rules
+     * evaluated during processing, which can then be downloaded from the author view.
+     * This has no effect on sessions that are not in author mode.
+     */
+    @Basic(optional=false)
+    @Column(name="profile_evaluation")
+    private boolean profileEvaluation;
+
     //------------------------------------------------------------
 
     public DeliverySettings() {
@@ -265,6 +275,15 @@ public class DeliverySettings implements BaseEntity, TimestampedOnCreation {
         this.templateProcessingLimit = templateProcessingLimit;
     }
 
+
+    public boolean isProfileEvaluation() {
+        return profileEvaluation;
+    }
+
+    public void setProfileEvaluation(final boolean profileEvaluation) {
+        this.profileEvaluation = profileEvaluation;
+    }
+
     //------------------------------------------------------------
 
     @Override
@@ -275,6 +294,7 @@ public class DeliverySettings implements BaseEntity, TimestampedOnCreation {
                 + ",assessmentType=" + assessmentType
                 + ",title=" + title
                 + ",templateProcessingLimit=" + templateProcessingLimit
+                + ",profileEvaluation=" + profileEvaluation
                 + ")";
     }
 }
@@ -0,0 +1,134 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.domain.entities;
+
+import javax.persistence.Basic;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+
+/**
+ * Records a file stored once within the shared content-addressed store used by deduplicated
+ * {@link AssessmentPackage}s, together with the number of packages that currently refer to it.
+ * <p>
+ * Developer note: The ID of a {@link PackageBlob} is generally referred to as a
+ * <code>pbid</code> in the code. This is also used as the name of the primary key column
+ * in the database mappings.
+ *
+ * @author David McKain
+ */
+@Entity
+@Table(name="package_blobs")
+@SequenceGenerator(name="packageBlobSequence", sequenceName="package_blob_sequence", initialValue=1, allocationSize=1)
+@NamedQueries({
+    @NamedQuery(name="PackageBlob.findByHash",
+            query="SELECT pb"
+                + "  FROM PackageBlob pb"
+                + "  WHERE pb.hash = :hash"),
+    @NamedQuery(name="PackageBlob.getAllHashes",
+            query="SELECT pb.hash"
+                + "  FROM PackageBlob pb"),
+    @NamedQuery(name="PackageBlob.getUnreferencedHashes",
+            query="SELECT pb.hash"
+                + "  FROM PackageBlob pb"
+                + "  WHERE pb.refCount = 0")
+})
+public class PackageBlob implements BaseEntity {
+
+    private static final long serialVersionUID = 2817376620945128471L;
+
+    /** Length of a (hex-encoded SHA-256) hash */
+    public static final int HASH_LENGTH = 64;
+
+    @Id
+    @GeneratedValue(generator="packageBlobSequence")
+    @Column(name="pbid")
+    private Long pbid;
+
+    /** Hex-encoded SHA-256 hash of the blob's content */
+    @Basic(optional=false)
+    @Column(name="hash", updatable=false, unique=true, length=HASH_LENGTH)
+    private String hash;
+
+    /** Number of {@link AssessmentPackage}s referring to this blob */
+    @Basic(optional=false)
+    @Column(name="ref_count")
+    private int refCount;
+
+    //------------------------------------------------------------
+
+    @Override
+    public Long getId() {
+        return pbid;
+    }
+
+    @Override
+    public void setId(final Long id) {
+        this.pbid = id;
+    }
+
+
+    public String getHash() {
+        return hash;
+    }
+
+    public void setHash(final String hash) {
+        this.hash = hash;
+    }
+
+
+    public int getRefCount() {
+        return refCount;
+    }
+
+    public void setRefCount(final int refCount) {
+        this.refCount = refCount;
+    }
+
+    //------------------------------------------------------------
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this))
+                + "(pbid=" + pbid
+                + ",hash=" + hash
+                + ",refCount=" + refCount
+                + ")";
+    }
+}
@@ -431,6 +431,7 @@ public class AssessmentRenderer {
         final ItemSessionState itemSessionState = request.getItemSessionState();
         final Document itemSessionStateDocument = ItemSessionStateXmlMarshaller.marshal(itemSessionState);
         xsltParameters.put("itemSessionState", itemSessionStateDocument.getDocumentElement());
+        setEvaluationProfileUrlParameter(xsltParameters, request.getRenderingOptions());
 
         /* Perform transform */
         doTransform(request, null, itemAuthorViewXsltUri, xsltParameters, result);
@@ -466,6 +467,7 @@ public class AssessmentRenderer {
         final TestSessionState testSessionState = testSessionController.getTestSessionState();
         xsltParameters.put("testSessionState", TestSessionStateXmlMarshaller.marshal(testSessionState).getDocumentElement());
         xsltParameters.put("testSystemId", request.getAssessmentResourceUri().toString());
+        setEvaluationProfileUrlParameter(xsltParameters, request.getRenderingOptions());
 
         doTransform(request, null, testAuthorViewXsltUri, xsltParameters, result);
     }
@@ -571,6 +573,14 @@ public class AssessmentRenderer {
 
     }
 
+    private void setEvaluationProfileUrlParameter(final Map<String, Object> xsltParameters,
+            final AuthorViewRenderingOptions renderingOptions) {
+        final String evaluationProfileUrl = renderingOptions.getEvaluationProfileUrl();
+        if (evaluationProfileUrl!=null) {
+            xsltParameters.put("evaluationProfileUrl", evaluationProfileUrl);
+        }
+    }
+
     private void setBaseRenderingParameters(final Map<String, Object> xsltParameters) {
         xsltParameters.put("qtiWorksVersion", qtiWorksProperties.getQtiWorksVersion());
         xsltParameters.put("webappContextPath", webappContextPath);
@@ -44,6 +44,22 @@ public final class AuthorViewRenderingOptions extends AbstractRenderingOptions {
 
     private static final long serialVersionUID = -4080054157370465199L;
 
+    /**
+     * URL for downloading the evaluation profile recorded for the session.
+     * This is optional; no download link will be shown if null.
+     */
+    private String evaluationProfileUrl;
+
+    //----------------------------------------------------
+
+    public String getEvaluationProfileUrl() {
+        return evaluationProfileUrl;
+    }
+
+    public void setEvaluationProfileUrl(final String evaluationProfileUrl) {
+        this.evaluationProfileUrl = evaluationProfileUrl;
+    }
+
     //----------------------------------------------------
 
     @Override
@@ -345,6 +345,7 @@ public class AssessmentDataService {
     public void mergeItemDeliverySettings(final ItemDeliverySettingsTemplate template, final ItemDeliverySettings target) {
         target.setTitle(template.getTitle().trim());
         target.setTemplateProcessingLimit(template.getTemplateProcessingLimit());
+        target.setProfileEvaluation(template.isProfileEvaluation());
         target.setAllowEnd(template.isAllowEnd());
         target.setAllowHardResetWhenEnded(template.isAllowHardResetWhenEnded());
         target.setAllowHardResetWhenOpen(template.isAllowHardResetWhenOpen());
@@ -360,6 +361,7 @@ public class AssessmentDataService {
     public void mergeItemDeliverySettings(final ItemDeliverySettings template, final ItemDeliverySettingsTemplate target) {
         target.setTitle(template.getTitle());
         target.setTemplateProcessingLimit(template.getTemplateProcessingLimit());
+        target.setProfileEvaluation(template.isProfileEvaluation());
         target.setAllowEnd(template.isAllowEnd());
         target.setAllowHardResetWhenEnded(template.isAllowHardResetWhenEnded());
         target.setAllowHardResetWhenOpen(template.isAllowHardResetWhenOpen());
@@ -374,11 +376,13 @@ public class AssessmentDataService {
 
     public void mergeTestDeliverySettings(final TestDeliverySettingsTemplate template, final TestDeliverySettings target) {
         target.setTemplateProcessingLimit(template.getTemplateProcessingLimit());
+        target.setProfileEvaluation(template.isProfileEvaluation());
         target.setTitle(template.getTitle().trim());
     }
 
     public void mergeTestDeliverySettings(final TestDeliverySettings template, final TestDeliverySettingsTemplate target) {
         target.setTemplateProcessingLimit(template.getTemplateProcessingLimit());
+        target.setProfileEvaluation(template.isProfileEvaluation());
         target.setTitle(template.getTitle());
     }
 
@@ -122,6 +122,9 @@ public class AssessmentManagementService {
     @Resource
     private AssessmentPackageFileService assessmentPackageFileService;
 
+    @Resource
+    private PackageBlobService packageBlobService;
+
     @Resource
     private AssessmentDao assessmentDao;
 
@@ -924,6 +927,7 @@ public class AssessmentManagementService {
         if (sandboxPath==null) {
             throw new QtiWorksLogicException("AssessmentPackage sandbox is null");
         }
+        assessmentPackageFileService.purge(assessmentPackage);
         filespaceManager.deleteSandbox(new File(sandboxPath));
         assessmentPackage.setSandboxPath(null);
     }
@@ -931,6 +935,19 @@ public class AssessmentManagementService {
     private AssessmentPackage importPackageFiles(final MultipartFile multipartFile, final boolean validate)
             throws AssessmentPackageDataImportException {
         final User owner = identityService.assertCurrentThreadUser();
-        return assessmentPackageFileService.importAssessmentPackage(owner, multipartFile, validate);
+        final AssessmentPackage assessmentPackage = assessmentPackageFileService.importAssessmentPackage(owner, multipartFile, validate);
+
+        /* Move unpacked files into the shared blob store (if enabled) */
+        if (packageBlobService.isEnabled() && !assessmentPackage.isZipped()) {
+            try {
+                packageBlobService.deduplicatePackage(assessmentPackage);
+            }
+            catch (final RuntimeException e) {
+                logger.warn("Failed to move AssessmentPackage files into blob store - deleting sandbox");
+                deleteAssessmentPackageSandbox(assessmentPackage);
+                throw e;
+            }
+        }
+        return assessmentPackage;
     }
 }
@@ -38,6 +38,7 @@ import uk.ac.ed.ph.qtiworks.utils.LruHashMap;
 
 import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
 import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
+import uk.ac.ed.ph.jqtiplus.reading.ModelLoadingProfile;
 import uk.ac.ed.ph.jqtiplus.resolution.ResolvedAssessmentItem;
 import uk.ac.ed.ph.jqtiplus.resolution.ResolvedAssessmentTest;
 import uk.ac.ed.ph.jqtiplus.running.ItemProcessingInitializer;
@@ -59,6 +60,12 @@ import org.springframework.stereotype.Service;
  * and {@link TestProcessingMap} Objects.
  * <p>
  * This is NO authorisation at this level.
+ * <p>
+ * The underlying JQTI+ Object models are loaded using {@link ModelLoadingProfile#DELIVERY}, so
+ * do not contain any source location information. (Use {@link AssessmentPackageFileService}
+ * directly if you need this.) Batch jobs that never render anything can create their own
+ * uncached processing-only maps via {@link #createItemProcessingMap(AssessmentPackage, ModelLoadingProfile)}
+ * and {@link #createTestProcessingMap(AssessmentPackage, ModelLoadingProfile)}.
  *
  * FIXME: For the time being, we'll use an {@link LruHashMap}, though this is probably not the best choice.
  *
@@ -100,13 +107,7 @@ public class AssessmentObjectManagementService {
             else {
                 logger.debug("Cache MISS for package #{}. Reading and resolving XML", apid);
                 cacheMissCount++;
-                try {
-                    final ResolvedAssessmentItem resolvedAssessmentItem = assessmentPackageFileService.loadAndResolveAssessmentObject(assessmentPackage);
-                    result = new ItemProcessingInitializer(resolvedAssessmentItem, assessmentPackage.isValid()).initialize();
-                }
-                catch (final RuntimeException e) {
-                    logger.info("Failed to create ItemProcessingMap for package #{}", apid);
-                }
+                result = createItemProcessingMap(assessmentPackage, ModelLoadingProfile.DELIVERY);
                 cache.put(apid, result);
             }
         }
@@ -130,19 +131,49 @@ public class AssessmentObjectManagementService {
             else {
                 logger.debug("Cache MISS for package #{}. Reading and resolving XML", apid);
                 cacheMissCount++;
-                try {
-                    final ResolvedAssessmentTest resolvedAssessmentTest = assessmentPackageFileService.loadAndResolveAssessmentObject(assessmentPackage);
-                    result = new TestProcessingInitializer(resolvedAssessmentTest, assessmentPackage.isValid()).initialize();
-                }
-                catch (final RuntimeException e) {
-                    logger.info("Failed to create TestProcessingMap for package #{}", apid);
-                }
+                result = createTestProcessingMap(assessmentPackage, ModelLoadingProfile.DELIVERY);
                 cache.put(apid, result);
             }
         }
         return result;
     }
 
+    /**
+     * Creates a new (uncached) {@link ItemProcessingMap} for the given {@link AssessmentPackage},
+     * loading it with the given {@link ModelLoadingProfile}.
+     * Returns null if the {@link AssessmentPackage} wasn't valid enough to generate an {@link ItemProcessingMap}
+     */
+    public ItemProcessingMap createItemProcessingMap(final AssessmentPackage assessmentPackage,
+            final ModelLoadingProfile modelLoadingProfile) {
+        Assert.notNull(assessmentPackage, "assessmentPackage");
+        try {
+            final ResolvedAssessmentItem resolvedAssessmentItem = assessmentPackageFileService.loadAndResolveAssessmentObject(assessmentPackage, modelLoadingProfile);
+            return new ItemProcessingInitializer(resolvedAssessmentItem, assessmentPackage.isValid()).initialize();
+        }
+        catch (final RuntimeException e) {
+            logger.info("Failed to create ItemProcessingMap for package #{}", assessmentPackage.getId());
+            return null;
+        }
+    }
+
+    /**
+     * Creates a new (uncached) {@link TestProcessingMap} for the given {@link AssessmentPackage},
+     * loading it with the given {@link ModelLoadingProfile}.
+     * Returns null if the {@link AssessmentPackage} wasn't valid enough to generate an {@link TestProcessingMap}
+     */
+    public TestProcessingMap createTestProcessingMap(final AssessmentPackage assessmentPackage,
+            final ModelLoadingProfile modelLoadingProfile) {
+        Assert.notNull(assessmentPackage, "assessmentPackage");
+        try {
+            final ResolvedAssessmentTest resolvedAssessmentTest = assessmentPackageFileService.loadAndResolveAssessmentObject(assessmentPackage, modelLoadingProfile);
+            return new TestProcessingInitializer(resolvedAssessmentTest, assessmentPackage.isValid()).initialize();
+        }
+        catch (final RuntimeException e) {
+            logger.info("Failed to create TestProcessingMap for package #{}", assessmentPackage.getId());
+            return null;
+        }
+    }
+
     public void purge(final AssessmentPackage assessmentPackage) {
         Assert.notNull(assessmentPackage, "assessmentPackage");
         final Long apid = assessmentPackage.getId();
@@ -46,6 +46,7 @@ import uk.ac.ed.ph.jqtiplus.utils.contentpackaging.ImsManifestException;
 import uk.ac.ed.ph.jqtiplus.utils.contentpackaging.QtiContentPackageExtractor;
 import uk.ac.ed.ph.jqtiplus.utils.contentpackaging.QtiContentPackageSummary;
 import uk.ac.ed.ph.jqtiplus.xmlutils.XmlResourceNotFoundException;
+import uk.ac.ed.ph.jqtiplus.xmlutils.locators.ZipSandboxResourceLocator;
 
 import java.io.EOFException;
 import java.io.File;
@@ -101,6 +102,20 @@ public class AssessmentPackageFileImporter {
     public AssessmentPackage importAssessmentPackageData(final File importSandboxDirectory,
             final MultipartFile multipartFile)
             throws AssessmentPackageDataImportException {
+        return importAssessmentPackageData(importSandboxDirectory, multipartFile, false);
+    }
+
+    /**
+     * Variant of {@link #importAssessmentPackageData(File, MultipartFile)} that can optionally
+     * store uploaded ZIP files as-is (as {@link AssessmentPackage#PACKAGE_ZIP_FILE_NAME} within
+     * the sandbox directory) rather than unpacking them. Standalone XML is handled the same way
+     * in both cases.
+     *
+     * @param zipped true to keep uploaded ZIP files packed, false to unpack them
+     */
+    public AssessmentPackage importAssessmentPackageData(final File importSandboxDirectory,
+            final MultipartFile multipartFile, final boolean zipped)
+            throws AssessmentPackageDataImportException {
         Assert.notNull(importSandboxDirectory, "importSandboxDirectory");
         Assert.notNull(multipartFile, "multipartFile");
         AssessmentPackage assessmentPackage = null;
@@ -111,12 +126,29 @@ public class AssessmentPackageFileImporter {
             logger.debug("Import data uses a known XML MIME type {} so saving to {} and treating as XML", contentType, importSandboxDirectory);
             assessmentPackage = importStandaloneXml(importSandboxDirectory, multipartFile);
         }
+        else if (zipped) {
+            /* Try to treat as a ZIP, keeping it packed */
+            final ZipSandboxResourceLocator zipLocator = trySaveZipFile(importSandboxDirectory, multipartFile);
+            if (zipLocator!=null) {
+                logger.debug("Import data was successfully saved as a ZIP file");
+                try {
+                    assessmentPackage = processContentPackage(importSandboxDirectory, zipLocator);
+                }
+                finally {
+                    ServiceUtilities.ensureClose(zipLocator);
+                }
+            }
+            else {
+                logger.warn("Import data with MIME type {} was neither a supported XML MIME type nor a ZIP file (containing at least one entry)", contentType);
+                throw new AssessmentPackageDataImportException(ImportFailureReason.NOT_XML_OR_ZIP);
+            }
+        }
         else {
             /* Try to treat as a ZIP */
             final boolean zipSuccess = tryUnpackZipFile(importSandboxDirectory, multipartFile);
             if (zipSuccess) {
                 logger.debug("Import data was successfully expanded as a ZIP file");
-                assessmentPackage = processUnpackedZip(importSandboxDirectory);
+                assessmentPackage = processContentPackage(importSandboxDirectory, null);
             }
             else {
                 logger.warn("Import data with MIME type {} was neither a supported XML MIME type nor a ZIP file (containing at least one entry)", contentType);
@@ -194,10 +226,53 @@ public class AssessmentPackageFileImporter {
         return foundEntry;
     }
 
-    private AssessmentPackage processUnpackedZip(final File importSandboxDirectory)
+    /**
+     * Saves the uploaded data as {@link AssessmentPackage#PACKAGE_ZIP_FILE_NAME} within the sandbox
+     * and opens it for reading, returning null if the data is not a ZIP file containing at least
+     * one entry. The caller is responsible for closing the resulting locator.
+     */
+    private ZipSandboxResourceLocator trySaveZipFile(final File importSandboxDirectory, final MultipartFile multipartFile) {
+        final File zipFile = new File(importSandboxDirectory, AssessmentPackage.PACKAGE_ZIP_FILE_NAME);
+        InputStream inputStream = null;
+        try {
+            inputStream = ServiceUtilities.ensureInputSream(multipartFile);
+            FileUtils.copyInputStreamToFile(inputStream, zipFile);
+        }
+        catch (final IOException e) {
+            throw QtiWorksRuntimeException.unexpectedException(e);
+        }
+        finally {
+            ServiceUtilities.ensureClose(inputStream);
+        }
+
+        ZipSandboxResourceLocator zipLocator;
+        try {
+            zipLocator = new ZipSandboxResourceLocator(QtiContentPackageExtractor.PACKAGE_URI_SCHEME, zipFile);
+        }
+        catch (final ZipException e) {
+            return null;
+        }
+        catch (final IOException e) {
+            throw QtiWorksRuntimeException.unexpectedException(e);
+        }
+        if (zipLocator.getEntryCount()==0) {
+            ServiceUtilities.ensureClose(zipLocator);
+            return null;
+        }
+        return zipLocator;
+    }
+
+    /**
+     * Processes the content package in the given sandbox, which will either have been unpacked
+     * or saved as a ZIP file that is read via the given zipLocator (if not null).
+     */
+    private AssessmentPackage processContentPackage(final File importSandboxDirectory,
+            final ZipSandboxResourceLocator zipLocator)
             throws AssessmentPackageDataImportException {
         /* Expand content package */
-        final QtiContentPackageExtractor contentPackageExtractor = new QtiContentPackageExtractor(importSandboxDirectory);
+        final QtiContentPackageExtractor contentPackageExtractor = zipLocator!=null
+                ? new QtiContentPackageExtractor(zipLocator)
+                : new QtiContentPackageExtractor(importSandboxDirectory);
         QtiContentPackageSummary contentPackageSummary;
         try {
             contentPackageSummary = contentPackageExtractor.parse();
@@ -216,18 +291,19 @@ public class AssessmentPackageFileImporter {
         final AssessmentPackage assessmentPackage = new AssessmentPackage();
         assessmentPackage.setImportType(AssessmentPackageImportType.CONTENT_PACKAGE);
         assessmentPackage.setSandboxPath(importSandboxDirectory.getAbsolutePath());
+        assessmentPackage.setZipped(zipLocator!=null);
         if (testCount==1) {
             /* Treat as a test */
             logger.debug("Package contains 1 test resource, so treating this as an AssessmentTest");
             assessmentPackage.setAssessmentType(AssessmentObjectType.ASSESSMENT_TEST);
-            assessmentPackage.setAssessmentHref(checkPackageFile(importSandboxDirectory,
+            assessmentPackage.setAssessmentHref(checkPackageFile(importSandboxDirectory, zipLocator,
                     contentPackageSummary.getTestResources().get(0).getHref()));
         }
         else if (testCount==0 && itemCount==1) {
             /* Treat as an item */
             logger.debug("Package contains 1 item resource and no test resources, so treating this as an AssessmentItem");
             assessmentPackage.setAssessmentType(AssessmentObjectType.ASSESSMENT_ITEM);
-            assessmentPackage.setAssessmentHref(checkPackageFile(importSandboxDirectory,
+            assessmentPackage.setAssessmentHref(checkPackageFile(importSandboxDirectory, zipLocator,
                     contentPackageSummary.getItemResources().get(0).getHref()));
         }
         else {
@@ -242,8 +318,8 @@ public class AssessmentPackageFileImporter {
          */
         final Set<String> packageQtiFileBuilder = new HashSet<String>();
         final Set<String> packageSafeFileBuilder = new HashSet<String>();
-        buildPackageFileMap(importSandboxDirectory, packageQtiFileBuilder, packageSafeFileBuilder, contentPackageSummary.getItemResources());
-        buildPackageFileMap(importSandboxDirectory, packageQtiFileBuilder, packageSafeFileBuilder, contentPackageSummary.getTestResources());
+        buildPackageFileMap(importSandboxDirectory, zipLocator, packageQtiFileBuilder, packageSafeFileBuilder, contentPackageSummary.getItemResources());
+        buildPackageFileMap(importSandboxDirectory, zipLocator, packageQtiFileBuilder, packageSafeFileBuilder, contentPackageSummary.getTestResources());
         assessmentPackage.setQtiFileHrefs(packageQtiFileBuilder);
         assessmentPackage.setSafeFileHrefs(packageSafeFileBuilder);
 
@@ -255,7 +331,7 @@ public class AssessmentPackageFileImporter {
      * to QTI XML files, which are assumed to be the *first* files declared within item or test
      * resource elements in the manifest.
      */
-    private void buildPackageFileMap(final File importSandboxDirectory,
+    private void buildPackageFileMap(final File importSandboxDirectory, final ZipSandboxResourceLocator zipLocator,
             final Set<String> packageQtiFileBuilder, final Set<String> packageSafeFileBuilder,
             final List<ContentPackageResource> qtiResources)
             throws AssessmentPackageDataImportException {
@@ -263,7 +339,7 @@ public class AssessmentPackageFileImporter {
             final List<URI> fileHrefs = qtiResource.getFileHrefs();
             boolean isFirst = true;
             for (final URI fileHref : fileHrefs) {
-                final String fileHrefString = checkPackageFile(importSandboxDirectory, fileHref);
+                final String fileHrefString = checkPackageFile(importSandboxDirectory, zipLocator, fileHref);
                 if (isFirst) {
                     packageQtiFileBuilder.add(fileHrefString);
                 }
@@ -280,7 +356,8 @@ public class AssessmentPackageFileImporter {
      * Returns the original href as a String if successful, otherwise throws
      * {@link AssessmentPackageDataImportException}.
      */
-    private String checkPackageFile(final File importSandboxDirectory, final URI href)
+    private String checkPackageFile(final File importSandboxDirectory, final ZipSandboxResourceLocator zipLocator,
+            final URI href)
             throws AssessmentPackageDataImportException {
         final String hrefString = href.toString();
         final URI sandboxUri = importSandboxDirectory.toURI();
@@ -291,9 +368,16 @@ public class AssessmentPackageFileImporter {
             throw new AssessmentPackageDataImportException(ImportFailureReason.HREF_OUTSIDE_PACKAGE, hrefString);
         }
 
-        /* Make sure file exists */
-        final File resolvedFile = new File(resolvedFileUri);
-        if (!resolvedFile.exists()) {
+        /* Make sure file exists, either within the ZIP or on the filesystem */
+        boolean exists;
+        if (zipLocator!=null) {
+            final String relativeRawPath = sandboxUri.relativize(resolvedFileUri).getRawPath();
+            exists = zipLocator.findSandboxEntry(zipLocator.getUriScheme().rawPathToUri(relativeRawPath))!=null;
+        }
+        else {
+            exists = new File(resolvedFileUri).exists();
+        }
+        if (!exists) {
             throw new AssessmentPackageDataImportException(ImportFailureReason.FILE_MISSING, hrefString);
         }
 
@@ -35,6 +35,7 @@ package uk.ac.ed.ph.qtiworks.services;
 
 import uk.ac.ed.ph.qtiworks.QtiWorksLogicException;
 import uk.ac.ed.ph.qtiworks.QtiWorksRuntimeException;
+import uk.ac.ed.ph.qtiworks.config.beans.QtiWorksDeploymentSettings;
 import uk.ac.ed.ph.qtiworks.domain.DomainConstants;
 import uk.ac.ed.ph.qtiworks.domain.entities.AssessmentPackage;
 import uk.ac.ed.ph.qtiworks.domain.entities.AssessmentPackageImportType;
@@ -42,6 +43,7 @@ import uk.ac.ed.ph.qtiworks.domain.entities.User;
 import uk.ac.ed.ph.qtiworks.samples.QtiSampleAssessment;
 import uk.ac.ed.ph.qtiworks.services.domain.AssessmentPackageDataImportException;
 import uk.ac.ed.ph.qtiworks.services.domain.OutputStreamer;
+import uk.ac.ed.ph.qtiworks.utils.LruHashMap;
 
 import uk.ac.ed.ph.jqtiplus.internal.util.StringUtilities;
 import uk.ac.ed.ph.jqtiplus.node.AssessmentObject;
@@ -49,11 +51,13 @@ import uk.ac.ed.ph.jqtiplus.node.AssessmentObjectType;
 import uk.ac.ed.ph.jqtiplus.node.item.AssessmentItem;
 import uk.ac.ed.ph.jqtiplus.node.test.AssessmentTest;
 import uk.ac.ed.ph.jqtiplus.reading.AssessmentObjectXmlLoader;
+import uk.ac.ed.ph.jqtiplus.reading.ModelLoadingProfile;
 import uk.ac.ed.ph.jqtiplus.reading.QtiObjectReader;
 import uk.ac.ed.ph.jqtiplus.reading.QtiXmlReader;
 import uk.ac.ed.ph.jqtiplus.resolution.ResolvedAssessmentObject;
 import uk.ac.ed.ph.jqtiplus.utils.contentpackaging.QtiContentPackageExtractor;
 import uk.ac.ed.ph.jqtiplus.validation.AssessmentObjectValidationResult;
+import uk.ac.ed.ph.jqtiplus.validation.ItemValidationCache;
 import uk.ac.ed.ph.jqtiplus.xmlutils.CustomUriScheme;
 import uk.ac.ed.ph.jqtiplus.xmlutils.XmlReadResult;
 import uk.ac.ed.ph.jqtiplus.xmlutils.XmlResourceNotFoundException;
@@ -62,12 +66,15 @@ import uk.ac.ed.ph.jqtiplus.xmlutils.locators.ClassPathResourceLocator;
 import uk.ac.ed.ph.jqtiplus.xmlutils.locators.FileSandboxResourceLocator;
 import uk.ac.ed.ph.jqtiplus.xmlutils.locators.NetworkHttpResourceLocator;
 import uk.ac.ed.ph.jqtiplus.xmlutils.locators.ResourceLocator;
+import uk.ac.ed.ph.jqtiplus.xmlutils.locators.ZipSandboxResourceLocator;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.util.Date;
+import java.util.Map.Entry;
+import java.util.zip.ZipEntry;
 
 import javax.activation.FileTypeMap;
 import javax.annotation.Resource;
@@ -75,6 +82,7 @@ import javax.annotation.Resource;
 import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
 import org.springframework.web.multipart.MultipartFile;
@@ -113,6 +121,18 @@ public class AssessmentPackageFileService {
     @Resource
     private FileTypeMap fileTypeMap;
 
+    @Resource
+    private QtiWorksDeploymentSettings qtiWorksDeploymentSettings;
+
+    @Resource
+    private TaskExecutor itemProcessingTaskExecutor;
+
+    @Resource
+    private ItemValidationCache itemValidationCache;
+
+    @Resource
+    private PackageBlobService packageBlobService;
+
     /**
      * {@link ResourceLocator} for reading in sample assessment resources. These are bundled
      * within the ClassPath in a fixed way.
@@ -125,7 +145,38 @@ public class AssessmentPackageFileService {
      */
     private final ResourceLocator sampleResolvingResourceLocator;
 
+    /**
+     * Open {@link ZipSandboxResourceLocator}s for zipped {@link AssessmentPackage}s, keyed on
+     * sandbox path. Evicted locators are closed, which keeps the number of open ZIP files bounded.
+     * (Each locator defers closing until its open streams have been closed, and reopens its ZIP
+     * file if a caller still holding it uses it again.)
+     */
+    private final LruHashMap<String, ZipSandboxResourceLocator> zipResourceLocatorCache;
+
+    /**
+     * {@link PackageBlobResourceLocator}s for deduplicated {@link AssessmentPackage}s, keyed on
+     * sandbox path. (This saves re-reading each package's manifest.)
+     */
+    private final LruHashMap<String, PackageBlobResourceLocator> blobResourceLocatorCache;
+
     public AssessmentPackageFileService() {
+        this.zipResourceLocatorCache = new LruHashMap<String, ZipSandboxResourceLocator>() {
+
+            private static final long serialVersionUID = -2443624356472389853L;
+
+            @Override
+            protected void entryPurged(final Entry<String, ZipSandboxResourceLocator> eldest) {
+                try {
+                    eldest.getValue().close();
+                }
+                catch (final IOException e) {
+                    logger.warn("Could not close evicted ZipSandboxResourceLocator {}", eldest.getValue(), e);
+                }
+            }
+        };
+        this.zipResourceLocatorCache.setMaxSize(100);
+        this.blobResourceLocatorCache = new LruHashMap<String, PackageBlobResourceLocator>();
+        this.blobResourceLocatorCache.setMaxSize(100);
         this.classPathResourceLocator = new ClassPathResourceLocator();
         this.sampleResolvingResourceLocator = new ChainedResourceLocator(
                 classPathResourceLocator, /* (to resolve things in the sample set) */
@@ -157,7 +208,8 @@ public class AssessmentPackageFileService {
         final File packageSandbox = filespaceManager.createAssessmentPackageSandbox(owner);
         final AssessmentPackage assessmentPackage;
         try {
-            assessmentPackage = assessmentPackageFileImporter.importAssessmentPackageData(packageSandbox, multipartFile);
+            assessmentPackage = assessmentPackageFileImporter.importAssessmentPackageData(packageSandbox, multipartFile,
+                    qtiWorksDeploymentSettings.isZippedPackageStorage());
 
             /* Record importer */
             assessmentPackage.setImporter(owner);
@@ -186,10 +238,12 @@ public class AssessmentPackageFileService {
             }
         }
         catch (final AssessmentPackageDataImportException e) {
+            purgeZipResourceLocator(packageSandbox.getAbsolutePath());
             filespaceManager.deleteSandbox(packageSandbox);
             throw e;
         }
         catch (final RuntimeException e) {
+            purgeZipResourceLocator(packageSandbox.getAbsolutePath());
             filespaceManager.deleteSandbox(packageSandbox);
             throw e;
         }
@@ -239,6 +293,14 @@ public class AssessmentPackageFileService {
             /* This is a bundled sample, which lives in the ClassPath */
             result = classPathResourceLocator;
         }
+        else if (assessmentPackage.isZipped()) {
+            /* Uploaded by user and kept as a ZIP file within its sandbox */
+            result = getZipResourceLocator(assessmentPackage);
+        }
+        else if (assessmentPackage.isDeduplicated()) {
+            /* Uploaded by user, with files held in the shared blob store */
+            result = getBlobResourceLocator(assessmentPackage);
+        }
         else {
             /* Uploaded by user, so resource lives in a sandbox within the filesystem */
             final File sandboxDirectory = new File(assessmentPackage.getSandboxPath());
@@ -248,6 +310,60 @@ public class AssessmentPackageFileService {
         return result;
     }
 
+    private ZipSandboxResourceLocator getZipResourceLocator(final AssessmentPackage assessmentPackage) {
+        final String sandboxPath = assessmentPackage.getSandboxPath();
+        synchronized (zipResourceLocatorCache) {
+            ZipSandboxResourceLocator result = zipResourceLocatorCache.get(sandboxPath);
+            if (result==null) {
+                final File zipFile = new File(sandboxPath, AssessmentPackage.PACKAGE_ZIP_FILE_NAME);
+                try {
+                    result = new ZipSandboxResourceLocator(QtiContentPackageExtractor.PACKAGE_URI_SCHEME, zipFile);
+                }
+                catch (final IOException e) {
+                    throw new QtiWorksRuntimeException("Could not open ZIP file for AssessmentPackage " + assessmentPackage, e);
+                }
+                zipResourceLocatorCache.put(sandboxPath, result);
+            }
+            return result;
+        }
+    }
+
+    private PackageBlobResourceLocator getBlobResourceLocator(final AssessmentPackage assessmentPackage) {
+        final String sandboxPath = assessmentPackage.getSandboxPath();
+        synchronized (blobResourceLocatorCache) {
+            PackageBlobResourceLocator result = blobResourceLocatorCache.get(sandboxPath);
+            if (result==null) {
+                result = packageBlobService.createResourceLocator(assessmentPackage);
+                blobResourceLocatorCache.put(sandboxPath, result);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Closes and forgets any open ZIP file or cached blob manifest for the given
+     * {@link AssessmentPackage}. This should be called before its sandbox is deleted.
+     */
+    public void purge(final AssessmentPackage assessmentPackage) {
+        Assert.notNull(assessmentPackage, "assessmentPackage");
+        if (assessmentPackage.getSandboxPath()!=null) {
+            purgeZipResourceLocator(assessmentPackage.getSandboxPath());
+            synchronized (blobResourceLocatorCache) {
+                blobResourceLocatorCache.remove(assessmentPackage.getSandboxPath());
+            }
+        }
+    }
+
+    private void purgeZipResourceLocator(final String sandboxPath) {
+        final ZipSandboxResourceLocator zipResourceLocator;
+        synchronized (zipResourceLocatorCache) {
+            zipResourceLocator = zipResourceLocatorCache.remove(sandboxPath);
+        }
+        if (zipResourceLocator!=null) {
+            ServiceUtilities.ensureClose(zipResourceLocator);
+        }
+    }
+
     /**
      * Creates a {@link ResourceLocator} for reading in and resolving the resources associated with
      * the given {@link AssessmentPackage} using a {@link QtiObjectReader}.
@@ -321,16 +437,31 @@ public class AssessmentPackageFileService {
     //-------------------------------------------------
 
     /**
-     * Invokes the JQTI+ load & resolution process on the given {@link AssessmentPackage}.
+     * Invokes the JQTI+ load & resolution process on the given {@link AssessmentPackage},
+     * using the {@link ModelLoadingProfile#FULL} profile.
      *
      * @param assessmentPackage package to validate, which must not be null.
      */
-    @SuppressWarnings("unchecked")
     public <E extends ResolvedAssessmentObject<?>>
     E loadAndResolveAssessmentObject(final AssessmentPackage assessmentPackage) {
+        return loadAndResolveAssessmentObject(assessmentPackage, ModelLoadingProfile.FULL);
+    }
+
+    /**
+     * Invokes the JQTI+ load & resolution process on the given {@link AssessmentPackage},
+     * using the given {@link ModelLoadingProfile}.
+     *
+     * @param assessmentPackage package to validate, which must not be null.
+     * @param modelLoadingProfile profile to use when building the JQTI+ Object model, which must
+     *   not be null.
+     */
+    @SuppressWarnings("unchecked")
+    public <E extends ResolvedAssessmentObject<?>>
+    E loadAndResolveAssessmentObject(final AssessmentPackage assessmentPackage, final ModelLoadingProfile modelLoadingProfile) {
+        Assert.notNull(modelLoadingProfile, "modelLoadingProfile");
         final ResourceLocator inputResourceLocator = createResolvingResourceLocator(assessmentPackage);
         final URI assessmentObjectSystemId = createAssessmentObjectUri(assessmentPackage);
-        final AssessmentObjectXmlLoader assessmentObjectXmlLoader = new AssessmentObjectXmlLoader(qtiXmlReader, inputResourceLocator);
+        final AssessmentObjectXmlLoader assessmentObjectXmlLoader = new AssessmentObjectXmlLoader(qtiXmlReader, inputResourceLocator, modelLoadingProfile);
         final AssessmentObjectType assessmentObjectType = assessmentPackage.getAssessmentType();
         E result;
         if (assessmentObjectType==AssessmentObjectType.ASSESSMENT_ITEM) {
@@ -357,6 +488,10 @@ public class AssessmentPackageFileService {
         final ResourceLocator inputResourceLocator = createResolvingResourceLocator(assessmentPackage);
         final URI assessmentObjectSystemId = createAssessmentObjectUri(assessmentPackage);
         final AssessmentObjectXmlLoader assessmentObjectXmlLoader = new AssessmentObjectXmlLoader(qtiXmlReader, inputResourceLocator);
+        assessmentObjectXmlLoader.setItemValidationCache(itemValidationCache);
+        if (qtiWorksDeploymentSettings.getItemProcessingThreads()>0) {
+            assessmentObjectXmlLoader.setItemValidationExecutor(itemProcessingTaskExecutor);
+        }
         final AssessmentObjectType assessmentObjectType = assessmentPackage.getAssessmentType();
         E result;
         if (assessmentObjectType==AssessmentObjectType.ASSESSMENT_ITEM) {
@@ -443,6 +578,35 @@ public class AssessmentPackageFileService {
                 }
             }
         }
+        else if (assessmentPackage.isZipped()) {
+            /* Uploaded file, which exists as an entry within the package's ZIP file */
+            final ZipSandboxResourceLocator zipResourceLocator = getZipResourceLocator(assessmentPackage);
+            final URI fileUri = QtiContentPackageExtractor.PACKAGE_URI_SCHEME.decodedPathToUri(fileHref);
+            final ZipEntry zipEntry = zipResourceLocator.findSandboxEntry(fileUri);
+            final InputStream entryStream = zipEntry!=null ? zipResourceLocator.findResource(fileUri) : null;
+            if (entryStream==null) {
+                /* (This should not happen due to the way we record what's in each package) */
+                throw new QtiWorksRuntimeException("Uploaded AssessmentPackage file with href " + fileHref
+                        + " in package " + assessmentPackage + " yielded null lookup");
+            }
+            try {
+                outputStreamer.stream(contentType, zipEntry.getSize(), lastModifiedTime, entryStream);
+            }
+            finally {
+                ServiceUtilities.ensureClose(entryStream);
+            }
+        }
+        else if (assessmentPackage.isDeduplicated()) {
+            /* Uploaded file, which exists as a blob in the shared store */
+            final PackageBlobResourceLocator blobResourceLocator = getBlobResourceLocator(assessmentPackage);
+            final File blobFile = blobResourceLocator.findBlobFile(QtiContentPackageExtractor.PACKAGE_URI_SCHEME.decodedPathToUri(fileHref));
+            if (blobFile==null) {
+                /* (This should not happen due to the way we record what's in each package) */
+                throw new QtiWorksRuntimeException("Uploaded AssessmentPackage file with href " + fileHref
+                        + " in package " + assessmentPackage + " yielded null lookup");
+            }
+            ServiceUtilities.streamFile(blobFile, contentType, lastModifiedTime, outputStreamer);
+        }
         else {
             /* Uploaded file, which exists in the sandbox */
             final File sandboxDirectory = new File(assessmentPackage.getSandboxPath());
@@ -0,0 +1,326 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.services;
+
+import uk.ac.ed.ph.qtiworks.QtiWorksRuntimeException;
+import uk.ac.ed.ph.qtiworks.config.beans.QtiWorksDeploymentSettings;
+import uk.ac.ed.ph.qtiworks.domain.entities.CandidateEvent;
+import uk.ac.ed.ph.qtiworks.domain.entities.CandidateItemEventType;
+import uk.ac.ed.ph.qtiworks.domain.entities.CandidateSession;
+import uk.ac.ed.ph.qtiworks.domain.entities.CandidateTestEventType;
+import uk.ac.ed.ph.qtiworks.services.dao.CandidateSessionDao;
+import uk.ac.ed.ph.qtiworks.services.domain.CandidateSessionRescoringData;
+
+import uk.ac.ed.ph.jqtiplus.node.AssessmentObjectType;
+import uk.ac.ed.ph.jqtiplus.node.result.AssessmentResult;
+import uk.ac.ed.ph.jqtiplus.notification.NotificationLevel;
+import uk.ac.ed.ph.jqtiplus.notification.NotificationRecorder;
+import uk.ac.ed.ph.jqtiplus.running.ItemSessionController;
+import uk.ac.ed.ph.jqtiplus.running.TestSessionController;
+import uk.ac.ed.ph.jqtiplus.state.ItemProcessingMap;
+import uk.ac.ed.ph.jqtiplus.state.ItemSessionState;
+import uk.ac.ed.ph.jqtiplus.state.TestPlanNodeKey;
+import uk.ac.ed.ph.jqtiplus.state.TestProcessingMap;
+import uk.ac.ed.ph.jqtiplus.state.TestSessionState;
+import uk.ac.ed.ph.jqtiplus.types.Identifier;
+import uk.ac.ed.ph.jqtiplus.value.Value;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.annotation.Resource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Rescores batches of {@link CandidateSession}s on behalf of the {@link AssessmentRescoringService}.
+ * Each batch is performed within its own transaction, so that the work done on earlier batches
+ * is committed (and the persistence context discarded) before the next batch starts.
+ * <p>
+ * The final state of each session is loaded on the calling Thread, as this uses the DB.
+ * Response and outcome processing are then re-run on the shared item processing executor
+ * (if enabled), before the results are recorded on the calling Thread.
+ * <p>
+ * This is NO authorisation at this level.
+ *
+ * @see AssessmentRescoringService
+ *
+ * @author David McKain
+ */
+@Service
+@Transactional(readOnly=false, propagation=Propagation.REQUIRES_NEW)
+public class AssessmentRescoringBatchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AssessmentRescoringBatchService.class);
+
+    @Resource
+    private QtiWorksDeploymentSettings qtiWorksDeploymentSettings;
+
+    @Resource
+    private CandidateDataService candidateDataService;
+
+    @Resource
+    private CandidateSessionFinisher candidateSessionFinisher;
+
+    @Resource
+    private CandidateSessionDao candidateSessionDao;
+
+    @Resource
+    private TaskExecutor itemProcessingTaskExecutor;
+
+    //-------------------------------------------------
+
+    /**
+     * Rescores the finished {@link CandidateSession}s having the given IDs.
+     *
+     * @param xids IDs of the {@link CandidateSession}s to rescore
+     * @param itemProcessingMap {@link ItemProcessingMap} to rescore with if the sessions are on an item,
+     *   otherwise null. (This may also be null if the item is no longer runnable.)
+     * @param testProcessingMap {@link TestProcessingMap} to rescore with if the sessions are on a test,
+     *   otherwise null. (This may also be null if the test is no longer runnable.)
+     * @param timestamp timestamp to use when computing new assessment results
+     * @param dryRun if true, changes are computed and reported but not recorded
+     * @param requeueLtiOutcomes if true, LTI outcomes will be re-sent for sessions whose outcomes
+     *   have changed (where appropriate)
+     * @param changedSessionsBuilder list to which details of each changed session will be added
+     * @param failedSessionsBuilder map to which the reason for each session that could not be
+     *   rescored will be added
+     *
+     * @return number of sessions whose outcomes were unchanged
+     */
+    public int rescoreCandidateSessions(final List<Long> xids, final ItemProcessingMap itemProcessingMap,
+            final TestProcessingMap testProcessingMap, final Date timestamp, final boolean dryRun,
+            final boolean requeueLtiOutcomes, final List<CandidateSessionRescoringData> changedSessionsBuilder,
+            final Map<Long, String> failedSessionsBuilder) {
+        /* Load state for each session (on this Thread, as this uses the DB) */
+        final List<SessionRescorer> rescorers = new ArrayList<SessionRescorer>(xids.size());
+        for (final Long xid : xids) {
+            try {
+                final CandidateSession candidateSession = candidateSessionDao.requireFindById(xid);
+                rescorers.add(createSessionRescorer(candidateSession, itemProcessingMap, testProcessingMap, timestamp));
+            }
+            catch (final Exception e) {
+                logger.warn("Failed to load state for CandidateSession #" + xid, e);
+                failedSessionsBuilder.put(xid, "Could not load state: " + e.getMessage());
+            }
+        }
+
+        /* Rescore, in parallel if enabled. Work rejected by a saturated executor is done on this Thread */
+        final boolean parallel = qtiWorksDeploymentSettings.getItemProcessingThreads()>0;
+        final List<FutureTask<SessionRescorer>> futureTasks = new ArrayList<FutureTask<SessionRescorer>>(rescorers.size());
+        for (final SessionRescorer rescorer : rescorers) {
+            final FutureTask<SessionRescorer> futureTask = new FutureTask<SessionRescorer>(rescorer);
+            futureTasks.add(futureTask);
+            if (parallel) {
+                try {
+                    itemProcessingTaskExecutor.execute(futureTask);
+                }
+                catch (final RejectedExecutionException e) {
+                    futureTask.run();
+                }
+            }
+            else {
+                futureTask.run();
+            }
+        }
+
+        /* Record results (on this Thread). We must wait for every task, as each is using its session's state */
+        int unchangedCount = 0;
+        for (final FutureTask<SessionRescorer> futureTask : futureTasks) {
+            final SessionRescorer rescorer;
+            try {
+                rescorer = Uninterruptibles.getUninterruptibly(futureTask);
+            }
+            catch (final ExecutionException e) {
+                /* (SessionRescorer catches its own Exceptions, so this shouldn't happen) */
+                throw new QtiWorksRuntimeException("Unexpected Exception during rescoring", e.getCause());
+            }
+            final CandidateSession candidateSession = rescorer.candidateSession;
+            if (rescorer.failure!=null) {
+                logger.warn("Failed to rescore CandidateSession #" + candidateSession.getId(), rescorer.failure);
+                failedSessionsBuilder.put(candidateSession.getId(), "Rescoring failed: " + rescorer.failure.getMessage());
+            }
+            else if (!rescorer.changed) {
+                unchangedCount++;
+            }
+            else {
+                changedSessionsBuilder.add(new CandidateSessionRescoringData(candidateSession.getId(),
+                        rescorer.previousOutcomeValues, rescorer.rescoredOutcomeValues));
+                if (!dryRun) {
+                    recordRescoredSession(rescorer, requeueLtiOutcomes);
+                }
+            }
+        }
+        return unchangedCount;
+    }
+
+    private SessionRescorer createSessionRescorer(final CandidateSession candidateSession,
+            final ItemProcessingMap itemProcessingMap, final TestProcessingMap testProcessingMap, final Date timestamp) {
+        final CandidateEvent mostRecentEvent = candidateDataService.getMostRecentEvent(candidateSession);
+        if (mostRecentEvent==null) {
+            throw new QtiWorksRuntimeException("Session has no recorded events");
+        }
+        final NotificationRecorder notificationRecorder = new NotificationRecorder(NotificationLevel.INFO);
+        final AssessmentObjectType assessmentType = candidateSession.getDelivery().getAssessment().getAssessmentType();
+        if (assessmentType==AssessmentObjectType.ASSESSMENT_ITEM) {
+            if (itemProcessingMap==null) {
+                throw new QtiWorksRuntimeException("Item is no longer runnable");
+            }
+            final ItemSessionController itemSessionController = candidateDataService.createItemSessionController(mostRecentEvent,
+                    itemProcessingMap, notificationRecorder);
+            return new SessionRescorer(candidateSession, itemSessionController, null, notificationRecorder, timestamp);
+        }
+        if (testProcessingMap==null) {
+            throw new QtiWorksRuntimeException("Test is no longer runnable");
+        }
+        final TestSessionController testSessionController = candidateDataService.createTestSessionController(mostRecentEvent,
+                testProcessingMap, notificationRecorder);
+        return new SessionRescorer(candidateSession, null, testSessionController, notificationRecorder, timestamp);
+    }
+
+    private void recordRescoredSession(final SessionRescorer rescorer, final boolean requeueLtiOutcomes) {
+        final CandidateSession candidateSession = rescorer.candidateSession;
+        if (rescorer.itemSessionController!=null) {
+            candidateDataService.recordCandidateItemEvent(candidateSession, CandidateItemEventType.RESCORE,
+                    rescorer.itemSessionController.getItemSessionState(), rescorer.notificationRecorder);
+            candidateDataService.recordItemAssessmentResult(candidateSession, rescorer.assessmentResult);
+        }
+        else {
+            candidateDataService.recordCandidateTestEvent(candidateSession, CandidateTestEventType.RESCORE,
+                    rescorer.testSessionController.getTestSessionState(), rescorer.notificationRecorder);
+            candidateDataService.recordTestAssessmentResult(candidateSession, rescorer.assessmentResult);
+        }
+        if (requeueLtiOutcomes) {
+            candidateSessionFinisher.rescheduleLtiOutcomes(candidateSession, rescorer.assessmentResult);
+        }
+    }
+
+    //-------------------------------------------------
+
+    /**
+     * Rescores a single session. This only touches the session's own state (plus the shared
+     * processing maps, which are read-only) so is safe to call on a worker Thread.
+     */
+    private final class SessionRescorer implements Callable<SessionRescorer> {
+
+        final CandidateSession candidateSession;
+        final ItemSessionController itemSessionController;
+        final TestSessionController testSessionController;
+        final NotificationRecorder notificationRecorder;
+        final Date timestamp;
+
+        Map<String, String> previousOutcomeValues;
+        Map<String, String> rescoredOutcomeValues;
+        boolean changed;
+        AssessmentResult assessmentResult;
+        RuntimeException failure;
+
+        SessionRescorer(final CandidateSession candidateSession, final ItemSessionController itemSessionController,
+                final TestSessionController testSessionController, final NotificationRecorder notificationRecorder,
+                final Date timestamp) {
+            this.candidateSession = candidateSession;
+            this.itemSessionController = itemSessionController;
+            this.testSessionController = testSessionController;
+            this.notificationRecorder = notificationRecorder;
+            this.timestamp = timestamp;
+        }
+
+        @Override
+        public SessionRescorer call() {
+            try {
+                if (itemSessionController!=null) {
+                    final ItemSessionState itemSessionState = itemSessionController.getItemSessionState();
+                    final Map<Identifier, Value> previousValues = new HashMap<Identifier, Value>(itemSessionState.getOutcomeValues());
+                    previousOutcomeValues = stringifyValues(previousValues);
+                    itemSessionController.rescoreResponses();
+                    changed = !previousValues.equals(itemSessionState.getOutcomeValues());
+                    rescoredOutcomeValues = stringifyValues(itemSessionState.getOutcomeValues());
+                    if (changed) {
+                        assessmentResult = candidateDataService.computeItemAssessmentResult(candidateSession, itemSessionController, timestamp);
+                    }
+                }
+                else {
+                    final TestSessionState testSessionState = testSessionController.getTestSessionState();
+                    final Map<Identifier, Value> previousValues = new HashMap<Identifier, Value>(testSessionState.getOutcomeValues());
+                    final Map<TestPlanNodeKey, Map<Identifier, Value>> previousItemValues = snapshotItemOutcomeValues(testSessionState);
+                    previousOutcomeValues = stringifyValues(previousValues);
+                    testSessionController.rescoreTest();
+                    changed = !previousValues.equals(testSessionState.getOutcomeValues())
+                            || !previousItemValues.equals(snapshotItemOutcomeValues(testSessionState));
+                    rescoredOutcomeValues = stringifyValues(testSessionState.getOutcomeValues());
+                    if (changed) {
+                        assessmentResult = candidateDataService.computeTestAssessmentResult(candidateSession, testSessionController, timestamp);
+                    }
+                }
+            }
+            catch (final RuntimeException e) {
+                failure = e;
+            }
+            return this;
+        }
+    }
+
+    private static Map<TestPlanNodeKey, Map<Identifier, Value>> snapshotItemOutcomeValues(final TestSessionState testSessionState) {
+        final Map<TestPlanNodeKey, Map<Identifier, Value>> result = new HashMap<TestPlanNodeKey, Map<Identifier, Value>>();
+        for (final Entry<TestPlanNodeKey, ItemSessionState> entry : testSessionState.getItemSessionStates().entrySet()) {
+            result.put(entry.getKey(), new HashMap<Identifier, Value>(entry.getValue().getOutcomeValues()));
+        }
+        return result;
+    }
+
+    private static Map<String, String> stringifyValues(final Map<Identifier, Value> values) {
+        final Map<String, String> result = new LinkedHashMap<String, String>();
+        for (final Entry<Identifier, Value> entry : values.entrySet()) {
+            final Value value = entry.getValue();
+            result.put(entry.getKey().toString(), value!=null ? value.toQtiString() : null);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,198 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.services;
+
+import uk.ac.ed.ph.qtiworks.QtiWorksRuntimeException;
+import uk.ac.ed.ph.qtiworks.domain.DomainEntityNotFoundException;
+import uk.ac.ed.ph.qtiworks.domain.entities.AssessmentPackage;
+import uk.ac.ed.ph.qtiworks.domain.entities.CandidateSession;
+import uk.ac.ed.ph.qtiworks.domain.entities.Delivery;
+import uk.ac.ed.ph.qtiworks.services.dao.CandidateSessionDao;
+import uk.ac.ed.ph.qtiworks.services.domain.CandidateSessionRescoringData;
+import uk.ac.ed.ph.qtiworks.services.domain.DeliveryRescoringProgress;
+import uk.ac.ed.ph.qtiworks.services.domain.DeliveryRescoringReport;
+import uk.ac.ed.ph.qtiworks.services.domain.PrivilegeException;
+
+import uk.ac.ed.ph.jqtiplus.node.AssessmentObjectType;
+import uk.ac.ed.ph.jqtiplus.reading.ModelLoadingProfile;
+import uk.ac.ed.ph.jqtiplus.running.ItemSessionController;
+import uk.ac.ed.ph.jqtiplus.running.TestSessionController;
+import uk.ac.ed.ph.jqtiplus.state.ItemProcessingMap;
+import uk.ac.ed.ph.jqtiplus.state.TestProcessingMap;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Resource;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Top layer service for rescoring all of the {@link CandidateSession}s for a {@link Delivery},
+ * e.g. after an instructor has fixed a mis-keyed item.
+ * <p>
+ * The final state of each finished session is reloaded and wrapped in a controller for the
+ * currently selected package, then response and outcome processing are re-run. The package is
+ * loaded once per run using {@link ModelLoadingProfile#PROCESSING}, as nothing is rendered here. Sessions are
+ * processed in batches by the {@link AssessmentRescoringBatchService}, each within its own
+ * transaction, so rescoring a large delivery neither holds one long transaction open nor
+ * accumulates every session in memory. Sessions that have not been finished are skipped,
+ * as are those whose outcomes are unchanged.
+ * <p>
+ * All operations here check authorisation.
+ *
+ * @see ItemSessionController#rescoreResponses()
+ * @see TestSessionController#rescoreTest()
+ *
+ * @author David McKain
+ */
+@Service
+@Transactional(readOnly=false, propagation=Propagation.REQUIRED)
+public class AssessmentRescoringService {
+
+    /** Number of sessions loaded and processed together */
+    private static final int BATCH_SIZE = 200;
+
+    @Resource
+    private AuditLogger auditLogger;
+
+    @Resource
+    private AssessmentManagementService assessmentManagementService;
+
+    @Resource
+    private AssessmentRescoringBatchService assessmentRescoringBatchService;
+
+    @Resource
+    private AssessmentDataService assessmentDataService;
+
+    @Resource
+    private AssessmentObjectManagementService assessmentObjectManagementService;
+
+    @Resource
+    private CandidateSessionDao candidateSessionDao;
+
+    @Resource
+    private RequestTimestampContext requestTimestampContext;
+
+    /** Progress of rescoring runs currently underway, keyed on Delivery ID */
+    private final ConcurrentMap<Long, DeliveryRescoringProgress> progressMap = new ConcurrentHashMap<Long, DeliveryRescoringProgress>();
+
+    //-------------------------------------------------
+
+    /**
+     * Returns the progress of the rescoring run currently underway for the {@link Delivery} having
+     * the given ID, or null if there is no such run.
+     */
+    public DeliveryRescoringProgress getRescoringProgress(final long did)
+            throws PrivilegeException, DomainEntityNotFoundException {
+        assessmentManagementService.lookupDelivery(did);
+        return progressMap.get(Long.valueOf(did));
+    }
+
+    /**
+     * Rescores all finished {@link CandidateSession}s for the {@link Delivery} having the given ID.
+     * <p>
+     * This runs outside any existing transaction. Each batch of sessions is committed as it
+     * completes, so a failure part of the way through leaves earlier batches rescored.
+     *
+     * @param did ID of the {@link Delivery} to rescore
+     * @param dryRun if true, changes are computed and reported but not recorded
+     * @param requeueLtiOutcomes if true, LTI outcomes will be re-sent for sessions whose outcomes
+     *   have changed (where appropriate)
+     */
+    @Transactional(propagation=Propagation.NOT_SUPPORTED)
+    public DeliveryRescoringReport rescoreDelivery(final long did, final boolean dryRun, final boolean requeueLtiOutcomes)
+            throws PrivilegeException, DomainEntityNotFoundException {
+        final Delivery delivery = assessmentManagementService.lookupDelivery(did);
+        final Long progressKey = Long.valueOf(did);
+        final Date timestamp = requestTimestampContext.getCurrentRequestTimestamp();
+        final List<CandidateSession> candidateSessions = candidateSessionDao.getForDelivery(delivery);
+        final int sessionCount = candidateSessions.size();
+        if (progressMap.putIfAbsent(progressKey, new DeliveryRescoringProgress(did, timestamp, sessionCount, 0))!=null) {
+            throw new QtiWorksRuntimeException("Delivery #" + did + " is already being rescored");
+        }
+
+        final List<CandidateSessionRescoringData> changedSessions = new ArrayList<CandidateSessionRescoringData>();
+        final Map<Long, String> failedSessions = new LinkedHashMap<Long, String>();
+        int unchangedCount = 0;
+        int skippedCount = 0;
+        try {
+            /* Load the assessment once for the whole run, leaving out content that rescoring never uses */
+            final AssessmentPackage assessmentPackage = assessmentDataService.ensureSelectedAssessmentPackage(delivery);
+            ItemProcessingMap itemProcessingMap = null;
+            TestProcessingMap testProcessingMap = null;
+            if (assessmentPackage.getAssessmentType()==AssessmentObjectType.ASSESSMENT_ITEM) {
+                itemProcessingMap = assessmentObjectManagementService.createItemProcessingMap(assessmentPackage, ModelLoadingProfile.PROCESSING);
+            }
+            else {
+                testProcessingMap = assessmentObjectManagementService.createTestProcessingMap(assessmentPackage, ModelLoadingProfile.PROCESSING);
+            }
+
+            for (int batchStart=0; batchStart<sessionCount; batchStart+=BATCH_SIZE) {
+                final int batchEnd = Math.min(batchStart + BATCH_SIZE, sessionCount);
+                final List<Long> batchXids = new ArrayList<Long>(batchEnd - batchStart);
+                for (final CandidateSession candidateSession : candidateSessions.subList(batchStart, batchEnd)) {
+                    if (candidateSession.getFinishTime()==null || candidateSession.isExploded()) {
+                        skippedCount++;
+                    }
+                    else {
+                        batchXids.add(candidateSession.getId());
+                    }
+                }
+                if (!batchXids.isEmpty()) {
+                    unchangedCount += assessmentRescoringBatchService.rescoreCandidateSessions(batchXids,
+                            itemProcessingMap, testProcessingMap, timestamp, dryRun, requeueLtiOutcomes,
+                            changedSessions, failedSessions);
+                }
+                progressMap.put(progressKey, new DeliveryRescoringProgress(did, timestamp, sessionCount, batchEnd));
+            }
+        }
+        finally {
+            progressMap.remove(progressKey);
+        }
+
+        auditLogger.recordEvent((dryRun ? "Dry run rescoring" : "Rescored") + " Delivery #" + did
+                + ": " + changedSessions.size() + " changed, " + unchangedCount + " unchanged, "
+                + skippedCount + " skipped, " + failedSessions.size() + " failed");
+        return new DeliveryRescoringReport(delivery, dryRun, sessionCount, unchangedCount, skippedCount,
+                changedSessions, failedSessions);
+    }
+}
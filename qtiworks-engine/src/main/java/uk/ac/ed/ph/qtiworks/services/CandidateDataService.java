@@ -36,6 +36,7 @@ package uk.ac.ed.ph.qtiworks.services;
 import uk.ac.ed.ph.qtiworks.QtiWorksLogicException;
 import uk.ac.ed.ph.qtiworks.QtiWorksRuntimeException;
 import uk.ac.ed.ph.qtiworks.config.beans.QtiWorksDeploymentSettings;
+import uk.ac.ed.ph.qtiworks.domain.entities.Assessment;
 import uk.ac.ed.ph.qtiworks.domain.entities.AssessmentPackage;
 import uk.ac.ed.ph.qtiworks.domain.entities.CandidateEvent;
 import uk.ac.ed.ph.qtiworks.domain.entities.CandidateEventNotification;
@@ -50,9 +51,13 @@ import uk.ac.ed.ph.qtiworks.domain.entities.TestDeliverySettings;
 import uk.ac.ed.ph.qtiworks.domain.entities.User;
 import uk.ac.ed.ph.qtiworks.mathassess.GlueValueBinder;
 import uk.ac.ed.ph.qtiworks.mathassess.MathAssessConstants;
+import uk.ac.ed.ph.qtiworks.services.dao.AssessmentPackageDao;
 import uk.ac.ed.ph.qtiworks.services.dao.CandidateEventDao;
 import uk.ac.ed.ph.qtiworks.services.dao.CandidateEventNotificationDao;
+import uk.ac.ed.ph.qtiworks.services.dao.CandidateSessionDao;
 import uk.ac.ed.ph.qtiworks.services.dao.CandidateSessionOutcomeDao;
+import uk.ac.ed.ph.qtiworks.services.dao.DeliveryDao;
+import uk.ac.ed.ph.qtiworks.utils.LruHashMap;
 import uk.ac.ed.ph.qtiworks.utils.XmlUtilities;
 
 import uk.ac.ed.ph.jqtiplus.JqtiExtensionManager;
@@ -60,6 +65,7 @@ import uk.ac.ed.ph.jqtiplus.JqtiPlus;
 import uk.ac.ed.ph.jqtiplus.QtiConstants;
 import uk.ac.ed.ph.jqtiplus.attribute.Attribute;
 import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
+import uk.ac.ed.ph.jqtiplus.internal.util.StringUtilities;
 import uk.ac.ed.ph.jqtiplus.node.AssessmentObjectType;
 import uk.ac.ed.ph.jqtiplus.node.QtiNode;
 import uk.ac.ed.ph.jqtiplus.node.result.AbstractResult;
@@ -68,14 +74,19 @@ import uk.ac.ed.ph.jqtiplus.node.result.ItemVariable;
 import uk.ac.ed.ph.jqtiplus.node.result.OutcomeVariable;
 import uk.ac.ed.ph.jqtiplus.notification.Notification;
 import uk.ac.ed.ph.jqtiplus.notification.NotificationRecorder;
+import uk.ac.ed.ph.jqtiplus.reading.ModelLoadingProfile;
+import uk.ac.ed.ph.jqtiplus.running.EvaluationProfile;
+import uk.ac.ed.ph.jqtiplus.running.EvaluationProfileEntry;
 import uk.ac.ed.ph.jqtiplus.running.ItemSessionController;
 import uk.ac.ed.ph.jqtiplus.running.ItemSessionControllerSettings;
 import uk.ac.ed.ph.jqtiplus.running.TestPlanner;
 import uk.ac.ed.ph.jqtiplus.running.TestSessionController;
+import uk.ac.ed.ph.jqtiplus.running.TestSessionControllerFactory;
 import uk.ac.ed.ph.jqtiplus.running.TestSessionControllerSettings;
 import uk.ac.ed.ph.jqtiplus.serialization.QtiSerializer;
 import uk.ac.ed.ph.jqtiplus.state.ItemProcessingMap;
 import uk.ac.ed.ph.jqtiplus.state.ItemSessionState;
+import uk.ac.ed.ph.jqtiplus.state.TemplateVariantPool;
 import uk.ac.ed.ph.jqtiplus.state.TestPlan;
 import uk.ac.ed.ph.jqtiplus.state.TestPlanNodeKey;
 import uk.ac.ed.ph.jqtiplus.state.TestProcessingMap;
@@ -95,6 +106,11 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URI;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
 
 import javax.annotation.Resource;
 import javax.xml.parsers.DocumentBuilder;
@@ -104,10 +120,15 @@ import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 
 import org.apache.commons.io.FileUtils;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import com.csvreader.CsvWriter;
+import com.google.common.base.Charsets;
 
 /**
  * Low level services for manipulating candidate data, such as recording
@@ -134,6 +155,18 @@ public class CandidateDataService {
     @Resource
     private AssessmentObjectManagementService assessmentObjectManagementService;
 
+    @Resource
+    private TemplateVariantPoolService templateVariantPoolService;
+
+    @Resource
+    private AssessmentPackageDao assessmentPackageDao;
+
+    @Resource
+    private DeliveryDao deliveryDao;
+
+    @Resource
+    private CandidateSessionDao candidateSessionDao;
+
     @Resource
     private CandidateSessionOutcomeDao candidateSessionOutcomeDao;
 
@@ -149,6 +182,17 @@ public class CandidateDataService {
     @Resource
     private JqtiExtensionManager jqtiExtensionManager;
 
+    @Resource
+    private TaskExecutor itemProcessingTaskExecutor;
+
+    /** Reusable {@link TestSessionControllerFactory}s, keyed on what they were created from */
+    private final LruHashMap<TestSessionControllerFactoryKey, TestSessionControllerFactory> testSessionControllerFactoryCache;
+
+    public CandidateDataService() {
+        this.testSessionControllerFactoryCache = new LruHashMap<TestSessionControllerFactoryKey, TestSessionControllerFactory>();
+        this.testSessionControllerFactoryCache.setMaxSize(100);
+    }
+
     //----------------------------------------------------
     // Notification recording
 
@@ -270,7 +314,9 @@ public class CandidateDataService {
      * This will return null if the item can't be started because its {@link ItemProcessingMap}
      * can't be created, e.g. if its XML can't be parsed.
      */
-    public ItemSessionController createNewItemSessionStateAndController(final User candidate, final Delivery delivery, final NotificationRecorder notificationRecorder) {
+    public ItemSessionController createNewItemSessionStateAndController(final CandidateSession candidateSession, final NotificationRecorder notificationRecorder) {
+        final User candidate = candidateSession.getCandidate();
+        final Delivery delivery = candidateSession.getDelivery();
         ensureItemDelivery(delivery);
 
         /* Resolve the underlying JQTI+ object */
@@ -288,6 +334,10 @@ public class CandidateDataService {
         final ItemSessionControllerSettings itemSessionControllerSettings = new ItemSessionControllerSettings();
         itemSessionControllerSettings.setTemplateProcessingLimit(computeTemplateProcessingLimit(itemDeliverySettings));
         itemSessionControllerSettings.setMaxAttempts(itemDeliverySettings.getMaxAttempts());
+        itemSessionControllerSettings.setProfilingEnabled(isProfilingEnabled(candidateSession, itemDeliverySettings));
+        itemSessionControllerSettings.setEvaluationStepLimit(qtiWorksDeploymentSettings.getProcessingStepLimit());
+        itemSessionControllerSettings.setEvaluationTimeLimit(qtiWorksDeploymentSettings.getProcessingTimeLimit());
+        itemSessionControllerSettings.setTemplateVariantPool(templateVariantPoolService.getTemplateVariantPool(assessmentPackage, itemProcessingMap));
 
         /* Create controller and wire up notification recorder */
         final ItemSessionController result = new ItemSessionController(jqtiExtensionManager,
@@ -310,6 +360,19 @@ public class CandidateDataService {
         return createItemSessionController(candidateEvent.getCandidateSession(), itemSessionState, notificationRecorder);
     }
 
+    /**
+     * Variant of {@link #createItemSessionController(CandidateEvent, NotificationRecorder)} that
+     * uses the given {@link ItemProcessingMap} instead of the shared cached one. This must have
+     * been created from the {@link AssessmentPackage} currently selected for the {@link Delivery},
+     * e.g. using {@link ModelLoadingProfile#PROCESSING} for batch jobs that don't render anything.
+     */
+    public ItemSessionController createItemSessionController(final CandidateEvent candidateEvent,
+            final ItemProcessingMap itemProcessingMap, final NotificationRecorder notificationRecorder) {
+        Assert.notNull(itemProcessingMap, "itemProcessingMap");
+        final ItemSessionState itemSessionState = loadItemSessionState(candidateEvent);
+        return createItemSessionController(candidateEvent.getCandidateSession(), itemSessionState, itemProcessingMap, notificationRecorder);
+    }
+
     /**
      * Wraps the given {@link ItemSessionState} in a {@link ItemSessionController}.
      * <p>
@@ -317,10 +380,8 @@ public class CandidateDataService {
      */
     public ItemSessionController createItemSessionController(final CandidateSession candidateSession,
             final ItemSessionState itemSessionState,  final NotificationRecorder notificationRecorder) {
-        final User candidate = candidateSession.getCandidate();
         final Delivery delivery = candidateSession.getDelivery();
         ensureItemDelivery(delivery);
-        Assert.notNull(itemSessionState, "itemSessionState");
 
         /* Try to resolve the underlying JQTI+ object */
         final AssessmentPackage assessmentPackage = assessmentDataService.ensureSelectedAssessmentPackage(delivery);
@@ -328,12 +389,27 @@ public class CandidateDataService {
         if (itemProcessingMap==null) {
             throw new QtiWorksLogicException("Expected this item to be runnable");
         }
+        return createItemSessionController(candidateSession, itemSessionState, itemProcessingMap, notificationRecorder);
+    }
+
+    private ItemSessionController createItemSessionController(final CandidateSession candidateSession,
+            final ItemSessionState itemSessionState, final ItemProcessingMap itemProcessingMap,
+            final NotificationRecorder notificationRecorder) {
+        final User candidate = candidateSession.getCandidate();
+        final Delivery delivery = candidateSession.getDelivery();
+        ensureItemDelivery(delivery);
+        Assert.notNull(itemSessionState, "itemSessionState");
+        final AssessmentPackage assessmentPackage = assessmentDataService.ensureSelectedAssessmentPackage(delivery);
 
         /* Create config for ItemSessionController */
         final ItemDeliverySettings itemDeliverySettings = (ItemDeliverySettings) assessmentDataService.getEffectiveDeliverySettings(candidate, delivery);
         final ItemSessionControllerSettings itemSessionControllerSettings = new ItemSessionControllerSettings();
         itemSessionControllerSettings.setTemplateProcessingLimit(computeTemplateProcessingLimit(itemDeliverySettings));
         itemSessionControllerSettings.setMaxAttempts(itemDeliverySettings.getMaxAttempts());
+        itemSessionControllerSettings.setProfilingEnabled(isProfilingEnabled(candidateSession, itemDeliverySettings));
+        itemSessionControllerSettings.setEvaluationStepLimit(qtiWorksDeploymentSettings.getProcessingStepLimit());
+        itemSessionControllerSettings.setEvaluationTimeLimit(qtiWorksDeploymentSettings.getProcessingTimeLimit());
+        itemSessionControllerSettings.setTemplateVariantPool(templateVariantPoolService.getTemplateVariantPool(assessmentPackage, itemProcessingMap));
 
         /* Create controller and wire up notification recorder (if passed) */
         final ItemSessionController result = new ItemSessionController(jqtiExtensionManager,
@@ -359,16 +435,34 @@ public class CandidateDataService {
         return requestedLimitIntValue > 0 ? requestedLimitIntValue : JqtiPlus.DEFAULT_TEMPLATE_PROCESSING_LIMIT;
     }
 
+    /**
+     * Decides whether evaluation profiling should be enabled for the given {@link CandidateSession}.
+     * This is only ever done in author mode, and only if requested in the {@link DeliverySettings}.
+     */
+    public boolean isProfilingEnabled(final CandidateSession candidateSession, final DeliverySettings deliverySettings) {
+        return candidateSession.isAuthorMode() && deliverySettings.isProfileEvaluation();
+    }
+
     public AssessmentResult computeAndRecordItemAssessmentResult(final CandidateSession candidateSession, final ItemSessionController itemSessionController) {
         final AssessmentResult assessmentResult = computeItemAssessmentResult(candidateSession, itemSessionController);
         recordItemAssessmentResult(candidateSession, assessmentResult);
+        storeEvaluationProfileFile(candidateSession, itemSessionController.getEvaluationProfile());
         return assessmentResult;
     }
 
     public AssessmentResult computeItemAssessmentResult(final CandidateSession candidateSession, final ItemSessionController itemSessionController) {
+        return computeItemAssessmentResult(candidateSession, itemSessionController, requestTimestampContext.getCurrentRequestTimestamp());
+    }
+
+    /**
+     * Computes the {@link AssessmentResult} for the given item session using an explicit timestamp.
+     * This does not access the database, so may be called from a worker Thread.
+     */
+    public AssessmentResult computeItemAssessmentResult(final CandidateSession candidateSession, final ItemSessionController itemSessionController,
+            final Date timestamp) {
         final URI sessionIdentifierSourceId = URI.create(qtiWorksDeploymentSettings.getBaseUrl());
         final String sessionIdentifier = "itemsession/" + candidateSession.getId();
-        return itemSessionController.computeAssessmentResult(requestTimestampContext.getCurrentRequestTimestamp(), sessionIdentifier, sessionIdentifierSourceId);
+        return itemSessionController.computeAssessmentResult(timestamp, sessionIdentifier, sessionIdentifierSourceId);
     }
 
     public void recordItemAssessmentResult(final CandidateSession candidateSession, final AssessmentResult assessmentResult) {
@@ -389,14 +483,81 @@ public class CandidateDataService {
     //----------------------------------------------------
     // Test methods
 
+    /**
+     * Stores the given {@link TestSessionState}. If its {@link TestPlan} is the same as the test's
+     * shared invariant plan (e.g. it was generated from a processing-only copy of the same test)
+     * then only a reference to it is stored, recording the {@link AssessmentPackage}
+     * it was generated from so that it can be regenerated from that package later. Otherwise the
+     * plan is embedded in full.
+     * <p>
+     * References are converted back to embedded plans before the {@link AssessmentPackage} is
+     * deleted. (See {@link #embedTestPlanReferences(AssessmentPackage)}.)
+     */
     public void storeTestSessionState(final CandidateEvent candidateEvent, final TestSessionState testSessionState) {
-        final Document stateDocument = TestSessionStateXmlMarshaller.marshal(testSessionState);
+        final Delivery delivery = candidateEvent.getCandidateSession().getDelivery();
+        final AssessmentPackage assessmentPackage = assessmentDataService.ensureSelectedAssessmentPackage(delivery);
+        final TestProcessingMap testProcessingMap = assessmentObjectManagementService.getTestProcessingMap(assessmentPackage);
+        final TestPlan invariantTestPlan = testProcessingMap!=null ? testProcessingMap.getInvariantTestPlan() : null;
+        final TestPlan testPlan = testSessionState.getTestPlan();
+        final boolean embedTestPlan = invariantTestPlan==null
+                || (testPlan!=invariantTestPlan && !testPlan.computePlanHash().equals(invariantTestPlan.computePlanHash()));
+        final Document stateDocument = TestSessionStateXmlMarshaller.marshal(testSessionState, embedTestPlan,
+                assessmentPackage.getId().toString());
         storeStateDocument(candidateEvent, stateDocument);
     }
 
     public TestSessionState loadTestSessionState(final CandidateEvent candidateEvent) {
-        final Document document = loadStateDocument(candidateEvent);
-        return TestSessionStateXmlMarshaller.unmarshal(document.getDocumentElement());
+        final Element stateElement = loadStateDocument(candidateEvent).getDocumentElement();
+        final String testSource = TestSessionStateXmlMarshaller.extractTestPlanReferenceSource(stateElement);
+        final TestProcessingMap testProcessingMap = testSource!=null ? getReferencedTestProcessingMap(testSource) : null;
+        return TestSessionStateXmlMarshaller.unmarshal(stateElement, testProcessingMap);
+    }
+
+    private TestProcessingMap getReferencedTestProcessingMap(final String testSource) {
+        final AssessmentPackage assessmentPackage = assessmentPackageDao.findById(Long.valueOf(testSource));
+        if (assessmentPackage==null) {
+            throw new QtiWorksLogicException("AssessmentPackage #" + testSource + " referenced by stored TestSessionState no longer exists");
+        }
+        final TestProcessingMap testProcessingMap = assessmentObjectManagementService.getTestProcessingMap(assessmentPackage);
+        if (testProcessingMap==null) {
+            throw new QtiWorksLogicException("Could not obtain TestProcessingMap for " + assessmentPackage
+                    + " referenced by stored TestSessionState");
+        }
+        return testProcessingMap;
+    }
+
+    /**
+     * Rewrites any stored {@link TestSessionState}s that refer to {@link TestPlan}s generated from
+     * the given {@link AssessmentPackage} so that they embed the plan in full instead. This must
+     * be called before the {@link AssessmentPackage} is deleted.
+     *
+     * @return number of states that were rewritten
+     */
+    public int embedTestPlanReferences(final AssessmentPackage assessmentPackage) {
+        Assert.notNull(assessmentPackage, "assessmentPackage");
+        final Assessment assessment = assessmentPackage.getAssessment();
+        if (assessment==null || assessmentPackage.getAssessmentType()!=AssessmentObjectType.ASSESSMENT_TEST) {
+            return 0;
+        }
+        final String testSource = assessmentPackage.getId().toString();
+        int rewriteCount = 0;
+        for (final Delivery delivery : deliveryDao.getForAssessment(assessment)) {
+            for (final CandidateSession candidateSession : candidateSessionDao.getForDelivery(delivery)) {
+                for (final CandidateEvent candidateEvent : candidateEventDao.getForSession(candidateSession)) {
+                    if (!getSessionStateFile(candidateEvent).exists()) {
+                        continue;
+                    }
+                    final Element stateElement = loadStateDocument(candidateEvent).getDocumentElement();
+                    if (testSource.equals(TestSessionStateXmlMarshaller.extractTestPlanReferenceSource(stateElement))) {
+                        final TestSessionState testSessionState = TestSessionStateXmlMarshaller.unmarshal(stateElement,
+                                getReferencedTestProcessingMap(testSource));
+                        storeStateDocument(candidateEvent, TestSessionStateXmlMarshaller.marshal(testSessionState, true));
+                        rewriteCount++;
+                    }
+                }
+            }
+        }
+        return rewriteCount;
     }
 
     /**
@@ -406,7 +567,9 @@ public class CandidateDataService {
      * This will return null if the test can't be started because its {@link TestProcessingMap}
      * can't be created, e.g. if its XML can't be parsed.
      */
-    public TestSessionController createNewTestSessionStateAndController(final User candidate, final Delivery delivery, final NotificationRecorder notificationRecorder) {
+    public TestSessionController createNewTestSessionStateAndController(final CandidateSession candidateSession, final NotificationRecorder notificationRecorder) {
+        final User candidate = candidateSession.getCandidate();
+        final Delivery delivery = candidateSession.getDelivery();
         ensureTestDelivery(delivery);
 
         /* Resolve the underlying JQTI+ object */
@@ -416,12 +579,15 @@ public class CandidateDataService {
             return null;
         }
 
-        /* Generate a test plan for this session */
-        final TestPlanner testPlanner = new TestPlanner(testProcessingMap);
-        if (notificationRecorder!=null) {
-            testPlanner.addNotificationListener(notificationRecorder);
+        /* Use the shared test plan if all candidates get the same one, otherwise generate one for this session */
+        TestPlan testPlan = testProcessingMap.getInvariantTestPlan();
+        if (testPlan==null) {
+            final TestPlanner testPlanner = new TestPlanner(testProcessingMap);
+            if (notificationRecorder!=null) {
+                testPlanner.addNotificationListener(notificationRecorder);
+            }
+            testPlan = testPlanner.generateTestPlan();
         }
-        final TestPlan testPlan = testPlanner.generateTestPlan();
 
         /* Create fresh state for session */
         final TestSessionState testSessionState = new TestSessionState(testPlan);
@@ -430,10 +596,18 @@ public class CandidateDataService {
         final DeliverySettings testDeliverySettings = assessmentDataService.getEffectiveDeliverySettings(candidate, delivery);
         final TestSessionControllerSettings testSessionControllerSettings = new TestSessionControllerSettings();
         testSessionControllerSettings.setTemplateProcessingLimit(computeTemplateProcessingLimit(testDeliverySettings));
+        testSessionControllerSettings.setProfilingEnabled(isProfilingEnabled(candidateSession, testDeliverySettings));
+        testSessionControllerSettings.setEvaluationStepLimit(qtiWorksDeploymentSettings.getProcessingStepLimit());
+        testSessionControllerSettings.setEvaluationTimeLimit(qtiWorksDeploymentSettings.getProcessingTimeLimit());
+        testSessionControllerSettings.setLazyItemSessionInitialization(qtiWorksDeploymentSettings.isLazyItemSessionInitialization());
+        testSessionControllerSettings.setTemplateVariantPoolMap(templateVariantPoolService.getTemplateVariantPools(assessmentPackage, testProcessingMap));
 
         /* Create controller and wire up notification recorder */
-        final TestSessionController result = new TestSessionController(jqtiExtensionManager,
-                testSessionControllerSettings, testProcessingMap, testSessionState);
+        final TestSessionController result = getTestSessionControllerFactory(assessmentPackage, testProcessingMap, testSessionControllerSettings)
+                .createTestSessionController(testSessionState);
+        if (qtiWorksDeploymentSettings.getItemProcessingThreads()>0) {
+            result.setItemProcessingExecutor(itemProcessingTaskExecutor);
+        }
         if (notificationRecorder!=null) {
             result.addNotificationListener(notificationRecorder);
         }
@@ -452,6 +626,19 @@ public class CandidateDataService {
         return createTestSessionController(candidateEvent.getCandidateSession(), testSessionState, notificationRecorder);
     }
 
+    /**
+     * Variant of {@link #createTestSessionController(CandidateEvent, NotificationRecorder)} that
+     * uses the given {@link TestProcessingMap} instead of the shared cached one. This must have
+     * been created from the {@link AssessmentPackage} currently selected for the {@link Delivery},
+     * e.g. using {@link ModelLoadingProfile#PROCESSING} for batch jobs that don't render anything.
+     */
+    public TestSessionController createTestSessionController(final CandidateEvent candidateEvent,
+            final TestProcessingMap testProcessingMap, final NotificationRecorder notificationRecorder) {
+        Assert.notNull(testProcessingMap, "testProcessingMap");
+        final TestSessionState testSessionState = loadTestSessionState(candidateEvent);
+        return createTestSessionController(candidateEvent.getCandidateSession(), testSessionState, testProcessingMap, notificationRecorder);
+    }
+
     /**
      * Wraps the given {@link TestSessionState} in a {@link TestSessionController}.
      * <p>
@@ -459,10 +646,8 @@ public class CandidateDataService {
      */
     public TestSessionController createTestSessionController(final CandidateSession candidateSession,
             final TestSessionState testSessionState,  final NotificationRecorder notificationRecorder) {
-        final User candidate = candidateSession.getCandidate();
         final Delivery delivery = candidateSession.getDelivery();
         ensureTestDelivery(delivery);
-        Assert.notNull(testSessionState, "testSessionState");
 
         /* Try to resolve the underlying JQTI+ object */
         final AssessmentPackage assessmentPackage = assessmentDataService.ensureSelectedAssessmentPackage(delivery);
@@ -470,15 +655,34 @@ public class CandidateDataService {
         if (testProcessingMap==null) {
             return null;
         }
+        return createTestSessionController(candidateSession, testSessionState, testProcessingMap, notificationRecorder);
+    }
+
+    private TestSessionController createTestSessionController(final CandidateSession candidateSession,
+            final TestSessionState testSessionState, final TestProcessingMap testProcessingMap,
+            final NotificationRecorder notificationRecorder) {
+        final User candidate = candidateSession.getCandidate();
+        final Delivery delivery = candidateSession.getDelivery();
+        ensureTestDelivery(delivery);
+        Assert.notNull(testSessionState, "testSessionState");
+        final AssessmentPackage assessmentPackage = assessmentDataService.ensureSelectedAssessmentPackage(delivery);
 
         /* Create config for TestSessionController */
         final TestDeliverySettings testDeliverySettings = (TestDeliverySettings) assessmentDataService.getEffectiveDeliverySettings(candidate, delivery);
         final TestSessionControllerSettings testSessionControllerSettings = new TestSessionControllerSettings();
         testSessionControllerSettings.setTemplateProcessingLimit(computeTemplateProcessingLimit(testDeliverySettings));
+        testSessionControllerSettings.setProfilingEnabled(isProfilingEnabled(candidateSession, testDeliverySettings));
+        testSessionControllerSettings.setEvaluationStepLimit(qtiWorksDeploymentSettings.getProcessingStepLimit());
+        testSessionControllerSettings.setEvaluationTimeLimit(qtiWorksDeploymentSettings.getProcessingTimeLimit());
+        testSessionControllerSettings.setLazyItemSessionInitialization(qtiWorksDeploymentSettings.isLazyItemSessionInitialization());
+        testSessionControllerSettings.setTemplateVariantPoolMap(templateVariantPoolService.getTemplateVariantPools(assessmentPackage, testProcessingMap));
 
         /* Create controller and wire up notification recorder (if passed) */
-        final TestSessionController result = new TestSessionController(jqtiExtensionManager,
-                testSessionControllerSettings, testProcessingMap, testSessionState);
+        final TestSessionController result = getTestSessionControllerFactory(assessmentPackage, testProcessingMap, testSessionControllerSettings)
+                .createTestSessionController(testSessionState);
+        if (qtiWorksDeploymentSettings.getItemProcessingThreads()>0) {
+            result.setItemProcessingExecutor(itemProcessingTaskExecutor);
+        }
         if (notificationRecorder!=null) {
             result.addNotificationListener(notificationRecorder);
         }
@@ -486,6 +690,107 @@ public class CandidateDataService {
         return result;
     }
 
+    /**
+     * Returns a (possibly cached) {@link TestSessionControllerFactory} for the given
+     * {@link AssessmentPackage}, {@link TestProcessingMap} and {@link TestSessionControllerSettings}, so that the
+     * invariant wiring of each {@link TestSessionController} is only worked out once.
+     */
+    private TestSessionControllerFactory getTestSessionControllerFactory(final AssessmentPackage assessmentPackage,
+            final TestProcessingMap testProcessingMap, final TestSessionControllerSettings testSessionControllerSettings) {
+        final TestSessionControllerFactoryKey key = new TestSessionControllerFactoryKey(assessmentPackage.getId(),
+                testProcessingMap, testSessionControllerSettings);
+        synchronized (testSessionControllerFactoryCache) {
+            TestSessionControllerFactory result = testSessionControllerFactoryCache.get(key);
+            if (result==null) {
+                result = new TestSessionControllerFactory(jqtiExtensionManager, testSessionControllerSettings, testProcessingMap);
+                testSessionControllerFactoryCache.put(key, result);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Key for {@link CandidateDataService#testSessionControllerFactoryCache}. (The {@link TestProcessingMap}
+     * and each {@link TemplateVariantPool} are compared by identity, so that looking up a factory stays
+     * cheap and factories for purged packages simply age out of the cache.)
+     */
+    private static final class TestSessionControllerFactoryKey {
+
+        private final Long assessmentPackageId;
+        private final TestProcessingMap testProcessingMap;
+        private final int templateProcessingLimit;
+        private final boolean profilingEnabled;
+        private final int evaluationStepLimit;
+        private final long evaluationTimeLimit;
+        private final boolean lazyItemSessionInitialization;
+        private final Map<URI, TemplateVariantPool> templateVariantPoolMap;
+        private final int templateVariantPoolsHashCode;
+
+        public TestSessionControllerFactoryKey(final Long assessmentPackageId, final TestProcessingMap testProcessingMap,
+                final TestSessionControllerSettings testSessionControllerSettings) {
+            this.assessmentPackageId = assessmentPackageId;
+            this.testProcessingMap = testProcessingMap;
+            this.templateProcessingLimit = testSessionControllerSettings.getTemplateProcessingLimit();
+            this.profilingEnabled = testSessionControllerSettings.isProfilingEnabled();
+            this.evaluationStepLimit = testSessionControllerSettings.getEvaluationStepLimit();
+            this.evaluationTimeLimit = testSessionControllerSettings.getEvaluationTimeLimit();
+            this.lazyItemSessionInitialization = testSessionControllerSettings.isLazyItemSessionInitialization();
+            this.templateVariantPoolMap = new HashMap<URI, TemplateVariantPool>(testSessionControllerSettings.getTemplateVariantPoolMap());
+            int poolsHashCode = 0;
+            for (final Entry<URI, TemplateVariantPool> entry : templateVariantPoolMap.entrySet()) {
+                poolsHashCode += entry.getKey().hashCode() ^ System.identityHashCode(entry.getValue());
+            }
+            this.templateVariantPoolsHashCode = poolsHashCode;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof TestSessionControllerFactoryKey)) {
+                return false;
+            }
+            final TestSessionControllerFactoryKey other = (TestSessionControllerFactoryKey) obj;
+            return assessmentPackageId.equals(other.assessmentPackageId)
+                    && testProcessingMap==other.testProcessingMap
+                    && templateProcessingLimit==other.templateProcessingLimit
+                    && profilingEnabled==other.profilingEnabled
+                    && evaluationStepLimit==other.evaluationStepLimit
+                    && evaluationTimeLimit==other.evaluationTimeLimit
+                    && lazyItemSessionInitialization==other.lazyItemSessionInitialization
+                    && templateVariantPoolsHashCode==other.templateVariantPoolsHashCode
+                    && samePools(templateVariantPoolMap, other.templateVariantPoolMap);
+        }
+
+        /**
+         * Compares the pools in the given Maps by identity, as each pool is a shared instance
+         * and comparing their variants would be expensive.
+         */
+        private static boolean samePools(final Map<URI, TemplateVariantPool> pools, final Map<URI, TemplateVariantPool> otherPools) {
+            if (pools.size()!=otherPools.size()) {
+                return false;
+            }
+            for (final Entry<URI, TemplateVariantPool> entry : pools.entrySet()) {
+                if (otherPools.get(entry.getKey())!=entry.getValue()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(new Object[] {
+                    assessmentPackageId,
+                    Integer.valueOf(System.identityHashCode(testProcessingMap)),
+                    Integer.valueOf(templateProcessingLimit),
+                    Boolean.valueOf(profilingEnabled),
+                    Integer.valueOf(evaluationStepLimit),
+                    Long.valueOf(evaluationTimeLimit),
+                    Boolean.valueOf(lazyItemSessionInitialization),
+                    Integer.valueOf(templateVariantPoolsHashCode)
+            });
+        }
+    }
+
     public CandidateEvent recordCandidateExitTestEvent(final CandidateSession candidateSession,
             final TestSessionState testSessionState,
             final NotificationRecorder notificationRecorder) {
@@ -540,14 +845,24 @@ public class CandidateDataService {
     }
 
     public AssessmentResult computeTestAssessmentResult(final CandidateSession candidateSession, final TestSessionController testSessionController) {
+        return computeTestAssessmentResult(candidateSession, testSessionController, requestTimestampContext.getCurrentRequestTimestamp());
+    }
+
+    /**
+     * Computes the {@link AssessmentResult} for the given test session using an explicit timestamp.
+     * This does not access the database, so may be called from a worker Thread.
+     */
+    public AssessmentResult computeTestAssessmentResult(final CandidateSession candidateSession, final TestSessionController testSessionController,
+            final Date timestamp) {
         final URI sessionIdentifierSourceId = URI.create(qtiWorksDeploymentSettings.getBaseUrl());
         final String sessionIdentifier = "testsession/" + candidateSession.getId();
-        return testSessionController.computeAssessmentResult(requestTimestampContext.getCurrentRequestTimestamp(), sessionIdentifier, sessionIdentifierSourceId);
+        return testSessionController.computeAssessmentResult(timestamp, sessionIdentifier, sessionIdentifierSourceId);
     }
 
     public AssessmentResult computeAndRecordTestAssessmentResult(final CandidateSession candidateSession, final TestSessionController testSessionController) {
         final AssessmentResult assessmentResult = computeTestAssessmentResult(candidateSession, testSessionController);
         recordTestAssessmentResult(candidateSession, assessmentResult);
+        storeEvaluationProfileFile(candidateSession, testSessionController.getEvaluationProfile());
         return assessmentResult;
     }
 
@@ -663,6 +978,61 @@ public class CandidateDataService {
             throw QtiWorksRuntimeException.unexpectedException(e);
         }
     }
+
+    //----------------------------------------------------
+    // Evaluation profile management
+
+    /**
+     * Stores the given {@link EvaluationProfile} (recorded while processing the most recent
+     * candidate action) as a CSV file, replacing any profile stored previously.
+     * Does nothing if the profile is null, which happens when profiling has not been enabled.
+     */
+    private void storeEvaluationProfileFile(final CandidateSession candidateSession, final EvaluationProfile evaluationProfile) {
+        if (evaluationProfile==null) {
+            return;
+        }
+        final File profileFile = getEvaluationProfileFile(candidateSession);
+        FileOutputStream profileStream = null;
+        try {
+            profileStream = new FileOutputStream(profileFile);
+            final CsvWriter csvWriter = new CsvWriter(profileStream, ',', Charsets.UTF_8);
+            csvWriter.writeComment("Type,System ID,XPath,QTI Class,Invocations,Total Time (ns),Self Time (ns),NULL Results,Single Values Produced");
+            for (final EvaluationProfileEntry entry : evaluationProfile.getEntries()) {
+                csvWriter.write(entry.getEntryType().toString());
+                csvWriter.write(StringUtilities.safeToStringEmptyIfNull(entry.getSystemId()));
+                csvWriter.write(entry.getXPath());
+                csvWriter.write(entry.getQtiClassName());
+                csvWriter.write(Long.toString(entry.getInvocationCount()));
+                csvWriter.write(Long.toString(entry.getTotalNanos()));
+                csvWriter.write(Long.toString(entry.getSelfNanos()));
+                csvWriter.write(Long.toString(entry.getNullResultCount()));
+                csvWriter.write(Long.toString(entry.getSingleValueCount()));
+                csvWriter.endRecord();
+            }
+            csvWriter.flush();
+        }
+        catch (final IOException e) {
+            throw QtiWorksRuntimeException.unexpectedException(e);
+        }
+        finally {
+            ServiceUtilities.ensureClose(profileStream);
+        }
+    }
+
+    /**
+     * Returns the CSV file containing the most recently recorded {@link EvaluationProfile}
+     * for the given {@link CandidateSession}, or null if no profile has been recorded.
+     */
+    public File getEvaluationProfileFileIfExists(final CandidateSession candidateSession) {
+        final File profileFile = getEvaluationProfileFile(candidateSession);
+        return profileFile.exists() ? profileFile : null;
+    }
+
+    private File getEvaluationProfileFile(final CandidateSession candidateSession) {
+        final File sessionFolder = filespaceManager.obtainCandidateSessionStateStore(candidateSession);
+        return new File(sessionFolder, "evaluationProfile.csv");
+    }
+
     //----------------------------------------------------
     // General helpers
 
@@ -102,6 +102,21 @@ public class CandidateSessionFinisher {
         maybeScheduleLtiOutcomes(candidateSession, assessmentResult);
     }
 
+    /**
+     * Re-runs the LTI outcome reporting logic for a {@link CandidateSession} that has already
+     * been finished, e.g. after it has been rescored. Any previously queued outcome will be
+     * superseded by the new one.
+     */
+    public void rescheduleLtiOutcomes(final CandidateSession candidateSession, final AssessmentResult assessmentResult) {
+        if (candidateSession.getFinishTime()==null) {
+            throw new QtiWorksLogicException("CandidateSession #" + candidateSession.getId() + " has not been finished");
+        }
+        candidateSession.setLisOutcomeReportingStatus(null);
+        candidateSession.setLisScore(null);
+        candidateSessionDao.update(candidateSession);
+        maybeScheduleLtiOutcomes(candidateSession, assessmentResult);
+    }
+
     private void maybeScheduleLtiOutcomes(final CandidateSession candidateSession, final AssessmentResult assessmentResult) {
         /* First check a number of pre-conditions for actually recording LTI outcomes */
         final Delivery delivery = candidateSession.getDelivery();
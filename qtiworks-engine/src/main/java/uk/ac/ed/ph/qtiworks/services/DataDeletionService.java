@@ -98,6 +98,18 @@ public class DataDeletionService {
     @Resource
     private AssessmentObjectManagementService assessmentObjectManagementService;
 
+    @Resource
+    private TemplateVariantPoolService templateVariantPoolService;
+
+    @Resource
+    private AssessmentPackageFileService assessmentPackageFileService;
+
+    @Resource
+    private PackageBlobService packageBlobService;
+
+    @Resource
+    private CandidateDataService candidateDataService;
+
     @Resource
     private CandidateSessionDao candidateSessionDao;
 
@@ -182,6 +194,18 @@ public class DataDeletionService {
     public void deleteAssessmentPackage(final AssessmentPackage assessmentPackage) {
         Assert.notNull(assessmentPackage, "assessmentPackage");
 
+        /* Embed any TestPlans that stored session states only refer to, as these can't be
+         * regenerated once this package has gone */
+        candidateDataService.embedTestPlanReferences(assessmentPackage);
+
+        /* Close any open ZIP file for this package */
+        assessmentPackageFileService.purge(assessmentPackage);
+
+        /* Release any shared blobs used by this package (before its manifest gets deleted) */
+        if (assessmentPackage.isDeduplicated()) {
+            packageBlobService.releasePackage(assessmentPackage);
+        }
+
         /* Delete package sandbox in filesystem (if appropriate) */
         if (assessmentPackage.getSandboxPath()!=null) {
             if (!filespaceManager.deleteAssessmentPackageSandbox(assessmentPackage)) {
@@ -189,8 +213,12 @@ public class DataDeletionService {
             }
         }
 
+        /* Delete any pre-generated template variants for this package */
+        filespaceManager.deleteTemplateVariantPoolStore(assessmentPackage);
+
         /* Purge any cached data from this package */
         assessmentObjectManagementService.purge(assessmentPackage);
+        templateVariantPoolService.purge(assessmentPackage);
 
         /* Delete entities, taking advantage of cascading */
         assessmentPackageDao.remove(assessmentPackage); /* (This will cascade) */
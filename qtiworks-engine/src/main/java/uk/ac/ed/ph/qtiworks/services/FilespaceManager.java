@@ -133,6 +133,36 @@ public final class FilespaceManager {
 
     //-------------------------------------------------
 
+    /**
+     * Returns the File used to store the shared package blob having the given (hex-encoded) hash.
+     * Blobs are spread across subdirectories named after the first 2 characters of their hashes.
+     * This does not check whether the blob exists or create any directories.
+     */
+    public File getPackageBlobFile(final String hash) {
+        Assert.notNull(hash, "hash");
+        return fileUriToFile(getPackageBlobBaseUri()
+                + "/" + hash.substring(0, 2)
+                + "/" + hash);
+    }
+
+    /**
+     * Returns the directory containing all shared package blobs, which may not exist yet.
+     */
+    public File getPackageBlobBaseDirectory() {
+        return fileUriToFile(getPackageBlobBaseUri());
+    }
+
+    public boolean deleteAllPackageBlobs() {
+        return recursivelyDeleteDirectory(getPackageBlobBaseUri());
+    }
+
+    private String getPackageBlobBaseUri() {
+        return filesystemBaseDirectory.toURI().toString()
+                + "/blobs";
+    }
+
+    //-------------------------------------------------
+
     public File createCandidateUploadFile(final CandidateSession candidateSession) {
         Assert.notNull(candidateSession, "candidateSession");
         final String uploadBaseUri = getCandidateSessionUploadBaseUri(candidateSession);
@@ -223,6 +253,32 @@ public final class FilespaceManager {
 
     //-------------------------------------------------
 
+    public File obtainTemplateVariantPoolStore(final AssessmentPackage assessmentPackage) {
+        Assert.notNull(assessmentPackage, "assessmentPackage");
+        return ensureCreateDirectory(getTemplateVariantPoolStoreUri(assessmentPackage));
+    }
+
+    public boolean deleteTemplateVariantPoolStore(final AssessmentPackage assessmentPackage) {
+        Assert.notNull(assessmentPackage, "assessmentPackage");
+        return recursivelyDeleteDirectory(getTemplateVariantPoolStoreUri(assessmentPackage));
+    }
+
+    public boolean deleteAllTemplateVariantPools() {
+        return recursivelyDeleteDirectory(getTemplateVariantPoolStoreBaseUri());
+    }
+
+    private final String getTemplateVariantPoolStoreBaseUri() {
+        return filesystemBaseDirectory.toURI().toString()
+                + "/variants";
+    }
+
+    private final String getTemplateVariantPoolStoreUri(final AssessmentPackage assessmentPackage) {
+        return getTemplateVariantPoolStoreBaseUri()
+                + "/package" + assessmentPackage.getId();
+    }
+
+    //-------------------------------------------------
+
     /**
      * Deletes all assignment and candidate data from the system.
      * <p>
@@ -231,8 +287,10 @@ public final class FilespaceManager {
      */
     public void deleteAllUserData() {
         deleteAllAssessmentPackages();
+        deleteAllPackageBlobs();
         deleteAllCandidateSessionData();
         deleteAllCandidateUploads();
+        deleteAllTemplateVariantPools();
     }
 
     //-------------------------------------------------
@@ -0,0 +1,122 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.services;
+
+import uk.ac.ed.ph.qtiworks.domain.entities.AssessmentPackage;
+
+import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
+import uk.ac.ed.ph.jqtiplus.xmlutils.CustomUriScheme;
+import uk.ac.ed.ph.jqtiplus.xmlutils.locators.ResourceLocator;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link ResourceLocator} for reading the files within a deduplicated {@link AssessmentPackage},
+ * using the package's manifest to map each (decoded) path to the shared blob holding its content.
+ * <p>
+ * As with the usual sandbox locator, paths that try to escape the package are rejected.
+ *
+ * @see PackageBlobService
+ *
+ * @author David McKain
+ */
+public final class PackageBlobResourceLocator implements ResourceLocator {
+
+    private static final Logger logger = LoggerFactory.getLogger(PackageBlobResourceLocator.class);
+
+    private final CustomUriScheme uriScheme;
+    private final Map<String, File> blobFileMap;
+
+    public PackageBlobResourceLocator(final CustomUriScheme uriScheme, final Map<String, File> blobFileMap) {
+        Assert.notNull(uriScheme, "uriScheme");
+        Assert.notNull(blobFileMap, "blobFileMap");
+        this.uriScheme = uriScheme;
+        this.blobFileMap = blobFileMap;
+    }
+
+    @Override
+    public InputStream findResource(final URI systemIdUri) {
+        final File blobFile = findBlobFile(systemIdUri);
+        if (blobFile!=null) {
+            try {
+                return new FileInputStream(blobFile);
+            }
+            catch (final FileNotFoundException e) {
+                logger.warn("Blob file {} for URI {} is missing", blobFile, systemIdUri);
+                return null;
+            }
+        }
+        return null;
+    }
+
+    public File findBlobFile(final URI systemIdUri) {
+        final URI normalizedUri = systemIdUri.normalize();
+        if (uriScheme.isInScheme(normalizedUri)) {
+            final String normalizedPath = uriScheme.uriToDecodedPath(normalizedUri);
+            if (normalizedPath.startsWith("..")) {
+                /* This is trying to go outside the package, so we'll return null here */
+                logger.trace("URI {} normalized to path {} which is 'outside' the package so returning null for safety", systemIdUri, normalizedPath);
+                return null;
+            }
+            final File result = blobFileMap.get(normalizedPath);
+            if (result==null) {
+                logger.trace("URI {} successfully mapped to non-existent path {}", systemIdUri, normalizedPath);
+                return null;
+            }
+            logger.trace("URI {} successfully mapped to blob {}", systemIdUri, result);
+            return result;
+        }
+        return null;
+    }
+
+    public CustomUriScheme getUriScheme() {
+        return uriScheme;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this))
+                + "(uriScheme=" + uriScheme
+                + ",fileCount=" + blobFileMap.size()
+                + ")";
+    }
+}
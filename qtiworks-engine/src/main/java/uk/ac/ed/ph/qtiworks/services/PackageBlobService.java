@@ -0,0 +1,331 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.services;
+
+import uk.ac.ed.ph.qtiworks.QtiWorksLogicException;
+import uk.ac.ed.ph.qtiworks.QtiWorksRuntimeException;
+import uk.ac.ed.ph.qtiworks.config.beans.QtiWorksDeploymentSettings;
+import uk.ac.ed.ph.qtiworks.domain.entities.AssessmentPackage;
+import uk.ac.ed.ph.qtiworks.domain.entities.PackageBlob;
+import uk.ac.ed.ph.qtiworks.services.dao.PackageBlobDao;
+
+import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
+import uk.ac.ed.ph.jqtiplus.utils.contentpackaging.QtiContentPackageExtractor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import javax.annotation.Resource;
+
+import org.apache.commons.io.FileExistsException;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+/**
+ * Manages the shared content-addressed store used for deduplicated {@link AssessmentPackage}s.
+ * <p>
+ * Each distinct file is stored once as a "blob", named after the SHA-256 hash of its content.
+ * The sandbox of a deduplicated package then only contains a manifest mapping each of its
+ * (decoded) paths to the hash of the corresponding blob. Each blob has a corresponding
+ * {@link PackageBlob} entity recording how many package files refer to it, which is removed
+ * once this count drops to zero.
+ * <p>
+ * Blob files are never deleted as part of the transaction changing their {@link PackageBlob}s,
+ * as that transaction might not commit. Blobs that end up with no {@link PackageBlob} (whether
+ * released or left behind by a failed import) are instead cleared out by
+ * {@link #purgeOrphanedBlobs(Date)}.
+ * <p>
+ * This is NO authorisation at this level.
+ *
+ * @author David McKain
+ */
+@Service
+@Transactional(readOnly=false, propagation=Propagation.REQUIRED)
+public class PackageBlobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PackageBlobService.class);
+
+    /** Maximum number of attempts made to create a {@link PackageBlob} for a new blob */
+    private static final int MAX_BLOB_CREATION_ATTEMPTS = 3;
+
+    @Resource
+    private QtiWorksDeploymentSettings qtiWorksDeploymentSettings;
+
+    @Resource
+    private FilespaceManager filespaceManager;
+
+    @Resource
+    private PackageBlobDao packageBlobDao;
+
+    public boolean isEnabled() {
+        return qtiWorksDeploymentSettings.isDeduplicatedPackageStorage();
+    }
+
+    //-------------------------------------------------
+
+    /**
+     * Moves all of the files within the sandbox of the given (newly imported and unpacked)
+     * {@link AssessmentPackage} into the blob store, leaving only a manifest behind.
+     *
+     * @throws QtiWorksRuntimeException if something unexpected happens, such as experiencing
+     *   an {@link IOException}
+     */
+    public void deduplicatePackage(final AssessmentPackage assessmentPackage) {
+        Assert.notNull(assessmentPackage, "assessmentPackage");
+        final String sandboxPath = assessmentPackage.getSandboxPath();
+        if (sandboxPath==null || assessmentPackage.isZipped() || assessmentPackage.isDeduplicated()) {
+            throw new QtiWorksLogicException("AssessmentPackage " + assessmentPackage + " cannot be deduplicated");
+        }
+        final File sandboxDirectory = new File(sandboxPath);
+        final Properties manifest = new Properties();
+        storeDirectory(sandboxDirectory, "", manifest);
+
+        final File manifestFile = new File(sandboxDirectory, AssessmentPackage.PACKAGE_BLOB_MANIFEST_FILE_NAME);
+        FileOutputStream manifestOutputStream = null;
+        try {
+            manifestOutputStream = new FileOutputStream(manifestFile);
+            manifest.store(manifestOutputStream, null);
+        }
+        catch (final IOException e) {
+            throw QtiWorksRuntimeException.unexpectedException(e);
+        }
+        finally {
+            ServiceUtilities.ensureClose(manifestOutputStream);
+        }
+        assessmentPackage.setDeduplicated(true);
+        logger.debug("Moved {} file(s) from AssessmentPackage sandbox {} into blob store", manifest.size(), sandboxDirectory);
+    }
+
+    private void storeDirectory(final File directory, final String pathPrefix, final Properties manifest) {
+        final File[] children = directory.listFiles();
+        if (children==null) {
+            throw new QtiWorksRuntimeException("Could not list contents of directory " + directory);
+        }
+        for (final File child : children) {
+            final String path = pathPrefix + child.getName();
+            if (child.isDirectory()) {
+                storeDirectory(child, path + "/", manifest);
+                if (!child.delete()) {
+                    logger.warn("Could not delete emptied directory {}", child);
+                }
+            }
+            else {
+                manifest.setProperty(path, storeBlob(child));
+            }
+        }
+    }
+
+    private String storeBlob(final File file) {
+        final String hash;
+        try {
+            hash = Files.hash(file, Hashing.sha256()).toString();
+        }
+        catch (final IOException e) {
+            throw QtiWorksRuntimeException.unexpectedException(e);
+        }
+
+        /* Record new reference to this blob, locking its record. A locking read can't stop
+         * concurrent imports of the same new file from both inserting a record, so we create
+         * any missing record in its own transaction first and then lock it. */
+        PackageBlob packageBlob = packageBlobDao.findByHashForUpdate(hash);
+        for (int attempt = 1; packageBlob==null; attempt++) {
+            if (attempt > MAX_BLOB_CREATION_ATTEMPTS) {
+                throw new QtiWorksRuntimeException("Could not create PackageBlob for hash " + hash);
+            }
+            try {
+                packageBlobDao.createUnreferenced(hash);
+            }
+            catch (final DataIntegrityViolationException e) {
+                /* Another import has just created it, which is fine */
+                logger.debug("PackageBlob for hash {} was created concurrently", hash);
+            }
+            packageBlob = packageBlobDao.findByHashForUpdate(hash);
+        }
+        packageBlob.setRefCount(packageBlob.getRefCount() + 1);
+        packageBlobDao.update(packageBlob);
+
+        /* Move file into the store, unless we already have it */
+        final File blobFile = filespaceManager.getPackageBlobFile(hash);
+        if (blobFile.exists()) {
+            /* (Touch existing blob so that it can't be purged as an orphan before we commit) */
+            blobFile.setLastModified(System.currentTimeMillis());
+            deleteFile(file);
+        }
+        else {
+            ServiceUtilities.ensureDirectoryCreated(blobFile.getParentFile());
+            try {
+                FileUtils.moveFile(file, blobFile);
+            }
+            catch (final FileExistsException e) {
+                /* Another import has just stored the same content, which is fine */
+                deleteFile(file);
+            }
+            catch (final IOException e) {
+                throw QtiWorksRuntimeException.unexpectedException(e);
+            }
+        }
+        return hash;
+    }
+
+    //-------------------------------------------------
+
+    /**
+     * Creates a {@link PackageBlobResourceLocator} for reading the files within the given
+     * deduplicated {@link AssessmentPackage}.
+     */
+    @Transactional(propagation=Propagation.SUPPORTS)
+    public PackageBlobResourceLocator createResourceLocator(final AssessmentPackage assessmentPackage) {
+        Assert.notNull(assessmentPackage, "assessmentPackage");
+        final Properties manifest = readManifest(assessmentPackage);
+        final Map<String, File> blobFileMap = new HashMap<String, File>();
+        for (final String path : manifest.stringPropertyNames()) {
+            blobFileMap.put(path, filespaceManager.getPackageBlobFile(manifest.getProperty(path)));
+        }
+        return new PackageBlobResourceLocator(QtiContentPackageExtractor.PACKAGE_URI_SCHEME, blobFileMap);
+    }
+
+    /**
+     * Releases the references held by the given deduplicated {@link AssessmentPackage}, removing
+     * the {@link PackageBlob}s of any blobs that are no longer used. (The blob files themselves
+     * are left for {@link #purgeOrphanedBlobs(Date)}.) This should be called before the package's
+     * sandbox is deleted.
+     */
+    public void releasePackage(final AssessmentPackage assessmentPackage) {
+        Assert.notNull(assessmentPackage, "assessmentPackage");
+        final Properties manifest = readManifest(assessmentPackage);
+        for (final String path : manifest.stringPropertyNames()) {
+            final String hash = manifest.getProperty(path);
+            final PackageBlob packageBlob = packageBlobDao.findByHashForUpdate(hash);
+            if (packageBlob==null) {
+                logger.warn("No PackageBlob found for hash {} used by {} in AssessmentPackage {}",
+                        new Object[] { hash, path, assessmentPackage.getId() });
+                continue;
+            }
+            final int refCount = packageBlob.getRefCount() - 1;
+            if (refCount > 0) {
+                packageBlob.setRefCount(refCount);
+                packageBlobDao.update(packageBlob);
+            }
+            else {
+                packageBlobDao.remove(packageBlob);
+            }
+        }
+    }
+
+    /**
+     * Deletes any blob files that have no corresponding {@link PackageBlob} and were last
+     * modified before the given threshold. (These are either no longer used, or left behind by
+     * imports that failed after moving files into the store.) Any {@link PackageBlob}s left without
+     * references by failed imports are removed first.
+     *
+     * @return number of blobs deleted
+     */
+    public int purgeOrphanedBlobs(final Date modificationTimeThreshold) {
+        Assert.notNull(modificationTimeThreshold, "modificationTimeThreshold");
+        for (final String hash : packageBlobDao.getUnreferencedHashes()) {
+            final PackageBlob packageBlob = packageBlobDao.findByHashForUpdate(hash);
+            if (packageBlob!=null && packageBlob.getRefCount()==0) {
+                packageBlobDao.remove(packageBlob);
+            }
+        }
+        final File[] blobDirectories = filespaceManager.getPackageBlobBaseDirectory().listFiles();
+        if (blobDirectories==null) {
+            /* (Blob store hasn't been created) */
+            return 0;
+        }
+        final Set<String> knownHashes = new HashSet<String>(packageBlobDao.getAllHashes());
+        int deletedCount = 0;
+        for (final File blobDirectory : blobDirectories) {
+            final File[] blobFiles = blobDirectory.listFiles();
+            if (blobFiles==null) {
+                continue;
+            }
+            for (final File blobFile : blobFiles) {
+                if (!knownHashes.contains(blobFile.getName())
+                        && blobFile.lastModified() < modificationTimeThreshold.getTime()) {
+                    deleteFile(blobFile);
+                    deletedCount++;
+                }
+            }
+        }
+        if (deletedCount > 0) {
+            logger.info("Purged {} orphaned package blob(s)", deletedCount);
+        }
+        return deletedCount;
+    }
+
+    //-------------------------------------------------
+
+    private Properties readManifest(final AssessmentPackage assessmentPackage) {
+        if (!assessmentPackage.isDeduplicated()) {
+            throw new QtiWorksLogicException("AssessmentPackage " + assessmentPackage + " is not deduplicated");
+        }
+        final File manifestFile = new File(assessmentPackage.getSandboxPath(), AssessmentPackage.PACKAGE_BLOB_MANIFEST_FILE_NAME);
+        final Properties manifest = new Properties();
+        FileInputStream manifestInputStream = null;
+        try {
+            manifestInputStream = new FileInputStream(manifestFile);
+            manifest.load(manifestInputStream);
+        }
+        catch (final IOException e) {
+            throw new QtiWorksRuntimeException("Could not read blob manifest for AssessmentPackage " + assessmentPackage, e);
+        }
+        finally {
+            ServiceUtilities.ensureClose(manifestInputStream);
+        }
+        return manifest;
+    }
+
+    private void deleteFile(final File file) {
+        if (!file.delete()) {
+            logger.warn("Could not delete file {}", file);
+        }
+    }
+}
@@ -75,12 +75,18 @@ public class ScheduledService {
     /** How long (in milliseconds) to keep transient data */
     private static final long TRANSIENT_DATA_LIFETIME = 24 * ONE_HOUR;
 
+    /** How long (in milliseconds) to keep package blobs that aren't recorded as being used */
+    private static final long ORPHANED_BLOB_LIFETIME = 24 * ONE_HOUR;
+
     @Resource
     private DataDeletionService dataDeletionService;
 
     @Resource
     private LtiOutcomeService ltiOutcomeService;
 
+    @Resource
+    private PackageBlobService packageBlobService;
+
     //-------------------------------------------------
 
     /** Routine maintenance jobs */
@@ -89,6 +95,7 @@ public class ScheduledService {
         purgeTransientData();
         purgeOldNonces();
         dataDeletionService.purgeOrphanedLtiCandidateUsers();
+        purgeOrphanedPackageBlobs();
     }
 
     /**
@@ -112,6 +119,11 @@ public class ScheduledService {
         dataDeletionService.purgeOldNonces(nonceThreshold);
     }
 
+    private void purgeOrphanedPackageBlobs() {
+        final Date modificationTimeThreshold = new Date(System.currentTimeMillis() - ORPHANED_BLOB_LIFETIME);
+        packageBlobService.purgeOrphanedBlobs(modificationTimeThreshold);
+    }
+
     //-------------------------------------------------
 
     /**
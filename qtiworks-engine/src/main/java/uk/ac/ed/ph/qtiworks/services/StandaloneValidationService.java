@@ -74,6 +74,7 @@ public class StandaloneValidationService {
             return assessmentPackageFileService.loadAndValidateAssessment(temporaryPackage);
         }
         finally {
+            assessmentPackageFileService.purge(temporaryPackage);
             filespaceManager.deleteAssessmentPackageSandbox(temporaryPackage);
         }
     }
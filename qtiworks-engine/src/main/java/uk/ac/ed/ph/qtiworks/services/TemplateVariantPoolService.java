@@ -0,0 +1,290 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.services;
+
+import uk.ac.ed.ph.qtiworks.QtiWorksRuntimeException;
+import uk.ac.ed.ph.qtiworks.config.beans.QtiWorksDeploymentSettings;
+import uk.ac.ed.ph.qtiworks.domain.entities.AssessmentPackage;
+import uk.ac.ed.ph.qtiworks.utils.LruHashMap;
+import uk.ac.ed.ph.qtiworks.utils.XmlUtilities;
+
+import uk.ac.ed.ph.jqtiplus.JqtiExtensionManager;
+import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
+import uk.ac.ed.ph.jqtiplus.running.ItemSessionControllerSettings;
+import uk.ac.ed.ph.jqtiplus.running.TemplateVariantGenerator;
+import uk.ac.ed.ph.jqtiplus.state.ItemProcessingMap;
+import uk.ac.ed.ph.jqtiplus.state.TemplateVariantPool;
+import uk.ac.ed.ph.jqtiplus.state.TestProcessingMap;
+import uk.ac.ed.ph.jqtiplus.state.marshalling.TemplateVariantPoolXmlMarshaller;
+import uk.ac.ed.ph.jqtiplus.xmlutils.xslt.XsltSerializationOptions;
+import uk.ac.ed.ph.jqtiplus.xmlutils.xslt.XsltStylesheetManager;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import javax.annotation.Resource;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Service;
+import org.w3c.dom.Document;
+
+/**
+ * Middle layer service responsible for generating, storing and caching {@link TemplateVariantPool}s
+ * for items that are expensive to run template processing on.
+ * <p>
+ * Pools are generated in the background the first time an item is used, and stored in the filesystem
+ * so that they survive restarts. Callers get null until a pool is available, in which case template
+ * processing should be run as normal.
+ * <p>
+ * This is disabled unless {@link QtiWorksDeploymentSettings#getTemplateVariantPoolSize()} is positive.
+ * <p>
+ * This is NO authorisation at this level.
+ *
+ * @see TemplateVariantGenerator
+ *
+ * @author David McKain
+ */
+@Service
+public class TemplateVariantPoolService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TemplateVariantPoolService.class);
+
+    @Resource
+    private QtiWorksDeploymentSettings qtiWorksDeploymentSettings;
+
+    @Resource
+    private JqtiExtensionManager jqtiExtensionManager;
+
+    @Resource
+    private FilespaceManager filespaceManager;
+
+    @Resource
+    private TaskExecutor backgroundTaskExecutor;
+
+    /** Cached pools, keyed on package ID and item System ID. (A null value means no pool could be generated.) */
+    private final LruHashMap<String, TemplateVariantPool> cache;
+
+    /** Keys of pools currently being generated */
+    private final Set<String> pendingKeys;
+
+    public TemplateVariantPoolService() {
+        this.cache = new LruHashMap<String, TemplateVariantPool>();
+        this.cache.setMaxSize(100);
+        this.pendingKeys = new HashSet<String>();
+    }
+
+    public boolean isEnabled() {
+        return qtiWorksDeploymentSettings.getTemplateVariantPoolSize() > 0;
+    }
+
+    /**
+     * Returns the {@link TemplateVariantPool} for the given item, scheduling its generation if required.
+     * Returns null if pools are disabled, if the item doesn't need one, or if the pool is not yet available.
+     */
+    public TemplateVariantPool getTemplateVariantPool(final AssessmentPackage assessmentPackage,
+            final ItemProcessingMap itemProcessingMap) {
+        Assert.notNull(assessmentPackage, "assessmentPackage");
+        Assert.notNull(itemProcessingMap, "itemProcessingMap");
+        if (!isEnabled() || !TemplateVariantGenerator.isPoolable(itemProcessingMap)) {
+            return null;
+        }
+        final URI itemSystemId = itemProcessingMap.getResolvedAssessmentItem().getItemLookup().getSystemId();
+        final String key = assessmentPackage.getId() + " " + itemSystemId;
+        synchronized (cache) {
+            if (cache.containsKey(key)) {
+                return cache.get(key);
+            }
+            if (pendingKeys.contains(key)) {
+                return null;
+            }
+        }
+
+        /* Not cached, so see if it has been stored */
+        final File poolFile = getTemplateVariantPoolFile(assessmentPackage, itemSystemId);
+        if (poolFile.isFile()) {
+            final TemplateVariantPool result = loadTemplateVariantPool(poolFile);
+            if (result!=null) {
+                synchronized (cache) {
+                    cache.put(key, result);
+                }
+                return result;
+            }
+        }
+
+        /* Schedule generation */
+        scheduleGeneration(key, itemProcessingMap, poolFile);
+        return null;
+    }
+
+    /**
+     * Returns the available {@link TemplateVariantPool}s for the items in the given test, keyed on item
+     * System ID, scheduling generation of any missing pools. The result is empty if pools are disabled.
+     */
+    public Map<URI, TemplateVariantPool> getTemplateVariantPools(final AssessmentPackage assessmentPackage,
+            final TestProcessingMap testProcessingMap) {
+        Assert.notNull(assessmentPackage, "assessmentPackage");
+        Assert.notNull(testProcessingMap, "testProcessingMap");
+        if (!isEnabled()) {
+            return Collections.emptyMap();
+        }
+        final Map<URI, TemplateVariantPool> result = new HashMap<URI, TemplateVariantPool>();
+        for (final Entry<URI, ItemProcessingMap> entry : testProcessingMap.getItemProcessingMapMap().entrySet()) {
+            final TemplateVariantPool templateVariantPool = getTemplateVariantPool(assessmentPackage, entry.getValue());
+            if (templateVariantPool!=null) {
+                result.put(entry.getKey(), templateVariantPool);
+            }
+        }
+        return result;
+    }
+
+    public void purge(final AssessmentPackage assessmentPackage) {
+        Assert.notNull(assessmentPackage, "assessmentPackage");
+        final String keyPrefix = assessmentPackage.getId() + " ";
+        synchronized (cache) {
+            final Iterator<String> keyIterator = cache.keySet().iterator();
+            while (keyIterator.hasNext()) {
+                if (keyIterator.next().startsWith(keyPrefix)) {
+                    keyIterator.remove();
+                }
+            }
+        }
+    }
+
+    //--------------------------------------------------------------------------
+
+    private void scheduleGeneration(final String key, final ItemProcessingMap itemProcessingMap, final File poolFile) {
+        synchronized (cache) {
+            if (!pendingKeys.add(key)) {
+                return;
+            }
+        }
+        try {
+            backgroundTaskExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    generateTemplateVariantPool(key, itemProcessingMap, poolFile);
+                }
+            });
+        }
+        catch (final TaskRejectedException e) {
+            logger.info("Generation of template variant pool for {} rejected; will retry later", key);
+            synchronized (cache) {
+                pendingKeys.remove(key);
+            }
+        }
+    }
+
+    private void generateTemplateVariantPool(final String key, final ItemProcessingMap itemProcessingMap, final File poolFile) {
+        logger.debug("Generating template variant pool for {}", key);
+        TemplateVariantPool result = null;
+        try {
+            final ItemSessionControllerSettings itemSessionControllerSettings = new ItemSessionControllerSettings();
+            itemSessionControllerSettings.setEvaluationStepLimit(qtiWorksDeploymentSettings.getProcessingStepLimit());
+            itemSessionControllerSettings.setEvaluationTimeLimit(qtiWorksDeploymentSettings.getProcessingTimeLimit());
+            final TemplateVariantGenerator templateVariantGenerator = new TemplateVariantGenerator(jqtiExtensionManager, itemSessionControllerSettings);
+            result = templateVariantGenerator.generateTemplateVariantPool(itemProcessingMap,
+                    qtiWorksDeploymentSettings.getTemplateVariantPoolSize(), null);
+            if (result!=null) {
+                storeTemplateVariantPool(result, poolFile);
+            }
+            logger.info("Generated template variant pool for {} containing {} variants", key, result!=null ? result.size() : 0);
+        }
+        catch (final RuntimeException e) {
+            logger.warn("Failed to generate template variant pool for " + key, e);
+        }
+        finally {
+            synchronized (cache) {
+                cache.put(key, result);
+                pendingKeys.remove(key);
+            }
+        }
+    }
+
+    //--------------------------------------------------------------------------
+
+    private File getTemplateVariantPoolFile(final AssessmentPackage assessmentPackage, final URI itemSystemId) {
+        final File poolStore = filespaceManager.obtainTemplateVariantPoolStore(assessmentPackage);
+        return new File(poolStore, ServiceUtilities.computeSha1Digest(itemSystemId.toString()) + ".xml");
+    }
+
+    private void storeTemplateVariantPool(final TemplateVariantPool templateVariantPool, final File poolFile) {
+        final Document poolDocument = TemplateVariantPoolXmlMarshaller.marshal(templateVariantPool);
+        final XsltSerializationOptions xsltSerializationOptions = new XsltSerializationOptions();
+        xsltSerializationOptions.setIncludingXMLDeclaration(false);
+        final Transformer serializer = XsltStylesheetManager.createSerializer(xsltSerializationOptions);
+
+        /* Write to a temporary file first so that readers never see a partial pool */
+        final File tempFile = new File(poolFile.getPath() + ".tmp");
+        FileOutputStream resultStream = null;
+        try {
+            resultStream = new FileOutputStream(tempFile);
+            serializer.transform(new DOMSource(poolDocument), new StreamResult(resultStream));
+        }
+        catch (final Exception e) {
+            throw new QtiWorksRuntimeException("Unexpected Exception storing template variant pool", e);
+        }
+        finally {
+            ServiceUtilities.ensureClose(resultStream);
+        }
+        if (!tempFile.renameTo(poolFile)) {
+            tempFile.delete();
+            throw new QtiWorksRuntimeException("Could not rename " + tempFile + " to " + poolFile);
+        }
+    }
+
+    private TemplateVariantPool loadTemplateVariantPool(final File poolFile) {
+        try {
+            final Document document = XmlUtilities.createNsAwareDocumentBuilder().parse(poolFile);
+            return TemplateVariantPoolXmlMarshaller.unmarshal(document.getDocumentElement());
+        }
+        catch (final Exception e) {
+            logger.warn("Could not load stored template variant pool {}; it will be regenerated", poolFile);
+            return null;
+        }
+    }
+}
@@ -118,6 +118,12 @@ public enum CandidateExceptionReason {
      */
     ACCESS_BLACKLISTED_ASSESSMENT_FILE,
 
+    /**
+     * Caller attempted to access the evaluation profile for a {@link CandidateSession}
+     * for which no profile has been recorded
+     */
+    EVALUATION_PROFILE_NOT_RECORDED,
+
     //----------------------------------------------------
     // Item-specific errors
 
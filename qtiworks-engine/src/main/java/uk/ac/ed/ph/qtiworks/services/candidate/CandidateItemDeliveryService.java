@@ -124,14 +124,11 @@ public class CandidateItemDeliveryService extends CandidateServiceBase {
     }
 
     private CandidateSession enterCandidateSession(final CandidateSession candidateSession) {
-        final User candidate = candidateSession.getCandidate();
-        final Delivery delivery = candidateSession.getDelivery();
-
         /* Set up listener to record any notifications */
         final NotificationRecorder notificationRecorder = new NotificationRecorder(NotificationLevel.INFO);
 
         /* Create fresh JQTI+ state Object and try to create controller */
-        final ItemSessionController itemSessionController = candidateDataService.createNewItemSessionStateAndController(candidate, delivery, notificationRecorder);
+        final ItemSessionController itemSessionController = candidateDataService.createNewItemSessionStateAndController(candidateSession, notificationRecorder);
         if (itemSessionController==null) {
             return handleExplosion(null, candidateSession);
         }
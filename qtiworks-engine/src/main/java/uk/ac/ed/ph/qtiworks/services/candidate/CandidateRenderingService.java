@@ -309,6 +309,7 @@ public class CandidateRenderingService extends CandidateServiceBase {
     private void renderItemEventAuthorView(final CandidateSessionContext candidateSessionContext, final CandidateEvent candidateEvent, final ItemSessionState itemSessionState,
             final AuthorViewRenderingOptions renderingOptions, final StreamResult result)
             throws CandidateException {
+        hideEvaluationProfileUrlIfUnavailable(candidateSessionContext, renderingOptions);
         final ItemAuthorViewRenderingRequest renderingRequest = new ItemAuthorViewRenderingRequest();
         initRenderingRequest(candidateSessionContext, renderingRequest, renderingOptions);
         renderingRequest.setItemSessionState(itemSessionState);
@@ -502,6 +503,7 @@ public class CandidateRenderingService extends CandidateServiceBase {
 
     private void renderTestEventAuthorView(final CandidateSessionContext candidateSessionContext, final CandidateEvent candidateEvent, final TestSessionController testSessionController,
             final AuthorViewRenderingOptions renderingOptions, final StreamResult result) {
+        hideEvaluationProfileUrlIfUnavailable(candidateSessionContext, renderingOptions);
         final TestAuthorViewRenderingRequest renderingRequest = new TestAuthorViewRenderingRequest();
         initRenderingRequest(candidateSessionContext, renderingRequest, renderingOptions);
         renderingRequest.setTestSessionController(testSessionController);
@@ -619,6 +621,42 @@ public class CandidateRenderingService extends CandidateServiceBase {
         ServiceUtilities.streamFile(assessmentResultFile, "application/xml", lastModifiedTime, outputStreamer);
     }
 
+    //----------------------------------------------------
+    // Evaluation profile access
+
+    public void streamEvaluationProfile(final CandidateSessionContext candidateSessionContext, final OutputStreamer outputStreamer)
+            throws CandidateException, IOException {
+        Assert.notNull(candidateSessionContext, "candidateSessionContext");
+        Assert.notNull(outputStreamer, "outputStreamer");
+
+        /* Make sure candidate can access authoring info */
+        final CandidateSession candidateSession = candidateSessionContext.getCandidateSession();
+        assertCallerMayAccessAuthorInfo(candidateSession);
+
+        /* Look up profile file, which will only exist if profiling is enabled */
+        final File evaluationProfileFile = candidateDataService.getEvaluationProfileFileIfExists(candidateSession);
+        if (evaluationProfileFile!=null) {
+            /* Log action */
+            candidateAuditLogger.logAction(candidateSession, "ACCESS_EVALUATION_PROFILE");
+
+            /* Stream profile file */
+            final Date lastModifiedTime = new Date(evaluationProfileFile.lastModified());
+            ServiceUtilities.streamFile(evaluationProfileFile, "text/csv", lastModifiedTime, outputStreamer);
+        }
+        else {
+            /* No profile recorded. Log and throw Exception */
+            candidateAuditLogger.logAndThrowCandidateException(candidateSession, CandidateExceptionReason.EVALUATION_PROFILE_NOT_RECORDED);
+        }
+    }
+
+    private void hideEvaluationProfileUrlIfUnavailable(final CandidateSessionContext candidateSessionContext,
+            final AuthorViewRenderingOptions renderingOptions) {
+        final CandidateSession candidateSession = candidateSessionContext.getCandidateSession();
+        if (candidateDataService.getEvaluationProfileFileIfExists(candidateSession)==null) {
+            renderingOptions.setEvaluationProfileUrl(null);
+        }
+    }
+
     //----------------------------------------------------
 
     public <E extends AssessmentObjectValidationResult<?>> E
@@ -40,9 +40,7 @@ import uk.ac.ed.ph.qtiworks.domain.entities.CandidateItemEventType;
 import uk.ac.ed.ph.qtiworks.domain.entities.CandidateResponse;
 import uk.ac.ed.ph.qtiworks.domain.entities.CandidateSession;
 import uk.ac.ed.ph.qtiworks.domain.entities.CandidateTestEventType;
-import uk.ac.ed.ph.qtiworks.domain.entities.Delivery;
 import uk.ac.ed.ph.qtiworks.domain.entities.ResponseLegality;
-import uk.ac.ed.ph.qtiworks.domain.entities.User;
 import uk.ac.ed.ph.qtiworks.services.CandidateSessionFinisher;
 import uk.ac.ed.ph.qtiworks.services.CandidateSessionStarter;
 import uk.ac.ed.ph.qtiworks.services.IdentityService;
@@ -122,14 +120,11 @@ public class CandidateTestDeliveryService extends CandidateServiceBase {
     }
 
     private CandidateSession enterCandidateSession(final CandidateSession candidateSession) {
-        final User candidate = candidateSession.getCandidate();
-        final Delivery delivery = candidateSession.getDelivery();
-
         /* Set up listener to record any notifications */
         final NotificationRecorder notificationRecorder = new NotificationRecorder(NotificationLevel.INFO);
 
         /* Create fresh JQTI+ state & controller for it */
-        final TestSessionController testSessionController = candidateDataService.createNewTestSessionStateAndController(candidate, delivery, notificationRecorder);
+        final TestSessionController testSessionController = candidateDataService.createNewTestSessionStateAndController(candidateSession, notificationRecorder);
         if (testSessionController==null) {
             return handleExplosion(null, candidateSession);
         }
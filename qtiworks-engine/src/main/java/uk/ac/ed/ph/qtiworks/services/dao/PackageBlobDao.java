@@ -0,0 +1,103 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.services.dao;
+
+import uk.ac.ed.ph.qtiworks.domain.entities.PackageBlob;
+
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * DAO implementation for the {@link PackageBlob} entity.
+ *
+ * @author David McKain
+ */
+@Repository
+@Transactional(readOnly=true, propagation=Propagation.SUPPORTS)
+public class PackageBlobDao extends GenericDao<PackageBlob> {
+
+    @PersistenceContext
+    private EntityManager em;
+
+    public PackageBlobDao() {
+        super(PackageBlob.class);
+    }
+
+    /**
+     * Finds the {@link PackageBlob} having the given hash, locking it until the end of the
+     * current transaction so that its reference count can be safely changed.
+     */
+    @Transactional(readOnly=false, propagation=Propagation.REQUIRED)
+    public PackageBlob findByHashForUpdate(final String hash) {
+        final TypedQuery<PackageBlob> query = em.createNamedQuery("PackageBlob.findByHash", PackageBlob.class);
+        query.setParameter("hash", hash);
+        query.setLockMode(LockModeType.PESSIMISTIC_WRITE);
+        return extractNullableFindResult(query);
+    }
+
+    /**
+     * Creates a {@link PackageBlob} having the given hash and no references. This is done in a new
+     * transaction so that the record can be locked via {@link #findByHashForUpdate(String)} by
+     * all concurrent imports straight away.
+     *
+     * @throws DataIntegrityViolationException if another transaction has already created it
+     */
+    @Transactional(readOnly=false, propagation=Propagation.REQUIRES_NEW)
+    public void createUnreferenced(final String hash) {
+        final PackageBlob packageBlob = new PackageBlob();
+        packageBlob.setHash(hash);
+        packageBlob.setRefCount(0);
+        persist(packageBlob);
+        flush();
+    }
+
+    public List<String> getAllHashes() {
+        final TypedQuery<String> query = em.createNamedQuery("PackageBlob.getAllHashes", String.class);
+        return query.getResultList();
+    }
+
+    public List<String> getUnreferencedHashes() {
+        final TypedQuery<String> query = em.createNamedQuery("PackageBlob.getUnreferencedHashes", String.class);
+        return query.getResultList();
+    }
+}
@@ -0,0 +1,82 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.services.domain;
+
+import uk.ac.ed.ph.qtiworks.domain.entities.CandidateSession;
+
+import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Records the change in reported outcome values for a {@link CandidateSession}
+ * caused by rescoring.
+ *
+ * @see DeliveryRescoringReport
+ *
+ * @author David McKain
+ */
+public final class CandidateSessionRescoringData {
+
+    private final long candidateSessionId;
+    private final Map<String, String> previousOutcomeValues;
+    private final Map<String, String> rescoredOutcomeValues;
+
+    public CandidateSessionRescoringData(final long candidateSessionId,
+            final Map<String, String> previousOutcomeValues,
+            final Map<String, String> rescoredOutcomeValues) {
+        this.candidateSessionId = candidateSessionId;
+        this.previousOutcomeValues = Collections.unmodifiableMap(new LinkedHashMap<String, String>(previousOutcomeValues));
+        this.rescoredOutcomeValues = Collections.unmodifiableMap(new LinkedHashMap<String, String>(rescoredOutcomeValues));
+    }
+
+    public long getCandidateSessionId() {
+        return candidateSessionId;
+    }
+
+    public Map<String, String> getPreviousOutcomeValues() {
+        return previousOutcomeValues;
+    }
+
+    public Map<String, String> getRescoredOutcomeValues() {
+        return rescoredOutcomeValues;
+    }
+
+    @Override
+    public String toString() {
+        return ObjectUtilities.beanToString(this);
+    }
+}
@@ -0,0 +1,108 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.services.domain;
+
+import uk.ac.ed.ph.qtiworks.domain.entities.Delivery;
+
+import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Summarises the results of rescoring all candidate sessions for a {@link Delivery}.
+ *
+ * @author David McKain
+ */
+public final class DeliveryRescoringReport {
+
+    private final Delivery delivery;
+    private final boolean dryRun;
+    private final int sessionCount;
+    private final int unchangedCount;
+    private final int skippedCount;
+    private final List<CandidateSessionRescoringData> changedSessions;
+    private final Map<Long, String> failedSessions;
+
+    public DeliveryRescoringReport(final Delivery delivery, final boolean dryRun, final int sessionCount,
+            final int unchangedCount, final int skippedCount,
+            final List<CandidateSessionRescoringData> changedSessions,
+            final Map<Long, String> failedSessions) {
+        this.delivery = delivery;
+        this.dryRun = dryRun;
+        this.sessionCount = sessionCount;
+        this.unchangedCount = unchangedCount;
+        this.skippedCount = skippedCount;
+        this.changedSessions = Collections.unmodifiableList(changedSessions);
+        this.failedSessions = Collections.unmodifiableMap(new LinkedHashMap<Long, String>(failedSessions));
+    }
+
+    public Delivery getDelivery() {
+        return delivery;
+    }
+
+    /** Returns true if changes were computed but not recorded */
+    public boolean isDryRun() {
+        return dryRun;
+    }
+
+    public int getSessionCount() {
+        return sessionCount;
+    }
+
+    public int getUnchangedCount() {
+        return unchangedCount;
+    }
+
+    /** Returns the number of sessions that were not rescored as they have not been finished */
+    public int getSkippedCount() {
+        return skippedCount;
+    }
+
+    public List<CandidateSessionRescoringData> getChangedSessions() {
+        return changedSessions;
+    }
+
+    /** Returns explanations for sessions that could not be rescored, keyed on session ID */
+    public Map<Long, String> getFailedSessions() {
+        return failedSessions;
+    }
+
+    @Override
+    public String toString() {
+        return ObjectUtilities.beanToString(this);
+    }
+}
@@ -57,6 +57,8 @@ public abstract class DeliverySettingsTemplate {
 
     private Integer templateProcessingLimit;
 
+    private boolean profileEvaluation;
+
     //------------------------------------------------------------
 
     protected DeliverySettingsTemplate(final AssessmentObjectType assessmentType) {
@@ -88,6 +90,15 @@ public abstract class DeliverySettingsTemplate {
         this.templateProcessingLimit = templateProcessingLimit;
     }
 
+
+    public boolean isProfileEvaluation() {
+        return profileEvaluation;
+    }
+
+    public void setProfileEvaluation(final boolean profileEvaluation) {
+        this.profileEvaluation = profileEvaluation;
+    }
+
     //------------------------------------------------------------
 
     @Override
@@ -79,10 +79,21 @@ public class LruHashMap<K,V> extends LinkedHashMap<K,V> {
         if (shouldRemove) {
             logger.debug("Removing eldest entry " + eldest.getKey());
             purgeCount++;
+            entryPurged(eldest);
         }
         return shouldRemove;
     }
 
+    /**
+     * Hook called when the given entry is about to be purged from this Map to accommodate
+     * the maximum size. Subclasses may override this to release resources held by the entry.
+     * <p>
+     * The default implementation does nothing.
+     */
+    protected void entryPurged(final Entry<K,V> eldest) {
+        /* (Nothing to do by default) */
+    }
+
     /**
      * @return Returns the maximum number of stylesheets cached by this cache.
      */
@@ -213,6 +213,15 @@ public abstract class CandidateControllerBase {
         candidateRenderingService.streamAssessmentResult(getCandidateSessionContext(), outputStreamer);
     }
 
+    /**
+     * Streams the CSV evaluation profile recorded for the given {@link CandidateSession}
+     */
+    protected void streamEvaluationProfile(final HttpServletResponse response)
+            throws IOException, CandidateException {
+        final ServletOutputStreamer outputStreamer = new ServletOutputStreamer(response, null /* No caching */);
+        candidateRenderingService.streamEvaluationProfile(getCandidateSessionContext(), outputStreamer);
+    }
+
     protected String showPackageValidationResult(final Model model)
             throws CandidateException {
         final CandidateSessionContext candidateSessionContext = getCandidateSessionContext();
@@ -132,6 +132,7 @@ public class CandidateItemController extends CandidateControllerBase {
         final String sessionBaseUrl = "/candidate/itemsession/" + xid + "/" + xsrfToken;
         final AuthorViewRenderingOptions renderingOptions = new AuthorViewRenderingOptions();
         configureBaseRenderingOptions(sessionBaseUrl, renderingOptions);
+        renderingOptions.setEvaluationProfileUrl(sessionBaseUrl + "/profile");
 
         final ServletOutputStreamer outputStreamer = new ServletOutputStreamer(response, null /* No caching */);
         candidateRenderingService.renderCurrentCandidateItemSessionStateAuthorView(getCandidateSessionContext(), renderingOptions, outputStreamer);
@@ -298,6 +299,17 @@ public class CandidateItemController extends CandidateControllerBase {
         super.streamAssessmentResult(response);
     }
 
+    /**
+     * Streams the CSV evaluation profile recorded for the given {@link CandidateSession}
+     */
+    @RequestMapping(value="/itemsession/{xid}/{xsrfToken}/profile", method=RequestMethod.GET)
+    public void streamEvaluationProfile(@SuppressWarnings("unused") @PathVariable final long xid,
+            @SuppressWarnings("unused") @PathVariable final String xsrfToken,
+            final HttpServletResponse response)
+            throws IOException, CandidateException {
+        super.streamEvaluationProfile(response);
+    }
+
     @RequestMapping(value="/itemsession/{xid}/{xsrfToken}/validation", method=RequestMethod.GET)
     public String showPackageValidationResult(@SuppressWarnings("unused") @PathVariable final long xid,
             @SuppressWarnings("unused") @PathVariable final String xsrfToken, final Model model)
@@ -140,6 +140,7 @@ public class CandidateTestController extends CandidateControllerBase {
         final String sessionBaseUrl = "/candidate/testsession/" + xid + "/" + xsrfToken;
         final AuthorViewRenderingOptions renderingOptions = new AuthorViewRenderingOptions();
         configureBaseRenderingOptions(sessionBaseUrl, renderingOptions);
+        renderingOptions.setEvaluationProfileUrl(sessionBaseUrl + "/profile");
 
         final ServletOutputStreamer outputStreamer = new ServletOutputStreamer(response, null /* No caching */);
         candidateRenderingService.renderCurrentCandidateTestSessionStateAuthorView(candidateSessionContext, renderingOptions, outputStreamer);
@@ -365,6 +366,17 @@ public class CandidateTestController extends CandidateControllerBase {
         super.streamAssessmentResult(response);
     }
 
+    /**
+     * Streams the CSV evaluation profile recorded for the given {@link CandidateSession}
+     */
+    @RequestMapping(value="/testsession/{xid}/{xsrfToken}/profile", method=RequestMethod.GET)
+    public void streamEvaluationProfile(@SuppressWarnings("unused") @PathVariable final long xid,
+            @SuppressWarnings("unused") @PathVariable final String xsrfToken,
+            final HttpServletResponse response)
+            throws IOException, CandidateException {
+        super.streamEvaluationProfile(response);
+    }
+
     @RequestMapping(value="/testsession/{xid}/{xsrfToken}/validation", method=RequestMethod.GET)
     public String showPackageValidationResult(@SuppressWarnings("unused") @PathVariable final long xid,
             @SuppressWarnings("unused") @PathVariable final String xsrfToken,
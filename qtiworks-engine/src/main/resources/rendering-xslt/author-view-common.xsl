@@ -18,6 +18,9 @@ Common templates for item & test author views
 
   <xsl:import href="qti-common.xsl"/>
 
+  <!-- URL for downloading the evaluation profile. Only passed if a profile has been recorded -->
+  <xsl:param name="evaluationProfileUrl" as="xs:string?"/>
+
   <!-- ************************************************************ -->
 
   <xsl:template name="errorStatusPanel" as="element(ul)?">
@@ -67,6 +67,13 @@ Input document: doesn't matter
             <input type="submit" value="View Item &lt;assessmentResult&gt; XML"/>
           </form>
         </li>
+        <xsl:if test="exists($evaluationProfileUrl)">
+          <li>
+            <form action="{$webappContextPath}{$evaluationProfileUrl}" method="get">
+              <input type="submit" value="Download evaluation profile (CSV)"/>
+            </form>
+          </li>
+        </xsl:if>
       </ul>
     </div>
   </xsl:template>
@@ -0,0 +1,89 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.services;
+
+import uk.ac.ed.ph.jqtiplus.utils.contentpackaging.QtiContentPackageExtractor;
+import uk.ac.ed.ph.jqtiplus.xmlutils.CustomUriScheme;
+
+import java.io.File;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link PackageBlobResourceLocator} class
+ *
+ * @author David McKain
+ */
+public class PackageBlobResourceLocatorTest {
+
+    private static final CustomUriScheme PACKAGE_URI_SCHEME = QtiContentPackageExtractor.PACKAGE_URI_SCHEME;
+
+    private static final File ITEM_BLOB_FILE = new File("blobs/aa/aa01");
+    private static final File IMAGE_BLOB_FILE = new File("blobs/bb/bb02");
+
+    private PackageBlobResourceLocator locator;
+
+    @Before
+    public void setup() {
+        final Map<String, File> blobFileMap = new HashMap<String, File>();
+        blobFileMap.put("item.xml", ITEM_BLOB_FILE);
+        blobFileMap.put("images/a b.png", IMAGE_BLOB_FILE);
+        locator = new PackageBlobResourceLocator(PACKAGE_URI_SCHEME, blobFileMap);
+    }
+
+    @Test
+    public void findBlobFile() {
+        Assert.assertEquals(ITEM_BLOB_FILE, locator.findBlobFile(PACKAGE_URI_SCHEME.decodedPathToUri("item.xml")));
+        Assert.assertEquals(IMAGE_BLOB_FILE, locator.findBlobFile(PACKAGE_URI_SCHEME.decodedPathToUri("images/a b.png")));
+        Assert.assertEquals(ITEM_BLOB_FILE, locator.findBlobFile(PACKAGE_URI_SCHEME.decodedPathToUri("images/../item.xml")));
+    }
+
+    @Test
+    public void findMissingBlobFile() {
+        Assert.assertNull(locator.findBlobFile(PACKAGE_URI_SCHEME.decodedPathToUri("missing.xml")));
+        Assert.assertNull(locator.findBlobFile(URI.create("other-scheme:/item.xml")));
+    }
+
+    @Test
+    public void rejectParentPaths() {
+        Assert.assertNull(locator.findBlobFile(PACKAGE_URI_SCHEME.decodedPathToUri("../item.xml")));
+        Assert.assertNull(locator.findBlobFile(PACKAGE_URI_SCHEME.decodedPathToUri("images/../../item.xml")));
+        Assert.assertNull(locator.findResource(PACKAGE_URI_SCHEME.decodedPathToUri("../item.xml")));
+    }
+}
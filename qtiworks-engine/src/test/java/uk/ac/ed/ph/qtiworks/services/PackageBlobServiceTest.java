@@ -0,0 +1,285 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.services;
+
+import uk.ac.ed.ph.qtiworks.config.beans.QtiWorksDeploymentSettings;
+import uk.ac.ed.ph.qtiworks.domain.entities.AssessmentPackage;
+import uk.ac.ed.ph.qtiworks.domain.entities.PackageBlob;
+import uk.ac.ed.ph.qtiworks.services.dao.PackageBlobDao;
+
+import uk.ac.ed.ph.jqtiplus.utils.contentpackaging.QtiContentPackageExtractor;
+import uk.ac.ed.ph.jqtiplus.xmlutils.CustomUriScheme;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.util.ReflectionUtils;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+/**
+ * Tests the {@link PackageBlobService}, using an in-memory stand-in for the {@link PackageBlobDao}.
+ *
+ * @author David McKain
+ */
+public class PackageBlobServiceTest {
+
+    private static final CustomUriScheme PACKAGE_URI_SCHEME = QtiContentPackageExtractor.PACKAGE_URI_SCHEME;
+
+    private static final String ITEM_CONTENT = "<assessmentItem/>";
+    private static final String IMAGE_CONTENT = "image";
+
+    private File filesystemBaseDirectory;
+    private FilespaceManager filespaceManager;
+    private InMemoryPackageBlobDao packageBlobDao;
+    private PackageBlobService packageBlobService;
+
+    @Before
+    public void setup() {
+        filesystemBaseDirectory = Files.createTempDir();
+        final QtiWorksDeploymentSettings qtiWorksDeploymentSettings = new QtiWorksDeploymentSettings();
+        inject(qtiWorksDeploymentSettings, "filesystemBase", filesystemBaseDirectory.getPath());
+        filespaceManager = new FilespaceManager();
+        inject(filespaceManager, "qtiWorksDeploymentSettings", qtiWorksDeploymentSettings);
+        filespaceManager.init();
+
+        packageBlobDao = new InMemoryPackageBlobDao();
+        packageBlobService = new PackageBlobService();
+        inject(packageBlobService, "qtiWorksDeploymentSettings", qtiWorksDeploymentSettings);
+        inject(packageBlobService, "filespaceManager", filespaceManager);
+        inject(packageBlobService, "packageBlobDao", packageBlobDao);
+    }
+
+    @After
+    public void tearDown() {
+        if (filesystemBaseDirectory!=null) {
+            ServiceUtilities.recursivelyDelete(filesystemBaseDirectory);
+        }
+    }
+
+    //----------------------------------------------------------
+
+    @Test
+    public void manifestRoundTrip() throws Exception {
+        final AssessmentPackage assessmentPackage = createPackage("p1");
+        packageBlobService.deduplicatePackage(assessmentPackage);
+
+        Assert.assertTrue(assessmentPackage.isDeduplicated());
+        final File sandboxDirectory = new File(assessmentPackage.getSandboxPath());
+        Assert.assertEquals(Arrays.asList(AssessmentPackage.PACKAGE_BLOB_MANIFEST_FILE_NAME), Arrays.asList(sandboxDirectory.list()));
+
+        final PackageBlobResourceLocator locator = packageBlobService.createResourceLocator(assessmentPackage);
+        Assert.assertEquals(ITEM_CONTENT, readBlob(locator, "item.xml"));
+        Assert.assertEquals(IMAGE_CONTENT, readBlob(locator, "images/a b.png"));
+        Assert.assertEquals(IMAGE_CONTENT, readBlob(locator, "images/copy.png"));
+        Assert.assertNull(locator.findBlobFile(PACKAGE_URI_SCHEME.decodedPathToUri("../p1/item.xml")));
+    }
+
+    @Test
+    public void refCounting() throws Exception {
+        final AssessmentPackage package1 = createPackage("p1");
+        final AssessmentPackage package2 = createPackage("p2");
+        packageBlobService.deduplicatePackage(package1);
+        packageBlobService.deduplicatePackage(package2);
+
+        /* Each package refers to the image twice */
+        Assert.assertEquals(2, packageBlobDao.getAllHashes().size());
+        Assert.assertEquals(2, getRefCount(ITEM_CONTENT));
+        Assert.assertEquals(4, getRefCount(IMAGE_CONTENT));
+
+        packageBlobService.releasePackage(package1);
+        Assert.assertEquals(1, getRefCount(ITEM_CONTENT));
+        Assert.assertEquals(2, getRefCount(IMAGE_CONTENT));
+
+        /* Releasing the last package removes the PackageBlobs but leaves the files for purging */
+        packageBlobService.releasePackage(package2);
+        Assert.assertTrue(packageBlobDao.getAllHashes().isEmpty());
+        Assert.assertTrue(getBlobFile(ITEM_CONTENT).isFile());
+        Assert.assertTrue(getBlobFile(IMAGE_CONTENT).isFile());
+
+        Assert.assertEquals(2, packageBlobService.purgeOrphanedBlobs(new Date(System.currentTimeMillis() + 60000L)));
+        Assert.assertFalse(getBlobFile(ITEM_CONTENT).exists());
+        Assert.assertFalse(getBlobFile(IMAGE_CONTENT).exists());
+    }
+
+    @Test
+    public void concurrentBlobCreation() throws Exception {
+        /* Pretend that another import creates (and references) each new blob just before we do */
+        packageBlobDao.simulateConcurrentCreation = true;
+        final AssessmentPackage assessmentPackage = createPackage("p1");
+        packageBlobService.deduplicatePackage(assessmentPackage);
+
+        Assert.assertEquals(2, getRefCount(ITEM_CONTENT));
+        Assert.assertEquals(3, getRefCount(IMAGE_CONTENT));
+    }
+
+    @Test
+    public void purgeUnreferencedBlobs() throws Exception {
+        /* This is what a failed import leaves behind */
+        packageBlobDao.createUnreferenced(hash(ITEM_CONTENT));
+        final File blobFile = getBlobFile(ITEM_CONTENT);
+        Files.createParentDirs(blobFile);
+        Files.write(ITEM_CONTENT, blobFile, Charsets.UTF_8);
+
+        /* Recent blob files are kept */
+        Assert.assertEquals(0, packageBlobService.purgeOrphanedBlobs(new Date(System.currentTimeMillis() - 60000L)));
+        Assert.assertTrue(packageBlobDao.getAllHashes().isEmpty());
+        Assert.assertTrue(blobFile.isFile());
+
+        Assert.assertEquals(1, packageBlobService.purgeOrphanedBlobs(new Date(System.currentTimeMillis() + 60000L)));
+        Assert.assertFalse(blobFile.exists());
+    }
+
+    //----------------------------------------------------------
+
+    private AssessmentPackage createPackage(final String name) throws IOException {
+        final File sandboxDirectory = new File(filesystemBaseDirectory, name);
+        writeFile(new File(sandboxDirectory, "item.xml"), ITEM_CONTENT);
+        writeFile(new File(sandboxDirectory, "images/a b.png"), IMAGE_CONTENT);
+        writeFile(new File(sandboxDirectory, "images/copy.png"), IMAGE_CONTENT);
+        final AssessmentPackage result = new AssessmentPackage();
+        result.setSandboxPath(sandboxDirectory.getPath());
+        return result;
+    }
+
+    private static void writeFile(final File file, final String content) throws IOException {
+        Files.createParentDirs(file);
+        Files.write(content, file, Charsets.UTF_8);
+    }
+
+    private static String readBlob(final PackageBlobResourceLocator locator, final String path) throws IOException {
+        final File blobFile = locator.findBlobFile(PACKAGE_URI_SCHEME.decodedPathToUri(path));
+        Assert.assertNotNull(blobFile);
+        return Files.toString(blobFile, Charsets.UTF_8);
+    }
+
+    private int getRefCount(final String content) {
+        final PackageBlob packageBlob = packageBlobDao.findByHashForUpdate(hash(content));
+        Assert.assertNotNull(packageBlob);
+        return packageBlob.getRefCount();
+    }
+
+    private File getBlobFile(final String content) {
+        return filespaceManager.getPackageBlobFile(hash(content));
+    }
+
+    private static String hash(final String content) {
+        return Hashing.sha256().hashString(content, Charsets.UTF_8).toString();
+    }
+
+    private static void inject(final Object target, final String fieldName, final Object value) {
+        final Field field = ReflectionUtils.findField(target.getClass(), fieldName);
+        ReflectionUtils.makeAccessible(field);
+        ReflectionUtils.setField(field, target, value);
+    }
+
+    //----------------------------------------------------------
+
+    /**
+     * Stand-in for {@link PackageBlobDao} that keeps {@link PackageBlob}s in memory.
+     */
+    private static final class InMemoryPackageBlobDao extends PackageBlobDao {
+
+        private final Map<String, PackageBlob> packageBlobMap = new HashMap<String, PackageBlob>();
+
+        boolean simulateConcurrentCreation;
+
+        @Override
+        public PackageBlob findByHashForUpdate(final String hash) {
+            return packageBlobMap.get(hash);
+        }
+
+        @Override
+        public void createUnreferenced(final String hash) {
+            if (packageBlobMap.containsKey(hash)) {
+                throw new DataIntegrityViolationException("PackageBlob for hash " + hash + " already exists");
+            }
+            final PackageBlob packageBlob = new PackageBlob();
+            packageBlob.setHash(hash);
+            if (simulateConcurrentCreation) {
+                packageBlob.setRefCount(1);
+                packageBlobMap.put(hash, packageBlob);
+                throw new DataIntegrityViolationException("PackageBlob for hash " + hash + " already exists");
+            }
+            packageBlob.setRefCount(0);
+            packageBlobMap.put(hash, packageBlob);
+        }
+
+        @Override
+        public PackageBlob update(final PackageBlob packageBlob) {
+            Assert.assertSame(packageBlob, packageBlobMap.get(packageBlob.getHash()));
+            return packageBlob;
+        }
+
+        @Override
+        public PackageBlob persist(final PackageBlob packageBlob) {
+            throw new UnsupportedOperationException("PackageBlobs should be created via createUnreferenced()");
+        }
+
+        @Override
+        public void remove(final PackageBlob packageBlob) {
+            Assert.assertSame(packageBlob, packageBlobMap.remove(packageBlob.getHash()));
+        }
+
+        @Override
+        public List<String> getAllHashes() {
+            return new ArrayList<String>(packageBlobMap.keySet());
+        }
+
+        @Override
+        public List<String> getUnreferencedHashes() {
+            final List<String> result = new ArrayList<String>();
+            for (final PackageBlob packageBlob : packageBlobMap.values()) {
+                if (packageBlob.getRefCount()==0) {
+                    result.add(packageBlob.getHash());
+                }
+            }
+            return result;
+        }
+    }
+}
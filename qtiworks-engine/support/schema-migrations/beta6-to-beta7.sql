@@ -0,0 +1,28 @@
+-- Schema migration script for upgrading from 1.0-beta6 to 1.0-beta7
+--
+-- NB: This has been written to work with PostgreSQL and will probably need
+-- tweaked slightly to work with other databases.
+BEGIN WORK;
+
+-- Add option for profiling processing in author mode to delivery_settings
+ALTER TABLE delivery_settings ADD profile_evaluation BOOLEAN;
+UPDATE delivery_settings SET profile_evaluation = FALSE;
+ALTER TABLE delivery_settings ALTER profile_evaluation SET NOT NULL;
+
+-- Record whether each assessment_package is stored as its original ZIP file
+ALTER TABLE assessment_packages ADD zipped BOOLEAN;
+UPDATE assessment_packages SET zipped = FALSE;
+ALTER TABLE assessment_packages ALTER zipped SET NOT NULL;
+
+-- Add shared content-addressed storage for deduplicated assessment_packages
+ALTER TABLE assessment_packages ADD deduplicated BOOLEAN;
+UPDATE assessment_packages SET deduplicated = FALSE;
+ALTER TABLE assessment_packages ALTER deduplicated SET NOT NULL;
+CREATE TABLE package_blobs (
+  pbid BIGINT PRIMARY KEY NOT NULL,
+  hash VARCHAR(64) NOT NULL UNIQUE,
+  ref_count INTEGER NOT NULL
+);
+CREATE SEQUENCE package_blob_sequence START WITH 1 INCREMENT BY 1 NO MAXVALUE NO MINVALUE CACHE 1;
+
+COMMIT WORK;
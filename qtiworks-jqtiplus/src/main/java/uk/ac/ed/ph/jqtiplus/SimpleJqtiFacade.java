@@ -39,6 +39,7 @@ import uk.ac.ed.ph.jqtiplus.node.item.AssessmentItem;
 import uk.ac.ed.ph.jqtiplus.node.test.AssessmentTest;
 import uk.ac.ed.ph.jqtiplus.notification.NotificationListener;
 import uk.ac.ed.ph.jqtiplus.reading.AssessmentObjectXmlLoader;
+import uk.ac.ed.ph.jqtiplus.reading.ModelLoadingProfile;
 import uk.ac.ed.ph.jqtiplus.reading.QtiObjectReadResult;
 import uk.ac.ed.ph.jqtiplus.reading.QtiObjectReader;
 import uk.ac.ed.ph.jqtiplus.reading.QtiXmlInterpretationException;
@@ -189,6 +190,28 @@ public final class SimpleJqtiFacade {
         return assessmentObjectXmlLoader.loadAndResolveAssessmentTest(systemId);
     }
 
+    /**
+     * Variant of {@link #loadAndResolveAssessmentItem(ResourceLocator, URI)} that builds the Object
+     * model using the given {@link ModelLoadingProfile}. Use {@link ModelLoadingProfile#PROCESSING}
+     * for batch jobs that never render the item.
+     */
+    public ResolvedAssessmentItem loadAndResolveAssessmentItem(final ResourceLocator inputResourceLocator, final URI systemId,
+            final ModelLoadingProfile modelLoadingProfile) {
+        final AssessmentObjectXmlLoader assessmentObjectXmlLoader = new AssessmentObjectXmlLoader(qtiXmlReader, inputResourceLocator, modelLoadingProfile);
+        return assessmentObjectXmlLoader.loadAndResolveAssessmentItem(systemId);
+    }
+
+    /**
+     * Variant of {@link #loadAndResolveAssessmentTest(ResourceLocator, URI)} that builds the Object
+     * model using the given {@link ModelLoadingProfile}. Use {@link ModelLoadingProfile#PROCESSING}
+     * for batch jobs that never render the test, such as simulations.
+     */
+    public ResolvedAssessmentTest loadAndResolveAssessmentTest(final ResourceLocator inputResourceLocator, final URI systemId,
+            final ModelLoadingProfile modelLoadingProfile) {
+        final AssessmentObjectXmlLoader assessmentObjectXmlLoader = new AssessmentObjectXmlLoader(qtiXmlReader, inputResourceLocator, modelLoadingProfile);
+        return assessmentObjectXmlLoader.loadAndResolveAssessmentTest(systemId);
+    }
+
     //--------------------------------------------------------------
     // QTI AssessmentItem & AssessmentTest loading, resolution and full validation
 
@@ -74,17 +74,26 @@ import uk.ac.ed.ph.jqtiplus.node.QtiNode;
 import uk.ac.ed.ph.jqtiplus.validation.ValidationContext;
 
 import java.io.Serializable;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
-import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.XMLConstants;
 
 import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 
 /**
  * Container for all attributes of one node.
+ * <p>
+ * (In JQTI+, attributes are held in an array rather than a List, as there are a lot of these
+ * in a large resolved test. The array grows as attributes are added and is trimmed to its
+ * exact size once loading is done. Lookups by name use a slot index shared by all nodes of
+ * the same class, falling back to a linear search.)
  *
  * @author Jiri Kajaba
  */
@@ -92,16 +101,32 @@ public final class AttributeList implements Serializable, Iterable<Attribute<?>>
 
     private static final long serialVersionUID = 4537124098886951888L;
 
+    private static final Attribute<?>[] EMPTY_ATTRIBUTES = new Attribute<?>[0];
+
+    /**
+     * Shared slot indexes for each class of owner, mapping the local names of non-namespaced
+     * attributes to their usual position within the list.
+     */
+    private static final ConcurrentHashMap<Class<?>, Map<String, Integer>> slotIndexMap = new ConcurrentHashMap<Class<?>, Map<String, Integer>>();
+
     /** Owner (node) of these attributes. */
     private final QtiNode owner;
 
-    /** Children (attributes) of this container. */
-    private final List<Attribute<?>> attributes;
+    /** Children (attributes) of this container, possibly with spare capacity at the end. */
+    private Attribute<?>[] attributes;
+
+    /** Number of attributes in this container. */
+    private int size;
+
+    /** Shared slot index for the owner's class, looked up on first use */
+    private transient Map<String, Integer> slotIndex;
 
     public AttributeList(final QtiNode owner) {
         Assert.notNull(owner);
         this.owner = owner;
-        this.attributes = new ArrayList<Attribute<?>>();
+        this.attributes = EMPTY_ATTRIBUTES;
+        this.size = 0;
+        this.slotIndex = null;
     }
 
     /**
@@ -119,7 +144,7 @@ public final class AttributeList implements Serializable, Iterable<Attribute<?>>
      * @return number of attributes in this container
      */
     public int size() {
-        return attributes.size();
+        return size;
     }
 
     /**
@@ -131,12 +156,13 @@ public final class AttributeList implements Serializable, Iterable<Attribute<?>>
      *             with same name
      */
     public void add(final Attribute<?> attribute) {
-        for (final Attribute<?> child : attributes) {
+        for (int i=0; i<size; i++) {
+            final Attribute<?> child = attributes[i];
             if (child.getLocalName().equals(attribute.getLocalName()) && child.getNamespaceUri().equals(attribute.getNamespaceUri())) {
                 throw new QtiAttributeException("Duplicate attribute name: " + attribute.computeXPath());
             }
         }
-        attributes.add(attribute);
+        add(size, attribute);
     }
 
     /**
@@ -145,14 +171,19 @@ public final class AttributeList implements Serializable, Iterable<Attribute<?>>
      * @param attribute given attribute
      */
     public void remove(final Attribute<?> attribute) {
-        for (final Attribute<?> child : attributes) {
-            if (child.getLocalName().equals(attribute.getLocalName())) {
-                attributes.remove(child);
+        for (int i=0; i<size; i++) {
+            if (attributes[i].getLocalName().equals(attribute.getLocalName())) {
+                remove(i);
                 break;
             }
         }
     }
 
+    private void remove(final int index) {
+        System.arraycopy(attributes, index + 1, attributes, index, size - index - 1);
+        attributes[--size] = null;
+    }
+
     /**
      * Adds given attribute into this container at given position.
      * Checks duplicities in attribute's names.
@@ -163,7 +194,25 @@ public final class AttributeList implements Serializable, Iterable<Attribute<?>>
      *             with same name
      */
     public void add(final int index, final Attribute<?> attribute) {
-        attributes.add(index, attribute);
+        if (index<0 || index>size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        if (size==attributes.length) {
+            attributes = Arrays.copyOf(attributes, Math.max(4, 2 * size));
+        }
+        System.arraycopy(attributes, index, attributes, index + 1, size - index);
+        attributes[index] = attribute;
+        size++;
+    }
+
+    /**
+     * Releases any spare capacity in this container. This is called once loading is done,
+     * as attributes won't normally be added after that.
+     */
+    public void trimToSize() {
+        if (size<attributes.length) {
+            attributes = size > 0 ? Arrays.copyOf(attributes, size) : EMPTY_ATTRIBUTES;
+        }
     }
 
     /**
@@ -175,11 +224,11 @@ public final class AttributeList implements Serializable, Iterable<Attribute<?>>
      */
     public void load(final Element element, final LoadingContext context) {
         /* First clear existing attributes */
-        for (int i = 0; i < attributes.size(); i++) {
-            final Attribute<?> attribute = attributes.get(i);
+        for (int i = size - 1; i >= 0; i--) {
+            final Attribute<?> attribute = attributes[i];
             if (attribute instanceof ForeignAttribute) {
                 /* Foreign attribute, so remove to add in again */
-                attributes.remove(i);
+                remove(i);
             }
             else {
                 /* Supported attribute, so clear for setting later */
@@ -188,8 +237,9 @@ public final class AttributeList implements Serializable, Iterable<Attribute<?>>
         }
 
         /* Set set values from element */
-        for (int i = 0; i < element.getAttributes().getLength(); i++) {
-            final Node attributeNode = element.getAttributes().item(i);
+        final NamedNodeMap attributeNodes = element.getAttributes();
+        for (int i = 0; i < attributeNodes.getLength(); i++) {
+            final Node attributeNode = attributeNodes.item(i);
             final String localName = attributeNode.getLocalName();
             String namespaceUri = attributeNode.getNamespaceURI();
             if (namespaceUri==null) {
@@ -204,13 +254,16 @@ public final class AttributeList implements Serializable, Iterable<Attribute<?>>
                 if (attribute==null) {
                     /* Foreign attribute, so create new */
                     attribute = new ForeignAttribute(owner, localName, namespaceUri);
-                    attributes.add(attribute);
+                    add(size, attribute);
                 }
                 /* Load value into attribute */
                 final String attributeValue = attributeNode.getNodeValue();
                 loadAttribute(attribute, element, attributeValue, context);
             }
         }
+
+        /* Release any spare capacity, as attributes won't normally be added again */
+        trimToSize();
     }
 
     private static final <V> void loadAttribute(final Attribute<V> attribute, final Element element, final String stringValue, final LoadingContext context) {
@@ -229,7 +282,8 @@ public final class AttributeList implements Serializable, Iterable<Attribute<?>>
      * Removed all attributes (children) from this container.
      */
     public void clear() {
-        attributes.clear();
+        attributes = EMPTY_ATTRIBUTES;
+        size = 0;
     }
 
     /**
@@ -241,8 +295,8 @@ public final class AttributeList implements Serializable, Iterable<Attribute<?>>
      *         otherwise
      */
     public boolean contains(final String name) {
-        for (final Attribute<?> attribute : attributes) {
-            if (attribute.getLocalName().equals(name)) {
+        for (int i=0; i<size; i++) {
+            if (attributes[i].getLocalName().equals(name)) {
                 return true;
             }
         }
@@ -256,7 +310,10 @@ public final class AttributeList implements Serializable, Iterable<Attribute<?>>
      * @return attribute at given index
      */
     public Attribute<?> get(final int index) {
-        return attributes.get(index);
+        if (index<0 || index>=size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return attributes[index];
     }
 
     /**
@@ -295,7 +352,24 @@ public final class AttributeList implements Serializable, Iterable<Attribute<?>>
     private Attribute<?> get(final String localName, final String namespaceUri, final boolean silent) {
         Assert.notNull(localName, "localName");
         Assert.notNull(namespaceUri, "namespaceUri");
-        for (final Attribute<?> attribute : attributes) {
+
+        /* Try the usual slot for this attribute first */
+        if (namespaceUri.isEmpty()) {
+            if (slotIndex==null) {
+                slotIndex = getSlotIndex();
+            }
+            final Integer slot = slotIndex.get(localName);
+            if (slot!=null && slot.intValue() < size) {
+                final Attribute<?> attribute = attributes[slot.intValue()];
+                if (attribute.getLocalName().equals(localName) && attribute.getNamespaceUri().isEmpty()) {
+                    return attribute;
+                }
+            }
+        }
+
+        /* Fall back to linear search */
+        for (int i=0; i<size; i++) {
+            final Attribute<?> attribute = attributes[i];
             if (attribute.getLocalName().equals(localName) && attribute.getNamespaceUri().equals(namespaceUri)) {
                 return attribute;
             }
@@ -308,14 +382,71 @@ public final class AttributeList implements Serializable, Iterable<Attribute<?>>
                 + "' in Node with XPath " + owner.computeXPath());
     }
 
+    /**
+     * Looks up the shared slot index for the owner's class, creating it from the current
+     * attributes if this is the first time this class has been seen.
+     */
+    private Map<String, Integer> getSlotIndex() {
+        final Class<?> ownerClass = owner.getClass();
+        Map<String, Integer> result = slotIndexMap.get(ownerClass);
+        if (result==null) {
+            final Map<String, Integer> newSlotIndex = new HashMap<String, Integer>();
+            for (int i=0; i<size; i++) {
+                final Attribute<?> attribute = attributes[i];
+                if (!(attribute instanceof ForeignAttribute) && attribute.getNamespaceUri().isEmpty()) {
+                    newSlotIndex.put(attribute.getLocalName(), Integer.valueOf(i));
+                }
+            }
+            result = slotIndexMap.putIfAbsent(ownerClass, newSlotIndex);
+            if (result==null) {
+                result = newSlotIndex;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns an {@link Iterator} over the attributes in this container. Its
+     * {@link Iterator#remove()} method removes the last attribute returned from this container.
+     */
     @Override
     public Iterator<Attribute<?>> iterator() {
-        return attributes.iterator();
+        return new AttributeIterator();
+    }
+
+    private final class AttributeIterator implements Iterator<Attribute<?>> {
+
+        private int nextIndex = 0;
+        private int lastIndex = -1;
+
+        @Override
+        public boolean hasNext() {
+            return nextIndex < size;
+        }
+
+        @Override
+        public Attribute<?> next() {
+            if (nextIndex>=size) {
+                throw new NoSuchElementException();
+            }
+            lastIndex = nextIndex++;
+            return attributes[lastIndex];
+        }
+
+        @Override
+        public void remove() {
+            if (lastIndex<0) {
+                throw new IllegalStateException();
+            }
+            AttributeList.this.remove(lastIndex);
+            nextIndex = lastIndex;
+            lastIndex = -1;
+        }
     }
 
     public void validateBasic(final ValidationContext context) {
-        for (final Attribute<?> attribute : attributes) {
-            attribute.validateBasic(context);
+        for (int i=0; i<size; i++) {
+            attributes[i].validateBasic(context);
         }
     }
 
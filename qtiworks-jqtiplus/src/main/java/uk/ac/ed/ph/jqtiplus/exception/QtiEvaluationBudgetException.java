@@ -0,0 +1,74 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.exception;
+
+import uk.ac.ed.ph.jqtiplus.running.EvaluationBudget;
+
+/**
+ * Exception thrown when the {@link EvaluationBudget} for a particular run of template,
+ * response or outcome processing has been used up.
+ * <p>
+ * This is caught by the processing controllers, which then fall back to leaving
+ * the affected variables at their default values.
+ *
+ * @author David McKain
+ */
+public final class QtiEvaluationBudgetException extends JqtiRuntimeException {
+
+    private static final long serialVersionUID = 4319820157316738124L;
+
+    public static enum BudgetType {
+        STEPS,
+        TIME, ;
+    }
+
+    private final BudgetType budgetType;
+    private final long limit;
+
+    public QtiEvaluationBudgetException(final BudgetType budgetType, final long limit) {
+        super(budgetType==BudgetType.STEPS
+                ? "Exceeded the maximum number " + limit + " of expression evaluation steps"
+                : "Exceeded the maximum evaluation time of " + limit + "ms");
+        this.budgetType = budgetType;
+        this.limit = limit;
+    }
+
+    public BudgetType getBudgetType() {
+        return budgetType;
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+}
@@ -122,6 +122,7 @@ import uk.ac.ed.ph.jqtiplus.group.test.WeightGroup;
 import uk.ac.ed.ph.jqtiplus.node.LoadingContext;
 import uk.ac.ed.ph.jqtiplus.node.QtiNode;
 import uk.ac.ed.ph.jqtiplus.node.content.BodyElement;
+import uk.ac.ed.ph.jqtiplus.node.content.ContentType;
 import uk.ac.ed.ph.jqtiplus.node.content.ItemBody;
 import uk.ac.ed.ph.jqtiplus.node.content.basic.Block;
 import uk.ac.ed.ph.jqtiplus.node.content.basic.BlockStatic;
@@ -205,11 +206,14 @@ import uk.ac.ed.ph.jqtiplus.node.test.outcome.processing.OutcomeElseIf;
 import uk.ac.ed.ph.jqtiplus.node.test.outcome.processing.OutcomeIf;
 import uk.ac.ed.ph.jqtiplus.node.test.outcome.processing.OutcomeProcessing;
 import uk.ac.ed.ph.jqtiplus.node.test.outcome.processing.OutcomeRule;
+import uk.ac.ed.ph.jqtiplus.reading.ModelLoadingProfile;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -217,6 +221,10 @@ import org.w3c.dom.NodeList;
 
 /**
  * Container for all node groups contained (owned) by a particular {@link QtiNode}.
+ * <p>
+ * (In JQTI+, groups are held in an array rather than a List, as there are a lot of these in a
+ * large resolved test. The array grows as groups are added and is trimmed to its exact size
+ * once loading is done, as are the Lists of children within each group.)
  *
  * @author Jiri Kajaba
  */
@@ -224,15 +232,21 @@ public final class NodeGroupList implements Serializable, Iterable<NodeGroup<?,?
 
     private static final long serialVersionUID = 4649998181277985510L;
 
+    private static final NodeGroup<?,?>[] EMPTY_GROUPS = new NodeGroup<?,?>[0];
+
     /** Parent (node) of this container. */
     private final QtiNode parent;
 
-    /** Children (groups) of this container. */
-    private final List<NodeGroup<?,?>> groups;
+    /** Children (groups) of this container, possibly with spare capacity at the end. */
+    private NodeGroup<?,?>[] groups;
+
+    /** Number of groups in this container. */
+    private int size;
 
     public NodeGroupList(final QtiNode parent) {
         this.parent = parent;
-        this.groups = new ArrayList<NodeGroup<?,?>>();
+        this.groups = EMPTY_GROUPS;
+        this.size = 0;
     }
 
     /**
@@ -250,12 +264,47 @@ public final class NodeGroupList implements Serializable, Iterable<NodeGroup<?,?
      * @return number of groups in this container
      */
     public int size() {
-        return groups.size();
+        return size;
     }
 
+    /**
+     * Returns an {@link Iterator} over the groups in this container. Its
+     * {@link Iterator#remove()} method removes the last group returned from this container.
+     */
     @Override
     public Iterator<NodeGroup<?,?>> iterator() {
-        return groups.iterator();
+        return new NodeGroupIterator();
+    }
+
+    private final class NodeGroupIterator implements Iterator<NodeGroup<?,?>> {
+
+        private int nextIndex = 0;
+        private int lastIndex = -1;
+
+        @Override
+        public boolean hasNext() {
+            return nextIndex < size;
+        }
+
+        @Override
+        public NodeGroup<?,?> next() {
+            if (nextIndex>=size) {
+                throw new NoSuchElementException();
+            }
+            lastIndex = nextIndex++;
+            return groups[lastIndex];
+        }
+
+        @Override
+        public void remove() {
+            if (lastIndex<0) {
+                throw new IllegalStateException();
+            }
+            System.arraycopy(groups, lastIndex + 1, groups, lastIndex, size - lastIndex - 1);
+            groups[--size] = null;
+            nextIndex = lastIndex;
+            lastIndex = -1;
+        }
     }
 
     /**
@@ -268,7 +317,7 @@ public final class NodeGroupList implements Serializable, Iterable<NodeGroup<?,?
      * @param group given group
      */
     public void add(final NodeGroup<?,?> group) {
-        groups.add(group);
+        add(size, group);
     }
 
     /**
@@ -280,7 +329,25 @@ public final class NodeGroupList implements Serializable, Iterable<NodeGroup<?,?
      * @param group given group
      */
     public void add(final int index, final NodeGroup<?,?> group) {
-        groups.add(index, group);
+        if (index<0 || index>size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        if (size==groups.length) {
+            groups = Arrays.copyOf(groups, Math.max(4, 2 * size));
+        }
+        System.arraycopy(groups, index, groups, index + 1, size - index);
+        groups[index] = group;
+        size++;
+    }
+
+    /**
+     * Releases any spare capacity in this container. This is called once loading is done,
+     * as groups won't normally be added after that.
+     */
+    public void trimToSize() {
+        if (size<groups.length) {
+            groups = size > 0 ? Arrays.copyOf(groups, size) : EMPTY_GROUPS;
+        }
     }
 
     /**
@@ -295,13 +362,14 @@ public final class NodeGroupList implements Serializable, Iterable<NodeGroup<?,?
      * @throws QtiNodeGroupException if container already contains group with same name
      */
     public void addSafe(final int index, final NodeGroup<?,?> group) {
-        for (final NodeGroup<?,?> child : groups) {
+        for (int i=0; i<size; i++) {
+            final NodeGroup<?,?> child = groups[i];
             if (child.getName().equals(group.getName())) {
                 throw new QtiNodeGroupException("Duplicate node group name: " + group.computeXPath());
             }
         }
 
-        groups.add(index, group);
+        add(index, group);
     }
 
     /**
@@ -309,21 +377,27 @@ public final class NodeGroupList implements Serializable, Iterable<NodeGroup<?,?
      * <ul>
      * <li>Unsupported (unknown) children are skipped.</li>
      * <li>Wrong order of children is ignored (children are loaded in correct order).</li>
+     * <li>Content not required by the {@link ModelLoadingProfile} is skipped.</li>
      * </ul>
      *
      * @param element source DOM {@link Element}
      * @param context current {@link LoadingContext} callback
      */
     public void load(final Element element, final LoadingContext context) {
-        for (final NodeGroup<?,?> group : groups) {
-            group.getChildren().clear();
+        for (int i=0; i<size; i++) {
+            groups[i].getChildren().clear();
         }
+        final boolean skippingContent = !context.getModelLoadingProfile().isLoadingContent();
+        final boolean withinItemBodyContent = skippingContent && isWithinItemBodyContent();
         final NodeList childNodes = element.getChildNodes();
         for (int i=0; i<childNodes.getLength(); i++) {
             final Node childNode = childNodes.item(i);
+            if (skippingContent && isSkippableContent(childNode, withinItemBodyContent)) {
+                continue;
+            }
             boolean childLoaded = false;
-            for (final NodeGroup<?,?> group : groups) {
-                if (group.loadChildIfSupported(childNode, context)) {
+            for (int j=0; j<size; j++) {
+                if (groups[j].loadChildIfSupported(childNode, context)) {
                     childLoaded = true;
                     break;
                 }
@@ -340,13 +414,69 @@ public final class NodeGroupList implements Serializable, Iterable<NodeGroup<?,?
                 }
             }
         }
+
+        /* Release any spare capacity here and in the Lists of children, as these won't normally change again */
+        trimToSize();
+        for (int i=0; i<size; i++) {
+            final List<?> children = groups[i].getChildren();
+            if (children instanceof ArrayList) {
+                ((ArrayList<?>) children).trimToSize();
+            }
+        }
+    }
+
+    /**
+     * Returns whether the parent of this container is an {@link ItemBody}, or content
+     * within an {@link ItemBody} that is not part of an {@link Interaction}.
+     */
+    private boolean isWithinItemBodyContent() {
+        for (QtiNode node = parent; node!=null; node = node.getParent()) {
+            if (node instanceof Interaction) {
+                return false;
+            }
+            if (node instanceof ItemBody) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Decides whether the given child of the source DOM {@link Element} may be skipped
+     * when we're not loading content, as per {@link ModelLoadingProfile#PROCESSING}.
+     */
+    private static boolean isSkippableContent(final Node childNode, final boolean withinItemBodyContent) {
+        if (childNode.getNodeType()==Node.ELEMENT_NODE) {
+            final String localName = childNode.getLocalName();
+            if (ModalFeedback.QTI_CLASS_NAME.equals(localName)
+                    || Stylesheet.QTI_CLASS_NAME.equals(localName)
+                    || TestFeedback.QTI_CLASS_NAME.equals(localName)
+                    || RubricBlock.QTI_CLASS_NAME.equals(localName)) {
+                return true;
+            }
+            return withinItemBodyContent && !containsInteraction((Element) childNode);
+        }
+        return withinItemBodyContent && childNode.getNodeType()==Node.TEXT_NODE;
+    }
+
+    private static boolean containsInteraction(final Element element) {
+        if (ContentType.getInteractionTypeQtiClassNames().contains(element.getLocalName())) {
+            return true;
+        }
+        for (Node child = element.getFirstChild(); child!=null; child = child.getNextSibling()) {
+            if (child.getNodeType()==Node.ELEMENT_NODE && containsInteraction((Element) child)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
      * Removed all groups (children) from this container.
      */
     public void clear() {
-        groups.clear();
+        groups = EMPTY_GROUPS;
+        size = 0;
     }
 
     /**
@@ -356,7 +486,10 @@ public final class NodeGroupList implements Serializable, Iterable<NodeGroup<?,?
      * @return group at given index
      */
     public NodeGroup<?,?> get(final int index) {
-        return groups.get(index);
+        if (index<0 || index>=size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return groups[index];
     }
 
     /**
@@ -367,7 +500,8 @@ public final class NodeGroupList implements Serializable, Iterable<NodeGroup<?,?
      * @throws QtiNodeGroupException if group is not found
      */
     public NodeGroup<?,?> get(final String name) {
-        for (final NodeGroup<?,?> child : groups) {
+        for (int i=0; i<size; i++) {
+            final NodeGroup<?,?> child = groups[i];
             if (child.getName().equals(name) || child.supportsQtiClass(name)) {
                 return child;
             }
@@ -384,7 +518,8 @@ public final class NodeGroupList implements Serializable, Iterable<NodeGroup<?,?
      * @throws QtiNodeGroupException if group is not found
      */
     public NodeGroup<?,?> getGroupSupporting(final String qtiClassName) {
-        for (final NodeGroup<?,?> child : groups) {
+        for (int i=0; i<size; i++) {
+            final NodeGroup<?,?> child = groups[i];
             if (child.supportsQtiClass(qtiClassName)) {
                 return child;
             }
@@ -35,6 +35,7 @@ package uk.ac.ed.ph.jqtiplus.node;
 
 import uk.ac.ed.ph.jqtiplus.JqtiExtensionManager;
 import uk.ac.ed.ph.jqtiplus.exception.QtiModelException;
+import uk.ac.ed.ph.jqtiplus.reading.ModelLoadingProfile;
 
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -50,6 +51,12 @@ public interface LoadingContext {
 
     JqtiExtensionManager getJqtiExtensionManager();
 
+    /**
+     * Returns the {@link ModelLoadingProfile} being used, which determines
+     * which parts of the XML should be loaded.
+     */
+    ModelLoadingProfile getModelLoadingProfile();
+
     void modelBuildingError(QtiModelException exception, Node badNode);
 
 }
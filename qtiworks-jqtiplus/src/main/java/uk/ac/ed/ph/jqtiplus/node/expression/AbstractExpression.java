@@ -38,6 +38,8 @@ import uk.ac.ed.ph.jqtiplus.group.expression.ExpressionGroup;
 import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
 import uk.ac.ed.ph.jqtiplus.node.AbstractNode;
 import uk.ac.ed.ph.jqtiplus.notification.NotificationLevel;
+import uk.ac.ed.ph.jqtiplus.running.EvaluationBudget;
+import uk.ac.ed.ph.jqtiplus.running.EvaluationProfiler;
 import uk.ac.ed.ph.jqtiplus.running.ProcessingContext;
 import uk.ac.ed.ph.jqtiplus.validation.ValidationContext;
 import uk.ac.ed.ph.jqtiplus.value.BaseType;
@@ -373,16 +375,29 @@ public abstract class AbstractExpression extends AbstractNode implements Express
      * @see #evaluate(ProcessingContext)
      */
     protected Value evaluate(final ProcessingContext context, final int depth) {
-        Value result;
-        final boolean thisIsValid = context.isSubjectValid() || isThisExpressionValid(context);
-        if (thisIsValid) {
-            /* Expression is valid, so evaluate it */
-            result =  evaluateValidSelfAndChildren(context, depth);
+        Value result = null;
+        final EvaluationProfiler profiler = context.getEvaluationProfiler();
+        final long startNanos = profiler!=null ? profiler.enter() : 0L;
+        try {
+            final EvaluationBudget budget = context.getEvaluationBudget();
+            if (budget!=null) {
+                budget.step();
+            }
+            final boolean thisIsValid = context.isSubjectValid() || isThisExpressionValid(context);
+            if (thisIsValid) {
+                /* Expression is valid, so evaluate it */
+                result =  evaluateValidSelfAndChildren(context, depth);
+            }
+            else {
+                /* Expression is not valid, so register a warning and return NULL */
+                context.fireRuntimeWarning(this, "Expression is not valid and will not be evaluated. Returning NULL instead");
+                result = NullValue.INSTANCE;
+            }
         }
-        else {
-            /* Expression is not valid, so register a warning and return NULL */
-            context.fireRuntimeWarning(this, "Expression is not valid and will not be evaluated. Returning NULL instead");
-            result = NullValue.INSTANCE;
+        finally {
+            if (profiler!=null) {
+                profiler.exitExpression(this, startNanos, result);
+            }
         }
 
         /* Log result of evaluation. */
@@ -39,7 +39,9 @@ import uk.ac.ed.ph.jqtiplus.node.expression.ExpressionParent;
 import uk.ac.ed.ph.jqtiplus.node.item.response.declaration.ResponseDeclaration;
 import uk.ac.ed.ph.jqtiplus.node.shared.VariableDeclaration;
 import uk.ac.ed.ph.jqtiplus.node.shared.VariableType;
+import uk.ac.ed.ph.jqtiplus.running.ItemProcessingContext;
 import uk.ac.ed.ph.jqtiplus.running.ProcessingContext;
+import uk.ac.ed.ph.jqtiplus.state.MappingIndex;
 import uk.ac.ed.ph.jqtiplus.types.Identifier;
 import uk.ac.ed.ph.jqtiplus.validation.ValidationContext;
 import uk.ac.ed.ph.jqtiplus.value.Value;
@@ -110,6 +112,13 @@ public final class MapResponse extends AbstractFunctionalExpression {
         final ResponseDeclaration responseDeclaration = (ResponseDeclaration) context.ensureVariableDeclaration(referenceIdentifier, VariableType.RESPONSE);
         final Value responseValue = context.evaluateVariableValue(referenceIdentifier, VariableType.RESPONSE);
 
+        /* Use pre-computed index if running an item, falling back to the raw declaration otherwise */
+        if (context instanceof ItemProcessingContext) {
+            final MappingIndex mappingIndex = ((ItemProcessingContext) context).getItemProcessingMap().getMappingIndexMap().get(referenceIdentifier);
+            if (mappingIndex!=null) {
+                return mappingIndex.computeTargetValue(responseValue);
+            }
+        }
         return responseDeclaration.getMapping().computeTargetValue(responseValue);
     }
 }
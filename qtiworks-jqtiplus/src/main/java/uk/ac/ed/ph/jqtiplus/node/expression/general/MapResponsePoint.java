@@ -39,7 +39,9 @@ import uk.ac.ed.ph.jqtiplus.node.expression.ExpressionParent;
 import uk.ac.ed.ph.jqtiplus.node.item.response.declaration.ResponseDeclaration;
 import uk.ac.ed.ph.jqtiplus.node.shared.VariableDeclaration;
 import uk.ac.ed.ph.jqtiplus.node.shared.VariableType;
+import uk.ac.ed.ph.jqtiplus.running.ItemProcessingContext;
 import uk.ac.ed.ph.jqtiplus.running.ProcessingContext;
+import uk.ac.ed.ph.jqtiplus.state.AreaMappingIndex;
 import uk.ac.ed.ph.jqtiplus.types.Identifier;
 import uk.ac.ed.ph.jqtiplus.validation.ValidationContext;
 import uk.ac.ed.ph.jqtiplus.value.Value;
@@ -105,6 +107,13 @@ public final class MapResponsePoint extends AbstractFunctionalExpression {
         final ResponseDeclaration responseDeclaration = (ResponseDeclaration) context.ensureVariableDeclaration(responseIdentifier, VariableType.RESPONSE);
         final Value responseValue = context.evaluateVariableValue(responseIdentifier, VariableType.RESPONSE);
 
+        /* Use pre-computed index if running an item, falling back to the raw declaration otherwise */
+        if (context instanceof ItemProcessingContext) {
+            final AreaMappingIndex areaMappingIndex = ((ItemProcessingContext) context).getItemProcessingMap().getAreaMappingIndexMap().get(responseIdentifier);
+            if (areaMappingIndex!=null) {
+                return areaMappingIndex.computeTargetValue(responseValue);
+            }
+        }
         return responseDeclaration.getAreaMapping().getTargetValue(responseValue);
     }
 }
@@ -122,7 +122,7 @@ public class RandomFloat extends AbstractFunctionalExpression {
             return NullValue.INSTANCE;
         }
 
-        final Random randomGenerator = context.getRandomGenerator();
+        final Random randomGenerator = context.getRandomGenerator(this);
         final double randomNumber = randomGenerator.nextDouble();
         final double randomFloat = min + (max - min) * randomNumber;
 
@@ -139,7 +139,7 @@ public class RandomInteger extends AbstractFunctionalExpression {
 
     @Override
     protected Value evaluateValidSelf(final ProcessingContext context, final Value[] childValues, final int depth) {
-        final Random randomGenerator = context.getRandomGenerator();
+        final Random randomGenerator = context.getRandomGenerator(this);
 
         final int min = getMin().evaluateNotNull(this, context, "Computed value of min was NULL. Replacing with 0", 0);
         final int max = getMax().evaluateNotNull(this, context, "Computed value of max was NULL. Replacing with min+1", min+1);
@@ -118,6 +118,10 @@ public final class Delete extends AbstractSimpleFunctionalExpression {
 
         final SingleValue toDelete = (SingleValue) childValues[0];
         final ListValue source = (ListValue) childValues[1];
+        if (!source.contains(toDelete)) {
+            /* Nothing to delete, and values are immutable, so return source as-is */
+            return source;
+        }
 
         final List<SingleValue> toKeep = new ArrayList<SingleValue>(source.size());
         for (final SingleValue sourceValue : source) {
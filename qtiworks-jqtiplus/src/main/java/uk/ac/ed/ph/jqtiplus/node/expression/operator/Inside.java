@@ -115,17 +115,19 @@ public final class Inside extends AbstractSimpleFunctionalExpression {
 
         boolean result = false;
 
+        final Shape shape = getShape();
         final int[] coords = convertCoordinates(getCoordinates());
+        final int[] boundingBox = shape.getBoundingBox(coords);
 
         if (childValues[0].getCardinality().isSingle()) {
             final PointValue point = (PointValue) childValues[0];
-            result = getShape().isInside(coords, point);
+            result = Shape.isInsideBoundingBox(boundingBox, point) && shape.isInside(coords, point);
         }
         else {
             final ListValue list = (ListValue) childValues[0];
             for (int i = 0; i < list.size(); i++) {
                 final PointValue point = (PointValue) list.get(i);
-                if (getShape().isInside(coords, point)) {
+                if (Shape.isInsideBoundingBox(boundingBox, point) && shape.isInside(coords, point)) {
                     result = true;
                     break;
                 }
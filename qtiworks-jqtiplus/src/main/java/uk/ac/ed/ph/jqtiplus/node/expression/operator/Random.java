@@ -87,7 +87,7 @@ public class Random extends AbstractFunctionalExpression {
             return NullValue.INSTANCE;
         }
 
-        final java.util.Random randomGenerator = context.getRandomGenerator();
+        final java.util.Random randomGenerator = context.getRandomGenerator(this);
         final int randomIndex = randomGenerator.nextInt(((ListValue) childValues[0]).size());
 
         final Value value = ((ListValue) childValues[0]).get(randomIndex);
@@ -39,7 +39,6 @@ import uk.ac.ed.ph.jqtiplus.types.Stringifiable;
 import uk.ac.ed.ph.jqtiplus.validation.ValidationContext;
 import uk.ac.ed.ph.jqtiplus.value.PointValue;
 
-import java.math.BigDecimal;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -67,6 +66,11 @@ public enum Shape implements Stringifiable {
         public boolean isInside(final int[] coords, final PointValue point) {
             return true; //always true
         }
+
+        @Override
+        public int[] getBoundingBox(final int[] coords) {
+            return null; /* (Unbounded) */
+        }
     },
 
     /**
@@ -113,6 +117,14 @@ public enum Shape implements Stringifiable {
 
             return result;
         }
+
+        @Override
+        public int[] getBoundingBox(final int[] coords) {
+            if (coords.length < COORDS_LENGTH) {
+                return null;
+            }
+            return new int[] { coords[LEFT_X], coords[TOP_Y], coords[RIGHT_X], coords[BOTTOM_Y] };
+        }
     },
 
     /**
@@ -148,6 +160,16 @@ public enum Shape implements Stringifiable {
 
             return x + y <= Math.pow(coords[RADIUS], 2);
         }
+
+        @Override
+        public int[] getBoundingBox(final int[] coords) {
+            if (coords.length < COORDS_LENGTH) {
+                return null;
+            }
+            final int radius = Math.abs(coords[RADIUS]);
+            return new int[] { coords[CENTER_X] - radius, coords[CENTER_Y] - radius,
+                    coords[CENTER_X] + radius, coords[CENTER_Y] + radius };
+        }
     },
 
     /**
@@ -221,17 +243,18 @@ public enum Shape implements Stringifiable {
                 // Distance between a and B.
                 final double c = Math.sqrt(Math.pow(ax - bx, 2) + Math.pow(ay - by, 2));
 
-                // Computes angle ABC.
-                final double angle = Math.acos((Math.pow(a, 2) - Math.pow(b, 2) + Math.pow(c, 2)) /
-                        (2 * a * c)) * 180 / Math.PI;
-                // Orientation of angle. Positive: counter clockwise. Negative: clockwise.
-                final double sign = (cx - bx) * (by - ay) - (cy - by) * (bx - ax);
-
-                // If tested point (B) is same like first (A) or third (B) vertex, computed angle is NaN.
-                if (Double.isNaN(angle)) {
+                // If tested point (B) is same like first (A) or third (C) vertex, angle is undefined.
+                if (a == 0 || c == 0) {
                     return true;
                 }
 
+                // Computes angle ABC. (Cosine is clamped as rounding can take it just outside [-1,1],
+                // which would otherwise give a NaN angle.)
+                final double cosine = (Math.pow(a, 2) - Math.pow(b, 2) + Math.pow(c, 2)) / (2 * a * c);
+                final double angle = Math.acos(Math.max(-1.0, Math.min(1.0, cosine))) * 180 / Math.PI;
+                // Orientation of angle. Positive: counter clockwise. Negative: clockwise.
+                final double sign = (cx - bx) * (by - ay) - (cy - by) * (bx - ax);
+
                 // Adds/removes computed angle to/from sum.
                 if (sign >= 0) {
                     sum += angle;
@@ -241,12 +264,26 @@ public enum Shape implements Stringifiable {
                 }
             }
 
-            BigDecimal bigDecimal = new BigDecimal(sum);
-            // Rounds sum because of inaccuracy in computation.
-            bigDecimal = bigDecimal.setScale(6, BigDecimal.ROUND_HALF_UP);
+            // If and only if sum is zero, point is outside of polygon. The sum is otherwise a
+            // multiple of 180, so use a generous tolerance to absorb inaccuracy in computation.
+            // (Rounding to a fixed number of decimal places is not enough when the tested point
+            // is collinear with an edge.)
+            return Math.abs(sum) >= 1.0;
+        }
 
-            // If and only if sum is zero, point is outside of polygon.
-            return bigDecimal.doubleValue() != 0;
+        @Override
+        public int[] getBoundingBox(final int[] coords) {
+            if (coords.length < 2 || coords.length % 2 != 0) {
+                return null;
+            }
+            final int[] result = new int[] { coords[0], coords[1], coords[0], coords[1] };
+            for (int i = 2; i < coords.length; i += 2) {
+                result[0] = Math.min(result[0], coords[i]);
+                result[1] = Math.min(result[1], coords[i + 1]);
+                result[2] = Math.max(result[2], coords[i]);
+                result[3] = Math.max(result[3], coords[i + 1]);
+            }
+            return result;
         }
     },
 
@@ -290,6 +327,17 @@ public enum Shape implements Stringifiable {
 
             return x + y <= 1;
         }
+
+        @Override
+        public int[] getBoundingBox(final int[] coords) {
+            if (coords.length < COORDS_LENGTH) {
+                return null;
+            }
+            final int hRadius = Math.abs(coords[H_RADIUS]);
+            final int vRadius = Math.abs(coords[V_RADIUS]);
+            return new int[] { coords[CENTER_X] - hRadius, coords[CENTER_Y] - vRadius,
+                    coords[CENTER_X] + hRadius, coords[CENTER_Y] + vRadius };
+        }
     };
 
     /** Name of this class in xml schema. */
@@ -357,6 +405,35 @@ public enum Shape implements Stringifiable {
      */
     public abstract boolean isInside(int[] coords, PointValue point);
 
+    /**
+     * Returns the smallest rectangle containing this <code>Shape</code>, as an array of the form
+     * <code>{ left-x, top-y, right-x, bottom-y }</code> (with all bounds inclusive), or null if
+     * this <code>Shape</code> is unbounded or the given coordinates are unusable.
+     * <p>
+     * No point outside this rectangle is {@link #isInside(int[], PointValue)} this <code>Shape</code>,
+     * so it may be used as a cheap pre-test.
+     *
+     * @param coords coordinates of this shape
+     * @return bounding box, or null
+     */
+    public abstract int[] getBoundingBox(int[] coords);
+
+    /**
+     * Returns true if given <code>PointValue</code> lies within the given bounding box,
+     * as computed by {@link #getBoundingBox(int[])}. A null bounding box contains all points.
+     *
+     * @param boundingBox bounding box, which may be null
+     * @param point given <code>PointValue</code>
+     */
+    public static boolean isInsideBoundingBox(final int[] boundingBox, final PointValue point) {
+        if (boundingBox==null) {
+            return true;
+        }
+        final int x = point.horizontalValue();
+        final int y = point.verticalValue();
+        return x >= boundingBox[0] && x <= boundingBox[2] && y >= boundingBox[1] && y <= boundingBox[3];
+    }
+
     @Override
     public String toQtiString() {
         return shape;
@@ -150,7 +150,7 @@ public final class AreaMapping extends AbstractNode {
      * @return target value for given source value
      */
     public FloatValue getTargetValue(final Value sourceValue) {
-        if (sourceValue != null) {
+        if (!sourceValue.isNull()) {
             /*
              * The transformation is similar to mapResponse except that
              * the points are tested against each area in turn. When
@@ -36,6 +36,7 @@ package uk.ac.ed.ph.jqtiplus.node.item.response.processing;
 import uk.ac.ed.ph.jqtiplus.exception.QtiProcessingInterrupt;
 import uk.ac.ed.ph.jqtiplus.group.item.response.processing.ResponseRuleGroup;
 import uk.ac.ed.ph.jqtiplus.node.AbstractNode;
+import uk.ac.ed.ph.jqtiplus.running.EvaluationProfiler;
 import uk.ac.ed.ph.jqtiplus.running.ItemProcessingContext;
 import uk.ac.ed.ph.jqtiplus.validation.ValidationContext;
 
@@ -76,7 +77,7 @@ public abstract class ResponseConditionChild extends AbstractNode {
      */
     public boolean evaluate(final ItemProcessingContext context) throws QtiProcessingInterrupt {
         for (final ResponseRule responseRule : getResponseRules()) {
-            responseRule.evaluate(context);
+            EvaluationProfiler.evaluateRule(context, responseRule);
         }
         return true;
     }
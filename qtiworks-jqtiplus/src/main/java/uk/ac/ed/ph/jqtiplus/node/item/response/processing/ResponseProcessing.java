@@ -41,6 +41,7 @@ import uk.ac.ed.ph.jqtiplus.node.RootNode;
 import uk.ac.ed.ph.jqtiplus.node.item.AssessmentItem;
 import uk.ac.ed.ph.jqtiplus.resolution.ResolvedAssessmentItem;
 import uk.ac.ed.ph.jqtiplus.resolution.RootNodeLookup;
+import uk.ac.ed.ph.jqtiplus.running.EvaluationProfiler;
 import uk.ac.ed.ph.jqtiplus.running.ItemProcessingContext;
 import uk.ac.ed.ph.jqtiplus.validation.ItemValidationContext;
 import uk.ac.ed.ph.jqtiplus.validation.ValidationContext;
@@ -141,7 +142,7 @@ public final class ResponseProcessing extends AbstractNode implements RootNode {
     public void evaluate(final ItemProcessingContext context) {
         try {
             for (final ResponseRule responseRule : getResponseRules()) {
-                responseRule.evaluate(context);
+                EvaluationProfiler.evaluateRule(context, responseRule);
             }
         }
         catch (final QtiProcessingInterrupt interrupt) {
@@ -38,6 +38,7 @@ import uk.ac.ed.ph.jqtiplus.node.AbstractNode;
 import uk.ac.ed.ph.jqtiplus.node.QtiNode;
 import uk.ac.ed.ph.jqtiplus.notification.NotificationLevel;
 import uk.ac.ed.ph.jqtiplus.running.ItemProcessingContext;
+import uk.ac.ed.ph.jqtiplus.running.ProcessingRule;
 import uk.ac.ed.ph.jqtiplus.validation.ValidationContext;
 
 /**
@@ -45,7 +46,8 @@ import uk.ac.ed.ph.jqtiplus.validation.ValidationContext;
  *
  * @author Jonathon Hare
  */
-public abstract class ResponseRule extends AbstractNode {
+public abstract class ResponseRule extends AbstractNode
+        implements ProcessingRule<ItemProcessingContext, QtiProcessingInterrupt> {
 
     private static final long serialVersionUID = 128784008817352453L;
 
@@ -62,6 +64,7 @@ public abstract class ResponseRule extends AbstractNode {
         return context.clearCheckpoint()==0;
     }
 
+    @Override
     public abstract void evaluate(ItemProcessingContext context)
             throws QtiProcessingInterrupt;
 }
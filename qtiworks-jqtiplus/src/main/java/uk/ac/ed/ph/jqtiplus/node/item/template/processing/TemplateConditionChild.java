@@ -36,6 +36,7 @@ package uk.ac.ed.ph.jqtiplus.node.item.template.processing;
 import uk.ac.ed.ph.jqtiplus.exception.TemplateProcessingInterrupt;
 import uk.ac.ed.ph.jqtiplus.group.item.template.processing.TemplateRuleGroup;
 import uk.ac.ed.ph.jqtiplus.node.AbstractNode;
+import uk.ac.ed.ph.jqtiplus.running.EvaluationProfiler;
 import uk.ac.ed.ph.jqtiplus.running.ItemProcessingContext;
 import uk.ac.ed.ph.jqtiplus.validation.ValidationContext;
 
@@ -75,7 +76,7 @@ public abstract class TemplateConditionChild extends AbstractNode {
      */
     public boolean evaluate(final ItemProcessingContext context) throws TemplateProcessingInterrupt {
         for (final TemplateRule templateRule : getTemplateRules()) {
-            templateRule.evaluate(context);
+            EvaluationProfiler.evaluateRule(context, templateRule);
         }
         return true;
     }
@@ -36,6 +36,7 @@ package uk.ac.ed.ph.jqtiplus.node.test.outcome.processing;
 import uk.ac.ed.ph.jqtiplus.exception.QtiProcessingInterrupt;
 import uk.ac.ed.ph.jqtiplus.group.outcome.processing.OutcomeRuleGroup;
 import uk.ac.ed.ph.jqtiplus.node.AbstractNode;
+import uk.ac.ed.ph.jqtiplus.running.EvaluationProfiler;
 import uk.ac.ed.ph.jqtiplus.running.TestProcessingContext;
 import uk.ac.ed.ph.jqtiplus.validation.ValidationContext;
 
@@ -77,7 +78,7 @@ public abstract class OutcomeConditionChild extends AbstractNode {
      */
     public boolean evaluate(final TestProcessingContext context) throws QtiProcessingInterrupt {
         for (final OutcomeRule outcomeRule : getOutcomeRules()) {
-            outcomeRule.evaluate(context);
+            EvaluationProfiler.evaluateRule(context, outcomeRule);
         }
         return true;
     }
@@ -37,6 +37,7 @@ import uk.ac.ed.ph.jqtiplus.exception.QtiProcessingInterrupt;
 import uk.ac.ed.ph.jqtiplus.group.outcome.processing.OutcomeRuleGroup;
 import uk.ac.ed.ph.jqtiplus.node.AbstractNode;
 import uk.ac.ed.ph.jqtiplus.node.test.AssessmentTest;
+import uk.ac.ed.ph.jqtiplus.running.EvaluationProfiler;
 import uk.ac.ed.ph.jqtiplus.running.TestProcessingContext;
 import uk.ac.ed.ph.jqtiplus.validation.ValidationContext;
 
@@ -84,11 +85,24 @@ public final class OutcomeProcessing extends AbstractNode {
     public void evaluate(final TestProcessingContext context) {
         try {
             for (final OutcomeRule outcomeRule : getOutcomeRules()) {
-                outcomeRule.evaluate(context);
+                EvaluationProfiler.evaluateRule(context, outcomeRule);
             }
         }
         catch (final QtiProcessingInterrupt interrupt) {
             /* Terminate processing */
         }
     }
+
+    /**
+     * Evaluates only the child outcomeRule at the given index. This is used when
+     * performing outcome processing incrementally.
+     */
+    public void evaluateOutcomeRule(final TestProcessingContext context, final int index) {
+        try {
+            EvaluationProfiler.evaluateRule(context, getOutcomeRules().get(index));
+        }
+        catch (final QtiProcessingInterrupt interrupt) {
+            /* Terminate processing */
+        }
+    }
 }
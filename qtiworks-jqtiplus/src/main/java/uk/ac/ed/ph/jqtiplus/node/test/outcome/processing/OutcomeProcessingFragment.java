@@ -36,6 +36,7 @@ package uk.ac.ed.ph.jqtiplus.node.test.outcome.processing;
 import uk.ac.ed.ph.jqtiplus.exception.QtiProcessingInterrupt;
 import uk.ac.ed.ph.jqtiplus.group.outcome.processing.OutcomeRuleGroup;
 import uk.ac.ed.ph.jqtiplus.node.QtiNode;
+import uk.ac.ed.ph.jqtiplus.running.EvaluationProfiler;
 import uk.ac.ed.ph.jqtiplus.running.TestProcessingContext;
 import uk.ac.ed.ph.jqtiplus.validation.ValidationContext;
 
@@ -75,7 +76,7 @@ public final class OutcomeProcessingFragment extends OutcomeRule {
     @Override
     public void evaluate(final TestProcessingContext context) throws QtiProcessingInterrupt {
         for (final OutcomeRule outcomeRule : getOutcomeRules()) {
-            outcomeRule.evaluate(context);
+            EvaluationProfiler.evaluateRule(context, outcomeRule);
         }
     }
 }
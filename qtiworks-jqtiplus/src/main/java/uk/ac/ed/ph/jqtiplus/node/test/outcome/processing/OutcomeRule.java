@@ -37,6 +37,7 @@ import uk.ac.ed.ph.jqtiplus.exception.QtiProcessingInterrupt;
 import uk.ac.ed.ph.jqtiplus.node.AbstractNode;
 import uk.ac.ed.ph.jqtiplus.node.QtiNode;
 import uk.ac.ed.ph.jqtiplus.notification.NotificationLevel;
+import uk.ac.ed.ph.jqtiplus.running.ProcessingRule;
 import uk.ac.ed.ph.jqtiplus.running.TestProcessingContext;
 import uk.ac.ed.ph.jqtiplus.validation.ValidationContext;
 
@@ -45,7 +46,8 @@ import uk.ac.ed.ph.jqtiplus.validation.ValidationContext;
  *
  * @author Jiri Kajaba
  */
-public abstract class OutcomeRule extends AbstractNode {
+public abstract class OutcomeRule extends AbstractNode
+        implements ProcessingRule<TestProcessingContext, QtiProcessingInterrupt> {
 
     private static final long serialVersionUID = -3607422796688416928L;
 
@@ -67,5 +69,6 @@ public abstract class OutcomeRule extends AbstractNode {
      *
      * @throws QtiProcessingInterrupt
      */
+    @Override
     public abstract void evaluate(TestProcessingContext context) throws QtiProcessingInterrupt;
 }
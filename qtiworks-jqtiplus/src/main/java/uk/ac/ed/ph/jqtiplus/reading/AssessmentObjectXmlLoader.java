@@ -33,23 +33,30 @@
  */
 package uk.ac.ed.ph.jqtiplus.reading;
 
+import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
 import uk.ac.ed.ph.jqtiplus.node.item.AssessmentItem;
 import uk.ac.ed.ph.jqtiplus.node.test.AssessmentTest;
 import uk.ac.ed.ph.jqtiplus.resolution.AssessmentObjectResolver;
 import uk.ac.ed.ph.jqtiplus.resolution.ResolvedAssessmentItem;
 import uk.ac.ed.ph.jqtiplus.resolution.ResolvedAssessmentTest;
 import uk.ac.ed.ph.jqtiplus.validation.AssessmentObjectValidator;
+import uk.ac.ed.ph.jqtiplus.validation.ItemValidationCache;
 import uk.ac.ed.ph.jqtiplus.validation.ItemValidationResult;
 import uk.ac.ed.ph.jqtiplus.validation.TestValidationResult;
 import uk.ac.ed.ph.jqtiplus.xmlutils.locators.ResourceLocator;
 
 import java.net.URI;
+import java.util.concurrent.Executor;
 
 /**
  * Convenient facade for loading, resolving and validating {@link AssessmentItem}s
  * and {@link AssessmentTest}s from XML using a {@link QtiXmlReader} for the low
  * level XML parsing and a {@link ResourceLocator} for locating and finding the
  * required XML resources.
+ * <p>
+ * The load and resolve methods use the {@link ModelLoadingProfile} passed at construction time
+ * (defaulting to {@link ModelLoadingProfile#FULL}). The validation methods always use
+ * {@link ModelLoadingProfile#FULL} so that errors can be reported with source locations.
  *
  * @see QtiXmlReader
  * @see ResourceLocator
@@ -60,10 +67,22 @@ public final class AssessmentObjectXmlLoader {
 
     private final QtiXmlReader qtiXmlReader;
     private final ResourceLocator inputResourceLocator;
+    private final ModelLoadingProfile modelLoadingProfile;
+    private Executor itemValidationExecutor;
+    private ItemValidationCache itemValidationCache;
 
     public AssessmentObjectXmlLoader(final QtiXmlReader qtiXmlReader, final ResourceLocator inputResourceLocator) {
+        this(qtiXmlReader, inputResourceLocator, ModelLoadingProfile.FULL);
+    }
+
+    public AssessmentObjectXmlLoader(final QtiXmlReader qtiXmlReader, final ResourceLocator inputResourceLocator,
+            final ModelLoadingProfile modelLoadingProfile) {
+        Assert.notNull(modelLoadingProfile, "modelLoadingProfile");
         this.qtiXmlReader = qtiXmlReader;
         this.inputResourceLocator = inputResourceLocator;
+        this.modelLoadingProfile = modelLoadingProfile;
+        this.itemValidationExecutor = null;
+        this.itemValidationCache = null;
     }
 
     public QtiXmlReader getQtiXmlReader() {
@@ -74,19 +93,51 @@ public final class AssessmentObjectXmlLoader {
         return inputResourceLocator;
     }
 
+    public ModelLoadingProfile getModelLoadingProfile() {
+        return modelLoadingProfile;
+    }
+
+    public Executor getItemValidationExecutor() {
+        return itemValidationExecutor;
+    }
+
+    /**
+     * Sets an {@link Executor} to use for validating the items within a test in parallel.
+     *
+     * @see AssessmentObjectValidator#setItemValidationExecutor(Executor)
+     */
+    public void setItemValidationExecutor(final Executor itemValidationExecutor) {
+        this.itemValidationExecutor = itemValidationExecutor;
+    }
+
+    public ItemValidationCache getItemValidationCache() {
+        return itemValidationCache;
+    }
+
+    /**
+     * Sets an {@link ItemValidationCache} to use for skipping model validation of items that
+     * are already known to be valid.
+     *
+     * @see AssessmentObjectValidator#setItemValidationCache(ItemValidationCache)
+     */
+    public void setItemValidationCache(final ItemValidationCache itemValidationCache) {
+        this.itemValidationCache = itemValidationCache;
+    }
+
     //-------------------------------------------------------------------
     // AssessmentItem resolution & validation
 
     public ResolvedAssessmentItem loadAndResolveAssessmentItem(final URI systemId) {
-        final QtiObjectReader qtiObjectReader = qtiXmlReader.createQtiObjectReader(inputResourceLocator, false);
+        final QtiObjectReader qtiObjectReader = qtiXmlReader.createQtiObjectReader(inputResourceLocator, false, modelLoadingProfile);
         final AssessmentObjectResolver assessmentObjectResolver = new AssessmentObjectResolver(qtiObjectReader);
         return assessmentObjectResolver.resolveAssessmentItem(systemId);
     }
 
     public ItemValidationResult loadResolveAndValidateItem(final URI systemId) {
-        final QtiObjectReader qtiObjectReader = qtiXmlReader.createQtiObjectReader(inputResourceLocator, true);
+        final QtiObjectReader qtiObjectReader = qtiXmlReader.createQtiObjectReader(inputResourceLocator, true, ModelLoadingProfile.FULL);
         final ResolvedAssessmentItem resolvedAssessmentItem = new AssessmentObjectResolver(qtiObjectReader).resolveAssessmentItem(systemId);
         final AssessmentObjectValidator assessmentObjectValidator = new AssessmentObjectValidator(qtiObjectReader.getJqtiExtensionManager());
+        assessmentObjectValidator.setItemValidationCache(itemValidationCache);
         return assessmentObjectValidator.validateItem(resolvedAssessmentItem);
     }
 
@@ -94,15 +145,17 @@ public final class AssessmentObjectXmlLoader {
     // AssessmentTest resolution & validation
 
     public ResolvedAssessmentTest loadAndResolveAssessmentTest(final URI systemId) {
-        final QtiObjectReader qtiObjectReader = qtiXmlReader.createQtiObjectReader(inputResourceLocator, false);
+        final QtiObjectReader qtiObjectReader = qtiXmlReader.createQtiObjectReader(inputResourceLocator, false, modelLoadingProfile);
         final AssessmentObjectResolver assessmentObjectResolver = new AssessmentObjectResolver(qtiObjectReader);
         return assessmentObjectResolver.resolveAssessmentTest(systemId);
     }
 
     public TestValidationResult loadResolveAndValidateTest(final URI systemId) {
-        final QtiObjectReader qtiObjectReader = qtiXmlReader.createQtiObjectReader(inputResourceLocator, true);
+        final QtiObjectReader qtiObjectReader = qtiXmlReader.createQtiObjectReader(inputResourceLocator, true, ModelLoadingProfile.FULL);
         final ResolvedAssessmentTest resolvedAssessmentTest = new AssessmentObjectResolver(qtiObjectReader).resolveAssessmentTest(systemId);
         final AssessmentObjectValidator assessmentObjectValidator = new AssessmentObjectValidator(qtiObjectReader.getJqtiExtensionManager());
+        assessmentObjectValidator.setItemValidationExecutor(itemValidationExecutor);
+        assessmentObjectValidator.setItemValidationCache(itemValidationCache);
         return assessmentObjectValidator.validateTest(resolvedAssessmentTest);
     }
 
@@ -113,6 +166,9 @@ public final class AssessmentObjectXmlLoader {
         return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this))
                 + "(qtiXmlReader=" + qtiXmlReader
                 + ",inputResourceLocator=" + inputResourceLocator
+                + ",modelLoadingProfile=" + modelLoadingProfile
+                + ",itemValidationExecutor=" + itemValidationExecutor
+                + ",itemValidationCache=" + itemValidationCache
                 + ")";
     }
 }
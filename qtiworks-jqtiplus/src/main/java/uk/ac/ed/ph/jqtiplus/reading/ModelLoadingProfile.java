@@ -0,0 +1,110 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.reading;
+
+import uk.ac.ed.ph.jqtiplus.node.QtiNode;
+import uk.ac.ed.ph.jqtiplus.node.content.ItemBody;
+import uk.ac.ed.ph.jqtiplus.node.content.variable.RubricBlock;
+import uk.ac.ed.ph.jqtiplus.node.item.ModalFeedback;
+import uk.ac.ed.ph.jqtiplus.node.item.Stylesheet;
+import uk.ac.ed.ph.jqtiplus.node.item.interaction.Interaction;
+import uk.ac.ed.ph.jqtiplus.node.test.TestFeedback;
+import uk.ac.ed.ph.jqtiplus.xmlutils.XmlSourceLocationInformation;
+
+/**
+ * Enumerates the different ways in which a {@link QtiObjectReader} may build up a
+ * JQTI+ Object model from XML.
+ * <p>
+ * The default profile is {@link #FULL}, which records as much information as possible
+ * and is what you want when validating. Delivery-time loads can use one of the leaner
+ * profiles to reduce parsing cost and the size of the resulting Object model. Batch
+ * processing jobs that never render anything can use {@link #PROCESSING}.
+ *
+ * @see QtiObjectReader
+ * @see AssessmentObjectXmlLoader
+ *
+ * @author David McKain
+ */
+public enum ModelLoadingProfile {
+
+    /**
+     * Builds the full Object model, recording {@link XmlSourceLocationInformation} for
+     * each {@link QtiNode}. This is required for useful validation error reporting.
+     */
+    FULL(true, true),
+
+    /**
+     * Builds the full Object model but does not record any {@link XmlSourceLocationInformation},
+     * so {@link QtiNode#getSourceLocation()} will always return null. This is suitable for
+     * candidate delivery.
+     */
+    DELIVERY(false, true),
+
+    /**
+     * Builds only the parts of the Object model needed for processing (e.g. scoring or
+     * simulation), without recording any {@link XmlSourceLocationInformation}.
+     * <p>
+     * This omits {@link ModalFeedback}s, {@link Stylesheet}s, {@link TestFeedback}s and
+     * {@link RubricBlock}s completely. Within an {@link ItemBody}, only the {@link Interaction}s
+     * and the content Nodes enclosing them are kept, so the resulting model is NOT suitable
+     * for rendering. (If you need the content later, simply read the same system ID again
+     * using one of the other profiles.)
+     * <p>
+     * Illegal content that is skipped in this way will not generate model building errors.
+     */
+    PROCESSING(false, false),
+
+    ;
+
+    private final boolean recordingSourceLocations;
+    private final boolean loadingContent;
+
+    private ModelLoadingProfile(final boolean recordingSourceLocations, final boolean loadingContent) {
+        this.recordingSourceLocations = recordingSourceLocations;
+        this.loadingContent = loadingContent;
+    }
+
+    public boolean isRecordingSourceLocations() {
+        return recordingSourceLocations;
+    }
+
+    /**
+     * Returns whether content that is only needed for rendering (rather than processing)
+     * should be loaded.
+     */
+    public boolean isLoadingContent() {
+        return loadingContent;
+    }
+
+}
@@ -58,12 +58,16 @@ public final class QtiObjectReadResult<E extends RootNode> implements RootNodeHo
     /** This will be either the QTI 2.1 or QTI 2.0 namespace */
     private final String qtiNamespaceUri;
 
+    /** {@link ModelLoadingProfile} used to build the {@link RootNode} */
+    private final ModelLoadingProfile modelLoadingProfile;
+
     QtiObjectReadResult(final Class<E> requestedRootNodeClass, final XmlParseResult xmlParseResult,
-            final String qtiNamespace, final E rootNode) {
+            final String qtiNamespace, final ModelLoadingProfile modelLoadingProfile, final E rootNode) {
         this.requestedRootNodeClass = requestedRootNodeClass;
         this.rootNode = rootNode;
         this.xmlParseResult = xmlParseResult;
         this.qtiNamespaceUri = qtiNamespace;
+        this.modelLoadingProfile = modelLoadingProfile;
     }
 
     @Override
@@ -85,12 +89,22 @@ public final class QtiObjectReadResult<E extends RootNode> implements RootNodeHo
         return qtiNamespaceUri;
     }
 
+    /**
+     * Returns the {@link ModelLoadingProfile} used to build the resulting {@link RootNode}.
+     * If this is {@link ModelLoadingProfile#PROCESSING} then the {@link RootNode} will not
+     * contain any content that is only needed for rendering.
+     */
+    public ModelLoadingProfile getModelLoadingProfile() {
+        return modelLoadingProfile;
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this))
                 + "(rootNodeClass=" + requestedRootNodeClass
                 + ",xmlParseResult=" + xmlParseResult
                 + ",qtiNamespaceUri=" + qtiNamespaceUri
+                + ",modelLoadingProfile=" + modelLoadingProfile
                 + ",rootNode=" + rootNode
                 + ")";
     }
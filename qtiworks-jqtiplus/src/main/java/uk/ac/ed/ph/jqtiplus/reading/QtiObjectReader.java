@@ -56,6 +56,8 @@ import uk.ac.ed.ph.jqtiplus.xmlutils.XmlResourceReaderException;
 import uk.ac.ed.ph.jqtiplus.xmlutils.locators.ChainedResourceLocator;
 import uk.ac.ed.ph.jqtiplus.xmlutils.locators.ResourceLocator;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
@@ -71,6 +73,7 @@ import org.w3c.dom.Node;
  * instantiate QTI {@link RootNode}s by parsing (and optionally schema-validating) XML.
  * <p>
  * Instantiate this via {@link QtiXmlReader#createQtiObjectReader(ResourceLocator, boolean)}
+ * or {@link QtiXmlReader#createQtiObjectReader(ResourceLocator, boolean, ModelLoadingProfile)}
  *
  * @author David McKain
  */
@@ -81,11 +84,14 @@ public final class QtiObjectReader implements RootNodeProvider {
     private final QtiXmlReader qtiXmlReader;
     private final ResourceLocator inputResourceLocator;
     private final boolean schemaValidating;
+    private final ModelLoadingProfile modelLoadingProfile;
 
-    QtiObjectReader(final QtiXmlReader qtiXmlReader, final ResourceLocator inputResourceLocator, final boolean schemaValidating) {
+    QtiObjectReader(final QtiXmlReader qtiXmlReader, final ResourceLocator inputResourceLocator, final boolean schemaValidating,
+            final ModelLoadingProfile modelLoadingProfile) {
         this.qtiXmlReader = qtiXmlReader;
         this.inputResourceLocator = inputResourceLocator;
         this.schemaValidating = schemaValidating;
+        this.modelLoadingProfile = modelLoadingProfile;
     }
 
     public QtiXmlReader getQtiXmlReader() {
@@ -100,6 +106,10 @@ public final class QtiObjectReader implements RootNodeProvider {
         return schemaValidating;
     }
 
+    public ModelLoadingProfile getModelLoadingProfile() {
+        return modelLoadingProfile;
+    }
+
     //--------------------------------------------------------------------------
 
     @Override
@@ -143,10 +153,54 @@ public final class QtiObjectReader implements RootNodeProvider {
      *             if any of the required schemas could not be located.
      */
     @Override
+    @SuppressWarnings("unchecked")
     public <E extends RootNode> QtiObjectReadResult<E> lookupRootNode(final URI systemId, final Class<E> requiredRootNodeClass)
             throws XmlResourceNotFoundException, QtiXmlInterpretationException {
         Assert.notNull(systemId, "systemId");
         Assert.notNull(requiredRootNodeClass, "requiredRootNodeClass");
+
+        /* See if this might be a well-known resource that has already been read and shared */
+        final SharedQtiObjectCache sharedQtiObjectCache = qtiXmlReader.getSharedQtiObjectCache();
+        final String scheme = systemId.getScheme();
+        if (sharedQtiObjectCache==null || !("http".equals(scheme) || "https".equals(scheme))) {
+            return doLookupRootNode(systemId, requiredRootNodeClass);
+        }
+        final String cacheKey = systemId + " " + requiredRootNodeClass.getName()
+                + " " + schemaValidating + " " + modelLoadingProfile;
+        final QtiObjectReadResult<?> cachedResult = sharedQtiObjectCache.get(cacheKey);
+        if (cachedResult!=null) {
+            logger.debug("Shared QTI Object cache hit for system ID {}", systemId);
+            return (QtiObjectReadResult<E>) cachedResult;
+        }
+        final QtiObjectReadResult<E> result = doLookupRootNode(systemId, requiredRootNodeClass);
+        if (isBundledResource(systemId)) {
+            logger.debug("Storing QTI Object read from system ID {} in shared cache", systemId);
+            sharedQtiObjectCache.put(cacheKey, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns whether the resource having the given System ID is bundled within the
+     * {@link QtiXmlReader#JQTIPLUS_PARSER_RESOURCE_LOCATOR}. (This takes precedence over
+     * the {@link #inputResourceLocator} when reading, so such resources are immutable.)
+     */
+    private static boolean isBundledResource(final URI systemId) {
+        final InputStream bundledStream = QtiXmlReader.JQTIPLUS_PARSER_RESOURCE_LOCATOR.findResource(systemId);
+        if (bundledStream==null) {
+            return false;
+        }
+        try {
+            bundledStream.close();
+        }
+        catch (final IOException e) {
+            logger.warn("Could not close bundled resource stream for " + systemId, e);
+        }
+        return true;
+    }
+
+    private <E extends RootNode> QtiObjectReadResult<E> doLookupRootNode(final URI systemId, final Class<E> requiredRootNodeClass)
+            throws XmlResourceNotFoundException, QtiXmlInterpretationException {
         logger.debug("Attempting to read QTI Object at system ID {}, requiring result result class {}", systemId, requiredRootNodeClass);
 
         /* We'll create a chained resource locator using the one used to locate parser resources first, as this
@@ -156,7 +210,8 @@ public final class QtiObjectReader implements RootNodeProvider {
         final ChainedResourceLocator resourceLocator = new ChainedResourceLocator(QtiXmlReader.JQTIPLUS_PARSER_RESOURCE_LOCATOR, inputResourceLocator);
 
         /* Parse XML */
-        final XmlReadResult xmlReadResult = qtiXmlReader.read(resourceLocator, systemId, schemaValidating);
+        final XmlReadResult xmlReadResult = qtiXmlReader.read(resourceLocator, systemId, schemaValidating,
+                modelLoadingProfile.isRecordingSourceLocations());
         final XmlParseResult xmlParseResult = xmlReadResult.getXmlParseResult();
         final Document document = xmlReadResult.getDocument();
         if (document==null) {
@@ -209,7 +264,7 @@ public final class QtiObjectReader implements RootNodeProvider {
 
         /* Success! */
         final QtiObjectReadResult<E> result = new QtiObjectReadResult<E>(requiredRootNodeClass,
-                xmlParseResult, rootNamespaceUri,
+                xmlParseResult, rootNamespaceUri, modelLoadingProfile,
                 requiredRootNodeClass.cast(rootNode));
         logger.debug("Result of QTI Object read from system ID {} is {}", systemId, result);
         return result;
@@ -234,6 +289,11 @@ public final class QtiObjectReader implements RootNodeProvider {
             return qtiXmlReader.getJqtiExtensionManager();
         }
 
+        @Override
+        public ModelLoadingProfile getModelLoadingProfile() {
+            return modelLoadingProfile;
+        }
+
         @Override
         public void modelBuildingError(final QtiModelException exception, final Node errorNode) {
             qtiModelBuildingErrors.add(new QtiModelBuildingError(exception, errorNode.getLocalName(),
@@ -246,6 +306,8 @@ public final class QtiObjectReader implements RootNodeProvider {
         return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this))
                 + "(qtiXmlReader=" + qtiXmlReader
                 + ",inputResourceLocator=" + inputResourceLocator
+                + ",schemaValidating=" + schemaValidating
+                + ",modelLoadingProfile=" + modelLoadingProfile
                 + ")";
     }
 }
@@ -47,7 +47,9 @@ import uk.ac.ed.ph.jqtiplus.xmlutils.locators.ClassPathHttpResourceLocator;
 import uk.ac.ed.ph.jqtiplus.xmlutils.locators.ResourceLocator;
 
 import java.net.URI;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -87,6 +89,9 @@ public final class QtiXmlReader {
 
     private final JqtiExtensionManager jqtiExtensionManager;
 
+    /** Optional cache of well-known resources, shared between all {@link QtiObjectReader}s */
+    private final SharedQtiObjectCache sharedQtiObjectCache;
+
     /** Delegating {@link XmlResourceReader} */
     private final XmlResourceReader xmlResourceReader;
 
@@ -99,6 +104,18 @@ public final class QtiXmlReader {
     }
 
     public QtiXmlReader(final JqtiExtensionManager jqtiExtensionManager, final SchemaCache schemaCache) {
+        this(jqtiExtensionManager, schemaCache, null);
+    }
+
+    /**
+     * @param jqtiExtensionManager {@link JqtiExtensionManager} to use, which must not be null
+     * @param schemaCache optional {@link SchemaCache} used to cache compiled schemas, which may be null
+     * @param sharedQtiObjectCache optional {@link SharedQtiObjectCache} used to share well-known resources
+     *   (such as response processing templates) between all {@link QtiObjectReader}s created by this reader,
+     *   which may be null
+     */
+    public QtiXmlReader(final JqtiExtensionManager jqtiExtensionManager, final SchemaCache schemaCache,
+            final SharedQtiObjectCache sharedQtiObjectCache) {
         Assert.notNull(jqtiExtensionManager, "jqtiExtensionManager");
 
         /* Merge extension schemas with core QTI 2.0 and 2.1 schemas */
@@ -115,6 +132,7 @@ public final class QtiXmlReader {
         resultingSchemaMapTemplate.put(QtiConstants.MATHML_3_NAMESPACE_URI_2010, QtiConstants.MATHML_3_SCHEMA_LOCATION);
 
         this.jqtiExtensionManager = jqtiExtensionManager;
+        this.sharedQtiObjectCache = sharedQtiObjectCache;
         this.xmlResourceReader = new XmlResourceReader(JQTIPLUS_PARSER_RESOURCE_LOCATOR, resultingSchemaMapTemplate, schemaCache);
     }
 
@@ -126,6 +144,27 @@ public final class QtiXmlReader {
         return xmlResourceReader.getSchemaCache();
     }
 
+    public SharedQtiObjectCache getSharedQtiObjectCache() {
+        return sharedQtiObjectCache;
+    }
+
+    /**
+     * Compiles the core QTI schemas in advance so that subsequent validating reads of standalone
+     * QTI documents don't have to wait for them. (MathML and extension schemas are only ever used
+     * in combination with a QTI schema, so are compiled on demand as before.)
+     * <p>
+     * This does nothing if this reader was not created with a {@link SchemaCache}.
+     *
+     * @throws XmlResourceReaderException if any of the schemas could not be located.
+     */
+    public void preloadSchemas() {
+        final List<String> schemaUris = Arrays.asList(QtiConstants.QTI_22_SCHEMA_LOCATION,
+                QtiConstants.QTI_21_SCHEMA_LOCATION,
+                QtiConstants.QTI_RESULT_21_SCHEMA_LOCATION,
+                QtiConstants.QTI_20_SCHEMA_LOCATION);
+        xmlResourceReader.preloadSchemas(schemaUris);
+    }
+
     //--------------------------------------------------
 
     /**
@@ -143,19 +182,43 @@ public final class QtiXmlReader {
     public XmlReadResult read(final ResourceLocator inputResourceLocator, final URI systemId,
             final boolean performSchemaValidation)
             throws XmlResourceNotFoundException {
+        return read(inputResourceLocator, systemId, performSchemaValidation, true);
+    }
+
+    /**
+     * Variant of {@link #read(ResourceLocator, URI, boolean)} that allows the recording of
+     * source location information in the resulting DOM to be turned off.
+     *
+     * @param recordingLocations whether to record source location information in the resulting DOM
+     *
+     * @see XmlResourceReader#read(URI, ResourceLocator, ResourceLocator, boolean, boolean)
+     */
+    public XmlReadResult read(final ResourceLocator inputResourceLocator, final URI systemId,
+            final boolean performSchemaValidation, final boolean recordingLocations)
+            throws XmlResourceNotFoundException {
         Assert.notNull(inputResourceLocator, "inputResourceLocator");
         Assert.notNull(systemId, "systemId");
         final ResourceLocator entityResourceLocator = new ChainedResourceLocator(JQTIPLUS_PARSER_RESOURCE_LOCATOR, inputResourceLocator);
-        return xmlResourceReader.read(systemId, inputResourceLocator, entityResourceLocator, performSchemaValidation);
+        return xmlResourceReader.read(systemId, inputResourceLocator, entityResourceLocator, performSchemaValidation, recordingLocations);
     }
 
     /**
      * Creates a new {@link QtiObjectReader} from this reader and the given
-     * input {@link ResourceLocator}.
+     * input {@link ResourceLocator}, using the {@link ModelLoadingProfile#FULL} profile.
      */
     public QtiObjectReader createQtiObjectReader(final ResourceLocator inputResourceLocator, final boolean schemaValidating) {
+        return createQtiObjectReader(inputResourceLocator, schemaValidating, ModelLoadingProfile.FULL);
+    }
+
+    /**
+     * Creates a new {@link QtiObjectReader} from this reader and the given
+     * input {@link ResourceLocator}, using the given {@link ModelLoadingProfile}.
+     */
+    public QtiObjectReader createQtiObjectReader(final ResourceLocator inputResourceLocator, final boolean schemaValidating,
+            final ModelLoadingProfile modelLoadingProfile) {
         Assert.notNull(inputResourceLocator, "inputResourceLocator");
-        return new QtiObjectReader(this, inputResourceLocator, schemaValidating);
+        Assert.notNull(modelLoadingProfile, "modelLoadingProfile");
+        return new QtiObjectReader(this, inputResourceLocator, schemaValidating, modelLoadingProfile);
     }
 
     //--------------------------------------------------
@@ -165,6 +228,7 @@ public final class QtiXmlReader {
         return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this))
                 + "(jqtiExtensionManager=" + jqtiExtensionManager
                 + ",schemaCache=" + getSchemaCache()
+                + ",sharedQtiObjectCache=" + sharedQtiObjectCache
                 + ")";
     }
 }
@@ -0,0 +1,129 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.reading;
+
+import uk.ac.ed.ph.jqtiplus.node.RootNode;
+import uk.ac.ed.ph.jqtiplus.resolution.AssessmentObjectResolver;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Thread-safe, size-bounded cache of {@link QtiObjectReadResult}s for immutable, well-known
+ * resources, such as the standard response processing templates bundled in the
+ * {@link QtiXmlReader#JQTIPLUS_PARSER_RESOURCE_LOCATOR}.
+ * <p>
+ * Pass one of these to {@link QtiXmlReader} and it will be shared by all of the
+ * {@link QtiObjectReader}s (and hence all {@link AssessmentObjectResolver}s) created from it,
+ * so that such resources are only parsed and built once per process rather than once per
+ * resolution. Least recently used entries are evicted once the cache is full.
+ * <p>
+ * The {@link RootNode}s in this cache will be shared, so MUST NOT be modified.
+ *
+ * @author David McKain
+ */
+public final class SharedQtiObjectCache {
+
+    public static final int DEFAULT_MAX_SIZE = 64;
+
+    private final int maxSize;
+    private final Map<String, QtiObjectReadResult<?>> cacheData;
+    private int hitCount;
+    private int missCount;
+
+    public SharedQtiObjectCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public SharedQtiObjectCache(final int maxSize) {
+        if (maxSize<1) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        this.maxSize = maxSize;
+        this.cacheData = new LinkedHashMap<String, QtiObjectReadResult<?>>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 6410383102932981213L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, QtiObjectReadResult<?>> eldest) {
+                return size() > SharedQtiObjectCache.this.maxSize;
+            }
+        };
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized int size() {
+        return cacheData.size();
+    }
+
+    public synchronized int getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return missCount;
+    }
+
+    public synchronized void clear() {
+        cacheData.clear();
+    }
+
+    synchronized QtiObjectReadResult<?> get(final String key) {
+        final QtiObjectReadResult<?> result = cacheData.get(key);
+        if (result!=null) {
+            hitCount++;
+        }
+        else {
+            missCount++;
+        }
+        return result;
+    }
+
+    synchronized void put(final String key, final QtiObjectReadResult<?> result) {
+        cacheData.put(key, result);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this))
+                + "(maxSize=" + maxSize
+                + ",size=" + cacheData.size()
+                + ",hitCount=" + hitCount
+                + ",missCount=" + missCount
+                + ")";
+    }
+}
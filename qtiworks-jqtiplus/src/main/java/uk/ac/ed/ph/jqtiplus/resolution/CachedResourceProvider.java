@@ -40,6 +40,8 @@ import uk.ac.ed.ph.jqtiplus.provision.BadResourceException;
 import uk.ac.ed.ph.jqtiplus.provision.ResourceNotFoundException;
 import uk.ac.ed.ph.jqtiplus.provision.RootNodeHolder;
 import uk.ac.ed.ph.jqtiplus.provision.RootNodeProvider;
+import uk.ac.ed.ph.jqtiplus.reading.QtiXmlReader;
+import uk.ac.ed.ph.jqtiplus.reading.SharedQtiObjectCache;
 
 import java.net.URI;
 import java.util.HashMap;
@@ -51,6 +53,10 @@ import org.slf4j.LoggerFactory;
 /**
  * Helper class that caches the results of calls to {@link AssessmentObjectResolver} during
  * resolution so that we only need to build once.
+ * <p>
+ * This cache only lives for a single resolution. (Well-known resources such as response
+ * processing templates can also be shared across resolutions by giving the underlying
+ * {@link QtiXmlReader} a {@link SharedQtiObjectCache}.)
  *
  * @author David McKain
  */
@@ -0,0 +1,151 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.running;
+
+import uk.ac.ed.ph.jqtiplus.exception.QtiEvaluationBudgetException;
+import uk.ac.ed.ph.jqtiplus.exception.QtiEvaluationBudgetException.BudgetType;
+import uk.ac.ed.ph.jqtiplus.node.expression.Expression;
+
+/**
+ * Enforces a maximum number of {@link Expression} evaluation steps and/or a wall-clock
+ * deadline on a single run of template, response or outcome processing, so that a
+ * pathological item or test can't tie up the current thread indefinitely.
+ * <p>
+ * The processing controllers call {@link #start()} and {@link #stop()} around each
+ * processing run. Each {@link Expression} calls {@link #step()} before evaluating itself,
+ * which throws a {@link QtiEvaluationBudgetException} once either limit has been exceeded.
+ * Steps taken outside a processing run are not counted.
+ * <p>
+ * Usage: an instance of this class may only be used by a single Thread.
+ *
+ * @see ItemSessionControllerSettings#setEvaluationStepLimit(int)
+ * @see ItemSessionControllerSettings#setEvaluationTimeLimit(long)
+ *
+ * @author David McKain
+ */
+public final class EvaluationBudget {
+
+    /** Number of steps taken between successive checks of the clock */
+    private static final int CLOCK_CHECK_INTERVAL = 64;
+
+    /** Maximum number of steps per run, or zero for no limit */
+    private final int stepLimit;
+
+    /** Maximum duration of each run in milliseconds, or zero for no limit */
+    private final long timeLimit;
+
+    private boolean running;
+    private int stepCount;
+    private long deadlineNanos;
+
+    public EvaluationBudget(final int stepLimit, final long timeLimit) {
+        this.stepLimit = Math.max(stepLimit, 0);
+        this.timeLimit = Math.max(timeLimit, 0L);
+        this.running = false;
+        this.stepCount = 0;
+        this.deadlineNanos = 0L;
+    }
+
+    /**
+     * Creates an {@link EvaluationBudget} having the given limits, returning null if
+     * no limits have actually been set.
+     */
+    public static EvaluationBudget create(final int stepLimit, final long timeLimit) {
+        return stepLimit > 0 || timeLimit > 0L ? new EvaluationBudget(stepLimit, timeLimit) : null;
+    }
+
+    public int getStepLimit() {
+        return stepLimit;
+    }
+
+    public long getTimeLimit() {
+        return timeLimit;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public int getStepCount() {
+        return stepCount;
+    }
+
+    //-------------------------------------------------------------------
+
+    /**
+     * Starts a new processing run, resetting the step count and deadline.
+     */
+    public void start() {
+        this.running = true;
+        this.stepCount = 0;
+        this.deadlineNanos = timeLimit > 0L ? System.nanoTime() + timeLimit * 1000000L : 0L;
+    }
+
+    /**
+     * Ends the current processing run. Subsequent steps will not be counted
+     * until {@link #start()} is called again.
+     */
+    public void stop() {
+        this.running = false;
+    }
+
+    /**
+     * Records a single evaluation step.
+     *
+     * @throws QtiEvaluationBudgetException if this step exceeds either of the limits.
+     */
+    public void step() {
+        if (!running) {
+            return;
+        }
+        ++stepCount;
+        if (stepLimit > 0 && stepCount > stepLimit) {
+            throw new QtiEvaluationBudgetException(BudgetType.STEPS, stepLimit);
+        }
+        if (timeLimit > 0L && stepCount % CLOCK_CHECK_INTERVAL == 0
+                && System.nanoTime() - deadlineNanos > 0L) {
+            throw new QtiEvaluationBudgetException(BudgetType.TIME, timeLimit);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this))
+                + "(stepLimit=" + stepLimit
+                + ",timeLimit=" + timeLimit
+                + ",running=" + running
+                + ",stepCount=" + stepCount
+                + ")";
+    }
+}
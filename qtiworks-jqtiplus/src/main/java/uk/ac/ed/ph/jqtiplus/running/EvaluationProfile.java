@@ -0,0 +1,99 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.running;
+
+import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
+import uk.ac.ed.ph.jqtiplus.running.EvaluationProfileEntry.EntryType;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Snapshot of the data recorded by an {@link EvaluationProfiler}, listing an
+ * {@link EvaluationProfileEntry} for each expression and rule that was evaluated,
+ * ordered by decreasing self time.
+ * <p>
+ * This is immutable.
+ *
+ * @see ItemSessionController#getEvaluationProfile()
+ * @see TestSessionController#getEvaluationProfile()
+ *
+ * @author David McKain
+ */
+public final class EvaluationProfile implements Serializable {
+
+    private static final long serialVersionUID = -6211417010263744816L;
+
+    private final List<EvaluationProfileEntry> entries;
+
+    public EvaluationProfile(final List<EvaluationProfileEntry> entries) {
+        this.entries = Collections.unmodifiableList(entries);
+    }
+
+    public List<EvaluationProfileEntry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Returns the total time spent evaluating the profiled rules and expressions, in nanoseconds.
+     * (This is the sum of the self times of every entry, so is not affected by the nesting
+     * of rules and expressions.)
+     */
+    public long getTotalNanos() {
+        long result = 0L;
+        for (final EvaluationProfileEntry entry : entries) {
+            result += entry.getSelfNanos();
+        }
+        return result;
+    }
+
+    /**
+     * Returns the total number of evaluations of entries having the given type.
+     */
+    public long getInvocationCount(final EntryType entryType) {
+        long result = 0L;
+        for (final EvaluationProfileEntry entry : entries) {
+            if (entry.getEntryType()==entryType) {
+                result += entry.getInvocationCount();
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return ObjectUtilities.beanToString(this);
+    }
+}
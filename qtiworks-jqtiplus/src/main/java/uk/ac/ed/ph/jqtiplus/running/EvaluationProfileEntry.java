@@ -0,0 +1,147 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.running;
+
+import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
+import uk.ac.ed.ph.jqtiplus.node.expression.Expression;
+
+import java.io.Serializable;
+import java.net.URI;
+import java.util.Comparator;
+
+/**
+ * Encapsulates the profiling data recorded for a single {@link Expression} or processing
+ * rule within an {@link EvaluationProfile}.
+ * <p>
+ * This is immutable.
+ *
+ * @see EvaluationProfiler
+ *
+ * @author David McKain
+ */
+public final class EvaluationProfileEntry implements Serializable {
+
+    private static final long serialVersionUID = 3466327581009516420L;
+
+    /** Type of node that was profiled */
+    public static enum EntryType {
+        EXPRESSION,
+        RULE,
+        ;
+    }
+
+    /** Orders entries by decreasing self time */
+    public static final Comparator<EvaluationProfileEntry> SELF_TIME_COMPARATOR = new Comparator<EvaluationProfileEntry>() {
+
+        @Override
+        public int compare(final EvaluationProfileEntry o1, final EvaluationProfileEntry o2) {
+            return o1.selfNanos > o2.selfNanos ? -1 : (o1.selfNanos < o2.selfNanos ? 1 : 0);
+        }
+    };
+
+    private final EntryType entryType;
+    private final URI systemId;
+    private final String xPath;
+    private final String qtiClassName;
+    private final long invocationCount;
+    private final long totalNanos;
+    private final long selfNanos;
+    private final long nullResultCount;
+    private final long singleValueCount;
+
+    public EvaluationProfileEntry(final EntryType entryType, final URI systemId, final String xPath,
+            final String qtiClassName, final long invocationCount, final long totalNanos,
+            final long selfNanos, final long nullResultCount, final long singleValueCount) {
+        this.entryType = entryType;
+        this.systemId = systemId;
+        this.xPath = xPath;
+        this.qtiClassName = qtiClassName;
+        this.invocationCount = invocationCount;
+        this.totalNanos = totalNanos;
+        this.selfNanos = selfNanos;
+        this.nullResultCount = nullResultCount;
+        this.singleValueCount = singleValueCount;
+    }
+
+    public EntryType getEntryType() {
+        return entryType;
+    }
+
+    /** Returns the System ID of the item or test containing the profiled node */
+    public URI getSystemId() {
+        return systemId;
+    }
+
+    /** Returns an XPath-like expression locating the profiled node within its item or test */
+    public String getXPath() {
+        return xPath;
+    }
+
+    public String getQtiClassName() {
+        return qtiClassName;
+    }
+
+    public long getInvocationCount() {
+        return invocationCount;
+    }
+
+    /** Returns the total time spent evaluating this node, including its children */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /** Returns the time spent evaluating this node, excluding its children */
+    public long getSelfNanos() {
+        return selfNanos;
+    }
+
+    /** Returns the number of times an {@link Expression} returned NULL. (Always 0 for rules.) */
+    public long getNullResultCount() {
+        return nullResultCount;
+    }
+
+    /**
+     * Returns the total number of single values produced by an {@link Expression}, counting
+     * each member of a container separately. This gives an indication of the number of
+     * values allocated during evaluation. (Always 0 for rules.)
+     */
+    public long getSingleValueCount() {
+        return singleValueCount;
+    }
+
+    @Override
+    public String toString() {
+        return ObjectUtilities.beanToString(this);
+    }
+}
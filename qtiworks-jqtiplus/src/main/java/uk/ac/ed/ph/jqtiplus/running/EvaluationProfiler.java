@@ -0,0 +1,238 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.running;
+
+import uk.ac.ed.ph.jqtiplus.exception.QtiProcessingInterrupt;
+import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
+import uk.ac.ed.ph.jqtiplus.node.QtiNode;
+import uk.ac.ed.ph.jqtiplus.node.RootNode;
+import uk.ac.ed.ph.jqtiplus.node.expression.Expression;
+import uk.ac.ed.ph.jqtiplus.running.EvaluationProfileEntry.EntryType;
+import uk.ac.ed.ph.jqtiplus.value.ListValue;
+import uk.ac.ed.ph.jqtiplus.value.RecordValue;
+import uk.ac.ed.ph.jqtiplus.value.Value;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Collects invocation counts, timings and result sizes for the {@link Expression}s and
+ * processing rules evaluated during template, response and outcome processing.
+ * <p>
+ * A profiler is only created when profiling has been enabled via
+ * {@link ItemSessionControllerSettings#setProfilingEnabled(boolean)} or
+ * {@link TestSessionControllerSettings#setProfilingEnabled(boolean)}, and is made available
+ * to nodes via {@link ProcessingContext#getEvaluationProfiler()}. When profiling is
+ * disabled there is no overhead beyond a null check.
+ * <p>
+ * Timings are recorded both inclusively (i.e. including the time spent in child expressions
+ * and rules) and exclusively ("self" time). Use {@link #buildProfile()} to obtain an
+ * {@link EvaluationProfile} snapshot of the data recorded so far.
+ * <p>
+ * Usage: an instance of this class may only be used by a single Thread.
+ *
+ * @see EvaluationProfile
+ *
+ * @author David McKain
+ */
+public final class EvaluationProfiler {
+
+    /** Statistics recorded for each profiled node, keyed on node identity */
+    private final Map<QtiNode, NodeStatistics> statisticsMap;
+
+    /** Cumulative time spent in the children of each node currently being evaluated */
+    private long[] childNanosStack;
+
+    /** Current depth within {@link #childNanosStack}. (-1 means nothing is being evaluated) */
+    private int depth;
+
+    public EvaluationProfiler() {
+        this.statisticsMap = new IdentityHashMap<QtiNode, NodeStatistics>();
+        this.childNanosStack = new long[16];
+        this.depth = -1;
+    }
+
+    /**
+     * Evaluates the given {@link ProcessingRule} within the given {@link ProcessingContext},
+     * recording the evaluation with the context's {@link EvaluationProfiler} if profiling
+     * has been enabled.
+     */
+    public static <C extends ProcessingContext, E extends QtiProcessingInterrupt>
+    void evaluateRule(final C context, final ProcessingRule<C, E> rule) throws E {
+        final EvaluationProfiler profiler = context.getEvaluationProfiler();
+        if (profiler==null) {
+            rule.evaluate(context);
+            return;
+        }
+        final long startNanos = profiler.enter();
+        try {
+            rule.evaluate(context);
+        }
+        finally {
+            profiler.exitRule(rule, startNanos);
+        }
+    }
+
+    /**
+     * Call this immediately before a node is evaluated. The result should be passed back
+     * to {@link #exitExpression(Expression, long, Value)} or {@link #exitRule(QtiNode, long)}
+     * once evaluation has finished, which must happen even if evaluation fails.
+     *
+     * @return start time of the evaluation, in nanoseconds
+     */
+    public long enter() {
+        depth++;
+        if (depth==childNanosStack.length) {
+            childNanosStack = Arrays.copyOf(childNanosStack, depth * 2);
+        }
+        childNanosStack[depth] = 0L;
+        return System.nanoTime();
+    }
+
+    /**
+     * Records the evaluation of the given {@link Expression}.
+     *
+     * @param expression expression that was evaluated, which must not be null
+     * @param startNanos value returned by the corresponding call to {@link #enter()}
+     * @param result result of the evaluation, which may be null if evaluation failed
+     */
+    public void exitExpression(final Expression expression, final long startNanos, final Value result) {
+        Assert.notNull(expression, "expression");
+        final NodeStatistics statistics = exit(expression, EntryType.EXPRESSION, startNanos);
+        if (result==null || result.isNull()) {
+            statistics.nullResultCount++;
+        }
+        else {
+            statistics.singleValueCount += countSingleValues(result);
+        }
+    }
+
+    /**
+     * Records the evaluation of the given processing rule.
+     *
+     * @param rule rule that was evaluated, which must not be null
+     * @param startNanos value returned by the corresponding call to {@link #enter()}
+     */
+    public void exitRule(final QtiNode rule, final long startNanos) {
+        Assert.notNull(rule, "rule");
+        exit(rule, EntryType.RULE, startNanos);
+    }
+
+    private NodeStatistics exit(final QtiNode node, final EntryType entryType, final long startNanos) {
+        final long elapsedNanos = System.nanoTime() - startNanos;
+        final long childNanos = childNanosStack[depth];
+        depth--;
+        if (depth >= 0) {
+            childNanosStack[depth] += elapsedNanos;
+        }
+
+        NodeStatistics statistics = statisticsMap.get(node);
+        if (statistics==null) {
+            statistics = new NodeStatistics(entryType);
+            statisticsMap.put(node, statistics);
+        }
+        statistics.invocationCount++;
+        statistics.totalNanos += elapsedNanos;
+        statistics.selfNanos += elapsedNanos - childNanos;
+        return statistics;
+    }
+
+    private static int countSingleValues(final Value value) {
+        if (value instanceof ListValue) {
+            return ((ListValue) value).size();
+        }
+        else if (value instanceof RecordValue) {
+            return ((RecordValue) value).size();
+        }
+        return 1;
+    }
+
+    /**
+     * Discards all data recorded so far.
+     */
+    public void reset() {
+        statisticsMap.clear();
+        depth = -1;
+    }
+
+    /**
+     * Builds an {@link EvaluationProfile} containing the data recorded so far, with entries
+     * ordered by decreasing self time.
+     */
+    public EvaluationProfile buildProfile() {
+        final List<EvaluationProfileEntry> entries = new ArrayList<EvaluationProfileEntry>(statisticsMap.size());
+        for (final Entry<QtiNode, NodeStatistics> mapEntry : statisticsMap.entrySet()) {
+            final QtiNode node = mapEntry.getKey();
+            final NodeStatistics statistics = mapEntry.getValue();
+            final RootNode rootNode = node.getRootNode();
+            final URI systemId = rootNode!=null ? rootNode.getSystemId() : null;
+            entries.add(new EvaluationProfileEntry(statistics.entryType, systemId,
+                    node.computeXPath(), node.getQtiClassName(),
+                    statistics.invocationCount, statistics.totalNanos, statistics.selfNanos,
+                    statistics.nullResultCount, statistics.singleValueCount));
+        }
+        Collections.sort(entries, EvaluationProfileEntry.SELF_TIME_COMPARATOR);
+        return new EvaluationProfile(entries);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "@" + hashCode()
+                + "(nodeCount=" + statisticsMap.size()
+                + ",depth=" + depth
+                + ")";
+    }
+
+    //-------------------------------------------------------------------
+
+    private static final class NodeStatistics {
+
+        final EntryType entryType;
+        long invocationCount;
+        long totalNanos;
+        long selfNanos;
+        long nullResultCount;
+        long singleValueCount;
+
+        NodeStatistics(final EntryType entryType) {
+            this.entryType = entryType;
+        }
+    }
+}
@@ -36,6 +36,7 @@ package uk.ac.ed.ph.jqtiplus.running;
 import uk.ac.ed.ph.jqtiplus.exception.QtiInvalidLookupException;
 import uk.ac.ed.ph.jqtiplus.node.item.AssessmentItem;
 import uk.ac.ed.ph.jqtiplus.node.item.response.declaration.ResponseDeclaration;
+import uk.ac.ed.ph.jqtiplus.state.ItemProcessingMap;
 import uk.ac.ed.ph.jqtiplus.state.ItemSessionState;
 import uk.ac.ed.ph.jqtiplus.types.Identifier;
 import uk.ac.ed.ph.jqtiplus.validation.ItemValidationContext;
@@ -57,6 +58,11 @@ public interface ItemProcessingContext extends ProcessingContext, ItemValidation
      */
     ItemSessionState getItemSessionState();
 
+    /**
+     * Returns the {@link ItemProcessingMap} for the item being processed.
+     */
+    ItemProcessingMap getItemProcessingMap();
+
     /**
      * Computes the current default value of the variable having the
      * given {@link Identifier}. The result will be not null (though may be a {@link NullValue}).
@@ -39,6 +39,7 @@ import uk.ac.ed.ph.jqtiplus.exception.QtiCandidateStateException;
 import uk.ac.ed.ph.jqtiplus.exception.QtiInvalidLookupException;
 import uk.ac.ed.ph.jqtiplus.exception.QtiLogicException;
 import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
+import uk.ac.ed.ph.jqtiplus.node.QtiNode;
 import uk.ac.ed.ph.jqtiplus.node.item.CorrectResponse;
 import uk.ac.ed.ph.jqtiplus.node.item.response.declaration.ResponseDeclaration;
 import uk.ac.ed.ph.jqtiplus.node.item.template.declaration.TemplateDeclaration;
@@ -58,6 +59,8 @@ import uk.ac.ed.ph.jqtiplus.value.NullValue;
 import uk.ac.ed.ph.jqtiplus.value.Signature;
 import uk.ac.ed.ph.jqtiplus.value.Value;
 
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.Random;
 
 /**
@@ -78,7 +81,12 @@ public class ItemProcessingController extends ItemValidationController implement
     protected final ItemSessionState itemSessionState;
 
     private Long randomSeed;
+    private RandomSource randomSource;
     private Random randomGenerator;
+    private final Map<QtiNode, Random> callSiteRandomGenerators;
+    private EvaluationProfiler evaluationProfiler;
+    private EvaluationBudget evaluationBudget;
+    private ItemSessionStateChangeListener itemSessionStateChangeListener;
 
     public ItemProcessingController(final JqtiExtensionManager jqtiExtensionManager,
             final ItemProcessingMap itemProcessingMap, final ItemSessionState itemSessionState) {
@@ -88,7 +96,12 @@ public class ItemProcessingController extends ItemValidationController implement
         this.itemProcessingMap = itemProcessingMap;
         this.itemSessionState = itemSessionState;
         this.randomSeed = null;
+        this.randomSource = null;
         this.randomGenerator = null;
+        this.callSiteRandomGenerators = new IdentityHashMap<QtiNode, Random>();
+        this.evaluationProfiler = null;
+        this.evaluationBudget = null;
+        this.itemSessionStateChangeListener = null;
     }
 
     @Override
@@ -96,6 +109,11 @@ public class ItemProcessingController extends ItemValidationController implement
         return itemSessionState;
     }
 
+    @Override
+    public ItemProcessingMap getItemProcessingMap() {
+        return itemProcessingMap;
+    }
+
     @Override
     public boolean isSubjectValid() {
         return itemProcessingMap.isValid();
@@ -107,19 +125,102 @@ public class ItemProcessingController extends ItemValidationController implement
         return randomSeed;
     }
 
+    /**
+     * Sets the seed used for random values generated by this item, or null to use a random seed.
+     */
     public void setRandomSeed(final Long randomSeed) {
         this.randomSeed = randomSeed;
+        this.randomSource = null;
         this.randomGenerator = null;
+        this.callSiteRandomGenerators.clear();
+    }
+
+    /**
+     * Returns the {@link RandomSource} from which all random values generated by this item
+     * are derived.
+     */
+    public RandomSource getRandomSource() {
+        if (randomSource==null) {
+            randomSource = RandomSource.create(randomSeed);
+        }
+        return randomSource;
     }
 
     @Override
     public Random getRandomGenerator() {
         if (randomGenerator==null) {
-            randomGenerator = randomSeed!=null ? new Random(randomSeed) : new Random();
+            randomGenerator = getRandomSource().createRandom();
         }
         return randomGenerator;
     }
 
+    @Override
+    public Random getRandomGenerator(final QtiNode callSite) {
+        Assert.notNull(callSite, "callSite");
+        Random result = callSiteRandomGenerators.get(callSite);
+        if (result==null) {
+            result = getRandomSource().split(callSite).createRandom();
+            callSiteRandomGenerators.put(callSite, result);
+        }
+        return result;
+    }
+
+    //-------------------------------------------------------------------
+
+    @Override
+    public EvaluationProfiler getEvaluationProfiler() {
+        return evaluationProfiler;
+    }
+
+    /**
+     * Sets the {@link EvaluationProfiler} to use when evaluating expressions and rules.
+     * Set this to null to disable profiling.
+     */
+    public void setEvaluationProfiler(final EvaluationProfiler evaluationProfiler) {
+        this.evaluationProfiler = evaluationProfiler;
+    }
+
+    /**
+     * Returns an {@link EvaluationProfile} containing the data recorded so far, or null
+     * if profiling has not been enabled.
+     */
+    public EvaluationProfile getEvaluationProfile() {
+        return evaluationProfiler!=null ? evaluationProfiler.buildProfile() : null;
+    }
+
+    @Override
+    public EvaluationBudget getEvaluationBudget() {
+        return evaluationBudget;
+    }
+
+    /**
+     * Sets the {@link EvaluationBudget} to enforce during each processing run.
+     * Set this to null to remove all limits.
+     */
+    public void setEvaluationBudget(final EvaluationBudget evaluationBudget) {
+        this.evaluationBudget = evaluationBudget;
+    }
+
+    //-------------------------------------------------------------------
+
+    public ItemSessionStateChangeListener getItemSessionStateChangeListener() {
+        return itemSessionStateChangeListener;
+    }
+
+    /**
+     * Sets an {@link ItemSessionStateChangeListener} to be notified before this controller
+     * changes the {@link ItemSessionState}. Set this to null to remove any existing listener.
+     */
+    public void setItemSessionStateChangeListener(final ItemSessionStateChangeListener itemSessionStateChangeListener) {
+        this.itemSessionStateChangeListener = itemSessionStateChangeListener;
+    }
+
+    protected final void fireItemSessionStateChanging() {
+        if (itemSessionStateChangeListener!=null) {
+            itemSessionStateChangeListener.itemSessionStateChanging(this);
+        }
+    }
+
     //-------------------------------------------------------------------
     // Interaction binding callbacks
 
@@ -262,6 +363,7 @@ public class ItemProcessingController extends ItemValidationController implement
     public final void setVariableValue(final VariableDeclaration variableDeclaration, final Value value) {
         Assert.notNull(variableDeclaration);
         Assert.notNull(value);
+        fireItemSessionStateChanging();
         final Identifier identifier = variableDeclaration.getIdentifier();
         if (VariableDeclaration.isReservedIdentifier(identifier)) {
             if (QtiConstants.VARIABLE_COMPLETION_STATUS_IDENTIFIER.equals(identifier)) {
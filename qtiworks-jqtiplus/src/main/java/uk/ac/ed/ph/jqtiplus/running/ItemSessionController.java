@@ -38,6 +38,7 @@ import uk.ac.ed.ph.jqtiplus.JqtiExtensionPackage;
 import uk.ac.ed.ph.jqtiplus.JqtiLifecycleEventType;
 import uk.ac.ed.ph.jqtiplus.QtiConstants;
 import uk.ac.ed.ph.jqtiplus.exception.QtiCandidateStateException;
+import uk.ac.ed.ph.jqtiplus.exception.QtiEvaluationBudgetException;
 import uk.ac.ed.ph.jqtiplus.exception.QtiLogicException;
 import uk.ac.ed.ph.jqtiplus.exception.ResponseBindingException;
 import uk.ac.ed.ph.jqtiplus.exception.TemplateProcessingInterrupt;
@@ -70,6 +71,8 @@ import uk.ac.ed.ph.jqtiplus.node.test.TemplateDefault;
 import uk.ac.ed.ph.jqtiplus.resolution.RootNodeLookup;
 import uk.ac.ed.ph.jqtiplus.state.ItemProcessingMap;
 import uk.ac.ed.ph.jqtiplus.state.ItemSessionState;
+import uk.ac.ed.ph.jqtiplus.state.TemplateVariant;
+import uk.ac.ed.ph.jqtiplus.state.TemplateVariantPool;
 import uk.ac.ed.ph.jqtiplus.types.Identifier;
 import uk.ac.ed.ph.jqtiplus.types.ResponseData;
 import uk.ac.ed.ph.jqtiplus.value.BooleanValue;
@@ -87,6 +90,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Random;
 import java.util.Set;
 
 import org.slf4j.Logger;
@@ -129,6 +133,9 @@ public final class ItemSessionController extends ItemProcessingController implem
 
     private static final Logger logger = LoggerFactory.getLogger(ItemSessionController.class);
 
+    /** Discriminator used to split off the {@link RandomSource} for shuffling interactions */
+    private static final String SHUFFLE_RANDOM_SOURCE_KEY = "shuffle";
+
     private final ItemSessionControllerSettings itemSessionControllerSettings;
 
     public ItemSessionController(final JqtiExtensionManager jqtiExtensionManager,
@@ -137,6 +144,11 @@ public final class ItemSessionController extends ItemProcessingController implem
         super(jqtiExtensionManager, itemProcessingMap, itemSessionState);
         Assert.notNull(itemSessionControllerSettings, "itemSessionControllerSettings");
         this.itemSessionControllerSettings = new ItemSessionControllerSettings(itemSessionControllerSettings); /* (Private copy) */
+        if (itemSessionControllerSettings.isProfilingEnabled()) {
+            setEvaluationProfiler(new EvaluationProfiler());
+        }
+        setEvaluationBudget(EvaluationBudget.create(itemSessionControllerSettings.getEvaluationStepLimit(),
+                itemSessionControllerSettings.getEvaluationTimeLimit()));
     }
 
     public ItemSessionControllerSettings getItemSessionControllerSettings() {
@@ -171,6 +183,7 @@ public final class ItemSessionController extends ItemProcessingController implem
      */
     public void initialize(final Date timestamp) {
         Assert.notNull(timestamp);
+        fireItemSessionStateChanging();
         logger.debug("Initializing item {}", item.getSystemId());
 
         /* Reset all state */
@@ -190,15 +203,24 @@ public final class ItemSessionController extends ItemProcessingController implem
         updateClosedStatus(timestamp);
     }
 
+    /**
+     * Shuffles each {@link Shuffleable} interaction using its own random stream. These are keyed on
+     * the interaction's responseIdentifier rather than its location in the document, as the latter
+     * depends on the {@link uk.ac.ed.ph.jqtiplus.reading.ModelLoadingProfile} used.
+     */
     private void shuffleInteractions() {
+        final RandomSource shuffleRandomSource = getRandomSource().split(SHUFFLE_RANDOM_SOURCE_KEY);
         for (final Interaction interaction : itemProcessingMap.getInteractions()) {
             if (interaction instanceof Shuffleable<?>) {
-                shuffleInteraction((Shuffleable<?>) interaction, interaction.getResponseIdentifier());
+                final Identifier responseIdentifier = interaction.getResponseIdentifier();
+                shuffleInteraction((Shuffleable<?>) interaction, responseIdentifier,
+                        shuffleRandomSource.split(responseIdentifier.toString()).createRandom());
             }
         }
     }
 
-    private <C extends Choice> void shuffleInteraction(final Shuffleable<C> interaction, final Identifier responseIdentfier) {
+    private <C extends Choice> void shuffleInteraction(final Shuffleable<C> interaction, final Identifier responseIdentfier,
+            final Random random) {
         if (interaction.getShuffle()) {
             final List<List<C>> choiceLists = interaction.computeShuffleableChoices();
             final List<Identifier> choiceIdentifiers = new ArrayList<Identifier>();
@@ -214,7 +236,7 @@ public final class ItemSessionController extends ItemProcessingController implem
                 }
 
                 /* Perform shuffle */
-                Collections.shuffle(shuffleableChoiceIdentifiers);
+                Collections.shuffle(shuffleableChoiceIdentifiers, random);
 
                 /* Then merge fixed identifiers back in */
                 for (int i = 0, sortedIndex = 0; i < choiceList.size(); i++) {
@@ -298,6 +320,7 @@ public final class ItemSessionController extends ItemProcessingController implem
     public void performTemplateProcessing(final Date timestamp, final List<TemplateDefault> templateDefaults) {
         Assert.notNull(timestamp);
         assertItemNotEntered();
+        fireItemSessionStateChanging();
         logger.debug("Template processing starting on item {}", item.getSystemId());
 
         fireJqtiLifecycleEvent(JqtiLifecycleEventType.ITEM_TEMPLATE_PROCESSING_STARTING);
@@ -318,11 +341,26 @@ public final class ItemSessionController extends ItemProcessingController implem
                 }
             }
 
+            /* Use a pre-generated variant if available, unless we've been given explicit defaults */
+            final TemplateVariantPool templateVariantPool = itemSessionControllerSettings.getTemplateVariantPool();
+            if (templateVariantPool!=null && (templateDefaults==null || templateDefaults.isEmpty())) {
+                applyTemplateVariant(templateVariantPool.drawTemplateVariant(getRandomGenerator()));
+                resetOutcomeAndResponseVariables();
+                updateClosedStatus(timestamp);
+                return;
+            }
+
             /* Perform template processing as many times as required. */
             int templateProcessingAttemptNumber = 0;
             boolean templateProcessingCompleted = false;
-            while (!templateProcessingCompleted) {
-                templateProcessingCompleted = doTemplateProcessingRun(++templateProcessingAttemptNumber);
+            startEvaluationBudget();
+            try {
+                while (!templateProcessingCompleted) {
+                    templateProcessingCompleted = doTemplateProcessingRun(++templateProcessingAttemptNumber);
+                }
+            }
+            finally {
+                stopEvaluationBudget();
             }
             if (templateProcessingAttemptNumber>1) {
                 fireRuntimeInfo(item, "Template Processing was run " + templateProcessingAttemptNumber + " times in order to satisfy templateConstraint");
@@ -338,6 +376,23 @@ public final class ItemSessionController extends ItemProcessingController implem
         }
     }
 
+    private void applyTemplateVariant(final TemplateVariant templateVariant) {
+        logger.trace("Applying pre-generated template variant {}", templateVariant);
+        initTemplateVariables();
+        for (final Entry<Identifier, Value> entry : templateVariant.getTemplateValues().entrySet()) {
+            itemSessionState.setTemplateValue(entry.getKey(), entry.getValue());
+        }
+        for (final Entry<Identifier, Value> entry : templateVariant.getOverriddenResponseDefaultValues().entrySet()) {
+            itemSessionState.setOverriddenResponseDefaultValue(entry.getKey(), entry.getValue());
+        }
+        for (final Entry<Identifier, Value> entry : templateVariant.getOverriddenOutcomeDefaultValues().entrySet()) {
+            itemSessionState.setOverriddenOutcomeDefaultValue(entry.getKey(), entry.getValue());
+        }
+        for (final Entry<Identifier, Value> entry : templateVariant.getOverriddenCorrectResponseValues().entrySet()) {
+            itemSessionState.setOverriddenCorrectResponseValue(entry.getKey(), entry.getValue());
+        }
+    }
+
     private void resetOutcomeAndResponseVariables() {
         initOutcomeVariables();
         initResponseState();
@@ -362,7 +417,7 @@ public final class ItemSessionController extends ItemProcessingController implem
             logger.trace("Evaluating template processing rules");
             try {
                 for (final TemplateProcessingRule templateProcessingRule : templateProcessing.getTemplateProcessingRules()) {
-                    templateProcessingRule.evaluate(this);
+                    EvaluationProfiler.evaluateRule(this, templateProcessingRule);
                 }
             }
             catch (final TemplateProcessingInterrupt e) {
@@ -381,10 +436,29 @@ public final class ItemSessionController extends ItemProcessingController implem
                         break;
                 }
             }
+            catch (final QtiEvaluationBudgetException e) {
+                fireRuntimeError(templateProcessing, e.getMessage() + " during template processing - leaving variables at default values");
+                initTemplateVariables();
+                return true;
+            }
         }
         return true;
     }
 
+    private void startEvaluationBudget() {
+        final EvaluationBudget evaluationBudget = getEvaluationBudget();
+        if (evaluationBudget!=null) {
+            evaluationBudget.start();
+        }
+    }
+
+    private void stopEvaluationBudget() {
+        final EvaluationBudget evaluationBudget = getEvaluationBudget();
+        if (evaluationBudget!=null) {
+            evaluationBudget.stop();
+        }
+    }
+
 
     //-------------------------------------------------------------------
     // Entry, Update, Reset and Exit
@@ -402,6 +476,7 @@ public final class ItemSessionController extends ItemProcessingController implem
     public void enterItem(final Date timestamp) {
         Assert.notNull(timestamp);
         assertItemNotEntered();
+        fireItemSessionStateChanging();
         logger.debug("Entering item {}", item.getSystemId());
 
         /* Record entry */
@@ -431,6 +506,7 @@ public final class ItemSessionController extends ItemProcessingController implem
     public void touchDuration(final Date timestamp) {
         Assert.notNull(timestamp);
         assertItemInitialized();
+        fireItemSessionStateChanging();
         logger.debug("Touching duration for item {}", item.getSystemId());
 
         endItemSessionTimerIfRunning(timestamp);
@@ -455,6 +531,7 @@ public final class ItemSessionController extends ItemProcessingController implem
     public void resetItemSessionHard(final Date timestamp, final boolean resetDuration) {
         Assert.notNull(timestamp);
         assertItemEntered();
+        fireItemSessionStateChanging();
         logger.debug("Performing hard reset on item session {}", item.getSystemId());
 
         /* Stop duration timer */
@@ -496,6 +573,7 @@ public final class ItemSessionController extends ItemProcessingController implem
     public void resetItemSessionSoft(final Date timestamp, final boolean resetDuration) {
         Assert.notNull(timestamp);
         assertItemEntered();
+        fireItemSessionStateChanging();
         logger.debug("Performing soft reset on item session {}", item.getSystemId());
 
         /* Stop duration timer if not ended */
@@ -533,6 +611,7 @@ public final class ItemSessionController extends ItemProcessingController implem
         Assert.notNull(timestamp);
         assertItemOpen();
         assertItemNotSuspended();
+        fireItemSessionStateChanging();
         logger.debug("Suspending item session on {}", item.getSystemId());
 
         itemSessionState.setSuspendTime(timestamp);
@@ -553,6 +632,7 @@ public final class ItemSessionController extends ItemProcessingController implem
         Assert.notNull(timestamp);
         assertItemOpen();
         assertItemSuspended();
+        fireItemSessionStateChanging();
         logger.debug("Unsuspending item session on {}", item.getSystemId());
 
         itemSessionState.setSuspendTime(null);
@@ -573,6 +653,7 @@ public final class ItemSessionController extends ItemProcessingController implem
     public void endItem(final Date timestamp) {
         Assert.notNull(timestamp);
         assertItemNotEnded();
+        fireItemSessionStateChanging();
         logger.debug("Ending item {}", item.getSystemId());
 
         itemSessionState.setEndTime(timestamp);
@@ -593,6 +674,7 @@ public final class ItemSessionController extends ItemProcessingController implem
         Assert.notNull(timestamp);
         assertItemEndedOrJumped();
         assertItemNotExited();
+        fireItemSessionStateChanging();
         logger.debug("Exiting item {}", item.getSystemId());
 
         itemSessionState.setExitTime(timestamp);
@@ -639,6 +721,7 @@ public final class ItemSessionController extends ItemProcessingController implem
     public boolean bindResponses(final Date timestamp, final Map<Identifier, ResponseData> responseMap) {
         Assert.notNull(timestamp);
         Assert.notNull(responseMap, "responseMap");
+        fireItemSessionStateChanging();
         for (final Entry<Identifier, ResponseData> responseEntry : responseMap.entrySet()) {
             final Identifier responseIdentifier = responseEntry.getKey();
             final ResponseData responseData = responseEntry.getValue();
@@ -737,6 +820,7 @@ public final class ItemSessionController extends ItemProcessingController implem
         Assert.notNull(timestamp);
         assertItemOpen();
         assertItemNotSuspended();
+        fireItemSessionStateChanging();
         logger.debug("Committing currently saved responses to item {}", item.getSystemId());
 
         /* Make sure there are some uncommitted responses */
@@ -783,6 +867,7 @@ public final class ItemSessionController extends ItemProcessingController implem
         Assert.notNull(timestamp);
         assertItemOpen();
         assertItemNotSuspended();
+        fireItemSessionStateChanging();
         logger.debug("Response processing starting on item {}", item.getSystemId());
 
         fireJqtiLifecycleEvent(JqtiLifecycleEventType.ITEM_RESPONSE_PROCESSING_STARTING);
@@ -833,29 +918,8 @@ public final class ItemSessionController extends ItemProcessingController implem
                 initOutcomeVariables();
             }
 
-            /* Work out which RP logic to perform */
-            ResponseProcessing responseProcessing = null;
-            final RootNodeLookup<ResponseProcessing> resolvedResponseProcessingTemplateLookup = resolvedAssessmentItem.getResolvedResponseProcessingTemplateLookup();
-            if (resolvedResponseProcessingTemplateLookup!=null) {
-                /* Template specified, so try to use that */
-                responseProcessing = resolvedResponseProcessingTemplateLookup.extractIfSuccessful();
-                if (responseProcessing==null) {
-                    fireRuntimeWarning(item.getResponseProcessing(), "responseProcessing template could not be loaded, so no responseProcessing will not be performed");
-                }
-            }
-            else {
-                /* Use RP specified within the item (if available) */
-                responseProcessing = item.getResponseProcessing();
-            }
-
             /* Invoke response processing */
-            if (responseProcessing!=null) {
-                responseProcessing.evaluate(this);
-            }
-            else {
-                fireRuntimeWarning(item, "There is no responseProcessing to be performed here");
-                logger.debug("No responseProcessing rules or responseProcessing template exists, so no response processing will be performed");
-            }
+            invokeResponseProcessing();
 
             /* Update final state */
             itemSessionState.setSessionStatus(SessionStatus.FINAL);
@@ -870,6 +934,83 @@ public final class ItemSessionController extends ItemProcessingController implem
         }
     }
 
+    /**
+     * Re-runs response processing on the responses most recently processed in this item session,
+     * e.g. after the item's response processing or correct responses have been fixed.
+     * <p>
+     * Unlike {@link #performResponseProcessing(Date)}, this does not count an attempt, nor does it
+     * change the {@link SessionStatus}, duration or open/closed status of the session, so it may
+     * also be used on sessions that have ended.
+     * <p>
+     * Adaptive items accumulate their outcomes over successive attempts, so cannot be rescored
+     * from their final responses. A runtime warning is fired and nothing is changed for these.
+     * <p>
+     * Precondition: Item session must have been initialized.
+     * <p>
+     * Postcondition: If response processing had previously been performed (i.e. the
+     * {@link SessionStatus} is {@link SessionStatus#FINAL}) then outcome variables will have been
+     * recomputed from the current response values.
+     *
+     * @return true if response processing was performed, false otherwise
+     */
+    public boolean rescoreResponses() {
+        assertItemInitialized();
+        if (itemSessionState.getSessionStatus()!=SessionStatus.FINAL) {
+            return false;
+        }
+        fireItemSessionStateChanging();
+        if (item.getAdaptive()) {
+            fireRuntimeWarning(item, "Adaptive items cannot be rescored from their final responses");
+            return false;
+        }
+        logger.debug("Rescoring responses on item {}", item.getSystemId());
+
+        fireJqtiLifecycleEvent(JqtiLifecycleEventType.ITEM_RESPONSE_PROCESSING_STARTING);
+        try {
+            initOutcomeVariables();
+            invokeResponseProcessing();
+        }
+        finally {
+            fireJqtiLifecycleEvent(JqtiLifecycleEventType.ITEM_RESPONSE_PROCESSING_FINISHED);
+        }
+        return true;
+    }
+
+    private void invokeResponseProcessing() {
+        /* Work out which RP logic to perform */
+        ResponseProcessing responseProcessing = null;
+        final RootNodeLookup<ResponseProcessing> resolvedResponseProcessingTemplateLookup = resolvedAssessmentItem.getResolvedResponseProcessingTemplateLookup();
+        if (resolvedResponseProcessingTemplateLookup!=null) {
+            /* Template specified, so try to use that */
+            responseProcessing = resolvedResponseProcessingTemplateLookup.extractIfSuccessful();
+            if (responseProcessing==null) {
+                fireRuntimeWarning(item.getResponseProcessing(), "responseProcessing template could not be loaded, so no responseProcessing will not be performed");
+            }
+        }
+        else {
+            /* Use RP specified within the item (if available) */
+            responseProcessing = item.getResponseProcessing();
+        }
+
+        if (responseProcessing!=null) {
+            startEvaluationBudget();
+            try {
+                responseProcessing.evaluate(this);
+            }
+            catch (final QtiEvaluationBudgetException e) {
+                fireRuntimeError(responseProcessing, e.getMessage() + " during response processing - resetting outcome variables to default values");
+                initOutcomeVariables();
+            }
+            finally {
+                stopEvaluationBudget();
+            }
+        }
+        else {
+            fireRuntimeWarning(item, "There is no responseProcessing to be performed here");
+            logger.debug("No responseProcessing rules or responseProcessing template exists, so no response processing will be performed");
+        }
+    }
+
     /**
      * Resets all responses
      * <p>
@@ -884,6 +1025,7 @@ public final class ItemSessionController extends ItemProcessingController implem
         Assert.notNull(timestamp);
         assertItemOpen();
         assertItemNotSuspended();
+        fireItemSessionStateChanging();
         logger.debug("Resetting responses on item {}", item.getSystemId());
 
         endItemSessionTimer(timestamp);
@@ -908,6 +1050,7 @@ public final class ItemSessionController extends ItemProcessingController implem
         Assert.notNull(timestamp);
         assertItemOpen();
         assertItemNotSuspended();
+        fireItemSessionStateChanging();
         logger.debug("Setting candidate comment to {}", candidateComment);
 
         itemSessionState.setCandidateComment(StringUtilities.nullIfBlank(candidateComment));
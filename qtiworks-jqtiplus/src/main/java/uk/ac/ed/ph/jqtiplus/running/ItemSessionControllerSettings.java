@@ -36,6 +36,7 @@ package uk.ac.ed.ph.jqtiplus.running;
 import uk.ac.ed.ph.jqtiplus.JqtiPlus;
 import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
 import uk.ac.ed.ph.jqtiplus.node.test.ItemSessionControl;
+import uk.ac.ed.ph.jqtiplus.state.TemplateVariantPool;
 
 import java.io.Serializable;
 
@@ -61,15 +62,60 @@ public class ItemSessionControllerSettings implements Serializable {
      */
     private int maxAttempts;
 
+    /**
+     * Whether to record an {@link EvaluationProfile} of the expressions and rules
+     * evaluated by the controller.
+     *
+     * @see EvaluationProfiler
+     */
+    private boolean profilingEnabled;
+
+    /**
+     * Maximum number of expression evaluation steps permitted during each run of
+     * template or response processing before it is abandoned.
+     * Zero means no limit.
+     *
+     * @see EvaluationBudget
+     */
+    private int evaluationStepLimit;
+
+    /**
+     * Maximum wall-clock time (in milliseconds) permitted for each run of
+     * template or response processing before it is abandoned.
+     * Zero means no limit.
+     *
+     * @see EvaluationBudget
+     */
+    private long evaluationTimeLimit;
+
+    /**
+     * Optional pool of pre-generated template variants for the item. If set, template
+     * processing will choose a variant from this pool instead of running the item's
+     * <code>templateProcessing</code> rules, unless explicit <code>templateDefault</code>s
+     * have been provided.
+     * May be null.
+     *
+     * @see TemplateVariantGenerator
+     */
+    private TemplateVariantPool templateVariantPool;
+
     public ItemSessionControllerSettings() {
         this.templateProcessingLimit = JqtiPlus.DEFAULT_TEMPLATE_PROCESSING_LIMIT;
         this.maxAttempts = 0;
+        this.profilingEnabled = false;
+        this.evaluationStepLimit = 0;
+        this.evaluationTimeLimit = 0L;
+        this.templateVariantPool = null;
     }
 
     /** (Copy constructor) */
     public ItemSessionControllerSettings(final ItemSessionControllerSettings template) {
         this.templateProcessingLimit = template.templateProcessingLimit;
         this.maxAttempts = template.maxAttempts;
+        this.profilingEnabled = template.profilingEnabled;
+        this.evaluationStepLimit = template.evaluationStepLimit;
+        this.evaluationTimeLimit = template.evaluationTimeLimit;
+        this.templateVariantPool = template.templateVariantPool;
     }
 
 
@@ -92,6 +138,42 @@ public class ItemSessionControllerSettings implements Serializable {
     }
 
 
+    public boolean isProfilingEnabled() {
+        return profilingEnabled;
+    }
+
+    public void setProfilingEnabled(final boolean profilingEnabled) {
+        this.profilingEnabled = profilingEnabled;
+    }
+
+
+    public int getEvaluationStepLimit() {
+        return evaluationStepLimit;
+    }
+
+    public void setEvaluationStepLimit(final int evaluationStepLimit) {
+        this.evaluationStepLimit = evaluationStepLimit;
+    }
+
+
+    public long getEvaluationTimeLimit() {
+        return evaluationTimeLimit;
+    }
+
+    public void setEvaluationTimeLimit(final long evaluationTimeLimit) {
+        this.evaluationTimeLimit = evaluationTimeLimit;
+    }
+
+
+    public TemplateVariantPool getTemplateVariantPool() {
+        return templateVariantPool;
+    }
+
+    public void setTemplateVariantPool(final TemplateVariantPool templateVariantPool) {
+        this.templateVariantPool = templateVariantPool;
+    }
+
+
     @Override
     public String toString() {
         return ObjectUtilities.beanToString(this);
@@ -35,6 +35,7 @@ package uk.ac.ed.ph.jqtiplus.running;
 
 import uk.ac.ed.ph.jqtiplus.exception.QtiCandidateStateException;
 import uk.ac.ed.ph.jqtiplus.exception.QtiInvalidLookupException;
+import uk.ac.ed.ph.jqtiplus.node.QtiNode;
 import uk.ac.ed.ph.jqtiplus.node.item.AssessmentItem;
 import uk.ac.ed.ph.jqtiplus.node.shared.VariableDeclaration;
 import uk.ac.ed.ph.jqtiplus.node.shared.VariableType;
@@ -70,6 +71,27 @@ public interface ProcessingContext extends ValidationContext {
      */
     Random getRandomGenerator();
 
+    /**
+     * Returns a generator dedicated to the given {@link QtiNode} within the subject (typically
+     * an expression that generates random values), derived from the seed of this context and
+     * the location of the {@link QtiNode}. The same generator is returned for the lifetime of
+     * this context, so the values generated at each call site don't depend on what other
+     * call sites have done.
+     */
+    Random getRandomGenerator(QtiNode callSite);
+
+    /**
+     * Returns the {@link EvaluationProfiler} that should be used to record the evaluation
+     * of expressions and rules, or null if profiling has not been enabled.
+     */
+    EvaluationProfiler getEvaluationProfiler();
+
+    /**
+     * Returns the {@link EvaluationBudget} limiting the current processing run,
+     * or null if no limits have been set.
+     */
+    EvaluationBudget getEvaluationBudget();
+
     /**
      * Looks up the declaration of the variable in the subject item or test having the given
      * {@link Identifier} and having the given permitted variable types.
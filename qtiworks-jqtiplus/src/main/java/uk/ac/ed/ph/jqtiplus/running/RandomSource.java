@@ -0,0 +1,155 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.running;
+
+import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
+import uk.ac.ed.ph.jqtiplus.node.QtiNode;
+
+import java.io.Serializable;
+import java.util.Random;
+
+/**
+ * Immutable, splittable source of random numbers.
+ * <p>
+ * Each {@link RandomSource} is defined by a single seed, and can be split into any number of
+ * child {@link RandomSource}s, each keyed on a discriminator such as the position of a
+ * {@link TestPlan} node or the location of a {@link QtiNode} within its document. Splitting
+ * is purely a function of the parent seed and discriminator, so a tree of sources derived from
+ * the same root seed is always the same, regardless of the order in which its sources are
+ * created or used. This allows independent parts of a session (test planning, each item
+ * instance, each random expression...) to be given their own streams of random numbers, which
+ * makes sessions reproducible from a single seed and lets these parts be processed in parallel.
+ * <p>
+ * (The seed mixing here is the finalizer used by the SplitMix64 generator.)
+ * <p>
+ * This is immutable and thread safe. The {@link Random} instances it creates are not shared.
+ *
+ * @author David McKain
+ */
+public final class RandomSource implements Serializable {
+
+    private static final long serialVersionUID = -6590442283396167372L;
+
+    /** Golden ratio "gamma" used to spread discriminators */
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private final long seed;
+
+    public RandomSource(final long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Creates a {@link RandomSource} from the given seed, or from a freshly-chosen
+     * random seed if null.
+     */
+    public static RandomSource create(final Long seed) {
+        return new RandomSource(seed!=null ? seed.longValue() : new Random().nextLong());
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Returns the child {@link RandomSource} corresponding to the given discriminator.
+     */
+    public RandomSource split(final long discriminator) {
+        return new RandomSource(mix64(seed + mix64(discriminator * GOLDEN_GAMMA + GOLDEN_GAMMA)));
+    }
+
+    /**
+     * Returns the child {@link RandomSource} corresponding to the given String discriminator.
+     */
+    public RandomSource split(final String discriminator) {
+        Assert.notNull(discriminator, "discriminator");
+        return split(hash64(discriminator));
+    }
+
+    /**
+     * Returns the child {@link RandomSource} corresponding to the given {@link QtiNode}, based on
+     * its location within its document. This is intended for giving each expression that
+     * generates random values its own stream.
+     */
+    public RandomSource split(final QtiNode qtiNode) {
+        Assert.notNull(qtiNode, "qtiNode");
+        return split(qtiNode.computeXPath());
+    }
+
+    /**
+     * Creates a new {@link Random} generating the stream of numbers for this source.
+     */
+    public Random createRandom() {
+        return new Random(mix64(seed));
+    }
+
+    //-------------------------------------------------------------------
+
+    private static long mix64(final long value) {
+        long z = value;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /** 64 bit FNV-1a hash */
+    private static long hash64(final String string) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i=0; i<string.length(); i++) {
+            hash ^= string.charAt(i);
+            hash *= 0x100000001B3L;
+        }
+        return hash;
+    }
+
+    //-------------------------------------------------------------------
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (!(obj instanceof RandomSource)) {
+            return false;
+        }
+        return seed==((RandomSource) obj).seed;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (seed ^ (seed >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(seed=" + seed + ")";
+    }
+}
@@ -0,0 +1,149 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.running;
+
+import uk.ac.ed.ph.jqtiplus.JqtiExtensionManager;
+import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
+import uk.ac.ed.ph.jqtiplus.node.expression.operator.CustomOperator;
+import uk.ac.ed.ph.jqtiplus.node.item.AssessmentItem;
+import uk.ac.ed.ph.jqtiplus.node.item.template.processing.TemplateConstraint;
+import uk.ac.ed.ph.jqtiplus.node.item.template.processing.TemplateProcessing;
+import uk.ac.ed.ph.jqtiplus.notification.NotificationLevel;
+import uk.ac.ed.ph.jqtiplus.notification.NotificationRecorder;
+import uk.ac.ed.ph.jqtiplus.state.ItemProcessingMap;
+import uk.ac.ed.ph.jqtiplus.state.ItemSessionState;
+import uk.ac.ed.ph.jqtiplus.state.TemplateVariant;
+import uk.ac.ed.ph.jqtiplus.state.TemplateVariantPool;
+import uk.ac.ed.ph.jqtiplus.utils.QueryUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pre-generates a {@link TemplateVariantPool} for an item by repeatedly running its
+ * template processing on a scratch {@link ItemSessionState}.
+ * <p>
+ * Any run that raises a runtime warning or error (e.g. exceeding the
+ * <code>templateProcessingLimit</code> or evaluation budget) is discarded, so a pool only
+ * contains variants that template processing would have produced successfully.
+ * Duplicate variants are kept so that the pool follows the same distribution as the
+ * original template processing.
+ * <p>
+ * Usage: an instance of this class is stateless and can be safely used by multiple Threads,
+ * provided the {@link ItemSessionControllerSettings} is not modified after construction.
+ *
+ * @author David McKain
+ */
+public final class TemplateVariantGenerator {
+
+    private static final Logger logger = LoggerFactory.getLogger(TemplateVariantGenerator.class);
+
+    private final JqtiExtensionManager jqtiExtensionManager;
+    private final ItemSessionControllerSettings itemSessionControllerSettings;
+
+    public TemplateVariantGenerator(final JqtiExtensionManager jqtiExtensionManager,
+            final ItemSessionControllerSettings itemSessionControllerSettings) {
+        Assert.notNull(jqtiExtensionManager, "jqtiExtensionManager");
+        Assert.notNull(itemSessionControllerSettings, "itemSessionControllerSettings");
+        this.jqtiExtensionManager = jqtiExtensionManager;
+        this.itemSessionControllerSettings = new ItemSessionControllerSettings(itemSessionControllerSettings);
+        this.itemSessionControllerSettings.setTemplateVariantPool(null);
+    }
+
+    /**
+     * Returns whether the given item would benefit from having a {@link TemplateVariantPool},
+     * i.e. it is valid and its template processing contains <code>templateConstraint</code>s
+     * (which may require many runs) or {@link CustomOperator}s (which may be expensive).
+     */
+    public static boolean isPoolable(final ItemProcessingMap itemProcessingMap) {
+        Assert.notNull(itemProcessingMap, "itemProcessingMap");
+        if (!itemProcessingMap.isValid()) {
+            return false;
+        }
+        final AssessmentItem item = itemProcessingMap.getResolvedAssessmentItem().getRootNodeLookup().extractAssumingSuccessful();
+        final TemplateProcessing templateProcessing = item.getTemplateProcessing();
+        if (templateProcessing==null) {
+            return false;
+        }
+        final List<TemplateProcessing> searchRoots = Collections.singletonList(templateProcessing);
+        return QueryUtils.hasDescendant(TemplateConstraint.class, searchRoots)
+                || QueryUtils.hasDescendant(CustomOperator.class, searchRoots);
+    }
+
+    /**
+     * Performs the given number of template processing runs on the item having the given
+     * {@link ItemProcessingMap}, returning a {@link TemplateVariantPool} containing the results
+     * of each successful run.
+     *
+     * @param itemProcessingMap {@link ItemProcessingMap} for the item, which must not be null
+     * @param runCount number of runs to perform, which must be positive
+     * @param randomSeed optional seed for template processing, which may be null
+     * @return resulting {@link TemplateVariantPool}, or null if none of the runs was successful
+     */
+    public TemplateVariantPool generateTemplateVariantPool(final ItemProcessingMap itemProcessingMap,
+            final int runCount, final Long randomSeed) {
+        Assert.notNull(itemProcessingMap, "itemProcessingMap");
+        if (runCount<=0) {
+            throw new IllegalArgumentException("runCount must be positive");
+        }
+        final List<TemplateVariant> templateVariants = new ArrayList<TemplateVariant>(runCount);
+        final Date timestamp = new Date();
+        final ItemSessionState itemSessionState = new ItemSessionState();
+        final ItemSessionController itemSessionController = new ItemSessionController(jqtiExtensionManager,
+                itemSessionControllerSettings, itemProcessingMap, itemSessionState);
+        itemSessionController.setRandomSeed(randomSeed);
+        for (int i=0; i<runCount; i++) {
+            final NotificationRecorder notificationRecorder = new NotificationRecorder(NotificationLevel.WARNING);
+            itemSessionController.addNotificationListener(notificationRecorder);
+            try {
+                itemSessionController.initialize(timestamp);
+                itemSessionController.performTemplateProcessing(timestamp);
+            }
+            finally {
+                itemSessionController.removeNotificationListener(notificationRecorder);
+            }
+            if (notificationRecorder.getNotifications().isEmpty()) {
+                templateVariants.add(TemplateVariant.fromItemSessionState(itemSessionState));
+            }
+        }
+        logger.debug("Generated {} usable template variants from {} runs on item {}",
+                new Object[] { templateVariants.size(), runCount, itemProcessingMap.getResolvedAssessmentItem().getItemLookup().getSystemId() });
+        return !templateVariants.isEmpty() ? new TemplateVariantPool(templateVariants) : null;
+    }
+}
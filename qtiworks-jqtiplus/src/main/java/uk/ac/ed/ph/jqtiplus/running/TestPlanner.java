@@ -138,10 +138,30 @@ public final class TestPlanner extends ListenerNotificationFirer {
      */
     private final Map<Identifier, List<TestPlanNode>> testPlanNodesByIdentifierMapBuilder;
 
+    /** Seed used for {@link Selection} and {@link Ordering}, recorded in the resulting {@link TestPlan} */
+    private final long seed;
+
+    /** Source of randomness for {@link Selection} and {@link Ordering}, split per section */
+    private final RandomSource randomSource;
+
     private boolean hasRun;
 
+    /**
+     * Creates a planner that will use a freshly-chosen random seed. This seed is recorded in the
+     * resulting {@link TestPlan}.
+     */
     public TestPlanner(final TestProcessingMap testProcessingMap) {
+        this(testProcessingMap, new Random().nextLong());
+    }
+
+    /**
+     * Creates a planner using the given random seed. Planning the same {@link AssessmentTest}
+     * with the same seed will always generate the same {@link TestPlan}.
+     */
+    public TestPlanner(final TestProcessingMap testProcessingMap, final long seed) {
         this.testProcessingMap = testProcessingMap;
+        this.seed = seed;
+        this.randomSource = new RandomSource(seed);
         this.resolvedAssessmentTest = testProcessingMap.getResolvedAssessmentTest();
         this.test = resolvedAssessmentTest.getTestLookup().extractIfSuccessful();
         this.testPlanRootNode = TestPlanNode.createRoot();
@@ -174,7 +194,8 @@ public final class TestPlanner extends ListenerNotificationFirer {
         }
 
         /* Finally we build a TestPlan from all of the data we've gathered */
-        final TestPlan result = new TestPlan(testPlanRootNode, testPlanNodeListBuilder, testPlanNodesByKeyMapBuilder, testPlanNodesByIdentifierMapBuilder);
+        final TestPlan result = new TestPlan(testPlanRootNode, testPlanNodeListBuilder, testPlanNodesByKeyMapBuilder,
+                testPlanNodesByIdentifierMapBuilder, Long.valueOf(seed));
         logger.debug("Computed test plan for test {} is {}", test.getIdentifier(), result);
         return result;
     }
@@ -220,11 +241,14 @@ public final class TestPlanner extends ListenerNotificationFirer {
             return null;
         }
 
+        /* Each section gets its own random stream, so its selection & ordering doesn't depend on other sections */
+        final Random random = randomSource.split(abstractPartIndex).createRandom();
+
         /* Select which children we're going to have */
         List<SectionPart> afterSelection;
         if (section.getSelection() != null) {
             /* Perform requested selection */
-            afterSelection = selectSectionParts(section);
+            afterSelection = selectSectionParts(section, random);
         }
         else {
             /* Select all children */
@@ -245,7 +269,7 @@ public final class TestPlanner extends ListenerNotificationFirer {
         List<BuildTreeNode> afterOrdering;
         final Ordering ordering = section.getOrdering();
         if (ordering != null && ordering.getShuffle()) {
-            afterOrdering = orderSectionParts(childNodes);
+            afterOrdering = orderSectionParts(childNodes, random);
         }
         else {
             afterOrdering = childNodes;
@@ -310,7 +334,7 @@ public final class TestPlanner extends ListenerNotificationFirer {
         return result;
     }
 
-    private List<SectionPart> selectSectionParts(final AssessmentSection assessmentSection) {
+    private List<SectionPart> selectSectionParts(final AssessmentSection assessmentSection, final Random random) {
         final List<SectionPart> children = assessmentSection.getSectionParts();
         final Selection selection = assessmentSection.getSelection();
         final int childCount = children.size();
@@ -359,7 +383,6 @@ public final class TestPlanner extends ListenerNotificationFirer {
         /* Now decide how many selections to make from remaining children */
         final int remainingSelections = requestedSelections - requiredChildCount;
         if (remainingSelections > 0) {
-            final Random random = new Random(System.currentTimeMillis());
             if (selection.getWithReplacement()) {
                 /* Selection with replacement */
                 for (int i=0; i<remainingSelections; i++) {
@@ -395,7 +418,7 @@ public final class TestPlanner extends ListenerNotificationFirer {
         return result;
     }
 
-    private List<BuildTreeNode> orderSectionParts(final List<BuildTreeNode> childNodes) {
+    private List<BuildTreeNode> orderSectionParts(final List<BuildTreeNode> childNodes, final Random random) {
         /* Merge all invisible assessmentSections with keepTogether=false now */
         final List<BuildTreeNode> beforeShuffle = new ArrayList<BuildTreeNode>();
         for (final BuildTreeNode item : childNodes) {
@@ -424,7 +447,7 @@ public final class TestPlanner extends ListenerNotificationFirer {
         }
 
         /* Perform shuffle */
-        Collections.shuffle(toShuffle);
+        Collections.shuffle(toShuffle, random);
 
         /* Merge the shuffled items in */
         final List<BuildTreeNode> afterShuffle = new ArrayList<BuildTreeNode>();
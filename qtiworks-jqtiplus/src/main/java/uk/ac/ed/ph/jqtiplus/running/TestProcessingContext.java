@@ -124,7 +124,7 @@ public interface TestProcessingContext extends ProcessingContext, TestValidation
      * @param sectionIdentifier
      * @param includeCategories
      * @param excludeCategories
-     * @return non-null {@link List} or {@link TestPlanNode}s
+     * @return non-null unmodifiable {@link List} or {@link TestPlanNode}s
      */
     List<TestPlanNode> computeItemSubset(Identifier sectionIdentifier, List<String> includeCategories, List<String> excludeCategories);
 
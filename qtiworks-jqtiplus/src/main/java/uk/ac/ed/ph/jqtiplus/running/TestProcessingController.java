@@ -39,14 +39,16 @@ import uk.ac.ed.ph.jqtiplus.exception.QtiCandidateStateException;
 import uk.ac.ed.ph.jqtiplus.exception.QtiInvalidLookupException;
 import uk.ac.ed.ph.jqtiplus.exception.QtiLogicException;
 import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
+import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
 import uk.ac.ed.ph.jqtiplus.node.QtiNode;
 import uk.ac.ed.ph.jqtiplus.node.shared.VariableDeclaration;
 import uk.ac.ed.ph.jqtiplus.node.shared.VariableType;
 import uk.ac.ed.ph.jqtiplus.node.test.AssessmentItemRef;
-import uk.ac.ed.ph.jqtiplus.node.test.AssessmentSection;
 import uk.ac.ed.ph.jqtiplus.notification.ListenerNotificationForwarder;
+import uk.ac.ed.ph.jqtiplus.notification.Notification;
+import uk.ac.ed.ph.jqtiplus.notification.NotificationLevel;
+import uk.ac.ed.ph.jqtiplus.notification.NotificationRecorder;
 import uk.ac.ed.ph.jqtiplus.resolution.ResolvedTestVariableReference;
-import uk.ac.ed.ph.jqtiplus.state.EffectiveItemSessionControl;
 import uk.ac.ed.ph.jqtiplus.state.ItemProcessingMap;
 import uk.ac.ed.ph.jqtiplus.state.ItemSessionState;
 import uk.ac.ed.ph.jqtiplus.state.TestPlan;
@@ -57,17 +59,24 @@ import uk.ac.ed.ph.jqtiplus.state.TestProcessingMap;
 import uk.ac.ed.ph.jqtiplus.state.TestSessionState;
 import uk.ac.ed.ph.jqtiplus.types.ComplexReferenceIdentifier;
 import uk.ac.ed.ph.jqtiplus.types.Identifier;
-import uk.ac.ed.ph.jqtiplus.utils.QueryUtils;
-import uk.ac.ed.ph.jqtiplus.utils.TreeWalkNodeHandler;
 import uk.ac.ed.ph.jqtiplus.validation.TestValidationController;
 import uk.ac.ed.ph.jqtiplus.value.NullValue;
 import uk.ac.ed.ph.jqtiplus.value.Value;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Implementation of {@link TestProcessingContext}, filling in the low level
@@ -83,6 +92,10 @@ import java.util.Random;
  */
 public class TestProcessingController extends TestValidationController implements TestProcessingContext {
 
+    /** Discriminator used to split off the {@link RandomSource} for each item instance */
+    private static final String ITEM_RANDOM_SOURCE_KEY = "item";
+
+    protected final TestSessionControllerFactory testSessionControllerFactory;
     protected final TestSessionControllerSettings testSessionControllerSettings;
     protected final TestProcessingMap testProcessingMap;
     protected final TestSessionState testSessionState;
@@ -93,25 +106,59 @@ public class TestProcessingController extends TestValidationController implement
     private final ListenerNotificationForwarder listenerNotificationForwarder;
 
     private Long randomSeed;
+    private RandomSource randomSource;
     private Random randomGenerator;
+    private final Map<QtiNode, Random> callSiteRandomGenerators;
+    private Executor itemProcessingExecutor;
+    private final EvaluationProfiler evaluationProfiler;
+    private final EvaluationBudget evaluationBudget;
+
+    /** Memoized results of {@link #computeItemSubset(Identifier, List, List)}, or null if not caching */
+    private Map<ItemSubsetKey, List<TestPlanNode>> itemSubsetCache;
 
     public TestProcessingController(final JqtiExtensionManager jqtiExtensionManager,
             final TestSessionControllerSettings testSessionControllerSettings,
             final TestProcessingMap testProcessingMap,
             final TestSessionState testSessionState) {
-        super(jqtiExtensionManager, testProcessingMap!=null ? testProcessingMap.getResolvedAssessmentTest() : null);
-        Assert.notNull(testSessionControllerSettings, "testSessionControllerSettings");
-        Assert.notNull(testProcessingMap, "testProcessingMap");
+        this(new TestSessionControllerFactory(jqtiExtensionManager, testSessionControllerSettings, testProcessingMap),
+                testSessionState);
+    }
+
+    /**
+     * Creates a controller using the invariant wiring already set up in the given
+     * {@link TestSessionControllerFactory}.
+     */
+    protected TestProcessingController(final TestSessionControllerFactory testSessionControllerFactory,
+            final TestSessionState testSessionState) {
+        super(testSessionControllerFactory.getJqtiExtensionManager(),
+                testSessionControllerFactory.getTestProcessingMap().getResolvedAssessmentTest());
         Assert.notNull(testSessionState, "testSessionState");
-        this.testSessionControllerSettings = new TestSessionControllerSettings(testSessionControllerSettings);
+        this.testSessionControllerFactory = testSessionControllerFactory;
+        this.testSessionControllerSettings = testSessionControllerFactory.getTestSessionControllerSettings();
         this.listenerNotificationForwarder = new ListenerNotificationForwarder(this);
-        this.testProcessingMap = testProcessingMap;
+        this.testProcessingMap = testSessionControllerFactory.getTestProcessingMap();
         this.testSessionState = testSessionState;
         this.randomSeed = null;
+        this.randomSource = null;
         this.randomGenerator = null;
+        this.callSiteRandomGenerators = new IdentityHashMap<QtiNode, Random>();
+        this.itemProcessingExecutor = null;
         this.itemSessionControllerMap = new HashMap<TestPlanNodeKey, ItemSessionController>();
+        this.itemSubsetCache = null;
+        this.evaluationProfiler = testSessionControllerSettings.isProfilingEnabled() ? new EvaluationProfiler() : null;
+        this.evaluationBudget = EvaluationBudget.create(testSessionControllerSettings.getEvaluationStepLimit(),
+                testSessionControllerSettings.getEvaluationTimeLimit());
+    }
+
+    public final TestSessionControllerFactory getTestSessionControllerFactory() {
+        return testSessionControllerFactory;
     }
 
+    /**
+     * Returns the {@link TestSessionControllerSettings} for this controller. These are shared
+     * with other controllers created by the same {@link TestSessionControllerFactory}, so
+     * must not be changed.
+     */
     public final TestSessionControllerSettings getTestSessionControllerSettings() {
         return testSessionControllerSettings;
     }
@@ -137,22 +184,103 @@ public class TestProcessingController extends TestValidationController implement
         return randomSeed;
     }
 
+    /**
+     * Sets the seed used for random values generated by the test and its items, or null to
+     * use a random seed.
+     * <p>
+     * Each item instance is given its own seed, derived from this seed and its position
+     * in the {@link TestPlan}, so the values generated by each item don't depend on the order in
+     * which items are processed.
+     */
     public void setRandomSeed(final Long randomSeed) {
         this.randomSeed = randomSeed;
+        this.randomSource = null;
         this.randomGenerator = null;
-        for (final ItemSessionController itemSessionController : itemSessionControllerMap.values()) {
-            itemSessionController.setRandomSeed(randomSeed);
+        this.callSiteRandomGenerators.clear();
+        for (final Entry<TestPlanNodeKey, ItemSessionController> entry : itemSessionControllerMap.entrySet()) {
+            entry.getValue().setRandomSeed(deriveItemRandomSeed(entry.getKey()));
         }
     }
 
+    private Long deriveItemRandomSeed(final TestPlanNodeKey itemKey) {
+        if (randomSeed==null) {
+            return null;
+        }
+        final TestPlan testPlan = testSessionState.getTestPlan();
+        final int globalIndex = testPlan.getGlobalIndex(testPlan.getNode(itemKey));
+        return Long.valueOf(getRandomSource().split(ITEM_RANDOM_SOURCE_KEY).split(globalIndex).getSeed());
+    }
+
+    /**
+     * Returns the {@link RandomSource} from which all random values generated by the test
+     * and its items are derived.
+     */
+    public RandomSource getRandomSource() {
+        if (randomSource==null) {
+            randomSource = RandomSource.create(randomSeed);
+        }
+        return randomSource;
+    }
+
     @Override
     public Random getRandomGenerator() {
         if (randomGenerator==null) {
-            randomGenerator = randomSeed!=null ? new Random(randomSeed) : new Random();
+            randomGenerator = getRandomSource().createRandom();
         }
         return randomGenerator;
     }
 
+    @Override
+    public Random getRandomGenerator(final QtiNode callSite) {
+        Assert.notNull(callSite, "callSite");
+        Random result = callSiteRandomGenerators.get(callSite);
+        if (result==null) {
+            result = getRandomSource().split(callSite).createRandom();
+            callSiteRandomGenerators.put(callSite, result);
+        }
+        return result;
+    }
+
+    public Executor getItemProcessingExecutor() {
+        return itemProcessingExecutor;
+    }
+
+    /**
+     * Sets an {@link Executor} to use for initializing and running template processing on
+     * multiple items in parallel, or null to do this on the calling Thread (the default).
+     * The caller is responsible for bounding and shutting down the {@link Executor}.
+     * <p>
+     * Each item session has its own state and random number generator, so the results are the
+     * same as when run serially. Notifications are passed on in item order once all of the
+     * items have been processed. This is not used when profiling is enabled, as the
+     * {@link EvaluationProfiler} is shared between items.
+     * <p>
+     * Any extension packages in use must be safe to use from multiple Threads.
+     */
+    public void setItemProcessingExecutor(final Executor itemProcessingExecutor) {
+        this.itemProcessingExecutor = itemProcessingExecutor;
+    }
+
+    //-------------------------------------------------------------------
+
+    @Override
+    public final EvaluationProfiler getEvaluationProfiler() {
+        return evaluationProfiler;
+    }
+
+    /**
+     * Returns an {@link EvaluationProfile} containing the data recorded so far for the test and
+     * all of its items, or null if profiling has not been enabled.
+     */
+    public final EvaluationProfile getEvaluationProfile() {
+        return evaluationProfiler!=null ? evaluationProfiler.buildProfile() : null;
+    }
+
+    @Override
+    public final EvaluationBudget getEvaluationBudget() {
+        return evaluationBudget;
+    }
+
     //-------------------------------------------------------------------
 
     @Override
@@ -163,6 +291,10 @@ public class TestProcessingController extends TestValidationController implement
     /**
      * Gets an {@link ItemSessionController} for the {@link TestPlanNode} corresponding to
      * an {@link AssessmentItemRef}, lazily creating one if required.
+     * <p>
+     * If the item session's initialization or template processing has been deferred
+     * (see {@link TestSessionControllerSettings#isLazyItemSessionInitialization()}) then
+     * this will be performed first.
      *
      * @param itemRefNode
      */
@@ -179,17 +311,134 @@ public class TestProcessingController extends TestValidationController implement
             result = createItemSessionController(itemRefNode);
             itemSessionControllerMap.put(key, result);
         }
+        materializeItemSession(itemRefNode, result);
         return result;
     }
 
-    private ItemSessionController createItemSessionController(final TestPlanNode itemRefNode) {
-        final ItemProcessingMap itemProcessingMap = testProcessingMap.resolveItemProcessingMap(itemRefNode);
-        final EffectiveItemSessionControl effectiveItemSessionControl = testProcessingMap.resolveEffectiveItemSessionControl(itemRefNode);
+    /**
+     * Performs any deferred initialization and template processing on the given item session.
+     * These are performed using the timestamps at which they would have been performed had
+     * they not been deferred.
+     */
+    private void materializeItemSession(final TestPlanNode itemRefNode, final ItemSessionController itemSessionController) {
+        final TestPlanNodeKey key = itemRefNode.getKey();
+        if (testSessionState.isInitialized() && !itemSessionController.getItemSessionState().isInitialized()) {
+            itemSessionController.initialize(testSessionState.getInitializationTime());
+        }
+        if (testSessionState.removePendingTemplateProcessingKey(key)) {
+            final TestPlanNode testPartNode = testSessionState.getTestPlan().getEnclosingTestPartNode(itemRefNode);
+            final Date testPartEntryTime = testSessionState.getTestPartSessionStates().get(testPartNode.getKey()).getEntryTime();
+            final AssessmentItemRef assessmentItemRef = (AssessmentItemRef) testProcessingMap.resolveAbstractPart(itemRefNode);
+            itemSessionController.performTemplateProcessing(testPartEntryTime, assessmentItemRef.getTemplateDefaults());
+        }
+    }
 
-        /* Copy relevant bits of itemSessionControl into ItemSessionControllerSettings */
-        final ItemSessionControllerSettings itemSessionControllerSettings = new ItemSessionControllerSettings();
-        itemSessionControllerSettings.setTemplateProcessingLimit(testSessionControllerSettings.getTemplateProcessingLimit());
-        itemSessionControllerSettings.setMaxAttempts(effectiveItemSessionControl.getMaxAttempts());
+    /**
+     * Discards all {@link ItemSessionController}s created so far. This must be called if the
+     * {@link ItemSessionState}s within the {@link TestSessionState} are replaced.
+     */
+    protected final void resetItemSessionControllers() {
+        itemSessionControllerMap.clear();
+    }
+
+    /**
+     * Callback for performing an operation on a single item session, as used by
+     * {@link TestProcessingController#performItemSessionTasks(Map, ItemSessionTask)}.
+     */
+    protected static interface ItemSessionTask {
+
+        void perform(TestPlanNode itemRefNode, ItemSessionController itemSessionController);
+
+    }
+
+    /**
+     * Performs the given {@link ItemSessionTask} on each of the given item sessions. This is done in
+     * parallel if an {@link Executor} has been set via {@link #setItemProcessingExecutor(Executor)}, otherwise in order
+     * on the calling Thread.
+     * <p>
+     * In parallel mode, any notifications fired by each item are buffered then passed on in order
+     * once all items have been processed. If any task fails then the first failure (in item order)
+     * is rethrown once all items have been processed.
+     */
+    protected final void performItemSessionTasks(final Map<TestPlanNode, ItemSessionController> itemSessionControllers,
+            final ItemSessionTask task) {
+        if (itemProcessingExecutor==null || evaluationProfiler!=null || itemSessionControllers.size() < 2) {
+            for (final Entry<TestPlanNode, ItemSessionController> entry : itemSessionControllers.entrySet()) {
+                task.perform(entry.getKey(), entry.getValue());
+            }
+            return;
+        }
+
+        /* Submit a task for each item, buffering the item's notifications */
+        final List<NotificationRecorder> notificationRecorders = new ArrayList<NotificationRecorder>(itemSessionControllers.size());
+        final List<FutureTask<Object>> futureTasks = new ArrayList<FutureTask<Object>>(itemSessionControllers.size());
+        for (final Entry<TestPlanNode, ItemSessionController> entry : itemSessionControllers.entrySet()) {
+            final TestPlanNode itemRefNode = entry.getKey();
+            final ItemSessionController itemSessionController = entry.getValue();
+            final NotificationRecorder notificationRecorder = new NotificationRecorder(NotificationLevel.INFO);
+            itemSessionController.removeNotificationListener(listenerNotificationForwarder);
+            itemSessionController.addNotificationListener(notificationRecorder);
+            notificationRecorders.add(notificationRecorder);
+            final FutureTask<Object> futureTask = new FutureTask<Object>(new Runnable() {
+                @Override
+                public void run() {
+                    task.perform(itemRefNode, itemSessionController);
+                }
+            }, null);
+            futureTasks.add(futureTask);
+            try {
+                itemProcessingExecutor.execute(futureTask);
+            }
+            catch (final RejectedExecutionException e) {
+                /* Executor is saturated, so do this one ourselves */
+                futureTask.run();
+            }
+        }
+
+        /* Wait for each task (in item order), then restore forwarding and pass on its notifications */
+        RuntimeException failure = null;
+        boolean interrupted = false;
+        int index = 0;
+        for (final ItemSessionController itemSessionController : itemSessionControllers.values()) {
+            final FutureTask<Object> futureTask = futureTasks.get(index);
+            final NotificationRecorder notificationRecorder = notificationRecorders.get(index);
+            index++;
+            while (true) {
+                try {
+                    futureTask.get();
+                    break;
+                }
+                catch (final InterruptedException e) {
+                    /* Keep waiting, as the task is still using the item session */
+                    interrupted = true;
+                }
+                catch (final ExecutionException e) {
+                    if (failure==null) {
+                        final Throwable cause = e.getCause();
+                        failure = cause instanceof RuntimeException ? (RuntimeException) cause
+                                : new QtiLogicException("Unexpected failure performing item session task", cause);
+                    }
+                    break;
+                }
+            }
+            itemSessionController.removeNotificationListener(notificationRecorder);
+            itemSessionController.addNotificationListener(listenerNotificationForwarder);
+            for (final Notification notification : notificationRecorder.getNotifications()) {
+                doFireNotification(notification);
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure!=null) {
+            throw failure;
+        }
+    }
+
+    private ItemSessionController createItemSessionController(final TestPlanNode itemRefNode) {
+        /* (Settings for each item are worked out in advance by the factory) */
+        final ItemProcessingMap itemProcessingMap = testSessionControllerFactory.getItemProcessingMap(itemRefNode);
+        final ItemSessionControllerSettings itemSessionControllerSettings = testSessionControllerFactory.getItemSessionControllerSettings(itemRefNode);
 
         /* Create controller and forward any notifications it generates */
         final TestPlanNodeKey key = itemRefNode.getKey();
@@ -198,8 +447,19 @@ public class TestProcessingController extends TestValidationController implement
                 itemSessionControllerSettings, itemProcessingMap, itemSessionState);
         itemSessionController.addNotificationListener(listenerNotificationForwarder);
 
-        /* Pass random seed */
-        itemSessionController.setRandomSeed(randomSeed);
+        /* Pass random seed for this item */
+        itemSessionController.setRandomSeed(deriveItemRandomSeed(key));
+
+        /* Share our profiler (if enabled) so that item processing is included in our profile */
+        itemSessionController.setEvaluationProfiler(evaluationProfiler);
+
+        /* Record any change made through this controller so that incremental outcome processing sees it */
+        itemSessionController.setItemSessionStateChangeListener(new ItemSessionStateChangeListener() {
+            @Override
+            public void itemSessionStateChanging(final ItemProcessingController source) {
+                testSessionState.markItemDirty(key);
+            }
+        });
 
         return itemSessionController;
     }
@@ -476,8 +736,42 @@ public class TestProcessingController extends TestValidationController implement
 
     //-------------------------------------------------------------------
 
+    /**
+     * Enables memoization of {@link #computeItemSubset(Identifier, List, List)}. This is
+     * called at the start of each outcome processing run, over which the {@link TestPlan}
+     * cannot change.
+     *
+     * @see #endItemSubsetCaching()
+     */
+    protected final void startItemSubsetCaching() {
+        itemSubsetCache = new HashMap<ItemSubsetKey, List<TestPlanNode>>();
+    }
+
+    /**
+     * Disables memoization of {@link #computeItemSubset(Identifier, List, List)}, discarding
+     * any cached results.
+     *
+     * @see #startItemSubsetCaching()
+     */
+    protected final void endItemSubsetCaching() {
+        itemSubsetCache = null;
+    }
+
     @Override
     public final List<TestPlanNode> computeItemSubset(final Identifier sectionIdentifier, final List<String> includeCategories, final List<String> excludeCategories) {
+        if (itemSubsetCache==null) {
+            return doComputeItemSubset(sectionIdentifier, includeCategories, excludeCategories);
+        }
+        final ItemSubsetKey key = new ItemSubsetKey(sectionIdentifier, includeCategories, excludeCategories);
+        List<TestPlanNode> result = itemSubsetCache.get(key);
+        if (result==null) {
+            result = doComputeItemSubset(sectionIdentifier, includeCategories, excludeCategories);
+            itemSubsetCache.put(key, result);
+        }
+        return result;
+    }
+
+    private List<TestPlanNode> doComputeItemSubset(final Identifier sectionIdentifier, final List<String> includeCategories, final List<String> excludeCategories) {
         final TestPlan testPlan = testSessionState.getTestPlan();
 
         final List<TestPlanNode> itemRefNodes = new ArrayList<TestPlanNode>();
@@ -486,7 +780,7 @@ public class TestProcessingController extends TestValidationController implement
              * of the AssessmentSection(s) having the given identifier in the ORIGINAL test
              * structure.
              */
-            final List<AssessmentItemRef> assessmentItemRefs = findAssessmentItemRefsInSections(sectionIdentifier);
+            final List<AssessmentItemRef> assessmentItemRefs = testProcessingMap.getAssessmentItemRefsInSections(sectionIdentifier);
             for (final AssessmentItemRef assessmentItemRef : assessmentItemRefs) {
                 final List<TestPlanNode> selectedItemRefNodes = testPlan.getNodes(assessmentItemRef.getIdentifier());
                 if (selectedItemRefNodes!=null) { /* (May be null if assessmentItemRef wasn't selected */
@@ -500,66 +794,68 @@ public class TestProcessingController extends TestValidationController implement
         }
 
         /* Now apply includes/excludes */
-        for (int i=itemRefNodes.size()-1; i>=0; i--) { /* Easiest to move backwards, removing elements as required */
-            final TestPlanNode itemRefNode = itemRefNodes.get(i);
-            final AssessmentItemRef assessmentItemRef = (AssessmentItemRef) testProcessingMap.resolveAbstractPart(itemRefNode);
-            final List<String> categories = assessmentItemRef.getCategories();
-            boolean keep;
-            if (includeCategories!=null) {
-                keep = false;
-                for (final String includeCategory : includeCategories) {
-                    if (categories.contains(includeCategory)) {
-                        keep = true;
-                        break;
+        if (includeCategories!=null || excludeCategories!=null) {
+            for (int i=itemRefNodes.size()-1; i>=0; i--) { /* Easiest to move backwards, removing elements as required */
+                final TestPlanNode itemRefNode = itemRefNodes.get(i);
+                boolean keep;
+                if (includeCategories!=null) {
+                    keep = false;
+                    for (final String includeCategory : includeCategories) {
+                        if (testProcessingMap.isInCategory(itemRefNode, includeCategory)) {
+                            keep = true;
+                            break;
+                        }
                     }
                 }
-            }
-            else {
-                keep = true;
-            }
+                else {
+                    keep = true;
+                }
 
-            if (keep && excludeCategories!=null) {
-                for (final String excludeCategory : excludeCategories) {
-                    if (categories.contains(excludeCategory)) {
-                        keep = false;
-                        break;
+                if (keep && excludeCategories!=null) {
+                    for (final String excludeCategory : excludeCategories) {
+                        if (testProcessingMap.isInCategory(itemRefNode, excludeCategory)) {
+                            keep = false;
+                            break;
+                        }
                     }
                 }
-            }
-            if (!keep) {
-                itemRefNodes.remove(i);
+                if (!keep) {
+                    itemRefNodes.remove(i);
+                }
             }
         }
-        return itemRefNodes;
+        return Collections.unmodifiableList(itemRefNodes);
     }
 
     /**
-     * Helper method to find all {@link AssessmentItemRef}s living below the {@link AssessmentSection}(s)
-     * with given identifier.
-     * <p>
-     * IMPORTANT: This must search the *original* test structure. We need to do this as invisible
-     * sections may have been removed by the time the {@link TestPlan} gets computed.
-     *
-     * @param sectionIdentifier
-     * @return
+     * Key for memoized results of {@link TestProcessingController#computeItemSubset(Identifier, List, List)}
      */
-    private final List<AssessmentItemRef> findAssessmentItemRefsInSections(final Identifier sectionIdentifier) {
-        Assert.notNull(sectionIdentifier);
-        final List<AssessmentItemRef> result = new ArrayList<AssessmentItemRef>();
-        QueryUtils.walkTree(new TreeWalkNodeHandler() {
-            @Override
-            public boolean handleNode(final QtiNode node) {
-                if (node instanceof AssessmentSection) {
-                    final AssessmentSection assessmentSection = (AssessmentSection) node;
-                    if (assessmentSection.getIdentifier().equals(sectionIdentifier)) {
-                        /* Found matching section, so search for all assessmentItemRefs below this */
-                        result.addAll(QueryUtils.search(AssessmentItemRef.class, assessmentSection));
-                    }
-                }
-                /* Keep searching */
-                return true;
+    private static final class ItemSubsetKey {
+
+        private final Identifier sectionIdentifier;
+        private final List<String> includeCategories;
+        private final List<String> excludeCategories;
+
+        public ItemSubsetKey(final Identifier sectionIdentifier, final List<String> includeCategories, final List<String> excludeCategories) {
+            this.sectionIdentifier = sectionIdentifier;
+            this.includeCategories = includeCategories;
+            this.excludeCategories = excludeCategories;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof ItemSubsetKey)) {
+                return false;
             }
-        }, getSubjectTest());
-        return result;
+            final ItemSubsetKey other = (ItemSubsetKey) obj;
+            return ObjectUtilities.nullSafeEquals(sectionIdentifier, other.sectionIdentifier)
+                    && ObjectUtilities.nullSafeEquals(includeCategories, other.includeCategories)
+                    && ObjectUtilities.nullSafeEquals(excludeCategories, other.excludeCategories);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(new Object[] { sectionIdentifier, includeCategories, excludeCategories });
+        }
     }
 }
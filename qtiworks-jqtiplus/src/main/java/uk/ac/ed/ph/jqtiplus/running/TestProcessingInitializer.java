@@ -33,32 +33,55 @@
  */
 package uk.ac.ed.ph.jqtiplus.running;
 
+import uk.ac.ed.ph.jqtiplus.QtiConstants;
+import uk.ac.ed.ph.jqtiplus.attribute.Attribute;
+import uk.ac.ed.ph.jqtiplus.node.QtiNode;
+import uk.ac.ed.ph.jqtiplus.node.expression.general.LookupExpression;
+import uk.ac.ed.ph.jqtiplus.node.expression.general.RandomFloat;
+import uk.ac.ed.ph.jqtiplus.node.expression.general.RandomInteger;
+import uk.ac.ed.ph.jqtiplus.node.expression.operator.CustomOperator;
+import uk.ac.ed.ph.jqtiplus.node.expression.operator.Random;
+import uk.ac.ed.ph.jqtiplus.node.expression.outcome.ItemSubset;
 import uk.ac.ed.ph.jqtiplus.node.item.AssessmentItem;
 import uk.ac.ed.ph.jqtiplus.node.item.response.declaration.ResponseDeclaration;
 import uk.ac.ed.ph.jqtiplus.node.outcome.declaration.OutcomeDeclaration;
 import uk.ac.ed.ph.jqtiplus.node.shared.VariableDeclaration;
 import uk.ac.ed.ph.jqtiplus.node.test.AbstractPart;
+import uk.ac.ed.ph.jqtiplus.node.test.AssessmentItemRef;
 import uk.ac.ed.ph.jqtiplus.node.test.AssessmentSection;
 import uk.ac.ed.ph.jqtiplus.node.test.AssessmentTest;
 import uk.ac.ed.ph.jqtiplus.node.test.ItemSessionControl;
 import uk.ac.ed.ph.jqtiplus.node.test.SectionPart;
 import uk.ac.ed.ph.jqtiplus.node.test.TestPart;
+import uk.ac.ed.ph.jqtiplus.node.test.outcome.processing.ExitTest;
+import uk.ac.ed.ph.jqtiplus.node.test.outcome.processing.OutcomeProcessing;
+import uk.ac.ed.ph.jqtiplus.node.test.outcome.processing.OutcomeRule;
+import uk.ac.ed.ph.jqtiplus.node.test.outcome.processing.ProcessOutcomeValue;
 import uk.ac.ed.ph.jqtiplus.resolution.ResolvedAssessmentItem;
 import uk.ac.ed.ph.jqtiplus.resolution.ResolvedAssessmentTest;
+import uk.ac.ed.ph.jqtiplus.resolution.ResolvedTestVariableReference;
 import uk.ac.ed.ph.jqtiplus.resolution.RootNodeLookup;
 import uk.ac.ed.ph.jqtiplus.state.EffectiveItemSessionControl;
 import uk.ac.ed.ph.jqtiplus.state.ItemProcessingMap;
+import uk.ac.ed.ph.jqtiplus.state.OutcomeRuleDependencies;
 import uk.ac.ed.ph.jqtiplus.state.TestProcessingMap;
+import uk.ac.ed.ph.jqtiplus.types.FloatOrVariableRef;
 import uk.ac.ed.ph.jqtiplus.types.Identifier;
+import uk.ac.ed.ph.jqtiplus.types.IntegerOrVariableRef;
+import uk.ac.ed.ph.jqtiplus.types.StringOrVariableRef;
 import uk.ac.ed.ph.jqtiplus.utils.QueryUtils;
 import uk.ac.ed.ph.jqtiplus.validation.ItemValidationResult;
 import uk.ac.ed.ph.jqtiplus.validation.TestValidationResult;
 
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * This helper class analyses a {@link ResolvedAssessmentTest} and generates an
@@ -152,10 +175,13 @@ public final class TestProcessingInitializer {
 
         }
 
+        /* Work out whether outcomeProcessing can be performed incrementally */
+        final List<OutcomeRuleDependencies> outcomeRuleDependencies = isTestValid ? new OutcomeRuleDependencyBuilder(test).run() : null;
+
         /* That's it! */
         return new TestProcessingMap(resolvedAssessmentTest, isTestValid,
                 abstractParts, effectiveItemSessionControlMap, outcomeDeclarationMapBuilder,
-                durationResponseDeclaration, itemProcessingMapBuilder);
+                durationResponseDeclaration, itemProcessingMapBuilder, outcomeRuleDependencies);
     }
 
     private void doOutcomeVariable(final OutcomeDeclaration declaration) {
@@ -169,6 +195,161 @@ public final class TestProcessingInitializer {
         return new EffectiveItemSessionControlBuilder(test).run();
     }
 
+    /**
+     * Helper class to compute the {@link OutcomeRuleDependencies} for each top-level
+     * {@link OutcomeRule} in the {@link AssessmentTest}'s {@link OutcomeProcessing}.
+     * <p>
+     * Incremental outcome processing is only safe if each top-level {@link OutcomeRule} can be
+     * considered as a function of its recorded dependencies. This builder therefore returns
+     * null (meaning "always do full outcome processing") if:
+     * <ul>
+     *   <li>there is no outcomeProcessing;</li>
+     *   <li>exitTest is used anywhere;</li>
+     *   <li>an outcome variable is set by more than one top-level rule;</li>
+     *   <li>a rule reads an outcome variable that is set by itself or by a later rule.</li>
+     * </ul>
+     *
+     * @author David McKain
+     */
+    private class OutcomeRuleDependencyBuilder {
+
+        private final AssessmentTest test;
+
+        public OutcomeRuleDependencyBuilder(final AssessmentTest test) {
+            this.test = test;
+        }
+
+        public List<OutcomeRuleDependencies> run() {
+            final OutcomeProcessing outcomeProcessing = test.getOutcomeProcessing();
+            if (outcomeProcessing==null || !QueryUtils.search(ExitTest.class, outcomeProcessing).isEmpty()) {
+                return null;
+            }
+            final List<OutcomeRuleDependencies> result = new ArrayList<OutcomeRuleDependencies>();
+            final Set<Identifier> writtenByAllRules = new HashSet<Identifier>();
+            for (final OutcomeRule outcomeRule : outcomeProcessing.getOutcomeRules()) {
+                final OutcomeRuleDependencies dependencies = analyseOutcomeRule(outcomeRule);
+                for (final Identifier written : dependencies.getWrittenOutcomeIdentifiers()) {
+                    if (!writtenByAllRules.add(written)) {
+                        return null;
+                    }
+                }
+                result.add(dependencies);
+            }
+            for (int i=0; i<result.size(); i++) {
+                for (int j=i; j<result.size(); j++) {
+                    if (!Collections.disjoint(result.get(i).getReadOutcomeIdentifiers(), result.get(j).getWrittenOutcomeIdentifiers())) {
+                        return null;
+                    }
+                }
+            }
+            return result;
+        }
+
+        private OutcomeRuleDependencies analyseOutcomeRule(final OutcomeRule outcomeRule) {
+            boolean alwaysEvaluate = false;
+            final Set<Identifier> itemRefIdentifiers = new HashSet<Identifier>();
+            final Set<Identifier> readOutcomeIdentifiers = new HashSet<Identifier>();
+            final Set<Identifier> writtenOutcomeIdentifiers = new HashSet<Identifier>();
+            for (final QtiNode node : QueryUtils.search(QtiNode.class, Collections.singletonList(outcomeRule))) {
+                if (node instanceof RandomInteger || node instanceof RandomFloat
+                        || node instanceof Random || node instanceof CustomOperator) {
+                    /* Result may change on each evaluation */
+                    alwaysEvaluate = true;
+                }
+                else if (node instanceof ProcessOutcomeValue) {
+                    writtenOutcomeIdentifiers.add(((ProcessOutcomeValue) node).getIdentifier());
+                }
+                else if (node instanceof LookupExpression) {
+                    final List<ResolvedTestVariableReference> resolvedReferences = resolvedAssessmentTest.resolveVariableReference(((LookupExpression) node).getIdentifier());
+                    if (resolvedReferences==null || resolvedReferences.size()!=1) {
+                        alwaysEvaluate = true;
+                    }
+                    else {
+                        final ResolvedTestVariableReference resolvedReference = resolvedReferences.get(0);
+                        if (resolvedReference.isItemVariableReference()) {
+                            itemRefIdentifiers.add(resolvedReference.getAssessmentItemRef().getIdentifier());
+                        }
+                        else {
+                            alwaysEvaluate |= recordTestVariableRead(readOutcomeIdentifiers, resolvedReference.getVariableDeclaration().getIdentifier());
+                        }
+                    }
+                }
+                else if (node instanceof ItemSubset) {
+                    recordItemSubset(itemRefIdentifiers, (ItemSubset) node);
+                }
+
+                /* Look for variable references used in attributes, e.g. <roundTo figures="{N}"/> */
+                for (final Attribute<?> attribute : node.getAttributes()) {
+                    final Object value = attribute.getValue();
+                    if (value instanceof List) {
+                        for (final Object item : (List<?>) value) {
+                            alwaysEvaluate |= recordAttributeValue(readOutcomeIdentifiers, item);
+                        }
+                    }
+                    else {
+                        alwaysEvaluate |= recordAttributeValue(readOutcomeIdentifiers, value);
+                    }
+                }
+            }
+            return new OutcomeRuleDependencies(alwaysEvaluate, itemRefIdentifiers,
+                    readOutcomeIdentifiers, writtenOutcomeIdentifiers);
+        }
+
+        private boolean recordAttributeValue(final Set<Identifier> readOutcomeIdentifiers, final Object value) {
+            Identifier variableReferenceIdentifier = null;
+            if (value instanceof IntegerOrVariableRef && ((IntegerOrVariableRef) value).isVariableRef()) {
+                variableReferenceIdentifier = ((IntegerOrVariableRef) value).getIdentifier();
+            }
+            else if (value instanceof FloatOrVariableRef && ((FloatOrVariableRef) value).isVariableRef()) {
+                variableReferenceIdentifier = ((FloatOrVariableRef) value).getIdentifier();
+            }
+            else if (value instanceof StringOrVariableRef && ((StringOrVariableRef) value).isVariableRef()) {
+                variableReferenceIdentifier = ((StringOrVariableRef) value).getIdentifier();
+            }
+            return variableReferenceIdentifier!=null && recordTestVariableRead(readOutcomeIdentifiers, variableReferenceIdentifier);
+        }
+
+        /**
+         * Records a read of the given test variable, returning true if this means the rule must
+         * always be evaluated. (This is the case for the test <code>duration</code>, which changes
+         * without any item being touched.)
+         */
+        private boolean recordTestVariableRead(final Set<Identifier> readOutcomeIdentifiers, final Identifier identifier) {
+            if (QtiConstants.VARIABLE_DURATION_IDENTIFIER.equals(identifier)) {
+                return true;
+            }
+            readOutcomeIdentifiers.add(identifier);
+            return false;
+        }
+
+        private void recordItemSubset(final Set<Identifier> itemRefIdentifiers, final ItemSubset itemSubset) {
+            final Identifier sectionIdentifier = itemSubset.getSectionIdentifier();
+            final List<AssessmentItemRef> candidateItemRefs = new ArrayList<AssessmentItemRef>();
+            if (sectionIdentifier!=null) {
+                for (final AssessmentSection assessmentSection : QueryUtils.search(AssessmentSection.class, test)) {
+                    if (sectionIdentifier.equals(assessmentSection.getIdentifier())) {
+                        candidateItemRefs.addAll(QueryUtils.search(AssessmentItemRef.class, assessmentSection));
+                    }
+                }
+            }
+            else {
+                candidateItemRefs.addAll(QueryUtils.search(AssessmentItemRef.class, test));
+            }
+            final List<String> includeCategories = itemSubset.getIncludeCategories();
+            final List<String> excludeCategories = itemSubset.getExcludeCategories();
+            for (final AssessmentItemRef assessmentItemRef : candidateItemRefs) {
+                final List<String> categories = assessmentItemRef.getCategories();
+                if (includeCategories!=null && (categories==null || Collections.disjoint(categories, includeCategories))) {
+                    continue;
+                }
+                if (excludeCategories!=null && categories!=null && !Collections.disjoint(categories, excludeCategories)) {
+                    continue;
+                }
+                itemRefIdentifiers.add(assessmentItemRef.getIdentifier());
+            }
+        }
+    }
+
     /**
      * Helper class to compute the {@link EffectiveItemSessionControl} for each {@link AbstractPart}
      * in the {@link AssessmentTest};
@@ -37,14 +37,17 @@ import uk.ac.ed.ph.jqtiplus.JqtiExtensionManager;
 import uk.ac.ed.ph.jqtiplus.JqtiExtensionPackage;
 import uk.ac.ed.ph.jqtiplus.JqtiLifecycleEventType;
 import uk.ac.ed.ph.jqtiplus.exception.QtiCandidateStateException;
+import uk.ac.ed.ph.jqtiplus.exception.QtiEvaluationBudgetException;
 import uk.ac.ed.ph.jqtiplus.exception.QtiLogicException;
 import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
+import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
 import uk.ac.ed.ph.jqtiplus.node.outcome.declaration.OutcomeDeclaration;
 import uk.ac.ed.ph.jqtiplus.node.result.AssessmentResult;
 import uk.ac.ed.ph.jqtiplus.node.result.Context;
 import uk.ac.ed.ph.jqtiplus.node.result.ItemResult;
 import uk.ac.ed.ph.jqtiplus.node.result.OutcomeVariable;
 import uk.ac.ed.ph.jqtiplus.node.result.SessionIdentifier;
+import uk.ac.ed.ph.jqtiplus.node.result.SessionStatus;
 import uk.ac.ed.ph.jqtiplus.node.result.TestResult;
 import uk.ac.ed.ph.jqtiplus.node.shared.declaration.DefaultValue;
 import uk.ac.ed.ph.jqtiplus.node.test.AbstractPart;
@@ -64,6 +67,7 @@ import uk.ac.ed.ph.jqtiplus.state.AssessmentSectionSessionState;
 import uk.ac.ed.ph.jqtiplus.state.ControlObjectSessionState;
 import uk.ac.ed.ph.jqtiplus.state.EffectiveItemSessionControl;
 import uk.ac.ed.ph.jqtiplus.state.ItemSessionState;
+import uk.ac.ed.ph.jqtiplus.state.OutcomeRuleDependencies;
 import uk.ac.ed.ph.jqtiplus.state.TestPartSessionState;
 import uk.ac.ed.ph.jqtiplus.state.TestPlan;
 import uk.ac.ed.ph.jqtiplus.state.TestPlanNode;
@@ -80,11 +84,15 @@ import uk.ac.ed.ph.jqtiplus.value.Signature;
 import uk.ac.ed.ph.jqtiplus.value.Value;
 
 import java.net.URI;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -133,9 +141,6 @@ public final class TestSessionController extends TestProcessingController {
     private final TestProcessingMap testProcessingMap;
     private final TestSessionState testSessionState;
 
-    /** NB: These are created lazily */
-    private final Map<TestPlanNodeKey, ItemSessionController> itemSessionControllerMap;
-
     public TestSessionController(final JqtiExtensionManager jqtiExtensionManager,
             final TestSessionControllerSettings testSessionControllerSettings,
             final TestProcessingMap testProcessingMap,
@@ -143,7 +148,16 @@ public final class TestSessionController extends TestProcessingController {
         super(jqtiExtensionManager, testSessionControllerSettings, testProcessingMap, testSessionState);
         this.testProcessingMap = testProcessingMap;
         this.testSessionState = testSessionState;
-        this.itemSessionControllerMap = new HashMap<TestPlanNodeKey, ItemSessionController>();
+    }
+
+    /**
+     * (Used by {@link TestSessionControllerFactory#createTestSessionController(TestSessionState)})
+     */
+    TestSessionController(final TestSessionControllerFactory testSessionControllerFactory,
+            final TestSessionState testSessionState) {
+        super(testSessionControllerFactory, testSessionState);
+        this.testProcessingMap = testSessionControllerFactory.getTestProcessingMap();
+        this.testSessionState = testSessionState;
     }
 
     //-------------------------------------------------------------------
@@ -166,7 +180,9 @@ public final class TestSessionController extends TestProcessingController {
      * <p>
      * Postconditions: (Valid) outcome variables will be set to their default values,
      * states for each testPart and assessmentSection will be reset,
-     * {@link ItemSessionController#initialize(Date)} will be called for each item,
+     * {@link ItemSessionController#initialize(Date)} will be called for each item
+     * (or deferred until each item is first used if
+     * {@link TestSessionControllerSettings#isLazyItemSessionInitialization()} is set),
      * <code>duration</code> will be set to 0. Duration timers will not yet start.
      *
      * @param timestamp initialisation timestamp, which must not be null
@@ -176,12 +192,15 @@ public final class TestSessionController extends TestProcessingController {
     public void initialize(final Date timestamp) {
         Assert.notNull(timestamp, "timestamp");
 
-        /* Clear existing ItemSessionController map */
-        itemSessionControllerMap.clear();
+        /* Clear existing ItemSessionControllers, as their states are about to be replaced */
+        resetItemSessionControllers();
 
         /* Reset test variables */
         testSessionState.reset();
+        testSessionState.setInitializationTime(timestamp);
         resetOutcomeVariables();
+        final boolean lazyItemSessions = testSessionControllerSettings.isLazyItemSessionInitialization();
+        final Map<TestPlanNode, ItemSessionController> itemSessionControllers = new LinkedHashMap<TestPlanNode, ItemSessionController>();
 
         /* Initialise each testPart, assessmentSection and item instance */
         for (final TestPlanNode testPlanNode : testSessionState.getTestPlan().getTestPlanNodeList()) {
@@ -200,9 +219,9 @@ public final class TestSessionController extends TestProcessingController {
                 case ASSESSMENT_ITEM_REF:
                     final ItemSessionState itemSessionState = new ItemSessionState();
                     testSessionState.getItemSessionStates().put(key, itemSessionState);
-
-                    final ItemSessionController itemSessionController = getItemSessionController(testPlanNode);
-                    itemSessionController.initialize(timestamp);
+                    if (!lazyItemSessions) {
+                        itemSessionControllers.put(testPlanNode, getItemSessionController(testPlanNode));
+                    }
                     break;
 
                 case ROOT:
@@ -214,6 +233,14 @@ public final class TestSessionController extends TestProcessingController {
             }
         }
 
+        /* Initialize each item session (unless deferred) */
+        performItemSessionTasks(itemSessionControllers, new ItemSessionTask() {
+            @Override
+            public void perform(final TestPlanNode itemRefNode, final ItemSessionController itemSessionController) {
+                itemSessionController.initialize(timestamp);
+            }
+        });
+
         /* Mark test session as initialized */
         testSessionState.setInitialized(true);
     }
@@ -280,7 +307,7 @@ public final class TestSessionController extends TestProcessingController {
             final TestPlanNode currentItemRefNode = expectItemRefNode(currentItemKey);
             final ItemSessionController itemSessionController = getItemSessionController(currentItemRefNode);
             itemSessionController.touchDuration(timestamp);
-            for (final TestPlanNode sectionNode : currentItemRefNode.searchAncestors(TestNodeType.ASSESSMENT_SECTION)) {
+            for (final TestPlanNode sectionNode : testSessionState.getTestPlan().getEnclosingSectionNodes(currentItemRefNode)) {
                 final AssessmentSectionSessionState assessmentSectionSessionState = expectAssessmentSectionSessionState(sectionNode);
                 touchControlObjectTimerIfOpen(assessmentSectionSessionState, timestamp);
             }
@@ -506,11 +533,23 @@ public final class TestSessionController extends TestProcessingController {
         startControlObjectTimer(nextTestPartSessionState, timestamp);
         startControlObjectTimer(testSessionState, timestamp);
 
-        /* Perform template processing on each item */
-        final List<TestPlanNode> itemRefNodes = nextAvailableTestPartNode.searchDescendants(TestNodeType.ASSESSMENT_ITEM_REF);
+        /* Perform template processing on each item, or defer it until each item is first used */
+        final List<TestPlanNode> itemRefNodes = testSessionState.getTestPlan().getItemRefNodes(nextAvailableTestPartNode);
+        final Map<TestPlanNode, ItemSessionController> itemSessionControllers = new LinkedHashMap<TestPlanNode, ItemSessionController>();
         for (final TestPlanNode itemRefNode : itemRefNodes) {
-            performTemplateProcessing(itemRefNode, timestamp);
+            if (testSessionControllerSettings.isLazyItemSessionInitialization()) {
+                testSessionState.addPendingTemplateProcessingKey(itemRefNode.getKey());
+            }
+            else {
+                itemSessionControllers.put(itemRefNode, getItemSessionController(itemRefNode));
+            }
         }
+        performItemSessionTasks(itemSessionControllers, new ItemSessionTask() {
+            @Override
+            public void perform(final TestPlanNode itemRefNode, final ItemSessionController itemSessionController) {
+                performTemplateProcessing(itemRefNode, itemSessionController, timestamp);
+            }
+        });
 
         /* If linear navigation, select the first item (if possible) */
         if (nextTestPart.getNavigationMode()==NavigationMode.LINEAR) {
@@ -527,12 +566,12 @@ public final class TestSessionController extends TestProcessingController {
         assertTestPartEnded(currentTestPartSessionState);
 
         /* Exit all items */
-        for (final TestPlanNode itemRefNode : currentTestPartNode.searchDescendants(TestNodeType.ASSESSMENT_ITEM_REF)) {
+        for (final TestPlanNode itemRefNode : testSessionState.getTestPlan().getItemRefNodes(currentTestPartNode)) {
             getItemSessionController(itemRefNode).exitItem(timestamp);
         }
 
         /* Exit all assessmentSections */
-        for (final TestPlanNode testPlanNode : currentTestPartNode.searchDescendants(TestNodeType.ASSESSMENT_SECTION)) {
+        for (final TestPlanNode testPlanNode : testSessionState.getTestPlan().getSectionNodes(currentTestPartNode)) {
             final AssessmentSectionSessionState assessmentSectionSessionState = testSessionState.getAssessmentSectionSessionStates().get(testPlanNode.getKey());
             assessmentSectionSessionState.setExitTime(timestamp);
         }
@@ -577,20 +616,21 @@ public final class TestSessionController extends TestProcessingController {
 
     /**
      * Performs template processing on the given {@link TestPlanNode} corresponding to an
-     * {@link AssessmentItemRef}
+     * {@link AssessmentItemRef}, using the given {@link ItemSessionController} for it.
+     * <p>
+     * (This may be called from a worker Thread, so must only touch the given item session.)
      *
      * @param timestamp timestamp for this operation, which must not be null
      *
      * @throws IllegalArgumentException if timestamp is null
      */
-    private void performTemplateProcessing(final TestPlanNode itemRefNode, final Date timestamp) {
+    private void performTemplateProcessing(final TestPlanNode itemRefNode,
+            final ItemSessionController itemSessionController, final Date timestamp) {
         Assert.notNull(timestamp, "timestamp");
         Assert.notNull(itemRefNode);
 
         final AssessmentItemRef assessmentItemRef = expectItemRef(itemRefNode);
         final List<TemplateDefault> templateDefaults = assessmentItemRef.getTemplateDefaults();
-
-        final ItemSessionController itemSessionController = getItemSessionController(itemRefNode);
         itemSessionController.performTemplateProcessing(timestamp, templateDefaults);
     }
 
@@ -610,7 +650,7 @@ public final class TestSessionController extends TestProcessingController {
         final TestPart currentTestPart = expectTestPart(currentTestPartNode);
         if (currentTestPart.getSubmissionMode()==SubmissionMode.INDIVIDUAL) {
             /* (allowSkipping & validateResponses only apply in INDIVIDUAL submission mode) */
-            final List<TestPlanNode> itemRefNodes = currentTestPartNode.searchDescendants(TestNodeType.ASSESSMENT_ITEM_REF);
+            final List<TestPlanNode> itemRefNodes = testSessionState.getTestPlan().getItemRefNodes(currentTestPartNode);
             for (final TestPlanNode itemRefNode : itemRefNodes) {
                 final ItemSessionState itemSessionState = testSessionState.getItemSessionStates().get(itemRefNode.getKey());
                 final EffectiveItemSessionControl effectiveItemSessionControl = testProcessingMap.resolveEffectiveItemSessionControl(itemRefNode);
@@ -660,7 +700,7 @@ public final class TestSessionController extends TestProcessingController {
     private void endCurrentTestPart(final TestPlanNode currentTestPartNode, final Date timestamp) {
         final TestPart currentTestPart = expectTestPart(currentTestPartNode);
         final TestPartSessionState currentTestPartSessionState = expectTestPartSessionState(currentTestPartNode);
-        final List<TestPlanNode> itemRefNodes = currentTestPartNode.searchDescendants(TestNodeType.ASSESSMENT_ITEM_REF);
+        final List<TestPlanNode> itemRefNodes = testSessionState.getTestPlan().getItemRefNodes(currentTestPartNode);
 
         /* If in SIMULTANEOUS mode, then commit responses on each item that has been visited and invoke run RP */
         if (currentTestPart.getSubmissionMode()==SubmissionMode.SIMULTANEOUS) {
@@ -688,7 +728,7 @@ public final class TestSessionController extends TestProcessingController {
         }
 
         /* End all assessmentSections (if not done so already during LINEAR navigation) */
-        for (final TestPlanNode testPlanNode : currentTestPartNode.searchDescendants(TestNodeType.ASSESSMENT_SECTION)) {
+        for (final TestPlanNode testPlanNode : testSessionState.getTestPlan().getSectionNodes(currentTestPartNode)) {
             final AssessmentSectionSessionState assessmentSectionSessionState = testSessionState.getAssessmentSectionSessionStates().get(testPlanNode.getKey());
             if (!assessmentSectionSessionState.isEnded() && !(assessmentSectionSessionState.isPreConditionFailed() || assessmentSectionSessionState.isJumpedByBranchRule())) {
                 assessmentSectionSessionState.setEndTime(timestamp);
@@ -852,7 +892,7 @@ public final class TestSessionController extends TestProcessingController {
             if (!currentItemSessionState.isEnded()) {
                 getItemSessionController(currentItemRefNode).suspendItemSession(timestamp);
             }
-            for (final TestPlanNode sectionNode : currentItemRefNode.searchAncestors(TestNodeType.ASSESSMENT_SECTION)) {
+            for (final TestPlanNode sectionNode : testSessionState.getTestPlan().getEnclosingSectionNodes(currentItemRefNode)) {
                 endControlObjectTimer(expectAssessmentSectionSessionState(sectionNode), timestamp);
             }
         }
@@ -879,7 +919,7 @@ public final class TestSessionController extends TestProcessingController {
             }
 
             /* enter and/or start timer on parent sections */
-            for (final TestPlanNode sectionNode : newItemRefNode.searchAncestors(TestNodeType.ASSESSMENT_SECTION)) {
+            for (final TestPlanNode sectionNode : testSessionState.getTestPlan().getEnclosingSectionNodes(newItemRefNode)) {
                 final AssessmentSectionSessionState assessmentSectionSessionState = expectAssessmentSectionSessionState(sectionNode);
                 if (!assessmentSectionSessionState.isEntered()) {
                     assessmentSectionSessionState.setEntryTime(timestamp);
@@ -1210,7 +1250,7 @@ public final class TestSessionController extends TestProcessingController {
             return null;
         }
         /* Make sure branch target is in this testPart */
-        if (!startNode.searchEnclosingTestPartNode().equals(branchTargetNode.searchEnclosingTestPartNode())) {
+        if (!testPlan.getEnclosingTestPartNode(startNode).equals(testPlan.getEnclosingTestPartNode(branchTargetNode))) {
             fireRuntimeError(startPart, "branchRule target found with identifier " + branchTargetIdentifier
                     + " is in a different testPart to the current node with key " + startNode.getKey()
                     + ". Ignoring branchRule. Check test validity");
@@ -1298,8 +1338,9 @@ public final class TestSessionController extends TestProcessingController {
                 break;
 
             case ASSESSMENT_ITEM_REF:
-                final ItemSessionState itemSessionState = expectItemRefState(testPlanNode);
+                final ItemSessionState itemSessionState = getItemSessionController(testPlanNode).getItemSessionState();
                 itemSessionState.setJumpedByBranchRule(true);
+                testSessionState.markItemDirty(testPlanNode.getKey());
                 break;
 
             default:
@@ -1334,10 +1375,10 @@ public final class TestSessionController extends TestProcessingController {
                 case ASSESSMENT_ITEM_REF:
                     /* We're at an item. Check if it can be entered */
                     final AssessmentItemRef assessmentItemRef = expectItemRef(currentNode);
-                    final ItemSessionState itemSessionState = expectItemRefState(currentNode);
                     if (currentTestPart.areJumpsEnabled() && !assessmentItemRef.arePreConditionsMet(this)) {
                         /* preCondition on assessmentItemRef, so note this. */
-                       itemSessionState.setPreConditionFailed(true);
+                        getItemSessionController(currentNode).getItemSessionState().setPreConditionFailed(true);
+                        testSessionState.markItemDirty(currentNode.getKey());
                     }
                     else {
                         /* Found enterable item */
@@ -1541,26 +1582,155 @@ public final class TestSessionController extends TestProcessingController {
                 && effectiveItemSessionControl.isShowSolution();
     }
 
+    //-------------------------------------------------------------------
+    // Rescoring
+
+    /**
+     * Rescores this test session, e.g. after fixes have been made to the response processing
+     * of some items or to the test's outcome processing.
+     * <p>
+     * Response processing is re-run on each item session that has previously had its responses
+     * processed (see {@link ItemSessionController#rescoreResponses()}), then outcome processing is
+     * run in full. The navigation state, durations and item session statuses are left unchanged,
+     * so this may be used on tests that have ended.
+     * <p>
+     * Precondition: the test must have been initialized.
+     *
+     * @return number of item sessions that were rescored
+     */
+    public int rescoreTest() {
+        assertTestInitialized();
+        logger.debug("Rescoring test {}", getSubject().getSystemId());
+
+        int rescoredCount = 0;
+        for (final TestPlanNode itemRefNode : testSessionState.getTestPlan().searchNodes(TestNodeType.ASSESSMENT_ITEM_REF)) {
+            final ItemSessionState itemSessionState = testSessionState.getItemSessionStates().get(itemRefNode.getKey());
+            if (itemSessionState.getSessionStatus()==SessionStatus.FINAL) {
+                final ItemSessionController itemSessionController = getItemSessionController(itemRefNode);
+                if (itemSessionController.rescoreResponses()) {
+                    testSessionState.markItemDirty(itemRefNode.getKey());
+                    rescoredCount++;
+                }
+            }
+        }
+
+        /* Outcome processing may itself have changed, so force a full run */
+        testSessionState.setOutcomeProcessingPerformed(false);
+        performOutcomeProcessing();
+        return rescoredCount;
+    }
+
     //-------------------------------------------------------------------
     // Outcome processing
 
     private void performOutcomeProcessing() {
         logger.debug("Outcome processing starting on test {}", getSubject().getSystemId());
         fireLifecycleEvent(JqtiLifecycleEventType.TEST_OUTCOME_PROCESSING_STARTING);
+        startItemSubsetCaching();
         try {
-            resetOutcomeVariables();
-
             final OutcomeProcessing outcomeProcessing = getSubjectTest().getOutcomeProcessing();
+            final List<OutcomeRuleDependencies> outcomeRuleDependencies = testProcessingMap.getOutcomeRuleDependencies();
+            final boolean incremental = outcomeRuleDependencies!=null && testSessionState.isOutcomeProcessingPerformed();
+            if (!incremental) {
+                resetOutcomeVariables();
+            }
+            boolean successful = true;
             if (outcomeProcessing != null) {
-                outcomeProcessing.evaluate(this);
+                final EvaluationBudget evaluationBudget = getEvaluationBudget();
+                if (evaluationBudget!=null) {
+                    evaluationBudget.start();
+                }
+                try {
+                    if (incremental) {
+                        performOutcomeProcessingIncrementally(outcomeProcessing, outcomeRuleDependencies);
+                    }
+                    else {
+                        outcomeProcessing.evaluate(this);
+                    }
+                }
+                catch (final QtiEvaluationBudgetException e) {
+                    fireRuntimeError(outcomeProcessing, e.getMessage() + " during outcome processing - resetting outcome variables to default values");
+                    resetOutcomeVariables();
+                    successful = false;
+                }
+                finally {
+                    if (evaluationBudget!=null) {
+                        evaluationBudget.stop();
+                    }
+                }
             }
+
+            /* Record that outcome values are now up to date with respect to the current item states */
+            testSessionState.setOutcomeProcessingPerformed(successful);
+            testSessionState.clearDirtyItemKeys();
         }
         finally {
+            endItemSubsetCaching();
             fireLifecycleEvent(JqtiLifecycleEventType.TEST_OUTCOME_PROCESSING_FINISHED);
             logger.debug("Outcome processing finished on test {}", getSubject().getSystemId());
         }
     }
 
+    /**
+     * Performs outcome processing incrementally, re-evaluating only those top-level outcomeRules
+     * that depend on items that have changed since outcome processing was last performed, or on
+     * outcome variables whose values have changed during this run. (The remaining rules would
+     * yield exactly the same results as last time, so are skipped.)
+     * <p>
+     * This must only be called if the {@link OutcomeRuleDependencies} are available and
+     * outcome processing has already been performed on this state.
+     */
+    private void performOutcomeProcessingIncrementally(final OutcomeProcessing outcomeProcessing,
+            final List<OutcomeRuleDependencies> outcomeRuleDependencies) {
+        /* Work out which items have changed */
+        final Set<Identifier> dirtyItemRefIdentifiers = new HashSet<Identifier>();
+        for (final TestPlanNodeKey dirtyItemKey : testSessionState.getDirtyItemKeys()) {
+            dirtyItemRefIdentifiers.add(dirtyItemKey.getIdentifier());
+        }
+
+        /* Reset any variables not set by outcomeProcessing, as would happen in a full run */
+        final Set<Identifier> writtenOutcomeIdentifiers = new HashSet<Identifier>();
+        for (final OutcomeRuleDependencies dependencies : outcomeRuleDependencies) {
+            writtenOutcomeIdentifiers.addAll(dependencies.getWrittenOutcomeIdentifiers());
+        }
+        for (final OutcomeDeclaration outcomeDeclaration : testProcessingMap.getValidOutcomeDeclarationMap().values()) {
+            if (!writtenOutcomeIdentifiers.contains(outcomeDeclaration.getIdentifier())) {
+                testSessionState.setOutcomeValue(outcomeDeclaration, computeInitialValue(outcomeDeclaration));
+            }
+        }
+
+        /* Now go through each rule, re-evaluating as required */
+        final Set<Identifier> changedOutcomeIdentifiers = new HashSet<Identifier>();
+        final Map<Identifier, OutcomeDeclaration> outcomeDeclarationMap = testProcessingMap.getValidOutcomeDeclarationMap();
+        for (int i=0; i<outcomeRuleDependencies.size(); i++) {
+            final OutcomeRuleDependencies dependencies = outcomeRuleDependencies.get(i);
+            if (!dependencies.isAlwaysEvaluate()
+                    && Collections.disjoint(dependencies.getItemRefIdentifiers(), dirtyItemRefIdentifiers)
+                    && Collections.disjoint(dependencies.getReadOutcomeIdentifiers(), changedOutcomeIdentifiers)) {
+                continue;
+            }
+
+            /* Reset variables set by this rule, remembering their previous values */
+            final Map<Identifier, Value> previousValues = new HashMap<Identifier, Value>();
+            for (final Identifier identifier : dependencies.getWrittenOutcomeIdentifiers()) {
+                final OutcomeDeclaration outcomeDeclaration = outcomeDeclarationMap.get(identifier);
+                if (outcomeDeclaration!=null) {
+                    previousValues.put(identifier, testSessionState.getOutcomeValue(identifier));
+                    testSessionState.setOutcomeValue(outcomeDeclaration, computeInitialValue(outcomeDeclaration));
+                }
+            }
+
+            outcomeProcessing.evaluateOutcomeRule(this, i);
+
+            /* Record which variables have changed */
+            for (final Entry<Identifier, Value> entry : previousValues.entrySet()) {
+                if (!ObjectUtilities.nullSafeEquals(entry.getValue(), testSessionState.getOutcomeValue(entry.getKey()))) {
+                    changedOutcomeIdentifiers.add(entry.getKey());
+                }
+            }
+        }
+    }
+
     private void resetOutcomeVariables() {
         for (final OutcomeDeclaration outcomeDeclaration : testProcessingMap.getValidOutcomeDeclarationMap().values()) {
             testSessionState.setOutcomeValue(outcomeDeclaration, computeInitialValue(outcomeDeclaration));
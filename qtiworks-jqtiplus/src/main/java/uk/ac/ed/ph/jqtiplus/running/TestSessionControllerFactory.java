@@ -0,0 +1,180 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.running;
+
+import uk.ac.ed.ph.jqtiplus.JqtiExtensionManager;
+import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
+import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
+import uk.ac.ed.ph.jqtiplus.node.test.AbstractPart;
+import uk.ac.ed.ph.jqtiplus.node.test.AssessmentItemRef;
+import uk.ac.ed.ph.jqtiplus.state.EffectiveItemSessionControl;
+import uk.ac.ed.ph.jqtiplus.state.ItemProcessingMap;
+import uk.ac.ed.ph.jqtiplus.state.TestPlanNode;
+import uk.ac.ed.ph.jqtiplus.state.TestProcessingMap;
+import uk.ac.ed.ph.jqtiplus.state.TestSessionState;
+
+import java.net.URI;
+import java.util.List;
+
+/**
+ * Creates {@link TestSessionController}s for a particular {@link TestProcessingMap} and
+ * {@link TestSessionControllerSettings}.
+ * <p>
+ * Everything that doesn't depend on the state of a particular candidate session (such as the
+ * {@link ItemSessionControllerSettings} and {@link ItemProcessingMap} for each {@link AssessmentItemRef})
+ * is worked out once when this is created, so that {@link #createTestSessionController(TestSessionState)}
+ * only needs to bind the {@link TestSessionState}. This is therefore worth keeping and reusing
+ * when creating controllers for many sessions on the same test.
+ * <p>
+ * This is thread safe once created. The {@link TestSessionControllerSettings} passed in are copied,
+ * so later changes to them have no effect.
+ *
+ * @author David McKain
+ */
+public final class TestSessionControllerFactory {
+
+    private final JqtiExtensionManager jqtiExtensionManager;
+    private final TestSessionControllerSettings testSessionControllerSettings;
+    private final TestProcessingMap testProcessingMap;
+
+    /** {@link ItemProcessingMap} for each {@link AssessmentItemRef}, indexed on its global index (null for other parts) */
+    private final ItemProcessingMap[] itemProcessingMaps;
+
+    /** {@link ItemSessionControllerSettings} for each {@link AssessmentItemRef}, indexed as above */
+    private final ItemSessionControllerSettings[] itemSessionControllerSettingsArray;
+
+    public TestSessionControllerFactory(final JqtiExtensionManager jqtiExtensionManager,
+            final TestSessionControllerSettings testSessionControllerSettings,
+            final TestProcessingMap testProcessingMap) {
+        Assert.notNull(jqtiExtensionManager, "jqtiExtensionManager");
+        Assert.notNull(testSessionControllerSettings, "testSessionControllerSettings");
+        Assert.notNull(testProcessingMap, "testProcessingMap");
+        this.jqtiExtensionManager = jqtiExtensionManager;
+        this.testSessionControllerSettings = new TestSessionControllerSettings(testSessionControllerSettings); /* (Private copy) */
+        this.testProcessingMap = testProcessingMap;
+
+        /* Work out how each item will be controlled */
+        final List<AbstractPart> abstractPartList = testProcessingMap.getAbstractPartList();
+        final int abstractPartCount = abstractPartList.size();
+        this.itemProcessingMaps = new ItemProcessingMap[abstractPartCount];
+        this.itemSessionControllerSettingsArray = new ItemSessionControllerSettings[abstractPartCount];
+        for (int i=0; i<abstractPartCount; i++) {
+            final AbstractPart abstractPart = abstractPartList.get(i);
+            if (abstractPart instanceof AssessmentItemRef) {
+                final URI itemSystemId = testProcessingMap.getResolvedAssessmentTest().getSystemIdByItemRefMap().get(abstractPart);
+                final EffectiveItemSessionControl effectiveItemSessionControl = testProcessingMap.getEffectiveItemSessionControlMap().get(abstractPart);
+                itemProcessingMaps[i] = itemSystemId!=null ? testProcessingMap.getItemProcessingMapMap().get(itemSystemId) : null;
+                itemSessionControllerSettingsArray[i] = createItemSessionControllerSettings(effectiveItemSessionControl, itemSystemId);
+            }
+        }
+    }
+
+    private ItemSessionControllerSettings createItemSessionControllerSettings(final EffectiveItemSessionControl effectiveItemSessionControl,
+            final URI itemSystemId) {
+        /* Copy relevant bits of itemSessionControl into ItemSessionControllerSettings */
+        final ItemSessionControllerSettings itemSessionControllerSettings = new ItemSessionControllerSettings();
+        itemSessionControllerSettings.setTemplateProcessingLimit(testSessionControllerSettings.getTemplateProcessingLimit());
+        if (effectiveItemSessionControl!=null) {
+            itemSessionControllerSettings.setMaxAttempts(effectiveItemSessionControl.getMaxAttempts());
+        }
+        itemSessionControllerSettings.setEvaluationStepLimit(testSessionControllerSettings.getEvaluationStepLimit());
+        itemSessionControllerSettings.setEvaluationTimeLimit(testSessionControllerSettings.getEvaluationTimeLimit());
+        itemSessionControllerSettings.setTemplateVariantPool(testSessionControllerSettings.getTemplateVariantPoolMap().get(itemSystemId));
+        return itemSessionControllerSettings;
+    }
+
+    public JqtiExtensionManager getJqtiExtensionManager() {
+        return jqtiExtensionManager;
+    }
+
+    /**
+     * Returns the {@link TestSessionControllerSettings} used by all controllers created by
+     * this factory. These must not be changed.
+     */
+    public TestSessionControllerSettings getTestSessionControllerSettings() {
+        return testSessionControllerSettings;
+    }
+
+    public TestProcessingMap getTestProcessingMap() {
+        return testProcessingMap;
+    }
+
+    //-------------------------------------------------------------------
+
+    /**
+     * Creates a new {@link TestSessionController} for the given {@link TestSessionState}.
+     */
+    public TestSessionController createTestSessionController(final TestSessionState testSessionState) {
+        Assert.notNull(testSessionState, "testSessionState");
+        return new TestSessionController(this, testSessionState);
+    }
+
+    /**
+     * Returns the {@link ItemProcessingMap} for the item corresponding to the given
+     * {@link TestPlanNode}.
+     */
+    ItemProcessingMap getItemProcessingMap(final TestPlanNode itemRefNode) {
+        final ItemProcessingMap result = itemProcessingMaps[checkAbstractPartGlobalIndex(itemRefNode)];
+        if (result==null) {
+            /* (Use standard lookup to generate suitable Exception) */
+            return testProcessingMap.resolveItemProcessingMap(itemRefNode);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the (shared) {@link ItemSessionControllerSettings} for the item corresponding to the
+     * given {@link TestPlanNode}.
+     */
+    ItemSessionControllerSettings getItemSessionControllerSettings(final TestPlanNode itemRefNode) {
+        final ItemSessionControllerSettings result = itemSessionControllerSettingsArray[checkAbstractPartGlobalIndex(itemRefNode)];
+        if (result==null) {
+            throw new IllegalArgumentException(itemRefNode + " does not correspond to an " + AssessmentItemRef.class.getSimpleName());
+        }
+        return result;
+    }
+
+    private int checkAbstractPartGlobalIndex(final TestPlanNode testPlanNode) {
+        final int abstractPartGlobalIndex = testPlanNode.getAbstractPartGlobalIndex();
+        if (abstractPartGlobalIndex<0 || abstractPartGlobalIndex>=itemProcessingMaps.length) {
+            throw new IllegalStateException("Global index of " + testPlanNode + " is out of bounds");
+        }
+        return abstractPartGlobalIndex;
+    }
+
+    @Override
+    public String toString() {
+        return ObjectUtilities.beanToString(this);
+    }
+}
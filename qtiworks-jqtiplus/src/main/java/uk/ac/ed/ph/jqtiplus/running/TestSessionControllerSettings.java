@@ -35,8 +35,14 @@ package uk.ac.ed.ph.jqtiplus.running;
 
 import uk.ac.ed.ph.jqtiplus.JqtiPlus;
 import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
+import uk.ac.ed.ph.jqtiplus.node.test.TestPart;
+import uk.ac.ed.ph.jqtiplus.state.TemplateVariantPool;
 
 import java.io.Serializable;
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Settings for tweaking the behaviour of {@link TestSessionController}.
@@ -53,13 +59,69 @@ public class TestSessionControllerSettings implements Serializable {
      */
     private int templateProcessingLimit;
 
+    /**
+     * Whether to record an {@link EvaluationProfile} of the expressions and rules
+     * evaluated during the test, including those evaluated within each item.
+     *
+     * @see EvaluationProfiler
+     */
+    private boolean profilingEnabled;
+
+    /**
+     * Maximum number of expression evaluation steps permitted during each run of
+     * template, response or outcome processing before it is abandoned.
+     * Zero means no limit.
+     *
+     * @see EvaluationBudget
+     */
+    private int evaluationStepLimit;
+
+    /**
+     * Maximum wall-clock time (in milliseconds) permitted for each run of
+     * template, response or outcome processing before it is abandoned.
+     * Zero means no limit.
+     *
+     * @see EvaluationBudget
+     */
+    private long evaluationTimeLimit;
+
+    /**
+     * Whether to defer initialization and template processing of each item until the
+     * item is first entered or otherwise used (e.g. by outcome processing), rather than
+     * doing this for all items when the test is initialized and when each {@link TestPart}
+     * is entered.
+     * <p>
+     * The resulting item states are the same, apart from the order in which random values
+     * are drawn. Leave this off if this order matters, e.g. when replaying a session
+     * using a fixed random seed.
+     */
+    private boolean lazyItemSessionInitialization;
+
+    /**
+     * Pre-generated {@link TemplateVariantPool}s to use for items in the test, keyed on the
+     * System ID of each item. Items without a pool have their template processing run as normal.
+     *
+     * @see ItemSessionControllerSettings#setTemplateVariantPool(TemplateVariantPool)
+     */
+    private Map<URI, TemplateVariantPool> templateVariantPoolMap;
+
     public TestSessionControllerSettings() {
         this.templateProcessingLimit = JqtiPlus.DEFAULT_TEMPLATE_PROCESSING_LIMIT;
+        this.profilingEnabled = false;
+        this.evaluationStepLimit = 0;
+        this.evaluationTimeLimit = 0L;
+        this.lazyItemSessionInitialization = false;
+        this.templateVariantPoolMap = Collections.emptyMap();
     }
 
     /** (Copy constructor) */
     public TestSessionControllerSettings(final TestSessionControllerSettings template) {
         this.templateProcessingLimit = template.templateProcessingLimit;
+        this.profilingEnabled = template.profilingEnabled;
+        this.evaluationStepLimit = template.evaluationStepLimit;
+        this.evaluationTimeLimit = template.evaluationTimeLimit;
+        this.lazyItemSessionInitialization = template.lazyItemSessionInitialization;
+        this.templateVariantPoolMap = template.templateVariantPoolMap;
     }
 
 
@@ -73,6 +135,53 @@ public class TestSessionControllerSettings implements Serializable {
     }
 
 
+    public boolean isProfilingEnabled() {
+        return profilingEnabled;
+    }
+
+    public void setProfilingEnabled(final boolean profilingEnabled) {
+        this.profilingEnabled = profilingEnabled;
+    }
+
+
+    public int getEvaluationStepLimit() {
+        return evaluationStepLimit;
+    }
+
+    public void setEvaluationStepLimit(final int evaluationStepLimit) {
+        this.evaluationStepLimit = evaluationStepLimit;
+    }
+
+
+    public long getEvaluationTimeLimit() {
+        return evaluationTimeLimit;
+    }
+
+    public void setEvaluationTimeLimit(final long evaluationTimeLimit) {
+        this.evaluationTimeLimit = evaluationTimeLimit;
+    }
+
+
+    public boolean isLazyItemSessionInitialization() {
+        return lazyItemSessionInitialization;
+    }
+
+    public void setLazyItemSessionInitialization(final boolean lazyItemSessionInitialization) {
+        this.lazyItemSessionInitialization = lazyItemSessionInitialization;
+    }
+
+
+    public Map<URI, TemplateVariantPool> getTemplateVariantPoolMap() {
+        return templateVariantPoolMap;
+    }
+
+    public void setTemplateVariantPoolMap(final Map<URI, TemplateVariantPool> templateVariantPoolMap) {
+        this.templateVariantPoolMap = templateVariantPoolMap!=null
+                ? Collections.unmodifiableMap(new HashMap<URI, TemplateVariantPool>(templateVariantPoolMap))
+                : Collections.<URI, TemplateVariantPool>emptyMap();
+    }
+
+
     @Override
     public String toString() {
         return ObjectUtilities.beanToString(this);
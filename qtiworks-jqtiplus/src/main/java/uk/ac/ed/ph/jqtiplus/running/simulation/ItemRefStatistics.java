@@ -0,0 +1,138 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.running.simulation;
+
+import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
+import uk.ac.ed.ph.jqtiplus.node.test.AssessmentItemRef;
+import uk.ac.ed.ph.jqtiplus.node.test.BranchRule;
+import uk.ac.ed.ph.jqtiplus.node.test.PreCondition;
+import uk.ac.ed.ph.jqtiplus.types.Identifier;
+
+/**
+ * Counts what happened to each {@link AssessmentItemRef} over all simulated candidates. This is
+ * useful for checking that {@link BranchRule}s and {@link PreCondition}s behave as expected.
+ * <p>
+ * Usage: not thread safe. The {@link TestSimulator} uses one instance per Thread and then
+ * merges them.
+ *
+ * @author David McKain
+ */
+public final class ItemRefStatistics {
+
+    private final Identifier itemRefIdentifier;
+    private long selectedCount;
+    private long presentedCount;
+    private long respondedCount;
+    private long correctCount;
+    private long preConditionFailedCount;
+    private long jumpedByBranchRuleCount;
+
+    public ItemRefStatistics(final Identifier itemRefIdentifier) {
+        this.itemRefIdentifier = itemRefIdentifier;
+    }
+
+    void recordSelected() {
+        selectedCount++;
+    }
+
+    void recordPresented() {
+        presentedCount++;
+    }
+
+    void recordResponded() {
+        respondedCount++;
+    }
+
+    void recordCorrect() {
+        correctCount++;
+    }
+
+    void recordPreConditionFailed() {
+        preConditionFailedCount++;
+    }
+
+    void recordJumpedByBranchRule() {
+        jumpedByBranchRuleCount++;
+    }
+
+    public void merge(final ItemRefStatistics other) {
+        selectedCount += other.selectedCount;
+        presentedCount += other.presentedCount;
+        respondedCount += other.respondedCount;
+        correctCount += other.correctCount;
+        preConditionFailedCount += other.preConditionFailedCount;
+        jumpedByBranchRuleCount += other.jumpedByBranchRuleCount;
+    }
+
+    //-------------------------------------------------
+
+    public Identifier getItemRefIdentifier() {
+        return itemRefIdentifier;
+    }
+
+    /** Number of times an instance of this item was selected into a test plan */
+    public long getSelectedCount() {
+        return selectedCount;
+    }
+
+    /** Number of times an instance of this item was presented to a candidate */
+    public long getPresentedCount() {
+        return presentedCount;
+    }
+
+    /** Number of times an instance of this item was responded to */
+    public long getRespondedCount() {
+        return respondedCount;
+    }
+
+    /** Number of times an instance of this item was answered with the correct response to each interaction */
+    public long getCorrectCount() {
+        return correctCount;
+    }
+
+    /** Number of times an instance of this item was skipped due to a failed {@link PreCondition} */
+    public long getPreConditionFailedCount() {
+        return preConditionFailedCount;
+    }
+
+    /** Number of times an instance of this item was jumped over by a {@link BranchRule} */
+    public long getJumpedByBranchRuleCount() {
+        return jumpedByBranchRuleCount;
+    }
+
+    @Override
+    public String toString() {
+        return ObjectUtilities.beanToString(this);
+    }
+}
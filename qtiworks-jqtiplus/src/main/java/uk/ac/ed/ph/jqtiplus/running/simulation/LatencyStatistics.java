@@ -0,0 +1,164 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.running.simulation;
+
+/**
+ * Accumulates latencies (in nanoseconds) of a particular {@link SimulationOperation}.
+ * <p>
+ * Latencies are counted into a fixed set of buckets so that memory use doesn't grow with
+ * the number of samples. Each power of 2 is split into 8 buckets, so percentiles are accurate
+ * to within about 12%. Minimum, maximum and mean values are exact.
+ * <p>
+ * Usage: not thread safe. The {@link TestSimulator} uses one instance per Thread and then
+ * merges them.
+ *
+ * @author David McKain
+ */
+public final class LatencyStatistics {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = 64 * SUB_BUCKET_COUNT;
+
+    private final long[] bucketCounts;
+    private long count;
+    private long totalNanos;
+    private long minNanos;
+    private long maxNanos;
+
+    public LatencyStatistics() {
+        this.bucketCounts = new long[BUCKET_COUNT];
+        this.count = 0L;
+        this.totalNanos = 0L;
+        this.minNanos = Long.MAX_VALUE;
+        this.maxNanos = 0L;
+    }
+
+    public void record(final long nanos) {
+        final long value = Math.max(nanos, 0L);
+        bucketCounts[bucketIndex(value)]++;
+        count++;
+        totalNanos += value;
+        minNanos = Math.min(minNanos, value);
+        maxNanos = Math.max(maxNanos, value);
+    }
+
+    public void merge(final LatencyStatistics other) {
+        for (int i=0; i<BUCKET_COUNT; i++) {
+            bucketCounts[i] += other.bucketCounts[i];
+        }
+        count += other.count;
+        totalNanos += other.totalNanos;
+        minNanos = Math.min(minNanos, other.minNanos);
+        maxNanos = Math.max(maxNanos, other.maxNanos);
+    }
+
+    //-------------------------------------------------
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public long getMinNanos() {
+        return count>0 ? minNanos : 0L;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    public double getMeanNanos() {
+        return count>0 ? (double) totalNanos / count : 0.0;
+    }
+
+    /**
+     * Returns an upper bound on the given percentile of the recorded latencies.
+     *
+     * @param percentile required percentile, between 0 and 100
+     */
+    public long getPercentileNanos(final double percentile) {
+        if (percentile<0.0 || percentile>100.0) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100");
+        }
+        if (count==0) {
+            return 0L;
+        }
+        final long target = Math.max(1L, (long) Math.ceil(percentile * count / 100.0));
+        long cumulative = 0L;
+        for (int i=0; i<BUCKET_COUNT; i++) {
+            cumulative += bucketCounts[i];
+            if (cumulative>=target) {
+                return Math.min(bucketUpperBound(i), maxNanos);
+            }
+        }
+        return maxNanos;
+    }
+
+    //-------------------------------------------------
+
+    private static int bucketIndex(final long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1));
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    private static long bucketUpperBound(final int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        final int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        final int subBucket = index % SUB_BUCKET_COUNT;
+        final int shift = exponent - SUB_BUCKET_BITS;
+        return ((long) (SUB_BUCKET_COUNT + subBucket + 1) << shift) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this))
+                + "(count=" + count
+                + ",meanNanos=" + getMeanNanos()
+                + ",p50Nanos=" + getPercentileNanos(50.0)
+                + ",p95Nanos=" + getPercentileNanos(95.0)
+                + ",p99Nanos=" + getPercentileNanos(99.0)
+                + ",maxNanos=" + maxNanos
+                + ")";
+    }
+}
@@ -0,0 +1,164 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.running.simulation;
+
+import uk.ac.ed.ph.jqtiplus.types.Identifier;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Accumulates the distribution of a numeric test outcome variable over all simulated
+ * candidates.
+ * <p>
+ * The frequency of each distinct value is kept, up to {@link #MAX_DISTINCT_VALUES} values,
+ * after which only the summary statistics are kept.
+ * <p>
+ * Usage: not thread safe. The {@link TestSimulator} uses one instance per Thread and then
+ * merges them.
+ *
+ * @author David McKain
+ */
+public final class OutcomeStatistics {
+
+    /** Maximum number of distinct values for which frequencies will be kept */
+    public static final int MAX_DISTINCT_VALUES = 1000;
+
+    private final Identifier outcomeIdentifier;
+    private SortedMap<Double, Long> frequencies;
+    private long count;
+    private double sum;
+    private double sumOfSquares;
+    private double min;
+    private double max;
+
+    public OutcomeStatistics(final Identifier outcomeIdentifier) {
+        this.outcomeIdentifier = outcomeIdentifier;
+        this.frequencies = new TreeMap<Double, Long>();
+        this.count = 0L;
+        this.sum = 0.0;
+        this.sumOfSquares = 0.0;
+        this.min = Double.POSITIVE_INFINITY;
+        this.max = Double.NEGATIVE_INFINITY;
+    }
+
+    public void record(final double value) {
+        count++;
+        sum += value;
+        sumOfSquares += value * value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        addFrequency(Double.valueOf(value), 1L);
+    }
+
+    public void merge(final OutcomeStatistics other) {
+        count += other.count;
+        sum += other.sum;
+        sumOfSquares += other.sumOfSquares;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        if (other.frequencies==null) {
+            frequencies = null;
+        }
+        else {
+            for (final Entry<Double, Long> entry : other.frequencies.entrySet()) {
+                addFrequency(entry.getKey(), entry.getValue().longValue());
+            }
+        }
+    }
+
+    private void addFrequency(final Double value, final long increment) {
+        if (frequencies==null) {
+            return;
+        }
+        final Long current = frequencies.get(value);
+        frequencies.put(value, Long.valueOf(current!=null ? current.longValue() + increment : increment));
+        if (frequencies.size() > MAX_DISTINCT_VALUES) {
+            frequencies = null;
+        }
+    }
+
+    //-------------------------------------------------
+
+    public Identifier getOutcomeIdentifier() {
+        return outcomeIdentifier;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMin() {
+        return count>0 ? min : Double.NaN;
+    }
+
+    public double getMax() {
+        return count>0 ? max : Double.NaN;
+    }
+
+    public double getMean() {
+        return count>0 ? sum / count : Double.NaN;
+    }
+
+    public double getStandardDeviation() {
+        if (count==0) {
+            return Double.NaN;
+        }
+        final double mean = sum / count;
+        return Math.sqrt(Math.max(0.0, sumOfSquares / count - mean * mean));
+    }
+
+    /**
+     * Returns the number of times each distinct value occurred, in ascending order of value,
+     * or null if there were more than {@link #MAX_DISTINCT_VALUES} distinct values.
+     */
+    public Map<Double, Long> getFrequencies() {
+        return frequencies!=null ? Collections.unmodifiableMap(frequencies) : null;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this))
+                + "(outcomeIdentifier=" + outcomeIdentifier
+                + ",count=" + count
+                + ",min=" + getMin()
+                + ",max=" + getMax()
+                + ",mean=" + getMean()
+                + ",standardDeviation=" + getStandardDeviation()
+                + ")";
+    }
+}
@@ -0,0 +1,164 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.running.simulation;
+
+import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
+import uk.ac.ed.ph.jqtiplus.node.item.interaction.ChoiceInteraction;
+import uk.ac.ed.ph.jqtiplus.node.item.interaction.EndAttemptInteraction;
+import uk.ac.ed.ph.jqtiplus.node.item.interaction.InlineChoiceInteraction;
+import uk.ac.ed.ph.jqtiplus.node.item.interaction.Interaction;
+import uk.ac.ed.ph.jqtiplus.node.item.interaction.choice.Choice;
+import uk.ac.ed.ph.jqtiplus.running.ItemProcessingContext;
+import uk.ac.ed.ph.jqtiplus.state.TestPlanNode;
+import uk.ac.ed.ph.jqtiplus.types.Identifier;
+import uk.ac.ed.ph.jqtiplus.types.ResponseData;
+import uk.ac.ed.ph.jqtiplus.types.StringResponseData;
+import uk.ac.ed.ph.jqtiplus.value.ListValue;
+import uk.ac.ed.ph.jqtiplus.value.SingleValue;
+import uk.ac.ed.ph.jqtiplus.value.Value;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * {@link SimulationResponseStrategy} that answers each interaction correctly with a given probability,
+ * otherwise choosing random choices (for choice-based interactions) or leaving the interaction
+ * unanswered.
+ * <p>
+ * Correct answers are taken from the (possibly templated) correct response of each response
+ * variable. Interactions without a correct response are answered randomly where possible.
+ * {@link EndAttemptInteraction}s are never triggered.
+ * <p>
+ * This is stateless and thread safe.
+ *
+ * @author David McKain
+ */
+public final class RandomResponseStrategy implements SimulationResponseStrategy {
+
+    private final double correctProbability;
+
+    /**
+     * @param correctProbability probability (between 0 and 1) that each interaction
+     *   will be answered correctly
+     */
+    public RandomResponseStrategy(final double correctProbability) {
+        if (correctProbability<0.0 || correctProbability>1.0) {
+            throw new IllegalArgumentException("correctProbability must be between 0 and 1");
+        }
+        this.correctProbability = correctProbability;
+    }
+
+    public double getCorrectProbability() {
+        return correctProbability;
+    }
+
+    @Override
+    public Map<Identifier, ResponseData> generateResponses(final TestPlanNode itemRefNode,
+            final ItemProcessingContext itemProcessingContext, final Random random) {
+        final Map<Identifier, ResponseData> result = new HashMap<Identifier, ResponseData>();
+        for (final Interaction interaction : itemProcessingContext.getItemProcessingMap().getInteractions()) {
+            if (interaction instanceof EndAttemptInteraction) {
+                continue;
+            }
+            final Identifier responseIdentifier = interaction.getResponseIdentifier();
+            ResponseData responseData = null;
+            if (random.nextDouble() < correctProbability) {
+                responseData = toResponseData(itemProcessingContext.computeCorrectResponse(responseIdentifier));
+            }
+            if (responseData==null) {
+                responseData = generateRandomResponse(interaction, random);
+            }
+            if (responseData!=null) {
+                result.put(responseIdentifier, responseData);
+            }
+        }
+        return result;
+    }
+
+    private static ResponseData toResponseData(final Value value) {
+        if (value==null || value.isNull()) {
+            return null;
+        }
+        if (value instanceof SingleValue) {
+            return new StringResponseData(((SingleValue) value).toQtiString());
+        }
+        if (value instanceof ListValue) {
+            final List<String> strings = new ArrayList<String>();
+            for (final SingleValue singleValue : (ListValue) value) {
+                strings.add(singleValue.toQtiString());
+            }
+            return new StringResponseData(strings);
+        }
+        /* (Records can't be submitted via interactions) */
+        return null;
+    }
+
+    private static ResponseData generateRandomResponse(final Interaction interaction, final Random random) {
+        if (interaction instanceof ChoiceInteraction) {
+            final ChoiceInteraction choiceInteraction = (ChoiceInteraction) interaction;
+            final List<? extends Choice> choices = choiceInteraction.getSimpleChoices();
+            final int maxChoices = choiceInteraction.getMaxChoices()>0
+                    ? Math.min(choiceInteraction.getMaxChoices(), choices.size())
+                    : choices.size();
+            final int minChoices = Math.min(Math.max(choiceInteraction.getMinChoices(), 1), maxChoices);
+            return randomChoices(choices, minChoices + random.nextInt(maxChoices - minChoices + 1), random);
+        }
+        else if (interaction instanceof InlineChoiceInteraction) {
+            return randomChoices(((InlineChoiceInteraction) interaction).getInlineChoices(), 1, random);
+        }
+        return null;
+    }
+
+    private static ResponseData randomChoices(final List<? extends Choice> choices, final int count, final Random random) {
+        if (choices.isEmpty() || count==0) {
+            return null;
+        }
+        final List<Choice> shuffled = new ArrayList<Choice>(choices);
+        Collections.shuffle(shuffled, random);
+        final List<String> result = new ArrayList<String>(count);
+        for (int i=0; i<count; i++) {
+            result.add(shuffled.get(i).getIdentifier().toString());
+        }
+        return new StringResponseData(result);
+    }
+
+    @Override
+    public String toString() {
+        return ObjectUtilities.beanToString(this);
+    }
+}
@@ -0,0 +1,99 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.running.simulation;
+
+import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
+import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
+import uk.ac.ed.ph.jqtiplus.node.test.AssessmentItemRef;
+import uk.ac.ed.ph.jqtiplus.running.ItemProcessingContext;
+import uk.ac.ed.ph.jqtiplus.state.TestPlanNode;
+import uk.ac.ed.ph.jqtiplus.types.Identifier;
+import uk.ac.ed.ph.jqtiplus.types.ResponseData;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * {@link SimulationResponseStrategy} that submits fixed responses to each {@link AssessmentItemRef},
+ * keyed on the identifier of the {@link AssessmentItemRef}. Items not in the script are passed
+ * to an optional fallback strategy, or are otherwise left unanswered.
+ * <p>
+ * This is thread safe.
+ *
+ * @author David McKain
+ */
+public final class ScriptedResponseStrategy implements SimulationResponseStrategy {
+
+    private final Map<Identifier, Map<Identifier, ResponseData>> responsesByItemRef;
+    private final SimulationResponseStrategy fallbackStrategy;
+
+    public ScriptedResponseStrategy(final Map<Identifier, Map<Identifier, ResponseData>> responsesByItemRef) {
+        this(responsesByItemRef, null);
+    }
+
+    /**
+     * @param responsesByItemRef responses to submit, keyed on {@link AssessmentItemRef} identifier
+     * @param fallbackStrategy strategy to use for items not in the script, which may be null
+     */
+    public ScriptedResponseStrategy(final Map<Identifier, Map<Identifier, ResponseData>> responsesByItemRef,
+            final SimulationResponseStrategy fallbackStrategy) {
+        Assert.notNull(responsesByItemRef, "responsesByItemRef");
+        this.responsesByItemRef = new HashMap<Identifier, Map<Identifier, ResponseData>>(responsesByItemRef);
+        this.fallbackStrategy = fallbackStrategy;
+    }
+
+    public Map<Identifier, Map<Identifier, ResponseData>> getResponsesByItemRef() {
+        return ObjectUtilities.unmodifiableMap(responsesByItemRef);
+    }
+
+    public SimulationResponseStrategy getFallbackStrategy() {
+        return fallbackStrategy;
+    }
+
+    @Override
+    public Map<Identifier, ResponseData> generateResponses(final TestPlanNode itemRefNode,
+            final ItemProcessingContext itemProcessingContext, final Random random) {
+        final Map<Identifier, ResponseData> responses = responsesByItemRef.get(itemRefNode.getIdentifier());
+        if (responses!=null) {
+            return new HashMap<Identifier, ResponseData>(responses);
+        }
+        return fallbackStrategy!=null ? fallbackStrategy.generateResponses(itemRefNode, itemProcessingContext, random) : null;
+    }
+
+    @Override
+    public String toString() {
+        return ObjectUtilities.beanToString(this);
+    }
+}
@@ -0,0 +1,181 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.running.simulation;
+
+import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
+import uk.ac.ed.ph.jqtiplus.types.Identifier;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Results of a run of the {@link TestSimulator}.
+ *
+ * @author David McKain
+ */
+public final class SimulationReport {
+
+    private final int candidateCount;
+    private final int threadCount;
+    private final long elapsedMillis;
+    private final long completedCount;
+    private final long incompleteCount;
+    private final long failedCount;
+    private final List<String> failureSamples;
+    private final Map<SimulationOperation, LatencyStatistics> latencyStatisticsMap;
+    private final Map<Identifier, OutcomeStatistics> outcomeStatisticsMap;
+    private final Map<Identifier, ItemRefStatistics> itemRefStatisticsMap;
+
+    public SimulationReport(final int candidateCount, final int threadCount, final long elapsedMillis,
+            final long completedCount, final long incompleteCount, final long failedCount,
+            final List<String> failureSamples,
+            final Map<SimulationOperation, LatencyStatistics> latencyStatisticsMap,
+            final Map<Identifier, OutcomeStatistics> outcomeStatisticsMap,
+            final Map<Identifier, ItemRefStatistics> itemRefStatisticsMap) {
+        this.candidateCount = candidateCount;
+        this.threadCount = threadCount;
+        this.elapsedMillis = elapsedMillis;
+        this.completedCount = completedCount;
+        this.incompleteCount = incompleteCount;
+        this.failedCount = failedCount;
+        this.failureSamples = ObjectUtilities.unmodifiableList(failureSamples);
+        this.latencyStatisticsMap = ObjectUtilities.unmodifiableMap(latencyStatisticsMap);
+        this.outcomeStatisticsMap = ObjectUtilities.unmodifiableMap(outcomeStatisticsMap);
+        this.itemRefStatisticsMap = ObjectUtilities.unmodifiableMap(itemRefStatisticsMap);
+    }
+
+    public int getCandidateCount() {
+        return candidateCount;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /** Number of simulated sessions that ran through to the normal end of the test */
+    public long getCompletedCount() {
+        return completedCount;
+    }
+
+    /**
+     * Number of simulated sessions that had to be exited early because the candidate's
+     * responses were not allowed to be submitted (e.g. allowSkipping or validateResponses).
+     */
+    public long getIncompleteCount() {
+        return incompleteCount;
+    }
+
+    /** Number of simulated sessions that failed with an Exception */
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    /** Messages from (at most) the first few failures */
+    public List<String> getFailureSamples() {
+        return failureSamples;
+    }
+
+    /** Number of simulated sessions per second of wall clock time */
+    public double getThroughput() {
+        return elapsedMillis>0 ? candidateCount * 1000.0 / elapsedMillis : Double.NaN;
+    }
+
+    public Map<SimulationOperation, LatencyStatistics> getLatencyStatisticsMap() {
+        return latencyStatisticsMap;
+    }
+
+    /** Distributions of numeric test outcome variables at the end of each completed session */
+    public Map<Identifier, OutcomeStatistics> getOutcomeStatisticsMap() {
+        return outcomeStatisticsMap;
+    }
+
+    /** Per-item counts, keyed on {@link ItemRefStatistics#getItemRefIdentifier()} */
+    public Map<Identifier, ItemRefStatistics> getItemRefStatisticsMap() {
+        return itemRefStatisticsMap;
+    }
+
+    /**
+     * Returns a multi-line human-readable summary of this report.
+     */
+    public String summarize() {
+        final StringBuilder result = new StringBuilder();
+        result.append(String.format("Simulated %d sessions on %d threads in %d ms (%.1f sessions/s)%n",
+                Integer.valueOf(candidateCount), Integer.valueOf(threadCount),
+                Long.valueOf(elapsedMillis), Double.valueOf(getThroughput())));
+        result.append(String.format("Completed: %d, incomplete: %d, failed: %d%n",
+                Long.valueOf(completedCount), Long.valueOf(incompleteCount), Long.valueOf(failedCount)));
+        result.append("\nLatencies (microseconds):\n");
+        result.append(String.format("%-18s %10s %10s %10s %10s %10s%n", "operation", "count", "mean", "p50", "p99", "max"));
+        for (final Entry<SimulationOperation, LatencyStatistics> entry : latencyStatisticsMap.entrySet()) {
+            final LatencyStatistics latencyStatistics = entry.getValue();
+            result.append(String.format("%-18s %10d %10.1f %10d %10d %10d%n", entry.getKey(),
+                    Long.valueOf(latencyStatistics.getCount()),
+                    Double.valueOf(latencyStatistics.getMeanNanos() / 1000.0),
+                    Long.valueOf(latencyStatistics.getPercentileNanos(50.0) / 1000L),
+                    Long.valueOf(latencyStatistics.getPercentileNanos(99.0) / 1000L),
+                    Long.valueOf(latencyStatistics.getMaxNanos() / 1000L)));
+        }
+        result.append("\nOutcomes:\n");
+        for (final OutcomeStatistics outcomeStatistics : outcomeStatisticsMap.values()) {
+            result.append(String.format("%-18s min=%s max=%s mean=%.3f sd=%.3f%n",
+                    outcomeStatistics.getOutcomeIdentifier(),
+                    Double.valueOf(outcomeStatistics.getMin()), Double.valueOf(outcomeStatistics.getMax()),
+                    Double.valueOf(outcomeStatistics.getMean()), Double.valueOf(outcomeStatistics.getStandardDeviation())));
+        }
+        result.append("\nItems:\n");
+        result.append(String.format("%-18s %10s %10s %10s %10s %10s %10s%n", "itemRef", "selected", "presented",
+                "responded", "correct", "preCond", "branched"));
+        for (final ItemRefStatistics itemRefStatistics : itemRefStatisticsMap.values()) {
+            result.append(String.format("%-18s %10d %10d %10d %10d %10d %10d%n",
+                    itemRefStatistics.getItemRefIdentifier(),
+                    Long.valueOf(itemRefStatistics.getSelectedCount()),
+                    Long.valueOf(itemRefStatistics.getPresentedCount()),
+                    Long.valueOf(itemRefStatistics.getRespondedCount()),
+                    Long.valueOf(itemRefStatistics.getCorrectCount()),
+                    Long.valueOf(itemRefStatistics.getPreConditionFailedCount()),
+                    Long.valueOf(itemRefStatistics.getJumpedByBranchRuleCount())));
+        }
+        return result.toString();
+    }
+
+    @Override
+    public String toString() {
+        return ObjectUtilities.beanToString(this);
+    }
+}
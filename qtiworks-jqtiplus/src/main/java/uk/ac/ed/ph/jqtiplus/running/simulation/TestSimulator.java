@@ -0,0 +1,494 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.running.simulation;
+
+import uk.ac.ed.ph.jqtiplus.JqtiExtensionManager;
+import uk.ac.ed.ph.jqtiplus.exception.QtiLogicException;
+import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
+import uk.ac.ed.ph.jqtiplus.node.item.interaction.Interaction;
+import uk.ac.ed.ph.jqtiplus.node.test.AbstractPart;
+import uk.ac.ed.ph.jqtiplus.node.test.AssessmentItemRef;
+import uk.ac.ed.ph.jqtiplus.node.test.AssessmentTest;
+import uk.ac.ed.ph.jqtiplus.node.test.BranchRule;
+import uk.ac.ed.ph.jqtiplus.node.test.NavigationMode;
+import uk.ac.ed.ph.jqtiplus.node.test.PreCondition;
+import uk.ac.ed.ph.jqtiplus.node.test.TestPart;
+import uk.ac.ed.ph.jqtiplus.reading.ModelLoadingProfile;
+import uk.ac.ed.ph.jqtiplus.running.ItemProcessingContext;
+import uk.ac.ed.ph.jqtiplus.running.RandomSource;
+import uk.ac.ed.ph.jqtiplus.running.TestPlanner;
+import uk.ac.ed.ph.jqtiplus.running.TestSessionController;
+import uk.ac.ed.ph.jqtiplus.running.TestSessionControllerSettings;
+import uk.ac.ed.ph.jqtiplus.state.ItemSessionState;
+import uk.ac.ed.ph.jqtiplus.state.TestPlan;
+import uk.ac.ed.ph.jqtiplus.state.TestPlanNode;
+import uk.ac.ed.ph.jqtiplus.state.TestPlanNode.TestNodeType;
+import uk.ac.ed.ph.jqtiplus.state.TestProcessingMap;
+import uk.ac.ed.ph.jqtiplus.state.TestSessionState;
+import uk.ac.ed.ph.jqtiplus.types.Identifier;
+import uk.ac.ed.ph.jqtiplus.types.ResponseData;
+import uk.ac.ed.ph.jqtiplus.value.NumberValue;
+import uk.ac.ed.ph.jqtiplus.value.Value;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Drives a number of simulated candidates through an {@link AssessmentTest} using
+ * {@link TestSessionController}s directly, without any web layer or database. This is
+ * intended for capacity planning and for checking how {@link BranchRule}s, {@link PreCondition}s
+ * and outcome processing behave before a test is delivered for real.
+ * <p>
+ * Each candidate enters the test, then works through each {@link TestPart} in turn,
+ * answering each item using the configured {@link SimulationResponseStrategy}. In linear
+ * {@link TestPart}s the candidate advances through the items in order; in nonlinear ones
+ * the candidate visits each item once, in order, then ends the {@link TestPart}.
+ * Simulated time advances by {@link #getThinkTime()} between each action.
+ * <p>
+ * Candidates are spread across a number of Threads, and only summary statistics are kept
+ * for each candidate so memory use does not grow with the number of candidates.
+ * If a random seed is set, each candidate's test plan, template processing and responses
+ * are derived from it so that simulations can be repeated.
+ * <p>
+ * Usage: Configure then call {@link #runSimulation(int)}. The {@link TestProcessingMap},
+ * {@link JqtiExtensionManager} and {@link SimulationResponseStrategy} are shared by all
+ * simulation Threads. As nothing is rendered, the {@link TestProcessingMap} can be built from a
+ * test loaded using {@link ModelLoadingProfile#PROCESSING}. This class is not itself thread safe.
+ *
+ * @author David McKain
+ */
+public final class TestSimulator {
+
+    private static final Logger logger = LoggerFactory.getLogger(TestSimulator.class);
+
+    /** Maximum number of failure messages kept in the {@link SimulationReport} */
+    private static final int MAX_FAILURE_SAMPLES = 10;
+
+    private final JqtiExtensionManager jqtiExtensionManager;
+    private final TestProcessingMap testProcessingMap;
+    private final SimulationResponseStrategy responseStrategy;
+
+    private TestSessionControllerSettings testSessionControllerSettings;
+    private int threadCount;
+    private Long randomSeed;
+    private long thinkTime;
+
+    public TestSimulator(final JqtiExtensionManager jqtiExtensionManager,
+            final TestProcessingMap testProcessingMap,
+            final SimulationResponseStrategy responseStrategy) {
+        Assert.notNull(jqtiExtensionManager, "jqtiExtensionManager");
+        Assert.notNull(testProcessingMap, "testProcessingMap");
+        Assert.notNull(responseStrategy, "responseStrategy");
+        this.jqtiExtensionManager = jqtiExtensionManager;
+        this.testProcessingMap = testProcessingMap;
+        this.responseStrategy = responseStrategy;
+        this.testSessionControllerSettings = new TestSessionControllerSettings();
+        this.threadCount = Runtime.getRuntime().availableProcessors();
+        this.randomSeed = null;
+        this.thinkTime = 1000L;
+    }
+
+    public TestSessionControllerSettings getTestSessionControllerSettings() {
+        return testSessionControllerSettings;
+    }
+
+    public void setTestSessionControllerSettings(final TestSessionControllerSettings testSessionControllerSettings) {
+        Assert.notNull(testSessionControllerSettings, "testSessionControllerSettings");
+        this.testSessionControllerSettings = testSessionControllerSettings;
+    }
+
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    public void setThreadCount(final int threadCount) {
+        if (threadCount<1) {
+            throw new IllegalArgumentException("threadCount must be positive");
+        }
+        this.threadCount = threadCount;
+    }
+
+
+    public Long getRandomSeed() {
+        return randomSeed;
+    }
+
+    public void setRandomSeed(final Long randomSeed) {
+        this.randomSeed = randomSeed;
+    }
+
+
+    /** Simulated time (in milliseconds) between each candidate action */
+    public long getThinkTime() {
+        return thinkTime;
+    }
+
+    public void setThinkTime(final long thinkTime) {
+        this.thinkTime = thinkTime;
+    }
+
+    //-------------------------------------------------
+
+    /**
+     * Runs the given number of simulated candidates through the test, returning a
+     * {@link SimulationReport} summarising what happened.
+     *
+     * @param candidateCount number of candidates to simulate, which must not be negative
+     *
+     * @throws InterruptedException if interrupted while waiting for the simulation Threads
+     */
+    public SimulationReport runSimulation(final int candidateCount) throws InterruptedException {
+        if (candidateCount<0) {
+            throw new IllegalArgumentException("candidateCount must not be negative");
+        }
+        final int workerCount = Math.max(1, Math.min(threadCount, candidateCount));
+        final long baseSeed = randomSeed!=null ? randomSeed.longValue() : new Random().nextLong();
+        final AtomicInteger nextCandidateIndex = new AtomicInteger();
+        final List<Callable<SimulationStatistics>> workers = new ArrayList<Callable<SimulationStatistics>>(workerCount);
+        for (int i=0; i<workerCount; i++) {
+            workers.add(new Callable<SimulationStatistics>() {
+                @Override
+                public SimulationStatistics call() {
+                    final SimulationStatistics statistics = createStatistics();
+                    int candidateIndex;
+                    while ((candidateIndex = nextCandidateIndex.getAndIncrement()) < candidateCount) {
+                        simulateCandidate(candidateIndex, baseSeed, statistics);
+                    }
+                    return statistics;
+                }
+            });
+        }
+
+        logger.debug("Starting simulation of {} candidates on {} Threads", candidateCount, workerCount);
+        final long startTime = System.currentTimeMillis();
+        final SimulationStatistics result = createStatistics();
+        final ExecutorService executorService = Executors.newFixedThreadPool(workerCount);
+        try {
+            for (final Future<SimulationStatistics> future : executorService.invokeAll(workers)) {
+                result.merge(future.get());
+            }
+        }
+        catch (final ExecutionException e) {
+            throw new QtiLogicException("Unexpected failure during simulation", e.getCause());
+        }
+        finally {
+            executorService.shutdownNow();
+        }
+        final long elapsedMillis = System.currentTimeMillis() - startTime;
+        logger.debug("Simulation of {} candidates took {}ms", candidateCount, elapsedMillis);
+
+        return new SimulationReport(candidateCount, workerCount, elapsedMillis,
+                result.completedCount, result.incompleteCount, result.failedCount, result.failureSamples,
+                result.latencyStatisticsMap, result.outcomeStatisticsMap, result.itemRefStatisticsMap);
+    }
+
+    private SimulationStatistics createStatistics() {
+        final SimulationStatistics statistics = new SimulationStatistics();
+        for (final SimulationOperation operation : SimulationOperation.values()) {
+            statistics.latencyStatisticsMap.put(operation, new LatencyStatistics());
+        }
+        /* (Register items in test order so that the report is nicely ordered) */
+        for (final AbstractPart abstractPart : testProcessingMap.getAbstractPartList()) {
+            if (abstractPart instanceof AssessmentItemRef) {
+                statistics.getItemRefStatistics(abstractPart.getIdentifier());
+            }
+        }
+        return statistics;
+    }
+
+    //-------------------------------------------------
+
+    private void simulateCandidate(final int candidateIndex, final long baseSeed, final SimulationStatistics statistics) {
+        /* Derive independent seeds for this candidate */
+        final RandomSource candidateRandomSource = new RandomSource(baseSeed).split(candidateIndex);
+        final long plannerSeed = candidateRandomSource.split("planner").getSeed();
+        final long processingSeed = candidateRandomSource.split("processing").getSeed();
+        final Random candidateRandom = candidateRandomSource.split("responses").createRandom();
+        final SimulatedClock clock = new SimulatedClock(thinkTime);
+        try {
+            /* Plan, initialize & enter test */
+            long startNanos = System.nanoTime();
+            final TestPlan testPlan = testProcessingMap.isTestPlanInvariant()
+                    ? testProcessingMap.getInvariantTestPlan()
+                    : new TestPlanner(testProcessingMap, plannerSeed).generateTestPlan();
+            final TestSessionState testSessionState = new TestSessionState(testPlan);
+            final TestSessionController testSessionController = new TestSessionController(jqtiExtensionManager,
+                    testSessionControllerSettings, testProcessingMap, testSessionState);
+            testSessionController.setRandomSeed(Long.valueOf(processingSeed));
+            testSessionController.initialize(clock.next());
+            testSessionController.enterTest(clock.next());
+            statistics.recordLatency(SimulationOperation.INITIALIZE_TEST, startNanos);
+
+            /* Work through each testPart */
+            boolean blocked = false;
+            startNanos = System.nanoTime();
+            TestPlanNode testPartNode = testSessionController.enterNextAvailableTestPart(clock.next());
+            statistics.recordLatency(SimulationOperation.ENTER_TEST_PART, startNanos);
+            while (testPartNode!=null) {
+                final TestPart testPart = testSessionController.getCurrentTestPart();
+                if (testPart.getNavigationMode()==NavigationMode.LINEAR) {
+                    blocked = !simulateLinearTestPart(testSessionController, candidateRandom, clock, statistics);
+                }
+                else {
+                    blocked = !simulateNonlinearTestPart(testSessionController, testPartNode, candidateRandom, clock, statistics);
+                }
+                if (blocked || testSessionState.isEnded()) {
+                    break;
+                }
+                startNanos = System.nanoTime();
+                testPartNode = testSessionController.enterNextAvailableTestPart(clock.next());
+                statistics.recordLatency(SimulationOperation.ENTER_TEST_PART, startNanos);
+            }
+
+            /* Exit test */
+            startNanos = System.nanoTime();
+            if (blocked) {
+                testSessionController.exitTestIncomplete(clock.next());
+                statistics.incompleteCount++;
+            }
+            else {
+                testSessionController.exitTest(clock.next());
+                statistics.completedCount++;
+            }
+            statistics.recordLatency(SimulationOperation.EXIT_TEST, startNanos);
+
+            recordFinalState(testSessionController, statistics);
+        }
+        catch (final RuntimeException e) {
+            logger.debug("Simulated candidate {} failed", candidateIndex, e);
+            statistics.failedCount++;
+            if (statistics.failureSamples.size() < MAX_FAILURE_SAMPLES) {
+                statistics.failureSamples.add("Candidate " + candidateIndex + ": " + e);
+            }
+        }
+    }
+
+    /**
+     * Advances through the current linear testPart until it ends, returning false if the
+     * candidate was prevented from advancing.
+     */
+    private boolean simulateLinearTestPart(final TestSessionController testSessionController,
+            final Random candidateRandom, final SimulatedClock clock, final SimulationStatistics statistics) {
+        final TestSessionState testSessionState = testSessionController.getTestSessionState();
+        while (testSessionState.getCurrentItemKey()!=null) {
+            final TestPlanNode itemRefNode = testSessionState.getTestPlan().getNode(testSessionState.getCurrentItemKey());
+            simulateResponses(testSessionController, itemRefNode, candidateRandom, clock, statistics);
+            if (!testSessionController.mayAdvanceItemLinear()) {
+                return false;
+            }
+            final long startNanos = System.nanoTime();
+            testSessionController.advanceItemLinear(clock.next());
+            statistics.recordLatency(SimulationOperation.ADVANCE_ITEM, startNanos);
+        }
+        return true;
+    }
+
+    /**
+     * Visits each item in the current nonlinear testPart in turn, then ends the testPart,
+     * returning false if the candidate was prevented from ending it.
+     */
+    private boolean simulateNonlinearTestPart(final TestSessionController testSessionController,
+            final TestPlanNode testPartNode, final Random candidateRandom, final SimulatedClock clock,
+            final SimulationStatistics statistics) {
+        final TestPlan testPlan = testSessionController.getTestSessionState().getTestPlan();
+        for (final TestPlanNode itemRefNode : testPlan.getItemRefNodes(testPartNode)) {
+            final long startNanos = System.nanoTime();
+            testSessionController.selectItemNonlinear(clock.next(), itemRefNode.getKey());
+            statistics.recordLatency(SimulationOperation.SELECT_ITEM, startNanos);
+            simulateResponses(testSessionController, itemRefNode, candidateRandom, clock, statistics);
+        }
+        testSessionController.selectItemNonlinear(clock.next(), null);
+        if (!testSessionController.mayEndCurrentTestPart()) {
+            return false;
+        }
+        final long startNanos = System.nanoTime();
+        testSessionController.endCurrentTestPart(clock.next());
+        statistics.recordLatency(SimulationOperation.END_TEST_PART, startNanos);
+        return true;
+    }
+
+    private void simulateResponses(final TestSessionController testSessionController, final TestPlanNode itemRefNode,
+            final Random candidateRandom, final SimulatedClock clock, final SimulationStatistics statistics) {
+        if (!testSessionController.maySubmitResponsesToCurrentItem()) {
+            return;
+        }
+        final ItemProcessingContext itemProcessingContext = testSessionController.getItemProcessingContext(itemRefNode);
+        final Map<Identifier, ResponseData> responseMap = responseStrategy.generateResponses(itemRefNode,
+                itemProcessingContext, candidateRandom);
+        if (responseMap!=null) {
+            final long startNanos = System.nanoTime();
+            testSessionController.handleResponsesToCurrentItem(clock.next(), responseMap);
+            statistics.recordLatency(SimulationOperation.SUBMIT_RESPONSES, startNanos);
+        }
+    }
+
+    private void recordFinalState(final TestSessionController testSessionController, final SimulationStatistics statistics) {
+        final TestSessionState testSessionState = testSessionController.getTestSessionState();
+        for (final Entry<Identifier, Value> entry : testSessionState.getOutcomeValues().entrySet()) {
+            final Value value = entry.getValue();
+            if (value instanceof NumberValue) {
+                statistics.getOutcomeStatistics(entry.getKey()).record(((NumberValue) value).doubleValue());
+            }
+        }
+        for (final TestPlanNode itemRefNode : testSessionState.getTestPlan().searchNodes(TestNodeType.ASSESSMENT_ITEM_REF)) {
+            final ItemRefStatistics itemRefStatistics = statistics.getItemRefStatistics(itemRefNode.getIdentifier());
+            final ItemSessionState itemSessionState = testSessionState.getItemSessionStates().get(itemRefNode.getKey());
+            itemRefStatistics.recordSelected();
+            if (itemSessionState.isPreConditionFailed()) {
+                itemRefStatistics.recordPreConditionFailed();
+            }
+            if (itemSessionState.isJumpedByBranchRule()) {
+                itemRefStatistics.recordJumpedByBranchRule();
+            }
+            if (itemSessionState.isEntered()) {
+                itemRefStatistics.recordPresented();
+                if (itemSessionState.isResponded()) {
+                    itemRefStatistics.recordResponded();
+                    if (isAnsweredCorrectly(testSessionController.getItemProcessingContext(itemRefNode))) {
+                        itemRefStatistics.recordCorrect();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns whether the responses to all of the interactions having a correct response
+     * match that response. (This differs from {@link ItemProcessingContext#isCorrect()}, which
+     * also considers response variables not bound to interactions.)
+     */
+    private static boolean isAnsweredCorrectly(final ItemProcessingContext itemProcessingContext) {
+        final ItemSessionState itemSessionState = itemProcessingContext.getItemSessionState();
+        boolean hasCorrectResponse = false;
+        for (final Interaction interaction : itemProcessingContext.getItemProcessingMap().getInteractions()) {
+            final Value correctResponse = itemProcessingContext.computeCorrectResponse(interaction.getResponseIdentifier());
+            if (correctResponse!=null) {
+                if (!correctResponse.equals(itemSessionState.getResponseValue(interaction))) {
+                    return false;
+                }
+                hasCorrectResponse = true;
+            }
+        }
+        return hasCorrectResponse;
+    }
+
+    //-------------------------------------------------
+
+    /** Generates timestamps for a simulated candidate */
+    private static final class SimulatedClock {
+
+        private final long thinkTime;
+        private long currentTime;
+
+        SimulatedClock(final long thinkTime) {
+            this.thinkTime = thinkTime;
+            this.currentTime = System.currentTimeMillis();
+        }
+
+        Date next() {
+            currentTime += thinkTime;
+            return new Date(currentTime);
+        }
+    }
+
+    /** Statistics gathered by a single simulation Thread */
+    private static final class SimulationStatistics {
+
+        final Map<SimulationOperation, LatencyStatistics> latencyStatisticsMap = new EnumMap<SimulationOperation, LatencyStatistics>(SimulationOperation.class);
+        final Map<Identifier, OutcomeStatistics> outcomeStatisticsMap = new LinkedHashMap<Identifier, OutcomeStatistics>();
+        final Map<Identifier, ItemRefStatistics> itemRefStatisticsMap = new LinkedHashMap<Identifier, ItemRefStatistics>();
+        final List<String> failureSamples = new ArrayList<String>();
+        long completedCount;
+        long incompleteCount;
+        long failedCount;
+
+        void recordLatency(final SimulationOperation operation, final long startNanos) {
+            latencyStatisticsMap.get(operation).record(System.nanoTime() - startNanos);
+        }
+
+        OutcomeStatistics getOutcomeStatistics(final Identifier outcomeIdentifier) {
+            OutcomeStatistics result = outcomeStatisticsMap.get(outcomeIdentifier);
+            if (result==null) {
+                result = new OutcomeStatistics(outcomeIdentifier);
+                outcomeStatisticsMap.put(outcomeIdentifier, result);
+            }
+            return result;
+        }
+
+        ItemRefStatistics getItemRefStatistics(final Identifier itemRefIdentifier) {
+            ItemRefStatistics result = itemRefStatisticsMap.get(itemRefIdentifier);
+            if (result==null) {
+                result = new ItemRefStatistics(itemRefIdentifier);
+                itemRefStatisticsMap.put(itemRefIdentifier, result);
+            }
+            return result;
+        }
+
+        void merge(final SimulationStatistics other) {
+            for (final Entry<SimulationOperation, LatencyStatistics> entry : other.latencyStatisticsMap.entrySet()) {
+                latencyStatisticsMap.get(entry.getKey()).merge(entry.getValue());
+            }
+            for (final Entry<Identifier, OutcomeStatistics> entry : other.outcomeStatisticsMap.entrySet()) {
+                getOutcomeStatistics(entry.getKey()).merge(entry.getValue());
+            }
+            for (final Entry<Identifier, ItemRefStatistics> entry : other.itemRefStatisticsMap.entrySet()) {
+                getItemRefStatistics(entry.getKey()).merge(entry.getValue());
+            }
+            for (final String failureSample : other.failureSamples) {
+                if (failureSamples.size() < MAX_FAILURE_SAMPLES) {
+                    failureSamples.add(failureSample);
+                }
+            }
+            completedCount += other.completedCount;
+            incompleteCount += other.incompleteCount;
+            failedCount += other.failedCount;
+        }
+    }
+}
@@ -36,12 +36,17 @@ package uk.ac.ed.ph.jqtiplus.serialization;
 import uk.ac.ed.ph.jqtiplus.JqtiExtensionManager;
 import uk.ac.ed.ph.jqtiplus.node.QtiNode;
 import uk.ac.ed.ph.jqtiplus.xmlutils.SimpleDomBuilderHandler;
+import uk.ac.ed.ph.jqtiplus.xmlutils.StreamingSerializerHandler;
 import uk.ac.ed.ph.jqtiplus.xmlutils.xslt.QtiSerializationException;
 import uk.ac.ed.ph.jqtiplus.xmlutils.xslt.XsltSerializationOptions;
 import uk.ac.ed.ph.jqtiplus.xmlutils.xslt.XsltStylesheetManager;
 
+import java.io.BufferedWriter;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -50,11 +55,17 @@ import javax.xml.transform.sax.TransformerHandler;
 import javax.xml.transform.stream.StreamResult;
 
 import org.w3c.dom.Document;
+import org.xml.sax.ContentHandler;
 import org.xml.sax.SAXException;
 
 /**
  * Simple entry point into the JQTI serialization logic, serializing JQTI
  * Objects as XML in a number of simple ways.
+ * <p>
+ * Serialization to a {@link Writer} or {@link OutputStream} is done directly by a
+ * {@link StreamingSerializerHandler} whenever the requested {@link XsltSerializationOptions}
+ * allow this, which is considerably cheaper than going through an XSLT identity transform
+ * and produces identical output. Other cases still use the XSLT serializer.
  *
  * @author David McKain
  */
@@ -94,14 +105,29 @@ public final class QtiSerializer {
 
     public void serializeJqtiObject(final QtiNode jqtiObject, final StreamResult result,
             final SaxFiringOptions saxFiringOptions, final XsltSerializationOptions xsltSerializationOptions) {
+        if (StreamingSerializerHandler.isSupported(xsltSerializationOptions)) {
+            if (result.getWriter()!=null) {
+                fireSaxDocument(jqtiObject, new StreamingSerializerHandler(result.getWriter(), xsltSerializationOptions), saxFiringOptions);
+                return;
+            }
+            else if (result.getOutputStream()!=null) {
+                final Writer writer = new BufferedWriter(new OutputStreamWriter(result.getOutputStream(), Charset.forName("UTF-8")));
+                fireSaxDocument(jqtiObject, new StreamingSerializerHandler(writer, xsltSerializationOptions), saxFiringOptions);
+                return;
+            }
+        }
         final TransformerHandler serializerHandler = XsltStylesheetManager.createSerializerHandler(xsltSerializationOptions);
         serializerHandler.setResult(result);
-        final QtiSaxDocumentFirer qtiSaxDocumentFirer = new QtiSaxDocumentFirer(jqtiExtensionManager, serializerHandler, saxFiringOptions);
+        fireSaxDocument(jqtiObject, serializerHandler, saxFiringOptions);
+    }
+
+    private void fireSaxDocument(final QtiNode jqtiObject, final ContentHandler targetHandler, final SaxFiringOptions saxFiringOptions) {
+        final QtiSaxDocumentFirer qtiSaxDocumentFirer = new QtiSaxDocumentFirer(jqtiExtensionManager, targetHandler, saxFiringOptions);
         try {
             qtiSaxDocumentFirer.fireSaxDocument(jqtiObject);
         }
         catch (final SAXException e) {
-            throw new QtiSerializationException("Unexpected Exception firing QTI Object SAX events at serializer stylesheet", e);
+            throw new QtiSerializationException("Unexpected Exception firing QTI Object SAX events at serializer", e);
         }
     }
 
@@ -0,0 +1,287 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.state;
+
+import uk.ac.ed.ph.jqtiplus.node.expression.general.MapResponsePoint;
+import uk.ac.ed.ph.jqtiplus.node.expression.operator.Shape;
+import uk.ac.ed.ph.jqtiplus.node.item.response.declaration.AreaMapEntry;
+import uk.ac.ed.ph.jqtiplus.node.item.response.declaration.AreaMapping;
+import uk.ac.ed.ph.jqtiplus.value.Cardinality;
+import uk.ac.ed.ph.jqtiplus.value.FloatValue;
+import uk.ac.ed.ph.jqtiplus.value.ListValue;
+import uk.ac.ed.ph.jqtiplus.value.PointValue;
+import uk.ac.ed.ph.jqtiplus.value.Value;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pre-computed spatial index over the {@link AreaMapEntry}s of an {@link AreaMapping}, used to
+ * evaluate {@link MapResponsePoint} without testing every point against every area.
+ * <p>
+ * The bounding boxes of the areas are bucketed into a uniform grid. Each point is then only
+ * tested against the areas in its grid cell, first via their bounding box and then exactly via
+ * {@link Shape#isInside(int[], PointValue)}.
+ * <p>
+ * This gives the same results as {@link AreaMapping#getTargetValue(Value)}.
+ * <p>
+ * Usage: an instance of this class can be safely used by multiple Threads
+ *
+ * @see ItemProcessingMap#getAreaMappingIndexMap()
+ *
+ * @author David McKain
+ */
+public final class AreaMappingIndex implements Serializable {
+
+    private static final long serialVersionUID = 6946281325063137000L;
+
+    /** Maximum number of grid cells along each axis */
+    private static final int MAX_GRID_SIZE = 32;
+
+    private final Cardinality cardinality;
+    private final double defaultValue;
+    private final Double lowerBound;
+    private final Double upperBound;
+
+    /** Areas, in the same order as the original {@link AreaMapEntry}s */
+    private final IndexedArea[] areas;
+
+    /** Indices of areas having no bounding box, which must be tested for all points */
+    private final int[] unboundedAreaIndices;
+
+    /* Grid details */
+    private final int gridMinX;
+    private final int gridMinY;
+    private final int gridMaxX;
+    private final int gridMaxY;
+    private final int cellWidth;
+    private final int cellHeight;
+    private final int gridColumns;
+
+    /** Indices of areas intersecting each grid cell (in ascending order), indexed by row * gridColumns + column */
+    private final int[][] cellAreaIndices;
+
+    public AreaMappingIndex(final AreaMapping areaMapping) {
+        this.cardinality = areaMapping.getParent().getCardinality();
+        this.defaultValue = areaMapping.getDefaultValue();
+        this.lowerBound = areaMapping.getLowerBound();
+        this.upperBound = areaMapping.getUpperBound();
+
+        /* Pre-compute coordinates and bounding boxes of each area */
+        final List<AreaMapEntry> areaMapEntries = areaMapping.getAreaMapEntries();
+        this.areas = new IndexedArea[areaMapEntries.size()];
+        final List<Integer> unboundedAreaIndicesBuilder = new ArrayList<Integer>();
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for (int i=0; i<areas.length; i++) {
+            final AreaMapEntry areaMapEntry = areaMapEntries.get(i);
+            final IndexedArea area = new IndexedArea(areaMapEntry);
+            areas[i] = area;
+            if (area.boundingBox!=null) {
+                minX = Math.min(minX, area.boundingBox[0]);
+                minY = Math.min(minY, area.boundingBox[1]);
+                maxX = Math.max(maxX, area.boundingBox[2]);
+                maxY = Math.max(maxY, area.boundingBox[3]);
+            }
+            else {
+                unboundedAreaIndicesBuilder.add(Integer.valueOf(i));
+            }
+        }
+        this.unboundedAreaIndices = toIntArray(unboundedAreaIndicesBuilder);
+
+        /* Build grid over the union of all bounding boxes */
+        if (minX > maxX || minY > maxY) {
+            /* No bounded areas, so no need for a grid */
+            this.gridMinX = this.gridMinY = 0;
+            this.gridMaxX = this.gridMaxY = -1;
+            this.cellWidth = this.cellHeight = 1;
+            this.gridColumns = 0;
+            this.cellAreaIndices = new int[0][];
+        }
+        else {
+            final int gridSize = Math.min(MAX_GRID_SIZE, (int) Math.ceil(Math.sqrt(areas.length)));
+            this.gridMinX = minX;
+            this.gridMinY = minY;
+            this.gridMaxX = maxX;
+            this.gridMaxY = maxY;
+            this.cellWidth = Math.max(1, (int) Math.ceil(((double) maxX - minX + 1) / gridSize));
+            this.cellHeight = Math.max(1, (int) Math.ceil(((double) maxY - minY + 1) / gridSize));
+            this.gridColumns = columnOf(maxX) + 1;
+            final int gridRows = rowOf(maxY) + 1;
+
+            @SuppressWarnings("unchecked")
+            final List<Integer>[] cellAreaIndicesBuilder = new List[gridColumns * gridRows];
+            for (int i=0; i<areas.length; i++) {
+                final int[] boundingBox = areas[i].boundingBox;
+                if (boundingBox!=null) {
+                    for (int row=rowOf(boundingBox[1]); row<=rowOf(boundingBox[3]); row++) {
+                        for (int column=columnOf(boundingBox[0]); column<=columnOf(boundingBox[2]); column++) {
+                            addCellAreaIndex(cellAreaIndicesBuilder, row * gridColumns + column, i);
+                        }
+                    }
+                }
+                else {
+                    for (int cell=0; cell<cellAreaIndicesBuilder.length; cell++) {
+                        addCellAreaIndex(cellAreaIndicesBuilder, cell, i);
+                    }
+                }
+            }
+            this.cellAreaIndices = new int[cellAreaIndicesBuilder.length][];
+            for (int cell=0; cell<cellAreaIndicesBuilder.length; cell++) {
+                cellAreaIndices[cell] = cellAreaIndicesBuilder[cell]!=null ? toIntArray(cellAreaIndicesBuilder[cell]) : unboundedAreaIndices;
+            }
+        }
+    }
+
+    private static void addCellAreaIndex(final List<Integer>[] cellAreaIndicesBuilder, final int cell, final int areaIndex) {
+        if (cellAreaIndicesBuilder[cell]==null) {
+            cellAreaIndicesBuilder[cell] = new ArrayList<Integer>();
+        }
+        cellAreaIndicesBuilder[cell].add(Integer.valueOf(areaIndex));
+    }
+
+    private static int[] toIntArray(final List<Integer> list) {
+        final int[] result = new int[list.size()];
+        for (int i=0; i<result.length; i++) {
+            result[i] = list.get(i).intValue();
+        }
+        return result;
+    }
+
+    private int columnOf(final int x) {
+        return (int) (((long) x - gridMinX) / cellWidth);
+    }
+
+    private int rowOf(final int y) {
+        return (int) (((long) y - gridMinY) / cellHeight);
+    }
+
+    /**
+     * Returns the indices of the areas that might contain the given point, in ascending order.
+     */
+    private int[] getCandidateAreaIndices(final PointValue point) {
+        final int x = point.horizontalValue();
+        final int y = point.verticalValue();
+        if (x < gridMinX || x > gridMaxX || y < gridMinY || y > gridMaxY) {
+            return unboundedAreaIndices;
+        }
+        return cellAreaIndices[rowOf(y) * gridColumns + columnOf(x)];
+    }
+
+    /**
+     * Gets target value for given source value.
+     *
+     * @see AreaMapping#getTargetValue(Value)
+     *
+     * @param sourceValue given source value
+     * @return target value for given source value
+     */
+    public FloatValue computeTargetValue(final Value sourceValue) {
+        if (!sourceValue.isNull()) {
+            if (cardinality==Cardinality.SINGLE) {
+                final PointValue point = (PointValue) sourceValue;
+                for (final int areaIndex : getCandidateAreaIndices(point)) {
+                    final IndexedArea area = areas[areaIndex];
+                    if (area.isInside(point)) {
+                        return new FloatValue(applyConstraints(area.mappedValue));
+                    }
+                }
+            }
+            else {
+                /* Each area is mapped at most once, and each point not in any area gets the default */
+                final ListValue sourceListValue = (ListValue) sourceValue;
+                final boolean[] areaMatched = new boolean[areas.length];
+                double sum = 0.0;
+                for (int i=0; i<sourceListValue.size(); i++) {
+                    final PointValue point = (PointValue) sourceListValue.get(i);
+                    boolean pointMatched = false;
+                    for (final int areaIndex : getCandidateAreaIndices(point)) {
+                        final IndexedArea area = areas[areaIndex];
+                        if (area.isInside(point)) {
+                            pointMatched = true;
+                            if (!areaMatched[areaIndex]) {
+                                areaMatched[areaIndex] = true;
+                                sum += area.mappedValue;
+                            }
+                        }
+                    }
+                    if (!pointMatched) {
+                        sum += defaultValue;
+                    }
+                }
+                return new FloatValue(applyConstraints(sum));
+            }
+        }
+        return new FloatValue(applyConstraints(defaultValue));
+    }
+
+    private double applyConstraints(final double value) {
+        double result = value;
+        if (lowerBound != null) {
+            result = Math.max(result, lowerBound.doubleValue());
+        }
+        if (upperBound != null) {
+            result = Math.min(result, upperBound.doubleValue());
+        }
+        return result;
+    }
+
+    //----------------------------------------------
+
+    private static final class IndexedArea implements Serializable {
+
+        private static final long serialVersionUID = -1779410946010633564L;
+
+        final Shape shape;
+        final int[] coords;
+        final int[] boundingBox;
+        final double mappedValue;
+
+        public IndexedArea(final AreaMapEntry areaMapEntry) {
+            final List<Integer> coordinates = areaMapEntry.getCoordinates();
+            this.shape = areaMapEntry.getShape();
+            this.coords = new int[coordinates!=null ? coordinates.size() : 0];
+            for (int i = 0; i < coords.length; i++) {
+                coords[i] = coordinates.get(i).intValue();
+            }
+            /* (Invalid entries with no shape are left unbounded here, failing later on as they always have) */
+            this.boundingBox = shape!=null ? shape.getBoundingBox(coords) : null;
+            this.mappedValue = areaMapEntry.getMappedValue();
+        }
+
+        boolean isInside(final PointValue point) {
+            return Shape.isInsideBoundingBox(boundingBox, point) && shape.isInside(coords, point);
+        }
+    }
+}
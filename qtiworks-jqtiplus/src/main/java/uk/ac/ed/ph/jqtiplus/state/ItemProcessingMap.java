@@ -36,6 +36,8 @@ package uk.ac.ed.ph.jqtiplus.state;
 import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
 import uk.ac.ed.ph.jqtiplus.node.item.AssessmentItem;
 import uk.ac.ed.ph.jqtiplus.node.item.interaction.Interaction;
+import uk.ac.ed.ph.jqtiplus.node.item.response.declaration.AreaMapping;
+import uk.ac.ed.ph.jqtiplus.node.item.response.declaration.Mapping;
 import uk.ac.ed.ph.jqtiplus.node.item.response.declaration.ResponseDeclaration;
 import uk.ac.ed.ph.jqtiplus.node.item.template.declaration.TemplateDeclaration;
 import uk.ac.ed.ph.jqtiplus.node.outcome.declaration.OutcomeDeclaration;
@@ -74,6 +76,8 @@ public final class ItemProcessingMap implements Serializable {
     private final Map<Identifier, TemplateDeclaration> validTemplateDeclarationMap;
     private final Map<Identifier, ResponseDeclaration> validResponseDeclarationMap;
     private final Map<Identifier, OutcomeDeclaration> validOutcomeDeclarationMap;
+    private final Map<Identifier, MappingIndex> mappingIndexMap;
+    private final Map<Identifier, AreaMappingIndex> areaMappingIndexMap;
 
     public ItemProcessingMap(final ResolvedAssessmentItem resolvedAssessmentItem, final boolean isValid,
             final List<Interaction> interactionsBuilder,
@@ -102,6 +106,22 @@ public final class ItemProcessingMap implements Serializable {
         variableIdentifierSetBuilder.addAll(validResponseDeclarationMap.keySet());
         variableIdentifierSetBuilder.addAll(validOutcomeDeclarationMap.keySet());
         this.validVariableIdentifierSet = Collections.unmodifiableSet(variableIdentifierSetBuilder);
+
+        /* Pre-index any (area) mappings on (valid) response declarations */
+        final Map<Identifier, MappingIndex> mappingIndexMapBuilder = new HashMap<Identifier, MappingIndex>();
+        final Map<Identifier, AreaMappingIndex> areaMappingIndexMapBuilder = new HashMap<Identifier, AreaMappingIndex>();
+        for (final ResponseDeclaration responseDeclaration : validResponseDeclarationMap.values()) {
+            final Mapping mapping = responseDeclaration.getMapping();
+            if (mapping!=null) {
+                mappingIndexMapBuilder.put(responseDeclaration.getIdentifier(), new MappingIndex(mapping));
+            }
+            final AreaMapping areaMapping = responseDeclaration.getAreaMapping();
+            if (areaMapping!=null) {
+                areaMappingIndexMapBuilder.put(responseDeclaration.getIdentifier(), new AreaMappingIndex(areaMapping));
+            }
+        }
+        this.mappingIndexMap = Collections.unmodifiableMap(mappingIndexMapBuilder);
+        this.areaMappingIndexMap = Collections.unmodifiableMap(areaMappingIndexMapBuilder);
     }
 
     public boolean isValid() {
@@ -132,6 +152,22 @@ public final class ItemProcessingMap implements Serializable {
         return validOutcomeDeclarationMap;
     }
 
+    /**
+     * Returns a Map of {@link MappingIndex}es for each valid {@link ResponseDeclaration} having a
+     * {@link Mapping}, keyed on the declaration's {@link Identifier}.
+     */
+    public Map<Identifier, MappingIndex> getMappingIndexMap() {
+        return mappingIndexMap;
+    }
+
+    /**
+     * Returns a Map of {@link AreaMappingIndex}es for each valid {@link ResponseDeclaration} having an
+     * {@link AreaMapping}, keyed on the declaration's {@link Identifier}.
+     */
+    public Map<Identifier, AreaMappingIndex> getAreaMappingIndexMap() {
+        return areaMappingIndexMap;
+    }
+
     public List<Interaction> getInteractions() {
         return interactions;
     }
@@ -0,0 +1,196 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.state;
+
+import uk.ac.ed.ph.jqtiplus.node.expression.general.MapResponse;
+import uk.ac.ed.ph.jqtiplus.node.item.response.declaration.MapEntry;
+import uk.ac.ed.ph.jqtiplus.node.item.response.declaration.Mapping;
+import uk.ac.ed.ph.jqtiplus.value.Cardinality;
+import uk.ac.ed.ph.jqtiplus.value.FloatValue;
+import uk.ac.ed.ph.jqtiplus.value.ListValue;
+import uk.ac.ed.ph.jqtiplus.value.SingleValue;
+import uk.ac.ed.ph.jqtiplus.value.Value;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Pre-computed hash index over the {@link MapEntry}s of a {@link Mapping}, used to evaluate
+ * {@link MapResponse} without scanning every entry for each response value.
+ * <p>
+ * This gives the same results as {@link Mapping#computeTargetValue(Value)}. In particular, if
+ * more than one {@link MapEntry} matches a value then the first one wins, and entries with
+ * <code>caseSensitive="false"</code> are matched ignoring case.
+ * <p>
+ * Usage: an instance of this class can be safely used by multiple Threads
+ *
+ * @see ItemProcessingMap#getMappingIndexMap()
+ *
+ * @author David McKain
+ */
+public final class MappingIndex implements Serializable {
+
+    private static final long serialVersionUID = -2650113001536618254L;
+
+    private final Cardinality cardinality;
+    private final double defaultValue;
+    private final Double lowerBound;
+    private final Double upperBound;
+
+    /** Case sensitive entries, keyed on mapKey */
+    private final Map<SingleValue, IndexedEntry> caseSensitiveEntryMap;
+
+    /** Case insensitive entries, keyed on the case-folded form of the mapKey */
+    private final Map<String, IndexedEntry> caseInsensitiveEntryMap;
+
+    public MappingIndex(final Mapping mapping) {
+        this.cardinality = mapping.getParent().getCardinality();
+        this.defaultValue = mapping.getDefaultValue();
+        this.lowerBound = mapping.getLowerBound();
+        this.upperBound = mapping.getUpperBound();
+        this.caseSensitiveEntryMap = new HashMap<SingleValue, IndexedEntry>();
+        this.caseInsensitiveEntryMap = new HashMap<String, IndexedEntry>();
+
+        final List<MapEntry> mapEntries = mapping.getMapEntries();
+        for (int i=0; i<mapEntries.size(); i++) {
+            final MapEntry mapEntry = mapEntries.get(i);
+            final SingleValue mapKey = mapEntry.getMapKey();
+            if (mapKey==null) {
+                /* (Invalid entry, which can never match anything) */
+                continue;
+            }
+            final IndexedEntry indexedEntry = new IndexedEntry(i, mapEntry.getMappedValue());
+            if (mapEntry.getCaseSensitive()) {
+                putIfAbsent(caseSensitiveEntryMap, mapKey, indexedEntry);
+                if (mapKey instanceof FloatValue && ((FloatValue) mapKey).doubleValue()==0.0) {
+                    /* FloatValue treats 0.0 and -0.0 as equal, but they hash differently */
+                    putIfAbsent(caseSensitiveEntryMap, new FloatValue(0.0), indexedEntry);
+                    putIfAbsent(caseSensitiveEntryMap, new FloatValue(-0.0), indexedEntry);
+                }
+            }
+            else {
+                putIfAbsent(caseInsensitiveEntryMap, foldCase(mapKey.toQtiString()), indexedEntry);
+            }
+        }
+    }
+
+    private static <K> void putIfAbsent(final Map<K, IndexedEntry> map, final K key, final IndexedEntry indexedEntry) {
+        /* (Earlier entries take precedence over later ones) */
+        if (!map.containsKey(key)) {
+            map.put(key, indexedEntry);
+        }
+    }
+
+    /**
+     * Folds the case of the given String such that two Strings fold to the same result
+     * if and only if they are {@link String#equalsIgnoreCase(String)}.
+     */
+    static String foldCase(final String string) {
+        final char[] chars = string.toCharArray();
+        for (int i=0; i<chars.length; i++) {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Gets target value for given source value.
+     *
+     * @see Mapping#computeTargetValue(Value)
+     *
+     * @param sourceValue given source value
+     * @return target value for given source value
+     */
+    public FloatValue computeTargetValue(final Value sourceValue) {
+        if (!sourceValue.isNull()) {
+            if (cardinality==Cardinality.SINGLE) {
+                /* Single cardinality => take mapped value, using default if nothing specified */
+                return new FloatValue(applyConstraints(mapSingleValue((SingleValue) sourceValue)));
+            }
+            else if (cardinality!=null && cardinality.isList()) {
+                /* Multiple cardinality => sum mapped values of unique items in container */
+                double sum = 0.0;
+                final ListValue sourceListValue = (ListValue) sourceValue;
+                final Set<SingleValue> uniqueValues = new HashSet<SingleValue>(sourceListValue.getAll());
+                for (final SingleValue value : uniqueValues) {
+                    sum += mapSingleValue(value);
+                }
+                return new FloatValue(applyConstraints(sum));
+            }
+        }
+        return new FloatValue(applyConstraints(defaultValue));
+    }
+
+    private double mapSingleValue(final SingleValue value) {
+        IndexedEntry result = caseSensitiveEntryMap.get(value);
+        if (!caseInsensitiveEntryMap.isEmpty()) {
+            final IndexedEntry caseInsensitiveResult = caseInsensitiveEntryMap.get(foldCase(value.toQtiString()));
+            if (caseInsensitiveResult!=null && (result==null || caseInsensitiveResult.position < result.position)) {
+                result = caseInsensitiveResult;
+            }
+        }
+        return result!=null ? result.mappedValue : defaultValue;
+    }
+
+    private double applyConstraints(final double value) {
+        double result = value;
+        if (lowerBound != null) {
+            result = Math.max(result, lowerBound.doubleValue());
+        }
+        if (upperBound != null) {
+            result = Math.min(result, upperBound.doubleValue());
+        }
+        return result;
+    }
+
+    //----------------------------------------------
+
+    private static final class IndexedEntry implements Serializable {
+
+        private static final long serialVersionUID = 3213442146357788414L;
+
+        /** Position of the corresponding {@link MapEntry} within the {@link Mapping} */
+        final int position;
+        final double mappedValue;
+
+        public IndexedEntry(final int position, final double mappedValue) {
+            this.position = position;
+            this.mappedValue = mappedValue;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.state;
+
+import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
+import uk.ac.ed.ph.jqtiplus.node.test.outcome.processing.OutcomeRule;
+import uk.ac.ed.ph.jqtiplus.running.TestProcessingInitializer;
+import uk.ac.ed.ph.jqtiplus.types.Identifier;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Records what a top-level {@link OutcomeRule} within an <code>outcomeProcessing</code> depends on,
+ * as determined by static analysis of the test. This is used to decide whether the rule needs
+ * to be re-evaluated during incremental outcome processing.
+ * <p>
+ * Usage: an instance of this class is immutable and can be safely used by multiple Threads
+ *
+ * @see TestProcessingMap#getOutcomeRuleDependencies()
+ * @see TestProcessingInitializer
+ *
+ * @author David McKain
+ */
+public final class OutcomeRuleDependencies implements Serializable {
+
+    private static final long serialVersionUID = -2630532426417316101L;
+
+    /**
+     * Set if the rule must always be re-evaluated, e.g. because it uses random numbers,
+     * a customOperator or the test duration.
+     */
+    private final boolean alwaysEvaluate;
+
+    /** Identifiers of the assessmentItemRefs whose state the rule may read */
+    private final Set<Identifier> itemRefIdentifiers;
+
+    /** Identifiers of the test outcome variables read by the rule */
+    private final Set<Identifier> readOutcomeIdentifiers;
+
+    /** Identifiers of the test outcome variables written by the rule */
+    private final Set<Identifier> writtenOutcomeIdentifiers;
+
+    public OutcomeRuleDependencies(final boolean alwaysEvaluate,
+            final Set<Identifier> itemRefIdentifiers,
+            final Set<Identifier> readOutcomeIdentifiers,
+            final Set<Identifier> writtenOutcomeIdentifiers) {
+        this.alwaysEvaluate = alwaysEvaluate;
+        this.itemRefIdentifiers = Collections.unmodifiableSet(new LinkedHashSet<Identifier>(itemRefIdentifiers));
+        this.readOutcomeIdentifiers = Collections.unmodifiableSet(new LinkedHashSet<Identifier>(readOutcomeIdentifiers));
+        this.writtenOutcomeIdentifiers = Collections.unmodifiableSet(new LinkedHashSet<Identifier>(writtenOutcomeIdentifiers));
+    }
+
+    public boolean isAlwaysEvaluate() {
+        return alwaysEvaluate;
+    }
+
+    public Set<Identifier> getItemRefIdentifiers() {
+        return itemRefIdentifiers;
+    }
+
+    public Set<Identifier> getReadOutcomeIdentifiers() {
+        return readOutcomeIdentifiers;
+    }
+
+    public Set<Identifier> getWrittenOutcomeIdentifiers() {
+        return writtenOutcomeIdentifiers;
+    }
+
+    @Override
+    public String toString() {
+        return ObjectUtilities.beanToString(this);
+    }
+}
@@ -0,0 +1,144 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.state;
+
+import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
+import uk.ac.ed.ph.jqtiplus.internal.util.DumpMode;
+import uk.ac.ed.ph.jqtiplus.internal.util.ObjectDumperOptions;
+import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
+import uk.ac.ed.ph.jqtiplus.types.Identifier;
+import uk.ac.ed.ph.jqtiplus.value.Value;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Encapsulates the results of a successful run of template processing on an item, independently
+ * of any particular {@link ItemSessionState}. This consists of the values of the template
+ * variables, plus any default and correct response values set by template processing.
+ * <p>
+ * Usage: an instance of this class is immutable and can be safely used by multiple Threads
+ *
+ * @see TemplateVariantPool
+ *
+ * @author David McKain
+ */
+@ObjectDumperOptions(DumpMode.DEEP)
+public final class TemplateVariant implements Serializable {
+
+    private static final long serialVersionUID = 2519651620425328113L;
+
+    private final Map<Identifier, Value> templateValues;
+    private final Map<Identifier, Value> overriddenResponseDefaultValues;
+    private final Map<Identifier, Value> overriddenOutcomeDefaultValues;
+    private final Map<Identifier, Value> overriddenCorrectResponseValues;
+
+    public TemplateVariant(final Map<Identifier, Value> templateValues,
+            final Map<Identifier, Value> overriddenResponseDefaultValues,
+            final Map<Identifier, Value> overriddenOutcomeDefaultValues,
+            final Map<Identifier, Value> overriddenCorrectResponseValues) {
+        Assert.notNull(templateValues, "templateValues");
+        Assert.notNull(overriddenResponseDefaultValues, "overriddenResponseDefaultValues");
+        Assert.notNull(overriddenOutcomeDefaultValues, "overriddenOutcomeDefaultValues");
+        Assert.notNull(overriddenCorrectResponseValues, "overriddenCorrectResponseValues");
+        this.templateValues = copy(templateValues);
+        this.overriddenResponseDefaultValues = copy(overriddenResponseDefaultValues);
+        this.overriddenOutcomeDefaultValues = copy(overriddenOutcomeDefaultValues);
+        this.overriddenCorrectResponseValues = copy(overriddenCorrectResponseValues);
+    }
+
+    /**
+     * Creates a {@link TemplateVariant} from the results of template processing recorded
+     * in the given {@link ItemSessionState}.
+     */
+    public static TemplateVariant fromItemSessionState(final ItemSessionState itemSessionState) {
+        Assert.notNull(itemSessionState, "itemSessionState");
+        return new TemplateVariant(itemSessionState.getTemplateValues(),
+                itemSessionState.getOverriddenResponseDefaultValues(),
+                itemSessionState.getOverriddenOutcomeDefaultValues(),
+                itemSessionState.getOverriddenCorrectResponseValues());
+    }
+
+    private static Map<Identifier, Value> copy(final Map<Identifier, Value> map) {
+        return Collections.unmodifiableMap(new LinkedHashMap<Identifier, Value>(map));
+    }
+
+    public Map<Identifier, Value> getTemplateValues() {
+        return templateValues;
+    }
+
+    public Map<Identifier, Value> getOverriddenResponseDefaultValues() {
+        return overriddenResponseDefaultValues;
+    }
+
+    public Map<Identifier, Value> getOverriddenOutcomeDefaultValues() {
+        return overriddenOutcomeDefaultValues;
+    }
+
+    public Map<Identifier, Value> getOverriddenCorrectResponseValues() {
+        return overriddenCorrectResponseValues;
+    }
+
+    //-------------------------------------------------------------------
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (!(obj instanceof TemplateVariant)) {
+            return false;
+        }
+        final TemplateVariant other = (TemplateVariant) obj;
+        return templateValues.equals(other.templateValues)
+                && overriddenResponseDefaultValues.equals(other.overriddenResponseDefaultValues)
+                && overriddenOutcomeDefaultValues.equals(other.overriddenOutcomeDefaultValues)
+                && overriddenCorrectResponseValues.equals(other.overriddenCorrectResponseValues);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(new Object[] {
+                templateValues,
+                overriddenResponseDefaultValues,
+                overriddenOutcomeDefaultValues,
+                overriddenCorrectResponseValues
+        });
+    }
+
+    @Override
+    public String toString() {
+        return ObjectUtilities.beanToString(this);
+    }
+}
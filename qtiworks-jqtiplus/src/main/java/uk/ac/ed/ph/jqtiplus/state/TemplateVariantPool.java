@@ -0,0 +1,114 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.state;
+
+import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
+import uk.ac.ed.ph.jqtiplus.internal.util.DumpMode;
+import uk.ac.ed.ph.jqtiplus.internal.util.ObjectDumperOptions;
+import uk.ac.ed.ph.jqtiplus.running.ItemSessionController;
+import uk.ac.ed.ph.jqtiplus.running.ItemSessionControllerSettings;
+import uk.ac.ed.ph.jqtiplus.running.TemplateVariantGenerator;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A pool of pre-generated {@link TemplateVariant}s for an item. When passed via
+ * {@link ItemSessionControllerSettings#setTemplateVariantPool(TemplateVariantPool)}, the
+ * {@link ItemSessionController} will draw a variant from this pool instead of running
+ * template processing.
+ * <p>
+ * Usage: an instance of this class is immutable and can be safely used by multiple Threads
+ *
+ * @see TemplateVariantGenerator
+ *
+ * @author David McKain
+ */
+@ObjectDumperOptions(DumpMode.DEEP)
+public final class TemplateVariantPool implements Serializable {
+
+    private static final long serialVersionUID = -5417453520934604460L;
+
+    private final List<TemplateVariant> templateVariants;
+
+    public TemplateVariantPool(final List<TemplateVariant> templateVariants) {
+        Assert.notNull(templateVariants, "templateVariants");
+        if (templateVariants.isEmpty()) {
+            throw new IllegalArgumentException("TemplateVariantPool must not be empty");
+        }
+        this.templateVariants = Collections.unmodifiableList(new ArrayList<TemplateVariant>(templateVariants));
+    }
+
+    public List<TemplateVariant> getTemplateVariants() {
+        return templateVariants;
+    }
+
+    public int size() {
+        return templateVariants.size();
+    }
+
+    /**
+     * Chooses a {@link TemplateVariant} from this pool using the given {@link Random}
+     */
+    public TemplateVariant drawTemplateVariant(final Random random) {
+        Assert.notNull(random, "random");
+        return templateVariants.get(random.nextInt(templateVariants.size()));
+    }
+
+    //-------------------------------------------------------------------
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (!(obj instanceof TemplateVariantPool)) {
+            return false;
+        }
+        final TemplateVariantPool other = (TemplateVariantPool) obj;
+        return templateVariants.equals(other.templateVariants);
+    }
+
+    @Override
+    public int hashCode() {
+        return templateVariants.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this))
+                + "(size=" + templateVariants.size()
+                + ")";
+    }
+}
@@ -33,9 +33,11 @@
  */
 package uk.ac.ed.ph.jqtiplus.state;
 
+import uk.ac.ed.ph.jqtiplus.exception.QtiLogicException;
 import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
 import uk.ac.ed.ph.jqtiplus.internal.util.DumpMode;
 import uk.ac.ed.ph.jqtiplus.internal.util.ObjectDumperOptions;
+import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
 import uk.ac.ed.ph.jqtiplus.node.test.AbstractPart;
 import uk.ac.ed.ph.jqtiplus.node.test.AssessmentItemRef;
 import uk.ac.ed.ph.jqtiplus.node.test.AssessmentTest;
@@ -49,6 +51,9 @@ import uk.ac.ed.ph.jqtiplus.state.marshalling.TestPlanXmlMarshaller;
 import uk.ac.ed.ph.jqtiplus.types.Identifier;
 
 import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -106,13 +111,31 @@ public final class TestPlan implements Serializable {
      */
     private final Map<Identifier, List<TestPlanNode>> testPlanNodesByIdentifierMap;
 
+    /**
+     * Seed used by the {@link TestPlanner} when generating this plan, or null if not known.
+     * A plan having a seed may be regenerated deterministically from its {@link AssessmentTest}.
+     */
+    private final Long plannerSeed;
+
+    /** Precomputed structural indexes, derived from the other fields */
+    private final StructuralIndexes structuralIndexes;
+
     /**
      * This general constructor is used by {@link TestPlanXmlMarshaller}. It performs a depth-first
      * search starting at the given root node.
      */
     public TestPlan(final TestPlanNode testPlanRootNode) {
+        this(testPlanRootNode, null);
+    }
+
+    /**
+     * This general constructor is used by {@link TestPlanXmlMarshaller}. It performs a depth-first
+     * search starting at the given root node.
+     */
+    public TestPlan(final TestPlanNode testPlanRootNode, final Long plannerSeed) {
         /* Do depth-first search */
         this.testPlanRootNode = testPlanRootNode;
+        this.plannerSeed = plannerSeed;
         this.testPlanNodeList = testPlanRootNode.searchDescendantsOrSelf();
 
         /* Need to populate testPlanNodesByIdentifier */
@@ -134,6 +157,7 @@ public final class TestPlan implements Serializable {
         }
         this.testPlanNodesByKeyMap = Collections.unmodifiableMap(testPlanNodeMapBuilder);
         this.testPlanNodesByIdentifierMap = Collections.unmodifiableMap(testPlanNodesByIdentifierMapBuilder);
+        this.structuralIndexes = new StructuralIndexes(testPlanNodeList);
     }
 
     /**
@@ -143,16 +167,33 @@ public final class TestPlan implements Serializable {
     public TestPlan(final TestPlanNode testPlanRootNode, final List<TestPlanNode> testPlanNodeList,
             final Map<TestPlanNodeKey, TestPlanNode> testPlanNodesByKeyMap,
             final Map<Identifier, List<TestPlanNode>> testPlanNodesByIdentifierMap) {
+        this(testPlanRootNode, testPlanNodeList, testPlanNodesByKeyMap, testPlanNodesByIdentifierMap, null);
+    }
+
+    /**
+     * (This constructor is used by the {@link TestPlanner}, which will have already computed all
+     * of the raw information being represented.)
+     */
+    public TestPlan(final TestPlanNode testPlanRootNode, final List<TestPlanNode> testPlanNodeList,
+            final Map<TestPlanNodeKey, TestPlanNode> testPlanNodesByKeyMap,
+            final Map<Identifier, List<TestPlanNode>> testPlanNodesByIdentifierMap,
+            final Long plannerSeed) {
         this.testPlanRootNode = testPlanRootNode;
+        this.plannerSeed = plannerSeed;
         this.testPlanNodeList = Collections.unmodifiableList(testPlanNodeList);
         this.testPlanNodesByKeyMap = Collections.unmodifiableMap(testPlanNodesByKeyMap);
         this.testPlanNodesByIdentifierMap = Collections.unmodifiableMap(testPlanNodesByIdentifierMap);
+        this.structuralIndexes = new StructuralIndexes(this.testPlanNodeList);
     }
 
     public TestPlanNode getTestPlanRootNode() {
         return testPlanRootNode;
     }
 
+    public Long getPlannerSeed() {
+        return plannerSeed;
+    }
+
     public List<TestPlanNode> getTestPartNodes() {
         return testPlanRootNode.getChildren();
     }
@@ -210,14 +251,15 @@ public final class TestPlan implements Serializable {
     public int getGlobalIndex(final TestPlanNode testPlanNode) {
         Assert.notNull(testPlanNode, "testPlanNode");
         final TestPlanNodeKey key = testPlanNode.getKey();
-        int index = 0;
-        for (final TestPlanNode searchNode : testPlanNodeList) {
-            if (key.equals(searchNode.getKey())) {
-                return index;
-            }
-            index++;
+        if (key==null) {
+            /* (Root Node) */
+            return 0;
         }
-        throw new IllegalArgumentException("No TestPlanNode with " + key + " found in this TestPlan");
+        final Integer result = structuralIndexes.globalIndexMap.get(key);
+        if (result==null) {
+            throw new IllegalArgumentException("No TestPlanNode with " + key + " found in this TestPlan");
+        }
+        return result.intValue();
     }
 
     /**
@@ -287,15 +329,161 @@ public final class TestPlan implements Serializable {
 
 
     public List<TestPlanNode> searchNodes(final TestNodeType testNodeType) {
+        if (testNodeType==TestNodeType.ASSESSMENT_ITEM_REF) {
+            return structuralIndexes.itemRefNodes;
+        }
         return testPlanRootNode.searchDescendants(testNodeType);
     }
 
+    //-------------------------------------------------------------------
+    // Structural indexes
+
+    /**
+     * Returns all {@link TestPlanNode}s corresponding to {@link AssessmentItemRef}s
+     * within the given {@link TestPart} {@link TestPlanNode}, in depth-first order.
+     * <p>
+     * This is equivalent to (but cheaper than)
+     * <code>testPartNode.searchDescendants(TestNodeType.ASSESSMENT_ITEM_REF)</code>
+     *
+     * @throws IllegalArgumentException if the given Node is not a {@link TestPart} in this {@link TestPlan}
+     */
+    public List<TestPlanNode> getItemRefNodes(final TestPlanNode testPartNode) {
+        return lookupByTestPart(structuralIndexes.itemRefNodesByTestPartMap, testPartNode);
+    }
+
+    /**
+     * Returns all {@link TestPlanNode}s corresponding to
+     * {@link uk.ac.ed.ph.jqtiplus.node.test.AssessmentSection}s within the given {@link TestPart}
+     * {@link TestPlanNode}, in depth-first order.
+     * <p>
+     * This is equivalent to (but cheaper than)
+     * <code>testPartNode.searchDescendants(TestNodeType.ASSESSMENT_SECTION)</code>
+     *
+     * @throws IllegalArgumentException if the given Node is not a {@link TestPart} in this {@link TestPlan}
+     */
+    public List<TestPlanNode> getSectionNodes(final TestPlanNode testPartNode) {
+        return lookupByTestPart(structuralIndexes.sectionNodesByTestPartMap, testPartNode);
+    }
+
+    /**
+     * Returns the {@link TestPlanNode}s corresponding to the
+     * {@link uk.ac.ed.ph.jqtiplus.node.test.AssessmentSection}s enclosing the given
+     * {@link TestPlanNode}, starting with the closest.
+     * <p>
+     * This is equivalent to (but cheaper than)
+     * <code>testPlanNode.searchAncestors(TestNodeType.ASSESSMENT_SECTION)</code>
+     *
+     * @throws IllegalArgumentException if the given Node is null or not in this {@link TestPlan}
+     */
+    public List<TestPlanNode> getEnclosingSectionNodes(final TestPlanNode testPlanNode) {
+        return structuralIndexes.enclosingSectionNodesList.get(getGlobalIndex(testPlanNode));
+    }
+
+    /**
+     * Returns the {@link TestPlanNode} corresponding to the {@link TestPart} enclosing (or equal to)
+     * the given {@link TestPlanNode}, or null if the root Node is passed.
+     *
+     * @throws IllegalArgumentException if the given Node is null or not in this {@link TestPlan}
+     */
+    public TestPlanNode getEnclosingTestPartNode(final TestPlanNode testPlanNode) {
+        return structuralIndexes.enclosingTestPartNodeList.get(getGlobalIndex(testPlanNode));
+    }
+
+    private List<TestPlanNode> lookupByTestPart(final Map<TestPlanNodeKey, List<TestPlanNode>> map, final TestPlanNode testPartNode) {
+        Assert.notNull(testPartNode, "testPartNode");
+        final List<TestPlanNode> result = map.get(testPartNode.getKey());
+        if (result==null) {
+            throw new IllegalArgumentException("No testPart TestPlanNode with " + testPartNode.getKey() + " found in this TestPlan");
+        }
+        return result;
+    }
+
+    /**
+     * Encapsulates various immutable indexes over the structure of a {@link TestPlan}, which are
+     * computed once when the {@link TestPlan} is created to save repeated tree walks when
+     * running the test.
+     * <p>
+     * Lists indexed by Node are keyed on the global (depth-first) index of the Node.
+     */
+    private static final class StructuralIndexes implements Serializable {
+
+        private static final long serialVersionUID = -3066346632722767405L;
+
+        private final Map<TestPlanNodeKey, Integer> globalIndexMap;
+        private final List<TestPlanNode> itemRefNodes;
+        private final Map<TestPlanNodeKey, List<TestPlanNode>> itemRefNodesByTestPartMap;
+        private final Map<TestPlanNodeKey, List<TestPlanNode>> sectionNodesByTestPartMap;
+        private final List<List<TestPlanNode>> enclosingSectionNodesList;
+        private final List<TestPlanNode> enclosingTestPartNodeList;
+
+        public StructuralIndexes(final List<TestPlanNode> testPlanNodeList) {
+            final int nodeCount = testPlanNodeList.size();
+            final Map<TestPlanNodeKey, Integer> globalIndexMapBuilder = new HashMap<TestPlanNodeKey, Integer>();
+            final List<TestPlanNode> itemRefNodesBuilder = new ArrayList<TestPlanNode>();
+            final Map<TestPlanNodeKey, List<TestPlanNode>> itemRefNodesByTestPartMapBuilder = new HashMap<TestPlanNodeKey, List<TestPlanNode>>();
+            final Map<TestPlanNodeKey, List<TestPlanNode>> sectionNodesByTestPartMapBuilder = new HashMap<TestPlanNodeKey, List<TestPlanNode>>();
+            final List<List<TestPlanNode>> enclosingSectionNodesListBuilder = new ArrayList<List<TestPlanNode>>(nodeCount);
+            final List<TestPlanNode> enclosingTestPartNodeListBuilder = new ArrayList<TestPlanNode>(nodeCount);
+
+            List<TestPlanNode> currentItemRefNodes = null;
+            List<TestPlanNode> currentSectionNodes = null;
+            TestPlanNode currentTestPartNode = null;
+            for (int i=0; i<nodeCount; i++) {
+                final TestPlanNode testPlanNode = testPlanNodeList.get(i);
+                final TestNodeType testNodeType = testPlanNode.getTestNodeType();
+                if (testPlanNode.getKey()!=null) {
+                    globalIndexMapBuilder.put(testPlanNode.getKey(), Integer.valueOf(i));
+                }
+                if (testNodeType==TestNodeType.TEST_PART) {
+                    currentTestPartNode = testPlanNode;
+                    currentItemRefNodes = new ArrayList<TestPlanNode>();
+                    currentSectionNodes = new ArrayList<TestPlanNode>();
+                    itemRefNodesByTestPartMapBuilder.put(testPlanNode.getKey(), Collections.unmodifiableList(currentItemRefNodes));
+                    sectionNodesByTestPartMapBuilder.put(testPlanNode.getKey(), Collections.unmodifiableList(currentSectionNodes));
+                }
+                else if (testNodeType==TestNodeType.ASSESSMENT_SECTION) {
+                    currentSectionNodes.add(testPlanNode);
+                }
+                else if (testNodeType==TestNodeType.ASSESSMENT_ITEM_REF) {
+                    itemRefNodesBuilder.add(testPlanNode);
+                    currentItemRefNodes.add(testPlanNode);
+                }
+                enclosingTestPartNodeListBuilder.add(currentTestPartNode);
+
+                /* Parent's enclosing sections come earlier in depth-first order, so we can reuse them */
+                final TestPlanNode parentNode = testPlanNode.getParent();
+                if (parentNode==null || parentNode.getKey()==null) {
+                    enclosingSectionNodesListBuilder.add(Collections.<TestPlanNode>emptyList());
+                }
+                else {
+                    final List<TestPlanNode> parentEnclosingSectionNodes = enclosingSectionNodesListBuilder.get(globalIndexMapBuilder.get(parentNode.getKey()).intValue());
+                    if (parentNode.getTestNodeType()==TestNodeType.ASSESSMENT_SECTION) {
+                        final List<TestPlanNode> enclosingSectionNodes = new ArrayList<TestPlanNode>(parentEnclosingSectionNodes.size() + 1);
+                        enclosingSectionNodes.add(parentNode);
+                        enclosingSectionNodes.addAll(parentEnclosingSectionNodes);
+                        enclosingSectionNodesListBuilder.add(Collections.unmodifiableList(enclosingSectionNodes));
+                    }
+                    else {
+                        enclosingSectionNodesListBuilder.add(parentEnclosingSectionNodes);
+                    }
+                }
+            }
+            this.globalIndexMap = globalIndexMapBuilder;
+            this.itemRefNodes = Collections.unmodifiableList(itemRefNodesBuilder);
+            this.itemRefNodesByTestPartMap = itemRefNodesByTestPartMapBuilder;
+            this.sectionNodesByTestPartMap = sectionNodesByTestPartMapBuilder;
+            this.enclosingSectionNodesList = enclosingSectionNodesListBuilder;
+            this.enclosingTestPartNodeList = enclosingTestPartNodeListBuilder;
+        }
+    }
+
     //-------------------------------------------------------------------
 
     @Override
     public String toString() {
         return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this))
                 + "(testPlanRootNode=" + testPlanRootNode
+                + ",plannerSeed=" + plannerSeed
                 + ")";
     }
 
@@ -306,7 +494,8 @@ public final class TestPlan implements Serializable {
         }
         final TestPlan other = (TestPlan) obj;
         return testPlanRootNode.equals(other.testPlanRootNode)
-                && testPlanNodeList.equals(other.testPlanNodeList);
+                && testPlanNodeList.equals(other.testPlanNodeList)
+                && ObjectUtilities.nullSafeEquals(plannerSeed, other.plannerSeed);
     }
 
     @Override
@@ -316,6 +505,54 @@ public final class TestPlan implements Serializable {
 
     //-------------------------------------------------------------------
 
+    /**
+     * Computes a SHA-1 hash of this plan, returned as a hex String. As well as the type and
+     * key of each Node, this covers the item System ID, section part title and
+     * {@link EffectiveItemSessionControl} recorded in each Node. This can be used to check that
+     * a regenerated plan is the same as the original.
+     */
+    public String computePlanHash() {
+        final StringBuilder hashInput = new StringBuilder();
+        for (int i=1; i<testPlanNodeList.size(); i++) { /* (Root node is always the same) */
+            final TestPlanNode testPlanNode = testPlanNodeList.get(i);
+            final TestPlanNode parentNode = testPlanNode.getParent();
+            hashInput.append(testPlanNode.getTestNodeType())
+                .append('|').append(testPlanNode.getKey())
+                .append('|').append(parentNode.getKey())
+                .append('|').append(testPlanNode.getItemSystemId())
+                .append('|').append(testPlanNode.getSectionPartTitle());
+            final EffectiveItemSessionControl effectiveItemSessionControl = testPlanNode.getEffectiveItemSessionControl();
+            if (effectiveItemSessionControl!=null) {
+                hashInput.append('|').append(effectiveItemSessionControl.getMaxAttempts())
+                    .append(',').append(effectiveItemSessionControl.isShowFeedback())
+                    .append(',').append(effectiveItemSessionControl.isAllowReview())
+                    .append(',').append(effectiveItemSessionControl.isShowSolution())
+                    .append(',').append(effectiveItemSessionControl.isAllowComment())
+                    .append(',').append(effectiveItemSessionControl.isAllowSkipping())
+                    .append(',').append(effectiveItemSessionControl.isValidateResponses());
+            }
+            hashInput.append('\n');
+        }
+        return computeSha1Hex(hashInput.toString());
+    }
+
+    private static String computeSha1Hex(final String input) {
+        final byte[] digest;
+        try {
+            final MessageDigest messageDigest = MessageDigest.getInstance("SHA-1");
+            digest = messageDigest.digest(input.getBytes(Charset.forName("UTF-8")));
+        }
+        catch (final NoSuchAlgorithmException e) {
+            throw new QtiLogicException("Unexpected Exception", e);
+        }
+        final StringBuilder result = new StringBuilder(2 * digest.length);
+        for (final byte b : digest) {
+            result.append(Character.forDigit((b >> 4) & 0xf, 16))
+                .append(Character.forDigit(b & 0xf, 16));
+        }
+        return result.toString();
+    }
+
     public String debugStructure() {
         final StringBuilder result = new StringBuilder();
         buildStructure(result, testPlanRootNode.getChildren(), 0);
@@ -35,19 +35,27 @@ package uk.ac.ed.ph.jqtiplus.state;
 
 import uk.ac.ed.ph.jqtiplus.QtiConstants;
 import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
+import uk.ac.ed.ph.jqtiplus.node.expression.outcome.ItemSubset;
 import uk.ac.ed.ph.jqtiplus.node.item.AssessmentItem;
 import uk.ac.ed.ph.jqtiplus.node.item.response.declaration.ResponseDeclaration;
 import uk.ac.ed.ph.jqtiplus.node.outcome.declaration.OutcomeDeclaration;
 import uk.ac.ed.ph.jqtiplus.node.test.AbstractPart;
 import uk.ac.ed.ph.jqtiplus.node.test.AssessmentItemRef;
+import uk.ac.ed.ph.jqtiplus.node.test.AssessmentSection;
 import uk.ac.ed.ph.jqtiplus.node.test.AssessmentTest;
+import uk.ac.ed.ph.jqtiplus.node.test.Ordering;
+import uk.ac.ed.ph.jqtiplus.node.test.Selection;
 import uk.ac.ed.ph.jqtiplus.resolution.ResolvedAssessmentTest;
+import uk.ac.ed.ph.jqtiplus.running.TestPlanner;
 import uk.ac.ed.ph.jqtiplus.running.TestProcessingInitializer;
 import uk.ac.ed.ph.jqtiplus.state.TestPlanNode.TestNodeType;
 import uk.ac.ed.ph.jqtiplus.types.Identifier;
+import uk.ac.ed.ph.jqtiplus.utils.QueryUtils;
 
 import java.io.Serializable;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -86,12 +94,40 @@ public final class TestProcessingMap implements Serializable {
      */
     private final Map<URI, ItemProcessingMap> itemProcessingMapMap;
 
+    /**
+     * Map of all {@link AssessmentItemRef}s found below the {@link AssessmentSection}(s) having
+     * a particular identifier in the ORIGINAL test structure. This is used by {@link ItemSubset}.
+     */
+    private final Map<Identifier, List<AssessmentItemRef>> sectionItemRefsMap;
+
+    /**
+     * Map of the global indices of the {@link AssessmentItemRef}s declared as belonging to
+     * a particular category. This is used by {@link ItemSubset}.
+     */
+    private final Map<String, BitSet> categoryIndexMap;
+
+    /**
+     * Dependencies of each top-level outcomeRule in the test's outcomeProcessing, or null if
+     * the test's outcomeProcessing cannot be performed incrementally.
+     */
+    private final List<OutcomeRuleDependencies> outcomeRuleDependencies;
+
+    /**
+     * Set if every {@link TestPlan} generated for this test will be the same, i.e. the test is
+     * valid and uses neither {@link Selection} nor shuffled {@link Ordering}.
+     */
+    private final boolean testPlanInvariant;
+
+    /** Lazily-generated {@link TestPlan} shared by all sessions if {@link #testPlanInvariant} */
+    private TestPlan invariantTestPlan;
+
     public TestProcessingMap(final ResolvedAssessmentTest resolvedAssessmentTest, final boolean isValid,
             final List<AbstractPart> abstractPartListBuilder,
             final Map<AbstractPart, EffectiveItemSessionControl> effectiveItemSessionControlMap,
             final Map<Identifier, OutcomeDeclaration> outcomeDeclarationMapBuilder,
             final ResponseDeclaration durationResponseDeclaration,
-            final Map<URI, ItemProcessingMap> itemProcessingMapMapBuilder) {
+            final Map<URI, ItemProcessingMap> itemProcessingMapMapBuilder,
+            final List<OutcomeRuleDependencies> outcomeRuleDependencies) {
         this.resolvedAssessmentTest = resolvedAssessmentTest;
         this.durationResponseDeclaration = durationResponseDeclaration;
         this.isValid = isValid;
@@ -111,6 +147,52 @@ public final class TestProcessingMap implements Serializable {
 
         /* Record maps for each referenced item */
         this.itemProcessingMapMap = Collections.unmodifiableMap(new LinkedHashMap<URI, ItemProcessingMap>(itemProcessingMapMapBuilder));
+
+        /* Decide whether all TestPlans will be the same */
+        boolean randomised = false;
+        for (final AbstractPart abstractPart : abstractPartListBuilder) {
+            if (abstractPart instanceof AssessmentSection) {
+                final AssessmentSection assessmentSection = (AssessmentSection) abstractPart;
+                final Ordering ordering = assessmentSection.getOrdering();
+                if (assessmentSection.getSelection()!=null || (ordering!=null && ordering.getShuffle())) {
+                    randomised = true;
+                    break;
+                }
+            }
+        }
+        this.testPlanInvariant = isValid && !randomised;
+
+        /* Record outcomeRule dependencies (if applicable) */
+        this.outcomeRuleDependencies = outcomeRuleDependencies!=null ? Collections.unmodifiableList(new ArrayList<OutcomeRuleDependencies>(outcomeRuleDependencies)) : null;
+
+        /* Index AssessmentItemRefs by section identifier and category */
+        this.sectionItemRefsMap = new HashMap<Identifier, List<AssessmentItemRef>>();
+        this.categoryIndexMap = new HashMap<String, BitSet>();
+        for (int i=0; i<abstractPartListBuilder.size(); i++) {
+            final AbstractPart abstractPart = abstractPartListBuilder.get(i);
+            if (abstractPart instanceof AssessmentSection) {
+                final Identifier sectionIdentifier = abstractPart.getIdentifier();
+                List<AssessmentItemRef> sectionItemRefs = sectionItemRefsMap.get(sectionIdentifier);
+                if (sectionItemRefs==null) {
+                    sectionItemRefs = new ArrayList<AssessmentItemRef>();
+                    sectionItemRefsMap.put(sectionIdentifier, sectionItemRefs);
+                }
+                sectionItemRefs.addAll(QueryUtils.search(AssessmentItemRef.class, abstractPart));
+            }
+            else if (abstractPart instanceof AssessmentItemRef) {
+                final List<String> categories = ((AssessmentItemRef) abstractPart).getCategories();
+                if (categories!=null) {
+                    for (final String category : categories) {
+                        BitSet categoryIndices = categoryIndexMap.get(category);
+                        if (categoryIndices==null) {
+                            categoryIndices = new BitSet(abstractPartListBuilder.size());
+                            categoryIndexMap.put(category, categoryIndices);
+                        }
+                        categoryIndices.set(i);
+                    }
+                }
+            }
+        }
     }
 
     public boolean isValid() {
@@ -152,6 +234,59 @@ public final class TestProcessingMap implements Serializable {
         return itemProcessingMapMap;
     }
 
+    /**
+     * Returns all {@link AssessmentItemRef}s found below the {@link AssessmentSection}(s) having
+     * the given identifier in the ORIGINAL test structure, in document order. Returns an empty
+     * List if there are no such sections.
+     */
+    public List<AssessmentItemRef> getAssessmentItemRefsInSections(final Identifier sectionIdentifier) {
+        final List<AssessmentItemRef> result = sectionItemRefsMap.get(sectionIdentifier);
+        return result!=null ? Collections.unmodifiableList(result) : Collections.<AssessmentItemRef>emptyList();
+    }
+
+    /**
+     * Returns whether the {@link AssessmentItemRef} corresponding to the given {@link TestPlanNode}
+     * has been declared as belonging to the given category.
+     */
+    public boolean isInCategory(final TestPlanNode itemRefNode, final String category) {
+        final BitSet categoryIndices = categoryIndexMap.get(category);
+        return categoryIndices!=null && categoryIndices.get(itemRefNode.getAbstractPartGlobalIndex());
+    }
+
+    /**
+     * Returns the {@link OutcomeRuleDependencies} for each top-level outcomeRule in the test's
+     * outcomeProcessing (in document order), or null if outcomeProcessing cannot safely be
+     * performed incrementally and must always be run in full.
+     */
+    public List<OutcomeRuleDependencies> getOutcomeRuleDependencies() {
+        return outcomeRuleDependencies;
+    }
+
+    /**
+     * Returns whether every {@link TestPlan} generated for this test will be the same.
+     *
+     * @see #getInvariantTestPlan()
+     */
+    public boolean isTestPlanInvariant() {
+        return testPlanInvariant;
+    }
+
+    /**
+     * Returns a {@link TestPlan} that may be shared by all sessions on this test if
+     * {@link #isTestPlanInvariant()}, generating it on first call. Returns null if
+     * the test's plan is not invariant, in which case a {@link TestPlanner} should be
+     * used for each session.
+     */
+    public synchronized TestPlan getInvariantTestPlan() {
+        if (!testPlanInvariant) {
+            return null;
+        }
+        if (invariantTestPlan==null) {
+            invariantTestPlan = new TestPlanner(this).generateTestPlan();
+        }
+        return invariantTestPlan;
+    }
+
     public AbstractPart resolveAbstractPart(final TestPlanNode testPlanNode) {
         if (testPlanNode.getTestNodeType()==TestNodeType.ROOT) {
             throw new IllegalArgumentException("This method should not be called for " + testPlanNode.getTestNodeType());
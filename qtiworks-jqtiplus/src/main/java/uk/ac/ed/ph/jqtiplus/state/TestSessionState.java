@@ -50,8 +50,11 @@ import uk.ac.ed.ph.jqtiplus.value.Value;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Date;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Encapsulates the current state of a candidate's test session.
@@ -76,7 +79,33 @@ public final class TestSessionState extends ControlObjectSessionState implements
     private final Map<TestPlanNodeKey, ItemSessionState> itemSessionStates;
     private final Map<Identifier, Value> outcomeValues;
 
+    /**
+     * Keys of the items whose {@link ItemSessionState}s have been changed since outcome
+     * processing was last performed. This is used to drive incremental outcome processing.
+     */
+    private final Set<TestPlanNodeKey> dirtyItemKeys;
+
+    /**
+     * Keys of the items within entered {@link TestPart}s whose template processing has been
+     * deferred until they are first used. This is only used when item sessions are being
+     * initialized lazily.
+     */
+    private final Set<TestPlanNodeKey> pendingTemplateProcessingKeys;
+
     private boolean initialized;
+
+    /**
+     * Time at which this session was initialized. This is used when initializing
+     * item sessions lazily.
+     */
+    private Date initializationTime;
+
+    /**
+     * Whether outcome processing has been performed on this state, with all subsequent changes
+     * to {@link ItemSessionState}s recorded in {@link #dirtyItemKeys}. If false, the next
+     * outcome processing run must be a full one.
+     */
+    private boolean outcomeProcessingPerformed;
     private TestPlanNodeKey currentTestPartKey;
     private TestPlanNodeKey currentItemKey;
 
@@ -87,6 +116,8 @@ public final class TestSessionState extends ControlObjectSessionState implements
         this.assessmentSectionSessionStates = new LinkedHashMap<TestPlanNodeKey, AssessmentSectionSessionState>();
         this.itemSessionStates = new LinkedHashMap<TestPlanNodeKey, ItemSessionState>();
         this.outcomeValues = new LinkedHashMap<Identifier, Value>();
+        this.dirtyItemKeys = new LinkedHashSet<TestPlanNodeKey>();
+        this.pendingTemplateProcessingKeys = new LinkedHashSet<TestPlanNodeKey>();
         reset();
     }
 
@@ -117,10 +148,13 @@ public final class TestSessionState extends ControlObjectSessionState implements
         this.assessmentSectionSessionStates.clear();
         this.itemSessionStates.clear();
         this.outcomeValues.clear();
+        this.dirtyItemKeys.clear();
+        this.pendingTemplateProcessingKeys.clear();
         this.initialized = false;
+        this.initializationTime = null;
+        this.outcomeProcessingPerformed = false;
         this.currentTestPartKey = null;
         this.currentItemKey = null;
-
     }
 
     //----------------------------------------------------------------
@@ -134,6 +168,24 @@ public final class TestSessionState extends ControlObjectSessionState implements
     }
 
 
+    public Date getInitializationTime() {
+        return ObjectUtilities.safeClone(initializationTime);
+    }
+
+    public void setInitializationTime(final Date initializationTime) {
+        this.initializationTime = ObjectUtilities.safeClone(initializationTime);
+    }
+
+
+    public boolean isOutcomeProcessingPerformed() {
+        return outcomeProcessingPerformed;
+    }
+
+    public void setOutcomeProcessingPerformed(final boolean outcomeProcessingPerformed) {
+        this.outcomeProcessingPerformed = outcomeProcessingPerformed;
+    }
+
+
     public TestPlanNodeKey getCurrentTestPartKey() {
         return currentTestPartKey;
     }
@@ -228,6 +280,43 @@ public final class TestSessionState extends ControlObjectSessionState implements
         return Collections.unmodifiableMap(outcomeValues);
     }
 
+    //----------------------------------------------------------------
+    // Dirty item tracking
+
+    public Set<TestPlanNodeKey> getDirtyItemKeys() {
+        return Collections.unmodifiableSet(dirtyItemKeys);
+    }
+
+    public void markItemDirty(final TestPlanNodeKey itemKey) {
+        Assert.notNull(itemKey);
+        dirtyItemKeys.add(itemKey);
+    }
+
+    public void clearDirtyItemKeys() {
+        dirtyItemKeys.clear();
+    }
+
+    //----------------------------------------------------------------
+    // Deferred template processing
+
+    public Set<TestPlanNodeKey> getPendingTemplateProcessingKeys() {
+        return Collections.unmodifiableSet(pendingTemplateProcessingKeys);
+    }
+
+    public void addPendingTemplateProcessingKey(final TestPlanNodeKey itemKey) {
+        Assert.notNull(itemKey);
+        pendingTemplateProcessingKeys.add(itemKey);
+    }
+
+    /**
+     * Removes the given item key from the set of items awaiting template processing,
+     * returning true if it was there.
+     */
+    public boolean removePendingTemplateProcessingKey(final TestPlanNodeKey itemKey) {
+        Assert.notNull(itemKey);
+        return pendingTemplateProcessingKeys.remove(itemKey);
+    }
+
     //----------------------------------------------------------------
 
     public Value getVariableValue(final Identifier identifier) {
@@ -258,6 +347,10 @@ public final class TestSessionState extends ControlObjectSessionState implements
                 && assessmentSectionSessionStates.equals(other.assessmentSectionSessionStates)
                 && itemSessionStates.equals(other.itemSessionStates)
                 && outcomeValues.equals(other.outcomeValues)
+                && outcomeProcessingPerformed==other.outcomeProcessingPerformed
+                && dirtyItemKeys.equals(other.dirtyItemKeys)
+                && pendingTemplateProcessingKeys.equals(other.pendingTemplateProcessingKeys)
+                && ObjectUtilities.nullSafeEquals(initializationTime, other.initializationTime)
                 && testPlan.equals(other.testPlan)
                 ;
     }
@@ -272,7 +365,11 @@ public final class TestSessionState extends ControlObjectSessionState implements
                 itemSessionStates,
                 currentTestPartKey,
                 currentItemKey,
-                outcomeValues
+                outcomeValues,
+                outcomeProcessingPerformed,
+                dirtyItemKeys,
+                pendingTemplateProcessingKeys,
+                initializationTime
         });
     }
 
@@ -288,6 +385,10 @@ public final class TestSessionState extends ControlObjectSessionState implements
                 + ",currentTestPartKey=" + currentTestPartKey
                 + ",currentItemKey=" + currentItemKey
                 + ",outcomeValues=" + outcomeValues
+                + ",outcomeProcessingPerformed=" + outcomeProcessingPerformed
+                + ",dirtyItemKeys=" + dirtyItemKeys
+                + ",initializationTime=" + initializationTime
+                + ",pendingTemplateProcessingKeys=" + pendingTemplateProcessingKeys
                 + ",testPartSessionStates=" + testPartSessionStates
                 + ",assessmentSectionSessionStates=" + assessmentSectionSessionStates
                 + ",itemSessionStates=" + itemSessionStates
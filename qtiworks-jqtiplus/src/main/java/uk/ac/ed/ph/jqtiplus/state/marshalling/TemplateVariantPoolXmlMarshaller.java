@@ -0,0 +1,136 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.state.marshalling;
+
+import uk.ac.ed.ph.jqtiplus.state.TemplateVariant;
+import uk.ac.ed.ph.jqtiplus.state.TemplateVariantPool;
+import uk.ac.ed.ph.jqtiplus.types.Identifier;
+import uk.ac.ed.ph.jqtiplus.value.Value;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilder;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+
+/**
+ * Marshals a {@link TemplateVariantPool} to/from XML
+ *
+ * @author David McKain
+ */
+public final class TemplateVariantPoolXmlMarshaller {
+
+    public static Document marshal(final TemplateVariantPool templateVariantPool) {
+        final DocumentBuilder documentBuilder = XmlMarshallerCore.createNsAwareDocumentBuilder();
+        final Document document = documentBuilder.newDocument();
+        appendTemplateVariantPool(document, templateVariantPool);
+        return document;
+    }
+
+    static void appendTemplateVariantPool(final Node documentOrElement, final TemplateVariantPool templateVariantPool) {
+        final Element element = XmlMarshallerCore.appendElement(documentOrElement, "templateVariantPool");
+        for (final TemplateVariant templateVariant : templateVariantPool.getTemplateVariants()) {
+            final Element variantElement = XmlMarshallerCore.appendElement(element, "templateVariant");
+            XmlMarshallerCore.appendValues(variantElement, "templateVariable", templateVariant.getTemplateValues());
+            XmlMarshallerCore.appendValues(variantElement, "overriddenResponseDefault", templateVariant.getOverriddenResponseDefaultValues());
+            XmlMarshallerCore.appendValues(variantElement, "overriddenOutcomeDefault", templateVariant.getOverriddenOutcomeDefaultValues());
+            XmlMarshallerCore.appendValues(variantElement, "overriddenCorrectResponse", templateVariant.getOverriddenCorrectResponseValues());
+        }
+    }
+
+    //----------------------------------------------
+
+    public static TemplateVariantPool unmarshal(final String xmlString) {
+        final DocumentBuilder documentBuilder = XmlMarshallerCore.createNsAwareDocumentBuilder();
+        Document document;
+        try {
+            document = documentBuilder.parse(new InputSource(new StringReader(xmlString)));
+        }
+        catch (final Exception e) {
+            throw new XmlUnmarshallingException("XML parsing failed", e);
+        }
+        return unmarshal(document.getDocumentElement());
+    }
+
+    public static TemplateVariantPool unmarshal(final Element element) {
+        XmlMarshallerCore.expectThisElement(element, "templateVariantPool");
+        final List<Element> variantElements = XmlMarshallerCore.expectElementChildren(element);
+        if (variantElements.isEmpty()) {
+            throw new XmlUnmarshallingException("Expected at least one <templateVariant> child");
+        }
+        final List<TemplateVariant> templateVariants = new ArrayList<TemplateVariant>(variantElements.size());
+        for (final Element variantElement : variantElements) {
+            XmlMarshallerCore.expectThisElement(variantElement, "templateVariant");
+            templateVariants.add(unmarshalTemplateVariant(variantElement));
+        }
+        return new TemplateVariantPool(templateVariants);
+    }
+
+    private static TemplateVariant unmarshalTemplateVariant(final Element element) {
+        final Map<Identifier, Value> templateValues = new LinkedHashMap<Identifier, Value>();
+        final Map<Identifier, Value> overriddenResponseDefaultValues = new LinkedHashMap<Identifier, Value>();
+        final Map<Identifier, Value> overriddenOutcomeDefaultValues = new LinkedHashMap<Identifier, Value>();
+        final Map<Identifier, Value> overriddenCorrectResponseValues = new LinkedHashMap<Identifier, Value>();
+        for (final Element childElement : XmlMarshallerCore.expectElementChildren(element)) {
+            final String elementName = childElement.getLocalName();
+            final Map<Identifier, Value> targetMap;
+            if (elementName.equals("templateVariable")) {
+                targetMap = templateValues;
+            }
+            else if (elementName.equals("overriddenResponseDefault")) {
+                targetMap = overriddenResponseDefaultValues;
+            }
+            else if (elementName.equals("overriddenOutcomeDefault")) {
+                targetMap = overriddenOutcomeDefaultValues;
+            }
+            else if (elementName.equals("overriddenCorrectResponse")) {
+                targetMap = overriddenCorrectResponseValues;
+            }
+            else {
+                throw new XmlUnmarshallingException("Unexpected element " + elementName);
+            }
+            final Identifier identifier = XmlMarshallerCore.parseIdentifierAttribute(childElement, "identifier");
+            targetMap.put(identifier, XmlMarshallerCore.parseValue(childElement));
+        }
+        return new TemplateVariant(templateValues, overriddenResponseDefaultValues,
+                overriddenOutcomeDefaultValues, overriddenCorrectResponseValues);
+    }
+}
@@ -35,11 +35,13 @@ package uk.ac.ed.ph.jqtiplus.state.marshalling;
 
 import uk.ac.ed.ph.jqtiplus.internal.util.StringUtilities;
 import uk.ac.ed.ph.jqtiplus.node.test.ItemSessionControl;
+import uk.ac.ed.ph.jqtiplus.running.TestPlanner;
 import uk.ac.ed.ph.jqtiplus.state.EffectiveItemSessionControl;
 import uk.ac.ed.ph.jqtiplus.state.TestPlan;
 import uk.ac.ed.ph.jqtiplus.state.TestPlanNode;
 import uk.ac.ed.ph.jqtiplus.state.TestPlanNode.TestNodeType;
 import uk.ac.ed.ph.jqtiplus.state.TestPlanNodeKey;
+import uk.ac.ed.ph.jqtiplus.state.TestProcessingMap;
 
 import java.io.StringReader;
 import java.net.URI;
@@ -68,6 +70,7 @@ public final class TestPlanXmlMarshaller {
 
     public static void appendTestPlan(final Node documentOrElement, final TestPlan testPlan) {
         final Element element = XmlMarshallerCore.appendElement(documentOrElement, "testPlan");
+        addPlannerAttributes(element, testPlan);
 
         final TestPlanNode rootNode = testPlan.getTestPlanRootNode();
         for (final TestPlanNode testPlanNode : rootNode.getChildren()) {
@@ -121,10 +124,74 @@ public final class TestPlanXmlMarshaller {
     public static TestPlan unmarshal(final Element element) {
         XmlMarshallerCore.expectThisElement(element, "testPlan");
 
+        final Long plannerSeed = parseOptionalPlannerSeedAttribute(element);
         final TestPlanNode rootNode = TestPlanNode.createRoot();
         expectTestPlanNodeChildren(element, rootNode);
 
-        return new TestPlan(rootNode);
+        return new TestPlan(rootNode, plannerSeed);
+    }
+
+    private static void addPlannerAttributes(final Element element, final TestPlan testPlan) {
+        final Long plannerSeed = testPlan.getPlannerSeed();
+        if (plannerSeed!=null) {
+            element.setAttribute("plannerSeed", plannerSeed.toString());
+        }
+    }
+
+    private static Long parseOptionalPlannerSeedAttribute(final Element element) {
+        return element.hasAttribute("plannerSeed") ? Long.valueOf(XmlMarshallerCore.parseOptionalLongAttribute(element, "plannerSeed", 0L)) : null;
+    }
+
+    //----------------------------------------------
+
+    /**
+     * Appends a reference to the given {@link TestPlan} instead of the plan itself. The plan
+     * can be regenerated later via {@link #resolveTestPlanReference(Element, TestProcessingMap)}
+     * if the test's plan is invariant, or if the plan records its planner seed.
+     * <p>
+     * This should only be used when the plan is known to be regenerable from the same test
+     * (e.g. when it is the test's shared invariant plan), as the reference can no longer be
+     * resolved if the test changes.
+     */
+    public static void appendTestPlanReference(final Node documentOrElement, final TestPlan testPlan) {
+        appendTestPlanReference(documentOrElement, testPlan, null);
+    }
+
+    /**
+     * Variant of {@link #appendTestPlanReference(Node, TestPlan)} that also records an (optional)
+     * opaque <code>testSource</code> string identifying the test the plan was generated from.
+     */
+    public static void appendTestPlanReference(final Node documentOrElement, final TestPlan testPlan, final String testSource) {
+        final Element element = XmlMarshallerCore.appendElement(documentOrElement, "testPlanReference");
+        if (testSource!=null) {
+            element.setAttribute("testSource", testSource);
+        }
+        element.setAttribute("planHash", testPlan.computePlanHash());
+        addPlannerAttributes(element, testPlan);
+    }
+
+    /**
+     * Regenerates the {@link TestPlan} referred to by the given <code>testPlanReference</code>
+     * element, checking that the resulting plan is the same as the original.
+     *
+     * @throws XmlUnmarshallingException if the plan cannot be regenerated, or if the regenerated plan
+     *   does not match the original (e.g. because the underlying test has since changed)
+     */
+    public static TestPlan resolveTestPlanReference(final Element element, final TestProcessingMap testProcessingMap) {
+        XmlMarshallerCore.expectThisElement(element, "testPlanReference");
+        TestPlan result = testProcessingMap.getInvariantTestPlan();
+        if (result==null) {
+            final Long plannerSeed = parseOptionalPlannerSeedAttribute(element);
+            if (plannerSeed==null) {
+                throw new XmlUnmarshallingException("Cannot regenerate TestPlan as no plannerSeed was recorded");
+            }
+            result = new TestPlanner(testProcessingMap, plannerSeed.longValue()).generateTestPlan();
+        }
+        final String planHash = XmlMarshallerCore.requireAttribute(element, "planHash");
+        if (!planHash.equals(result.computePlanHash())) {
+            throw new XmlUnmarshallingException("Regenerated TestPlan does not match the original. The underlying test has probably changed");
+        }
+        return result;
     }
 
     private static void expectTestPlanNodeChildren(final Element element, final TestPlanNode targetOwner) {
@@ -39,6 +39,7 @@ import uk.ac.ed.ph.jqtiplus.state.ItemSessionState;
 import uk.ac.ed.ph.jqtiplus.state.TestPartSessionState;
 import uk.ac.ed.ph.jqtiplus.state.TestPlan;
 import uk.ac.ed.ph.jqtiplus.state.TestPlanNodeKey;
+import uk.ac.ed.ph.jqtiplus.state.TestProcessingMap;
 import uk.ac.ed.ph.jqtiplus.state.TestSessionState;
 import uk.ac.ed.ph.jqtiplus.types.Identifier;
 import uk.ac.ed.ph.jqtiplus.value.Value;
@@ -64,9 +65,29 @@ public final class TestSessionStateXmlMarshaller {
 
 
     public static Document marshal(final TestSessionState testSessionState) {
+        return marshal(testSessionState, true);
+    }
+
+    /**
+     * Marshals the given {@link TestSessionState}. If <code>embedTestPlan</code> is false then only
+     * a reference to its {@link TestPlan} is included, which requires the resulting XML to be
+     * unmarshalled using {@link #unmarshal(Element, TestProcessingMap)}.
+     */
+    public static Document marshal(final TestSessionState testSessionState, final boolean embedTestPlan) {
+        return marshal(testSessionState, embedTestPlan, null);
+    }
+
+    /**
+     * Variant of {@link #marshal(TestSessionState, boolean)} that also records the given (optional)
+     * <code>testSource</code> in any reference to the {@link TestPlan}. This is an opaque string
+     * identifying the test that the plan was generated from, which callers can use to locate the
+     * correct {@link TestProcessingMap} later on. (See {@link #extractTestPlanReferenceSource(Element)}.)
+     */
+    public static Document marshal(final TestSessionState testSessionState, final boolean embedTestPlan,
+            final String testSource) {
         final DocumentBuilder documentBuilder = XmlMarshallerCore.createNsAwareDocumentBuilder();
         final Document document = documentBuilder.newDocument();
-        appendTestSessionState(document, testSessionState);
+        appendTestSessionState(document, testSessionState, embedTestPlan, testSource);
         return document;
     }
 
@@ -76,19 +97,39 @@ public final class TestSessionStateXmlMarshaller {
         }
     }
 
-    static void appendTestSessionState(final Node documentOrElement, final TestSessionState testSessionState) {
+    static void appendTestSessionState(final Node documentOrElement, final TestSessionState testSessionState,
+            final boolean embedTestPlan, final String testSource) {
         final Element element = XmlMarshallerCore.appendElement(documentOrElement, "testSessionState");
         XmlMarshallerCore.addControlObjectSessionStateAttributes(element, testSessionState);
         element.setAttribute("initialized", StringUtilities.toTrueFalse(testSessionState.isInitialized()));
+        element.setAttribute("outcomeProcessingPerformed", StringUtilities.toTrueFalse(testSessionState.isOutcomeProcessingPerformed()));
+        XmlMarshallerCore.maybeAddDateAttribute(element, "initializationTime", testSessionState.getInitializationTime());
         maybeAddStringifiableAttribute(element, "currentTestPartKey", testSessionState.getCurrentTestPartKey());
         maybeAddStringifiableAttribute(element, "currentItemKey", testSessionState.getCurrentItemKey());
 
-        /* Do test plan */
-        TestPlanXmlMarshaller.appendTestPlan(element, testSessionState.getTestPlan());
+        /* Do test plan (or a reference to it) */
+        if (embedTestPlan) {
+            TestPlanXmlMarshaller.appendTestPlan(element, testSessionState.getTestPlan());
+        }
+        else {
+            TestPlanXmlMarshaller.appendTestPlanReference(element, testSessionState.getTestPlan(), testSource);
+        }
 
         /* Do outcome variables */
         XmlMarshallerCore.appendValues(element, "outcomeVariable", testSessionState.getOutcomeValues());
 
+        /* Record items changed since outcome processing was last performed */
+        for (final TestPlanNodeKey dirtyItemKey : testSessionState.getDirtyItemKeys()) {
+            final Element dirtyItemElement = XmlMarshallerCore.appendElement(element, "dirtyItem");
+            dirtyItemElement.setAttribute("key", dirtyItemKey.toString());
+        }
+
+        /* Record items whose template processing has been deferred */
+        for (final TestPlanNodeKey pendingItemKey : testSessionState.getPendingTemplateProcessingKeys()) {
+            final Element pendingItemElement = XmlMarshallerCore.appendElement(element, "pendingTemplateProcessing");
+            pendingItemElement.setAttribute("key", pendingItemKey.toString());
+        }
+
         /* Do states for each TestPart */
         final Map<TestPlanNodeKey, TestPartSessionState> testPartSessionStates = testSessionState.getTestPartSessionStates();
         for (final Entry<TestPlanNodeKey, TestPartSessionState> entry : testPartSessionStates.entrySet()) {
@@ -136,16 +177,52 @@ public final class TestSessionStateXmlMarshaller {
 
 
     public static TestSessionState unmarshal(final Element element) {
+        return unmarshal(element, null);
+    }
+
+    /**
+     * Returns the <code>testSource</code> recorded in the reference to the {@link TestPlan} within the
+     * given <code>testSessionState</code> element, or null if the {@link TestPlan} is embedded or
+     * no source was recorded.
+     */
+    public static String extractTestPlanReferenceSource(final Element element) {
         XmlMarshallerCore.expectThisElement(element, "testSessionState");
+        final List<Element> childElements = XmlMarshallerCore.expectElementChildren(element);
+        if (childElements.isEmpty() || !"testPlanReference".equals(childElements.get(0).getLocalName())) {
+            return null;
+        }
+        return XmlMarshallerCore.parseOptionalStringAttribute(childElements.get(0), "testSource");
+    }
 
-        /* Pull out the TestPlan first, which should be the first element. We need this
-         * to create the resulting TestSessionState.
+    /**
+     * Unmarshals a {@link TestSessionState}. The given {@link TestProcessingMap} is used to regenerate
+     * the {@link TestPlan} if the XML contains only a reference to it, and may be null if the
+     * {@link TestPlan} is known to be embedded.
+     */
+    public static TestSessionState unmarshal(final Element element, final TestProcessingMap testProcessingMap) {
+        XmlMarshallerCore.expectThisElement(element, "testSessionState");
+
+        /* Pull out the TestPlan (or reference to it) first, which should be the first element.
+         * We need this to create the resulting TestSessionState.
          */
         final List<Element> childElements = XmlMarshallerCore.expectElementChildren(element);
-        if (childElements.isEmpty() || !"testPlan".equals(childElements.get(0).getLocalName())) {
-            throw new XmlUnmarshallingException("Expected first child of <testSessionState> to be <testPlan>");
+        if (childElements.isEmpty()) {
+            throw new XmlUnmarshallingException("Expected first child of <testSessionState> to be <testPlan> or <testPlanReference>");
+        }
+        final Element testPlanElement = childElements.get(0);
+        TestPlan testPlan;
+        if ("testPlan".equals(testPlanElement.getLocalName())) {
+            testPlan = TestPlanXmlMarshaller.unmarshal(testPlanElement);
+        }
+        else if ("testPlanReference".equals(testPlanElement.getLocalName())) {
+            if (testProcessingMap==null) {
+                throw new XmlUnmarshallingException("A TestProcessingMap is required to resolve <testPlanReference>");
+            }
+            testPlan = TestPlanXmlMarshaller.resolveTestPlanReference(testPlanElement, testProcessingMap);
+        }
+        else {
+            throw new XmlUnmarshallingException("Expected first child of <testSessionState> to be <testPlan> or <testPlanReference>");
         }
-        final TestPlan testPlan = TestPlanXmlMarshaller.unmarshal(childElements.get(0));
 
         /* Create TestSessionState from TestPlan */
         final TestSessionState result = new TestSessionState(testPlan);
@@ -153,6 +230,8 @@ public final class TestSessionStateXmlMarshaller {
         /* Extract state attributes */
         XmlMarshallerCore.parseControlObjectSessionStateAttributes(result, element);
         result.setInitialized(XmlMarshallerCore.parseOptionalBooleanAttribute(element, "initialized", false));
+        result.setOutcomeProcessingPerformed(XmlMarshallerCore.parseOptionalBooleanAttribute(element, "outcomeProcessingPerformed", false));
+        result.setInitializationTime(XmlMarshallerCore.parseOptionalDateAttribute(element, "initializationTime"));
         result.setCurrentTestPartKey(XmlMarshallerCore.parseOptionalTestPlanNodeKeyAttribute(element, "currentTestPartKey"));
         result.setCurrentItemKey(XmlMarshallerCore.parseOptionalTestPlanNodeKeyAttribute(element, "currentItemKey"));
 
@@ -165,6 +244,12 @@ public final class TestSessionStateXmlMarshaller {
                 final Value value = XmlMarshallerCore.parseValue(childElement);
                 result.setOutcomeValue(identifier, value);
             }
+            else if ("dirtyItem".equals(childElementName)) {
+                result.markItemDirty(TestPlanXmlMarshaller.requireTestPlanNodeKeyAttribute(childElement, "key"));
+            }
+            else if ("pendingTemplateProcessing".equals(childElementName)) {
+                result.addPendingTemplateProcessingKey(TestPlanXmlMarshaller.requireTestPlanNodeKeyAttribute(childElement, "key"));
+            }
             else if ("testPart".equals(childElementName)) {
                 final List<Element> testPartElements = XmlMarshallerCore.expectElementChildren(childElement);
                 if (testPartElements.size()!=1) {
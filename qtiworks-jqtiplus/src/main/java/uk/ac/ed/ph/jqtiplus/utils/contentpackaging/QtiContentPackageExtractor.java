@@ -41,6 +41,8 @@ import uk.ac.ed.ph.jqtiplus.xmlutils.XmlResourceNotFoundException;
 import uk.ac.ed.ph.jqtiplus.xmlutils.XmlResourceReader;
 import uk.ac.ed.ph.jqtiplus.xmlutils.locators.FileSandboxResourceLocator;
 import uk.ac.ed.ph.jqtiplus.xmlutils.locators.NullResourceLocator;
+import uk.ac.ed.ph.jqtiplus.xmlutils.locators.ResourceLocator;
+import uk.ac.ed.ph.jqtiplus.xmlutils.locators.ZipSandboxResourceLocator;
 
 import java.io.File;
 import java.net.URI;
@@ -95,12 +97,21 @@ public final class QtiContentPackageExtractor {
     };
 
     private final XmlResourceReader xmlResourceReader;
-    private final FileSandboxResourceLocator packageResourceLocator;
+    private final ResourceLocator packageResourceLocator;
 
     public QtiContentPackageExtractor(final File packageSandboxDirectory) {
-        Assert.notNull(packageSandboxDirectory);
+        this(new FileSandboxResourceLocator(PACKAGE_URI_SCHEME, packageSandboxDirectory));
+    }
+
+    /**
+     * Creates an extractor that reads the package using the given {@link ResourceLocator}, which
+     * must resolve URIs in the {@link #PACKAGE_URI_SCHEME} scheme to files within the package.
+     * (E.g. a {@link ZipSandboxResourceLocator} for a package that has not been unpacked.)
+     */
+    public QtiContentPackageExtractor(final ResourceLocator packageResourceLocator) {
+        Assert.notNull(packageResourceLocator);
         this.xmlResourceReader = new XmlResourceReader(NullResourceLocator.getInstance()); /* (Not doing schema validation so no XSDs to register) */
-        this.packageResourceLocator = new FileSandboxResourceLocator(PACKAGE_URI_SCHEME, packageSandboxDirectory);
+        this.packageResourceLocator = packageResourceLocator;
     }
 
     public QtiContentPackageSummary parse() throws XmlResourceNotFoundException, ImsManifestException {
@@ -34,6 +34,7 @@
 package uk.ac.ed.ph.jqtiplus.validation;
 
 import uk.ac.ed.ph.jqtiplus.JqtiExtensionManager;
+import uk.ac.ed.ph.jqtiplus.exception.QtiLogicException;
 import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
 import uk.ac.ed.ph.jqtiplus.node.item.AssessmentItem;
 import uk.ac.ed.ph.jqtiplus.node.item.response.processing.ResponseProcessing;
@@ -48,8 +49,14 @@ import uk.ac.ed.ph.jqtiplus.resolution.ResolvedAssessmentTest;
 import uk.ac.ed.ph.jqtiplus.resolution.RootNodeLookup;
 
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -69,15 +76,55 @@ public final class AssessmentObjectValidator {
     private static final Logger logger = LoggerFactory.getLogger(AssessmentObjectValidator.class);
 
     private final JqtiExtensionManager jqtiExtensionManager;
+    private Executor itemValidationExecutor;
+    private ItemValidationCache itemValidationCache;
 
     public AssessmentObjectValidator(final JqtiExtensionManager jqtiExtensionManager) {
         this.jqtiExtensionManager = jqtiExtensionManager;
+        this.itemValidationExecutor = null;
+        this.itemValidationCache = null;
+    }
+
+    public Executor getItemValidationExecutor() {
+        return itemValidationExecutor;
+    }
+
+    /**
+     * Sets an {@link Executor} to use for validating the items within a test in parallel, or null
+     * to validate them in turn on the calling Thread (the default). The caller is responsible for
+     * bounding and shutting down the {@link Executor}.
+     * <p>
+     * Each item is validated independently, so the resulting {@link TestValidationResult} is the
+     * same as when done serially. The test itself is validated once all of its items have been
+     * validated.
+     * <p>
+     * Any extension packages in use must be safe to use from multiple Threads.
+     */
+    public void setItemValidationExecutor(final Executor itemValidationExecutor) {
+        this.itemValidationExecutor = itemValidationExecutor;
+    }
+
+    public ItemValidationCache getItemValidationCache() {
+        return itemValidationCache;
+    }
+
+    /**
+     * Sets an {@link ItemValidationCache} to use for skipping model validation of items that
+     * are already known to be valid, or null to always validate every item (the default).
+     */
+    public void setItemValidationCache(final ItemValidationCache itemValidationCache) {
+        this.itemValidationCache = itemValidationCache;
     }
 
     public ItemValidationResult validateItem(final ResolvedAssessmentItem resolvedAssessmentItem) {
         Assert.notNull(resolvedAssessmentItem);
-        logger.debug("Validating {}", resolvedAssessmentItem);
         final ItemValidationResult result = new ItemValidationResult(resolvedAssessmentItem);
+        final String cacheKey = itemValidationCache!=null ? ItemValidationCache.computeKey(resolvedAssessmentItem, jqtiExtensionManager) : null;
+        if (cacheKey!=null && itemValidationCache.isKnownValid(cacheKey)) {
+            logger.debug("Skipping validation of {} as it is known to be valid", resolvedAssessmentItem);
+            return result;
+        }
+        logger.debug("Validating {}", resolvedAssessmentItem);
         final AssessmentItem item = resolvedAssessmentItem.getItemLookup().extractIfSuccessful();
         if (item!=null) {
             final RootNodeLookup<ResponseProcessing> resolvedResponseProcessingTemplate = resolvedAssessmentItem.getResolvedResponseProcessingTemplateLookup();
@@ -88,6 +135,9 @@ public final class AssessmentObjectValidator {
             final ItemValidationController itemValidationController = new ItemValidationController(jqtiExtensionManager, resolvedAssessmentItem);
             itemValidationController.addNotificationListener(result);
             item.validate(itemValidationController);
+            if (cacheKey!=null && result.getNotifications().isEmpty()) {
+                itemValidationCache.recordValid(cacheKey);
+            }
         }
         else {
             result.add(new Notification(null, null, NotificationType.MODEL_VALIDATION, NotificationLevel.ERROR,
@@ -102,8 +152,13 @@ public final class AssessmentObjectValidator {
         final TestValidationResult result = new TestValidationResult(resolvedAssessmentTest);
         final AssessmentTest test = resolvedAssessmentTest.getTestLookup().extractIfSuccessful();
         if (test!=null) {
-            /* Validate each unique item first */
-            for (final Entry<URI, ResolvedAssessmentItem> entry : resolvedAssessmentTest.getResolvedAssessmentItemBySystemIdMap().entrySet()) {
+            /* Validate each unique item first, possibly in parallel */
+            final List<Entry<URI, ResolvedAssessmentItem>> itemEntries = new ArrayList<Entry<URI, ResolvedAssessmentItem>>(resolvedAssessmentTest.getResolvedAssessmentItemBySystemIdMap().entrySet());
+            final List<ItemValidationResult> itemValidationResults = validateItems(itemEntries);
+
+            /* Then record the results in item order */
+            for (int itemIndex=0; itemIndex<itemEntries.size(); itemIndex++) {
+                final Entry<URI, ResolvedAssessmentItem> entry = itemEntries.get(itemIndex);
                 final URI itemSystemId = entry.getKey();
                 final ResolvedAssessmentItem resolvedAssessmentItem = entry.getValue();
 
@@ -125,7 +180,7 @@ public final class AssessmentObjectValidator {
                 }
                 final String itemReferenceDescription = itemReferenceBuilder.toString();
 
-                final ItemValidationResult itemValidationResult = validateItem(resolvedAssessmentItem);
+                final ItemValidationResult itemValidationResult = itemValidationResults.get(itemIndex);
                 result.addItemValidationResult(itemValidationResult);
                 if (resolvedAssessmentItem.getItemLookup().wasSuccessful()) {
                     if (itemValidationResult.hasModelValidationErrors()) {
@@ -158,12 +213,83 @@ public final class AssessmentObjectValidator {
         return result;
     }
 
+    /**
+     * Validates each of the given items, returning the results in the same order. This uses the
+     * {@link #itemValidationExecutor} if one has been set, otherwise does this on the calling Thread.
+     * <p>
+     * If the validation of any item fails unexpectedly then the first failure (in item order) is
+     * rethrown once all items have been processed.
+     */
+    private List<ItemValidationResult> validateItems(final List<Entry<URI, ResolvedAssessmentItem>> itemEntries) {
+        final List<ItemValidationResult> results = new ArrayList<ItemValidationResult>(itemEntries.size());
+        if (itemValidationExecutor==null || itemEntries.size() < 2) {
+            for (final Entry<URI, ResolvedAssessmentItem> entry : itemEntries) {
+                results.add(validateItem(entry.getValue()));
+            }
+            return results;
+        }
+
+        /* Submit a task for each item */
+        final List<FutureTask<ItemValidationResult>> futureTasks = new ArrayList<FutureTask<ItemValidationResult>>(itemEntries.size());
+        for (final Entry<URI, ResolvedAssessmentItem> entry : itemEntries) {
+            final ResolvedAssessmentItem resolvedAssessmentItem = entry.getValue();
+            final FutureTask<ItemValidationResult> futureTask = new FutureTask<ItemValidationResult>(new Callable<ItemValidationResult>() {
+                @Override
+                public ItemValidationResult call() {
+                    return validateItem(resolvedAssessmentItem);
+                }
+            });
+            futureTasks.add(futureTask);
+            try {
+                itemValidationExecutor.execute(futureTask);
+            }
+            catch (final RejectedExecutionException e) {
+                /* Executor is saturated, so do this one ourselves */
+                futureTask.run();
+            }
+        }
+
+        /* Wait for each task in item order */
+        RuntimeException failure = null;
+        boolean interrupted = false;
+        for (final FutureTask<ItemValidationResult> futureTask : futureTasks) {
+            while (true) {
+                try {
+                    results.add(futureTask.get());
+                    break;
+                }
+                catch (final InterruptedException e) {
+                    /* Keep waiting, as the task is still using the item */
+                    interrupted = true;
+                }
+                catch (final ExecutionException e) {
+                    if (failure==null) {
+                        final Throwable cause = e.getCause();
+                        failure = cause instanceof RuntimeException ? (RuntimeException) cause
+                                : new QtiLogicException("Unexpected failure validating item", cause);
+                    }
+                    results.add(null);
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure!=null) {
+            throw failure;
+        }
+        return results;
+    }
+
     //-------------------------------------------------------------------
 
     @Override
     public String toString() {
         return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this))
                 + "(jqtiExtensionManager=" + jqtiExtensionManager
+                + ",itemValidationExecutor=" + itemValidationExecutor
+                + ",itemValidationCache=" + itemValidationCache
                 + ")";
     }
 }
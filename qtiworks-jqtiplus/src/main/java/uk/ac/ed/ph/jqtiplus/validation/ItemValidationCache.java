@@ -0,0 +1,174 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.validation;
+
+import uk.ac.ed.ph.jqtiplus.JqtiExtensionManager;
+import uk.ac.ed.ph.jqtiplus.JqtiExtensionPackage;
+import uk.ac.ed.ph.jqtiplus.JqtiPlus;
+import uk.ac.ed.ph.jqtiplus.node.item.AssessmentItem;
+import uk.ac.ed.ph.jqtiplus.node.item.response.processing.ResponseProcessing;
+import uk.ac.ed.ph.jqtiplus.provision.RootNodeHolder;
+import uk.ac.ed.ph.jqtiplus.reading.QtiObjectReadResult;
+import uk.ac.ed.ph.jqtiplus.resolution.ResolvedAssessmentItem;
+import uk.ac.ed.ph.jqtiplus.resolution.RootNodeLookup;
+import uk.ac.ed.ph.jqtiplus.xmlutils.XmlParseResult;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Thread-safe, size-bounded record of {@link AssessmentItem}s that are known to have passed
+ * model validation without any errors or warnings, keyed on a digest of the item XML
+ * (including any external entities or XIncluded resources it pulls in), the XML of any
+ * response processing template it uses, the JQTI+ version and the extension packages in use.
+ * <p>
+ * Pass one of these to {@link AssessmentObjectValidator} and it will skip model validation of
+ * any item it has already seen, whichever package or test it came from, yielding an empty
+ * {@link ItemValidationResult}. (Items that produce notifications are not recorded here, as
+ * {@link ItemValidationResult}s refer to the nodes of a particular model, so such items are
+ * always validated afresh.) Least recently used entries are evicted once the cache is full.
+ *
+ * @author David McKain
+ */
+public final class ItemValidationCache {
+
+    public static final int DEFAULT_MAX_SIZE = 10000;
+
+    private final int maxSize;
+    private final Map<String, Boolean> cacheData;
+    private int hitCount;
+    private int missCount;
+
+    public ItemValidationCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public ItemValidationCache(final int maxSize) {
+        if (maxSize<1) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        this.maxSize = maxSize;
+        this.cacheData = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = -2364014588393512174L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Boolean> eldest) {
+                return size() > ItemValidationCache.this.maxSize;
+            }
+        };
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized int size() {
+        return cacheData.size();
+    }
+
+    public synchronized int getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return missCount;
+    }
+
+    public synchronized void clear() {
+        cacheData.clear();
+    }
+
+    synchronized boolean isKnownValid(final String key) {
+        final boolean result = cacheData.get(key)!=null;
+        if (result) {
+            hitCount++;
+        }
+        else {
+            missCount++;
+        }
+        return result;
+    }
+
+    synchronized void recordValid(final String key) {
+        cacheData.put(key, Boolean.TRUE);
+    }
+
+    /**
+     * Computes the key to use for the given {@link ResolvedAssessmentItem}, returning null if
+     * its content (or that of its response processing template) could not be digested.
+     */
+    static String computeKey(final ResolvedAssessmentItem resolvedAssessmentItem,
+            final JqtiExtensionManager jqtiExtensionManager) {
+        final String itemDigest = extractContentDigest(resolvedAssessmentItem.getItemLookup());
+        if (itemDigest==null) {
+            return null;
+        }
+        final StringBuilder keyBuilder = new StringBuilder(itemDigest);
+        final RootNodeLookup<ResponseProcessing> resolvedResponseProcessingTemplateLookup = resolvedAssessmentItem.getResolvedResponseProcessingTemplateLookup();
+        if (resolvedResponseProcessingTemplateLookup!=null) {
+            final String templateDigest = extractContentDigest(resolvedResponseProcessingTemplateLookup);
+            if (templateDigest==null) {
+                return null;
+            }
+            keyBuilder.append('/').append(templateDigest);
+        }
+        keyBuilder.append('/').append(JqtiPlus.TOOL_VERSION);
+        if (jqtiExtensionManager!=null) {
+            for (final JqtiExtensionPackage<?> jqtiExtensionPackage : jqtiExtensionManager.getExtensionPackages()) {
+                keyBuilder.append('/').append(jqtiExtensionPackage.getClass().getName());
+            }
+        }
+        return keyBuilder.toString();
+    }
+
+    private static String extractContentDigest(final RootNodeLookup<?> rootNodeLookup) {
+        final RootNodeHolder<?> rootNodeHolder = rootNodeLookup.getRootNodeHolder();
+        if (rootNodeHolder instanceof QtiObjectReadResult) {
+            final XmlParseResult xmlParseResult = ((QtiObjectReadResult<?>) rootNodeHolder).getXmlParseResult();
+            return xmlParseResult.getContentDigest();
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this))
+                + "(maxSize=" + maxSize
+                + ",size=" + cacheData.size()
+                + ",hitCount=" + hitCount
+                + ",missCount=" + missCount
+                + ")";
+    }
+}
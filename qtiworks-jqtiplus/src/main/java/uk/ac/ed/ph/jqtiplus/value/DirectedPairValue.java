@@ -92,6 +92,7 @@ public final class DirectedPairValue extends AbstractPairValue {
 
     @Override
     public final int hashCode() {
-        return (sourceValue + " " + destValue + " " + isDirected()).hashCode();
+        /* (Avoid building a String here, as pairs are often hashed in large containers) */
+        return sourceValue.hashCode() * 31 + destValue.hashCode();
     }
 }
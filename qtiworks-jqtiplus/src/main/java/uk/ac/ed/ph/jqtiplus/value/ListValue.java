@@ -39,8 +39,11 @@ import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
 import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Superclass for multiple and ordered containers.
@@ -50,6 +53,9 @@ import java.util.List;
  * In JQTI+, these values are now immutable. Subclasses now use factory methods instead of
  * constructors, and empty containers (which are treated as NULL) now generate {@link NullValue}
  * instances rather than instances of this class.
+ * <p>
+ * Membership and occurrence lookups on large containers are answered via a hash multiset index,
+ * which is built lazily on first use and then cached. (This is safe as the container is immutable.)
  *
  * @author David McKain
  * @author Jiri Kajaba (original version)
@@ -58,9 +64,24 @@ public abstract class ListValue extends ContainerValue implements Iterable<Singl
 
     private static final long serialVersionUID = 4655949258467611295L;
 
+    /**
+     * Container size at or above which {@link #contains(SingleValue)} and {@link #count(SingleValue)}
+     * use the hash multiset index rather than scanning the container.
+     * <p>
+     * (<code>ListValueIndexBenchmark</code> in the unit tests puts the crossover for a single
+     * lookup at around 6 values. This is set a little higher to pay for building the index.)
+     */
+    public static final int HASH_INDEX_THRESHOLD = 8;
+
     /** Container for single values. */
     protected final SingleValue[] container;
 
+    /**
+     * Lazily-built multiset index over {@link #container}, mapping each distinct value to its
+     * number of occurrences.
+     */
+    private transient volatile Map<SingleValue, Integer> occurrenceIndex;
+
     protected ListValue(final SingleValue value) {
         container = new SingleValue[1];
         container[0] = value;
@@ -144,6 +165,39 @@ public abstract class ListValue extends ContainerValue implements Iterable<Singl
      */
     public abstract boolean isOrdered();
 
+    /**
+     * Returns true if lookups on this container should use the hash multiset index.
+     * <p>
+     * Containers of floats and durations are never indexed, as their <code>equals()</code> treats
+     * <code>0.0</code> and <code>-0.0</code> as equal while their <code>hashCode()</code> does not.
+     */
+    protected final boolean isHashIndexed() {
+        if (container.length < HASH_INDEX_THRESHOLD) {
+            return false;
+        }
+        final BaseType baseType = getBaseType();
+        return baseType!=BaseType.FLOAT && baseType!=BaseType.DURATION;
+    }
+
+    /**
+     * Returns a hash multiset index over the values in this container, mapping each distinct
+     * value to its number of occurrences. This is built on first call and then cached.
+     */
+    protected final Map<SingleValue, Integer> getOccurrenceIndex() {
+        Map<SingleValue, Integer> result = occurrenceIndex;
+        if (result==null) {
+            /* (Racing threads may each build the index, but will all build the same thing) */
+            final Map<SingleValue, Integer> index = new HashMap<SingleValue, Integer>(container.length * 2);
+            for (final SingleValue singleValue : container) {
+                final Integer count = index.get(singleValue);
+                index.put(singleValue, Integer.valueOf(count!=null ? count.intValue() + 1 : 1));
+            }
+            result = Collections.unmodifiableMap(index);
+            occurrenceIndex = result;
+        }
+        return result;
+    }
+
     /**
      * Returns true if this container contains given <code>SingleValue</code>; false otherwise.
      *
@@ -151,6 +205,9 @@ public abstract class ListValue extends ContainerValue implements Iterable<Singl
      * @return true if this container contains given <code>SingleValue</code>; false otherwise
      */
     public final boolean contains(final SingleValue testValue) {
+        if (isHashIndexed()) {
+            return getOccurrenceIndex().containsKey(testValue);
+        }
         for (final SingleValue singleValue : container) {
             if (singleValue.equals(testValue)) {
                 return true;
@@ -166,6 +223,10 @@ public abstract class ListValue extends ContainerValue implements Iterable<Singl
      * @return number of occurrences of given <code>SingleValue</code>
      */
     public final int count(final SingleValue testValue) {
+        if (isHashIndexed()) {
+            final Integer count = getOccurrenceIndex().get(testValue);
+            return count!=null ? count.intValue() : 0;
+        }
         int count = 0;
         for (final SingleValue singleValue : container) {
             if (singleValue.equals(testValue)) {
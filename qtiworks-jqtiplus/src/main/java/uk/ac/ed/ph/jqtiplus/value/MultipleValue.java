@@ -36,6 +36,7 @@ package uk.ac.ed.ph.jqtiplus.value;
 import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
 
 import java.util.Collection;
+import java.util.Map.Entry;
 
 /**
  * Implementation of a non-NULL multiple container.
@@ -95,6 +96,18 @@ public final class MultipleValue extends ListValue {
      * @return true if this container contains given <code>MultipleValue</code>; false otherwise
      */
     public boolean contains(final MultipleValue multipleValue) {
+        if (multipleValue.container.length > container.length) {
+            return false;
+        }
+        if (isHashIndexed()) {
+            /* Compare occurrence counts of each distinct value once only */
+            for (final Entry<SingleValue, Integer> entry : multipleValue.getOccurrenceIndex().entrySet()) {
+                if (entry.getValue().intValue() > count(entry.getKey())) {
+                    return false;
+                }
+            }
+            return true;
+        }
         for (final SingleValue singleValue : multipleValue.container) {
             if (multipleValue.count(singleValue) > count(singleValue)) {
                 return false;
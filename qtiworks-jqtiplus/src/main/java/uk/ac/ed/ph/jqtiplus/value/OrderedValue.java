@@ -97,6 +97,10 @@ public final class OrderedValue extends ListValue {
      */
     public boolean contains(final OrderedValue orderedValue) {
         final SingleValue firstValue = orderedValue.container[0];
+        if (orderedValue.container.length > container.length
+                || isHashIndexed() && !contains(firstValue)) {
+            return false;
+        }
 
         // Try to find first value in this container.
         for (int i=0; i<container.length; i++) {
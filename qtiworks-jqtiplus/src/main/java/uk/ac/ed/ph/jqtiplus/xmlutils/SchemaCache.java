@@ -39,7 +39,9 @@ import javax.xml.validation.Schema;
  * Interface for a simple schema cache.
  * <p>
  * All use of this cache within this application is done in a thread-safe manner, so
- * implementations need not be thread-safe.
+ * implementations need not be thread-safe. (Calls to this cache are synchronized on the
+ * cache itself, but schemas are compiled outside this lock so that different schemas can be
+ * compiled concurrently.)
  *
  * @author David McKain
  */
@@ -56,6 +56,9 @@ public final class SimpleDomBuilderHandler extends DefaultHandler {
     /** Document being build */
     private final Document document;
 
+    /** Whether to record SAX Locator details on each Element */
+    private final boolean recordingLocations;
+
     /** SAX Locator details */
     private Locator locator;
 
@@ -66,7 +69,18 @@ public final class SimpleDomBuilderHandler extends DefaultHandler {
     private final StringBuilder textNodeBuilder;
 
     public SimpleDomBuilderHandler(Document document) {
+        this(document, true);
+    }
+
+    /**
+     * @param document DOM {@link Document} to build
+     * @param recordingLocations whether to store SAX {@link Locator} information on each
+     *   Element created, which makes later error reporting richer at the cost of some time
+     *   and memory.
+     */
+    public SimpleDomBuilderHandler(Document document, boolean recordingLocations) {
         this.document = document;
+        this.recordingLocations = recordingLocations;
         this.locator = null;
         this.currentNode = null;
         this.textNodeBuilder = new StringBuilder();
@@ -74,7 +88,9 @@ public final class SimpleDomBuilderHandler extends DefaultHandler {
 
     @Override
     public void setDocumentLocator(Locator locator) {
-        this.locator = locator;
+        if (recordingLocations) {
+            this.locator = locator;
+        }
     }
 
     @Override
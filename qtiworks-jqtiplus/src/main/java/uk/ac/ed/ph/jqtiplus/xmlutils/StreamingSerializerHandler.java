@@ -0,0 +1,434 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.xmlutils;
+
+import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
+import uk.ac.ed.ph.jqtiplus.xmlutils.xslt.XsltSerializationMethod;
+import uk.ac.ed.ph.jqtiplus.xmlutils.xslt.XsltSerializationOptions;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.XMLConstants;
+import javax.xml.transform.sax.TransformerHandler;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * SAX {@link DefaultHandler} that serializes the events it receives directly to a {@link Writer}
+ * as XML, without going through an XSLT identity {@link TransformerHandler}.
+ * <p>
+ * The output is intended to be byte-for-byte identical to that produced by the Saxon
+ * serializer we use elsewhere (including its indentation and attribute wrapping rules),
+ * but is only available for the simple cases accepted by {@link #isSupported(XsltSerializationOptions)}.
+ * It handles only the types of SAX events fired by the QTI serialization logic, i.e. elements,
+ * attributes, namespace prefix mappings and text.
+ * <p>
+ * Usage: not thread safe, not reusable.
+ *
+ * @author David McKain
+ */
+public final class StreamingSerializerHandler extends DefaultHandler {
+
+    /** Attribute length beyond which the serializer starts wrapping attributes when indenting */
+    private static final int ATTRIBUTE_WRAP_LENGTH = 80;
+
+    private static final String SPACES = "                                                                ";
+
+    private final Writer writer;
+    private final boolean indenting;
+    private final int indent;
+    private final boolean includingXMLDeclaration;
+    private final String encoding;
+
+    /** qNames of currently open elements */
+    private final List<String> elementStack;
+
+    /** Namespace prefix mappings in scope, as alternate prefix/URI entries */
+    private final List<String> namespaceScope;
+
+    /** Size of {@link #namespaceScope} at the start of each currently open element */
+    private final List<Integer> namespaceScopeMarks;
+
+    /** Prefix mappings declared since the last element was started, as alternate prefix/URI entries */
+    private final List<String> pendingPrefixMappings;
+
+    /* Emitter state */
+    private boolean openStartTag;
+    private int totalAttributeLength;
+
+    /* Indentation state */
+    private int level;
+    private boolean sameline;
+    private boolean afterStartTag;
+    private boolean afterEndTag;
+    private boolean allWhite;
+    private int line;
+    private int column;
+    private int suppressedAtLevel;
+
+    public StreamingSerializerHandler(final Writer writer, final XsltSerializationOptions xsltSerializationOptions) {
+        Assert.notNull(writer, "writer");
+        Assert.notNull(xsltSerializationOptions, "xsltSerializationOptions");
+        if (!isSupported(xsltSerializationOptions)) {
+            throw new IllegalArgumentException("XsltSerializationOptions " + xsltSerializationOptions
+                    + " are not supported by this handler");
+        }
+        this.writer = writer;
+        this.indenting = xsltSerializationOptions.isIndenting();
+        this.indent = xsltSerializationOptions.getIndent();
+        this.includingXMLDeclaration = xsltSerializationOptions.isIncludingXMLDeclaration();
+        this.encoding = xsltSerializationOptions.getEncoding();
+        this.elementStack = new ArrayList<String>();
+        this.namespaceScope = new ArrayList<String>();
+        this.namespaceScopeMarks = new ArrayList<Integer>();
+        this.pendingPrefixMappings = new ArrayList<String>();
+    }
+
+    /**
+     * Returns whether the given {@link XsltSerializationOptions} can be honoured by this handler.
+     * This is currently the case for the XML serialization method with UTF-8 encoding and no
+     * DOCTYPE declaration.
+     */
+    public static boolean isSupported(final XsltSerializationOptions xsltSerializationOptions) {
+        return xsltSerializationOptions.getSerializationMethod()==XsltSerializationMethod.XML
+                && "UTF-8".equalsIgnoreCase(xsltSerializationOptions.getEncoding())
+                && xsltSerializationOptions.getDoctypePublic()==null
+                && xsltSerializationOptions.getDoctypeSystem()==null;
+    }
+
+    //----------------------------------------------------------
+
+    @Override
+    public void startDocument() throws SAXException {
+        elementStack.clear();
+        namespaceScope.clear();
+        namespaceScopeMarks.clear();
+        pendingPrefixMappings.clear();
+        namespaceScope.add("");
+        namespaceScope.add("");
+        namespaceScope.add(XMLConstants.XML_NS_PREFIX);
+        namespaceScope.add(XMLConstants.XML_NS_URI);
+        openStartTag = false;
+        totalAttributeLength = 0;
+        level = 0;
+        sameline = false;
+        afterStartTag = false;
+        afterEndTag = false;
+        allWhite = true;
+        line = 0;
+        column = 0;
+        suppressedAtLevel = -1;
+        if (includingXMLDeclaration) {
+            write("<?xml version=\"1.0\" encoding=\"" + encoding + "\"?>");
+            afterEndTag = true;
+        }
+    }
+
+    @Override
+    public void endDocument() throws SAXException {
+        try {
+            writer.flush();
+        }
+        catch (final IOException e) {
+            throw new SAXException("Could not flush serialized XML", e);
+        }
+    }
+
+    @Override
+    public void startPrefixMapping(final String prefix, final String uri) throws SAXException {
+        pendingPrefixMappings.add(prefix);
+        pendingPrefixMappings.add(uri);
+    }
+
+    @Override
+    public void startElement(final String uri, final String localName, final String qName,
+            final Attributes attributes) throws SAXException {
+        if (indenting && (afterStartTag || afterEndTag)) {
+            indent();
+        }
+        if (openStartTag) {
+            write(">");
+        }
+        write("<");
+        write(qName);
+        elementStack.add(qName);
+        namespaceScopeMarks.add(Integer.valueOf(namespaceScope.size()));
+        openStartTag = true;
+        totalAttributeLength = 0;
+
+        level++;
+        sameline = true;
+        afterStartTag = true;
+        afterEndTag = false;
+        allWhite = true;
+        line = 0;
+
+        /* Write out namespace declarations, omitting any that are already in scope */
+        for (int i=0, size=pendingPrefixMappings.size(); i<size; i+=2) {
+            declareNamespace(pendingPrefixMappings.get(i), pendingPrefixMappings.get(i+1));
+        }
+        pendingPrefixMappings.clear();
+        declareNamespace(getPrefix(qName), uri);
+        for (int i=0, size=attributes.getLength(); i<size; i++) {
+            final String attrUri = attributes.getURI(i);
+            if (attrUri.length()!=0) {
+                declareNamespace(getPrefix(attributes.getQName(i)), attrUri);
+            }
+        }
+
+        /* Then write out attributes */
+        for (int i=0, size=attributes.getLength(); i<size; i++) {
+            final String attrQName = attributes.getQName(i);
+            final String attrValue = attributes.getValue(i);
+            if (suppressedAtLevel<0
+                    && XMLConstants.XML_NS_URI.equals(attributes.getURI(i))
+                    && "space".equals(attributes.getLocalName(i))
+                    && "preserve".equals(attrValue)) {
+                suppressedAtLevel = level;
+            }
+            writeAttribute(attrQName, attrValue, attrQName.length() + attrValue.length() + 4);
+        }
+    }
+
+    @Override
+    public void endElement(final String uri, final String localName, final String qName) throws SAXException {
+        level--;
+        if (indenting && afterEndTag && !sameline) {
+            indent();
+        }
+        if (openStartTag) {
+            write("/>");
+            openStartTag = false;
+        }
+        else {
+            write("</");
+            write(qName);
+            write(">");
+        }
+        elementStack.remove(elementStack.size() - 1);
+        final int scopeMark = namespaceScopeMarks.remove(namespaceScopeMarks.size() - 1).intValue();
+        namespaceScope.subList(scopeMark, namespaceScope.size()).clear();
+
+        sameline = false;
+        afterEndTag = true;
+        afterStartTag = false;
+        allWhite = true;
+        line = 0;
+        if (level==suppressedAtLevel-1) {
+            suppressedAtLevel = -1;
+        }
+    }
+
+    @Override
+    public void characters(final char[] ch, final int start, final int length) throws SAXException {
+        if (length==0) {
+            return;
+        }
+        for (int i=start, end=start+length; i<end; i++) {
+            final char c = ch[i];
+            if (c=='\n') {
+                sameline = false;
+                line++;
+                column = 0;
+            }
+            if (!Character.isWhitespace(c)) {
+                allWhite = false;
+            }
+            column++;
+        }
+        closeStartTag();
+        writeEscaped(ch, start, length, false);
+        if (!allWhite) {
+            afterStartTag = false;
+            afterEndTag = false;
+        }
+    }
+
+    //----------------------------------------------------------
+
+    private void declareNamespace(final String prefix, final String uri) throws SAXException {
+        if (XMLConstants.XML_NS_PREFIX.equals(prefix) || uri.equals(lookupNamespaceUri(prefix))) {
+            return;
+        }
+        namespaceScope.add(prefix);
+        namespaceScope.add(uri);
+        final int length = uri.length() + prefix.length() + 8;
+        if (prefix.length()==0) {
+            writeAttribute("xmlns", uri, length);
+        }
+        else if (uri.length()!=0) {
+            writeAttribute("xmlns:" + prefix, uri, length);
+        }
+        else {
+            totalAttributeLength += length;
+        }
+    }
+
+    private String lookupNamespaceUri(final String prefix) {
+        for (int i=namespaceScope.size()-2; i>=0; i-=2) {
+            if (prefix.equals(namespaceScope.get(i))) {
+                return namespaceScope.get(i+1);
+            }
+        }
+        return null;
+    }
+
+    private static String getPrefix(final String qName) {
+        final int colonIndex = qName.indexOf(':');
+        return colonIndex!=-1 ? qName.substring(0, colonIndex) : "";
+    }
+
+    private void writeAttribute(final String name, final String value, final int length) throws SAXException {
+        if (indenting && totalAttributeLength + length > ATTRIBUTE_WRAP_LENGTH && totalAttributeLength!=0) {
+            final String elementName = elementStack.get(elementStack.size() - 1);
+            write("\n");
+            writeSpaces((elementStack.size() - 1) * indent + elementName.length() + 2);
+        }
+        else {
+            write(" ");
+        }
+        totalAttributeLength += length;
+        write(name);
+        write("=\"");
+        writeEscaped(value.toCharArray(), 0, value.length(), true);
+        write("\"");
+    }
+
+    private void indent() throws SAXException {
+        if (suppressedAtLevel>=0) {
+            return;
+        }
+        int spaces = level * indent;
+        if (line>0) {
+            spaces -= column;
+            if (spaces<=0) {
+                return;
+            }
+            closeStartTag();
+            writeSpaces(spaces + 1);
+        }
+        else {
+            closeStartTag();
+            write("\n");
+            writeSpaces(spaces);
+        }
+        sameline = false;
+    }
+
+    private void closeStartTag() throws SAXException {
+        if (openStartTag) {
+            write(">");
+            openStartTag = false;
+        }
+    }
+
+    private void writeEscaped(final char[] ch, final int start, final int length, final boolean inAttribute)
+            throws SAXException {
+        try {
+            int runStart = start;
+            final int end = start + length;
+            for (int i=start; i<end; i++) {
+                final char c = ch[i];
+                String escaped;
+                if (c>=127) {
+                    escaped = (c<160 || c==0x2028) ? "&#" + (int) c + ";" : null;
+                }
+                else if (c=='<') {
+                    escaped = "&lt;";
+                }
+                else if (c=='>') {
+                    escaped = "&gt;";
+                }
+                else if (c=='&') {
+                    escaped = "&amp;";
+                }
+                else if (c=='\r') {
+                    escaped = "&#xD;";
+                }
+                else if (inAttribute && c=='"') {
+                    escaped = "&#34;";
+                }
+                else if (c=='\n') {
+                    escaped = inAttribute ? "&#xA;" : null;
+                }
+                else if (c=='\t') {
+                    escaped = inAttribute ? "&#x9;" : null;
+                }
+                else if (c<32) {
+                    escaped = "&#" + (int) c + ";";
+                }
+                else {
+                    escaped = null;
+                }
+                if (escaped!=null) {
+                    writer.write(ch, runStart, i - runStart);
+                    writer.write(escaped);
+                    runStart = i + 1;
+                }
+            }
+            writer.write(ch, runStart, end - runStart);
+        }
+        catch (final IOException e) {
+            throw new SAXException("Could not write serialized XML", e);
+        }
+    }
+
+    private void writeSpaces(final int count) throws SAXException {
+        int remaining = count;
+        while (remaining>0) {
+            final int chunk = Math.min(remaining, SPACES.length());
+            try {
+                writer.write(SPACES, 0, chunk);
+            }
+            catch (final IOException e) {
+                throw new SAXException("Could not write serialized XML", e);
+            }
+            remaining -= chunk;
+        }
+    }
+
+    private void write(final String string) throws SAXException {
+        try {
+            writer.write(string);
+        }
+        catch (final IOException e) {
+            throw new SAXException("Could not write serialized XML", e);
+        }
+    }
+}
@@ -65,11 +65,21 @@ public final class XmlParseResult implements Serializable {
     private final List<String> unresolvedEntitySystemIds;
     private final List<String> supportedSchemaNamespaces;
     private final List<String> unsupportedSchemaNamespaces;
+    private final String contentDigest;
 
     public XmlParseResult(final URI systemId, final boolean parsed, final boolean validated,
             final List<SAXParseException> warnings, final List<SAXParseException> errors,
             final List<SAXParseException> fatalErrors, final List<String> unresolvedEntitySystemIds,
             final List<String> supportedSchemaNamespaces, final List<String> unsupportedSchemaNamespaces) {
+        this(systemId, parsed, validated, warnings, errors, fatalErrors, unresolvedEntitySystemIds,
+                supportedSchemaNamespaces, unsupportedSchemaNamespaces, null);
+    }
+
+    public XmlParseResult(final URI systemId, final boolean parsed, final boolean validated,
+            final List<SAXParseException> warnings, final List<SAXParseException> errors,
+            final List<SAXParseException> fatalErrors, final List<String> unresolvedEntitySystemIds,
+            final List<String> supportedSchemaNamespaces, final List<String> unsupportedSchemaNamespaces,
+            final String contentDigest) {
         this.systemId = systemId;
         this.parsed = parsed;
         this.validated = validated;
@@ -79,6 +89,7 @@ public final class XmlParseResult implements Serializable {
         this.unresolvedEntitySystemIds = ObjectUtilities.unmodifiableList(unresolvedEntitySystemIds);
         this.supportedSchemaNamespaces = ObjectUtilities.unmodifiableList(supportedSchemaNamespaces);
         this.unsupportedSchemaNamespaces = ObjectUtilities.unmodifiableList(unsupportedSchemaNamespaces);
+        this.contentDigest = contentDigest;
     }
 
     public URI getSystemId() {
@@ -121,6 +132,17 @@ public final class XmlParseResult implements Serializable {
         return unsupportedSchemaNamespaces;
     }
 
+    /**
+     * Returns a SHA-1 hash of the raw bytes that were parsed, as a hex String, or null if the
+     * input could not be parsed successfully.
+     * <p>
+     * This also covers the raw bytes of any external entities or XIncluded resources that
+     * were loaded during the parse.
+     */
+    public String getContentDigest() {
+        return contentDigest;
+    }
+
     public boolean isSchemaValid() {
         return validated
                 && fatalErrors.isEmpty()
@@ -145,6 +167,7 @@ public final class XmlParseResult implements Serializable {
                 + ",unresolvedEntitySystemIds=" + unresolvedEntitySystemIds
                 + ",supportedSchemaNamespaces=" + supportedSchemaNamespaces
                 + ",unsupportedSchemaNamespaces=" + unsupportedSchemaNamespaces
+                + ",contentDigest=" + contentDigest
                 + ")";
     }
 }
@@ -41,14 +41,22 @@ import uk.ac.ed.ph.jqtiplus.xmlutils.locators.ResourceLocator;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringReader;
+import java.io.UnsupportedEncodingException;
 import java.net.URI;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.xml.XMLConstants;
-import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParserFactory;
@@ -60,6 +68,7 @@ import javax.xml.validation.Validator;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.w3c.dom.DOMImplementation;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -69,6 +78,7 @@ import org.xml.sax.Locator;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
 
 /**
  * Helper class that makes it easy to parse XML into a DOM and optionally schema validate
@@ -78,8 +88,8 @@ import org.xml.sax.XMLReader;
  *   <li>Using a {@link ResourceLocator} to locate schemas</li>
  *   <li>Using a {@link ResourceLocator} to locate DTD entity files</li>
  *   <li>Using a {@link ResourceLocator} to locate your XML source files</li>
- *   <li>Optional caching of schemas</li>
- *   <li>DOM is enriched with location information via a user Object</li>
+ *   <li>Optional caching of schemas, with reuse of the resulting {@link Validator}s</li>
+ *   <li>DOM is optionally enriched with location information via a user Object</li>
  * </ul>
  * This suits the way QTI works, but also has uses in other domains.
  *
@@ -88,6 +98,9 @@ import org.xml.sax.XMLReader;
  * The XML parsing process performs a SAX parse followed by a DOM tree build,
  * filling the resulting tree with SAX {@link Locator} information, which makes
  * later error reporting richer.
+ * <p>
+ * SAX parsers (and {@link Validator}s for cached schemas) are pooled and reused by subsequent
+ * reads. An instance of this class may safely be used by multiple threads.
  *
  * @see XmlReadResult
  * @author David McKain
@@ -99,6 +112,9 @@ public final class XmlResourceReader {
     /** Name of the DOM "user object" where SAX {@link Locator} information will be stowed while parsing */
     public static final String LOCATION_INFORMATION_NAME = "locationInformation";
 
+    /** No-op SAX handler used to detach handlers from pooled {@link XMLReader}s */
+    private static final DefaultHandler NULL_HANDLER = new DefaultHandler();
+
     //--------------------------------------------------
 
     /**
@@ -131,6 +147,30 @@ public final class XmlResourceReader {
      */
     private final LoadSaveResourceResolver schemaResourceResolver;
 
+    /**
+     * Locks used to ensure that each schema is only compiled once when caching, without
+     * preventing other schemas from being compiled or looked up at the same time.
+     * Keys are the schema cache keys.
+     */
+    private final ConcurrentMap<String, Object> schemaCompilationLocks;
+
+    /**
+     * Pools of {@link Validator}s created from cached schemas, which can be reused by
+     * subsequent reads. Keys are the schema cache keys.
+     * <p>
+     * (This is only used if a {@link SchemaCache} has been provided.)
+     */
+    private final ConcurrentMap<String, Queue<Validator>> validatorPools;
+
+    /**
+     * Pool of configured SAX {@link XMLReader}s which can be reused by subsequent reads,
+     * saving the cost of looking up and configuring a new parser each time.
+     */
+    private final Queue<XMLReader> xmlReaderPool;
+
+    /** {@link DOMImplementation} used to create new DOM {@link Document}s */
+    private final DOMImplementation domImplementation;
+
 
     public XmlResourceReader(final ResourceLocator schemaResourceLocator) {
         this(schemaResourceLocator, null, null);
@@ -145,6 +185,19 @@ public final class XmlResourceReader {
 
         /* Set up special resource resolver based on schemaResourceLocator */
         this.schemaResourceResolver = new LoadSaveResourceResolver(schemaResourceLocator);
+
+        /* Set up pools of reusable parsing resources */
+        this.schemaCompilationLocks = new ConcurrentHashMap<String, Object>();
+        this.validatorPools = new ConcurrentHashMap<String, Queue<Validator>>();
+        this.xmlReaderPool = new ConcurrentLinkedQueue<XMLReader>();
+        try {
+            final DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
+            dbFactory.setNamespaceAware(true);
+            this.domImplementation = dbFactory.newDocumentBuilder().getDOMImplementation();
+        }
+        catch (final ParserConfigurationException e) {
+            throw new XmlResourceReaderException("Unexpected Exception creating DOM implementation", e);
+        }
     }
 
     public ResourceLocator getParserResourceLocator() {
@@ -180,13 +233,29 @@ public final class XmlResourceReader {
     public XmlReadResult read(final URI systemId, final ResourceLocator inputResourceLocator,
             final ResourceLocator entityResourceLocator, final boolean schemaValidating)
             throws XmlResourceNotFoundException {
+        return read(systemId, inputResourceLocator, entityResourceLocator, schemaValidating, true);
+    }
+
+    /**
+     * Variant of {@link #read(URI, ResourceLocator, ResourceLocator, boolean)} that allows
+     * the recording of SAX {@link Locator} information in the resulting DOM to be turned off.
+     * Doing this makes parsing slightly cheaper and the resulting DOM smaller, which is useful
+     * when you have no need to report errors back to the user.
+     *
+     * @param recordingLocations whether to store location information in the resulting DOM,
+     *   which can later be retrieved via {@link #extractLocationInformation(Node)}.
+     */
+    public XmlReadResult read(final URI systemId, final ResourceLocator inputResourceLocator,
+            final ResourceLocator entityResourceLocator, final boolean schemaValidating,
+            final boolean recordingLocations)
+            throws XmlResourceNotFoundException {
         Assert.notNull(systemId, "systemId");
         Assert.notNull(inputResourceLocator, "inputResourceLocator");
         Assert.notNull(entityResourceLocator, "entityResourceLocator");
 
         try {
             logger.debug("read({}, {}, {}, {}) starting", new Object[] { systemId, inputResourceLocator, entityResourceLocator, schemaValidating });
-            final XmlReadResult result = doRead(systemId, inputResourceLocator, entityResourceLocator, schemaValidating);
+            final XmlReadResult result = doRead(systemId, inputResourceLocator, entityResourceLocator, schemaValidating, recordingLocations);
             logger.debug("read({}, {}, {}, {}) => {}", new Object[] { systemId, inputResourceLocator, entityResourceLocator, schemaValidating, result });
             return result;
         }
@@ -204,7 +273,8 @@ public final class XmlResourceReader {
     }
 
     private XmlReadResult doRead(final URI systemId, final ResourceLocator inputResourceLocator,
-            final ResourceLocator entityResourceLocator, final boolean schemaValidating)
+            final ResourceLocator entityResourceLocator, final boolean schemaValidating,
+            final boolean recordingLocations)
             throws XmlResourceNotFoundException, ParserConfigurationException, SAXException, IOException {
         final String systemIdString = systemId.toString();
         boolean parsed = false;
@@ -215,35 +285,24 @@ public final class XmlResourceReader {
         final InputErrorHandler inputErrorHandler = new InputErrorHandler();
 
         /* Create the DOM Document that will be built up here */
-        final DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-        dbFactory.setNamespaceAware(true);
-        final DocumentBuilder documentBuilder = dbFactory.newDocumentBuilder();
-        documentBuilder.setErrorHandler(inputErrorHandler);
-        final Document document = documentBuilder.newDocument();
+        final Document document = domImplementation.createDocument(null, null, null);
 
         /* Set up SAX EntityResolver, which will record locator failures appropriately */
         final FailureEntityResolver failureEntityResolver = new FailureEntityResolver(entityResourceLocator);
 
-        /* Create and configure SAX parser */
-        final SAXParserFactory spFactory = SAXParserFactory.newInstance();
-        spFactory.setNamespaceAware(true);
-        spFactory.setValidating(false);
-        spFactory.setXIncludeAware(true);
-        spFactory.setFeature("http://xml.org/sax/features/validation", false);
-        spFactory.setFeature("http://xml.org/sax/features/external-general-entities", true);
-        spFactory.setFeature("http://xml.org/sax/features/external-parameter-entities", true);
-        spFactory.setFeature("http://xml.org/sax/features/lexical-handler/parameter-entities", false);
-        final XMLReader xmlReader = spFactory.newSAXParser().getXMLReader();
+        /* Obtain SAX parser */
+        final XMLReader xmlReader = obtainXmlReader();
         xmlReader.setErrorHandler(inputErrorHandler);
         xmlReader.setEntityResolver(failureEntityResolver);
 
         /* Parse input and convert to a DOM containing SAX Locator information */
         logger.trace("XML parse of {} starting", systemIdString);
+        final MessageDigest contentDigester = createContentDigester();
         final InputSource inputSource = new InputSource();
-        inputSource.setByteStream(ensureLocateInput(systemId, inputResourceLocator));
+        inputSource.setByteStream(new DigestInputStream(ensureLocateInput(systemId, inputResourceLocator), contentDigester));
         inputSource.setSystemId(systemIdString);
 
-        final SimpleDomBuilderHandler handler = new SimpleDomBuilderHandler(document);
+        final SimpleDomBuilderHandler handler = new SimpleDomBuilderHandler(document, recordingLocations);
         xmlReader.setContentHandler(handler);
         try {
             xmlReader.parse(inputSource); /* Fatal errors will cause SAXParseException */
@@ -251,6 +310,7 @@ public final class XmlResourceReader {
         catch (final SAXParseException e) {
             /* Fatal parsing error */
         }
+        releaseXmlReader(xmlReader);
 
         /* We'll consider successful parsing to be no errors or fatal errors, and no unresolved
          * entities */
@@ -258,6 +318,7 @@ public final class XmlResourceReader {
         parsed = inputErrorHandler.fatalErrors.isEmpty() && inputErrorHandler.errors.isEmpty()
                 && unresolvedEntitySystemIds.isEmpty();
         logger.debug("XML parse of {} success? {}", systemIdString, parsed);
+        final String contentDigest = parsed ? completeContentDigest(contentDigester, failureEntityResolver) : null;
 
         if (parsed && schemaValidating) {
             /* Work out which schema(s) to use */
@@ -298,7 +359,8 @@ public final class XmlResourceReader {
             /* Validate (if at least supported schemas was used and no unsupported schemas) */
             if (!schemaUris.isEmpty() && unsupportedSchemaNamespaces.isEmpty()) {
                 logger.trace("Will validate {} against schemas {}", systemIdString, schemaUris);
-                final Schema schema = getSchema(schemaUris);
+                final String schemaKey = schemaUris.toString();
+                final Schema schema = getSchema(schemaKey, schemaUris);
 
                 /* Now validate. Note that we read in the input again, as this will let the parser provide source
                  * information to the schema validator. (I couldn't work out a way of passing source information
@@ -306,10 +368,11 @@ public final class XmlResourceReader {
                  */
                 logger.trace("Schema validaton of {} starting", systemIdString);
                 final StreamSource input = new StreamSource(ensureLocateInput(systemId, inputResourceLocator), systemIdString);
-                final Validator validator = schema.newValidator();
+                final Validator validator = obtainValidator(schemaKey, schema);
                 validator.setResourceResolver(schemaResourceResolver);
                 validator.setErrorHandler(inputErrorHandler);
                 validator.validate(input);
+                releaseValidator(schemaKey, validator);
                 validated = true;
                 logger.debug("Schema validation of {} finished", systemIdString);
             }
@@ -322,7 +385,8 @@ public final class XmlResourceReader {
         /* Build up result */
         final XmlParseResult xmlParseResult = new XmlParseResult(systemId, parsed, validated,
                 inputErrorHandler.warnings, inputErrorHandler.errors, inputErrorHandler.fatalErrors,
-                unresolvedEntitySystemIds, supportedSchemaNamespaces, unsupportedSchemaNamespaces);
+                unresolvedEntitySystemIds, supportedSchemaNamespaces, unsupportedSchemaNamespaces,
+                contentDigest);
         return new XmlReadResult(parsed ? document : null, xmlParseResult);
     }
 
@@ -330,29 +394,134 @@ public final class XmlResourceReader {
      * Obtains the schema compiled from the given list of URIs, using a cached version if
      * possible.
      */
-    private Schema getSchema(final List<String> schemaUris) {
-        Schema result = null;
-        final String key = schemaUris.toString();
-        if (schemaCache!=null) {
-            synchronized (schemaCache) {
-                result = schemaCache.getSchema(key);
-                if (result!=null) {
-                    logger.debug("Schema cache hit for URIs {} yielded {}", key, result);
+    private Schema getSchema(final String key, final List<String> schemaUris) {
+        if (schemaCache==null) {
+            logger.debug("No schema caching configured, so compiling new schema for {}", key);
+            return compileSchema(schemaUris);
+        }
+        Schema result = lookupCachedSchema(key);
+        if (result==null) {
+            /* Compile the schema, making sure that other threads wanting the same schema wait for
+             * us, but without blocking threads that want different schemas */
+            Object compilationLock = schemaCompilationLocks.get(key);
+            if (compilationLock==null) {
+                final Object newLock = new Object();
+                compilationLock = schemaCompilationLocks.putIfAbsent(key, newLock);
+                if (compilationLock==null) {
+                    compilationLock = newLock;
                 }
-                else {
+            }
+            synchronized (compilationLock) {
+                result = lookupCachedSchema(key);
+                if (result==null) {
                     result = compileSchema(schemaUris);
-                    schemaCache.putSchema(key, result);
+                    synchronized (schemaCache) {
+                        schemaCache.putSchema(key, result);
+                    }
                     logger.debug("Schema cache miss for URIs {} stored {}", key, result);
                 }
             }
         }
-        else {
-            logger.debug("No schema caching configured, so compiling new schema for {}", key);
-            result = compileSchema(schemaUris);
+        return result;
+    }
+
+    private Schema lookupCachedSchema(final String key) {
+        final Schema result;
+        synchronized (schemaCache) {
+            result = schemaCache.getSchema(key);
+        }
+        if (result!=null) {
+            logger.debug("Schema cache hit for URIs {} yielded {}", key, result);
         }
         return result;
     }
 
+    /**
+     * Compiles and caches the schemas having the given URIs, so that subsequent validating
+     * reads don't have to. Each schema is compiled separately.
+     * <p>
+     * This does nothing if no {@link SchemaCache} has been provided.
+     *
+     * @throws XmlResourceReaderException if any of the required schemas could not be located.
+     */
+    public void preloadSchemas(final Collection<String> schemaUris) {
+        Assert.notNull(schemaUris, "schemaUris");
+        if (schemaCache!=null) {
+            for (final String schemaUri : schemaUris) {
+                final List<String> singletonUris = Collections.singletonList(schemaUri);
+                getSchema(singletonUris.toString(), singletonUris);
+            }
+        }
+    }
+
+    /**
+     * Obtains a {@link Validator} for the given {@link Schema}, reusing a pooled one if possible.
+     */
+    private Validator obtainValidator(final String key, final Schema schema) {
+        if (schemaCache!=null) {
+            final Queue<Validator> validatorPool = validatorPools.get(key);
+            if (validatorPool!=null) {
+                final Validator pooledValidator = validatorPool.poll();
+                if (pooledValidator!=null) {
+                    return pooledValidator;
+                }
+            }
+        }
+        return schema.newValidator();
+    }
+
+    /**
+     * Returns a {@link Validator} obtained via {@link #obtainValidator(String, Schema)}
+     * to the pool once it has been successfully used. (Validators are only pooled if
+     * we're caching schemas.)
+     */
+    private void releaseValidator(final String key, final Validator validator) {
+        if (schemaCache!=null) {
+            validator.reset();
+            validator.setErrorHandler(null);
+            validator.setResourceResolver(null);
+            Queue<Validator> validatorPool = validatorPools.get(key);
+            if (validatorPool==null) {
+                final Queue<Validator> newPool = new ConcurrentLinkedQueue<Validator>();
+                validatorPool = validatorPools.putIfAbsent(key, newPool);
+                if (validatorPool==null) {
+                    validatorPool = newPool;
+                }
+            }
+            validatorPool.offer(validator);
+        }
+    }
+
+    /**
+     * Obtains a configured SAX {@link XMLReader}, reusing a pooled one if possible.
+     */
+    private XMLReader obtainXmlReader() throws ParserConfigurationException, SAXException {
+        final XMLReader pooledXmlReader = xmlReaderPool.poll();
+        if (pooledXmlReader!=null) {
+            return pooledXmlReader;
+        }
+        final SAXParserFactory spFactory = SAXParserFactory.newInstance();
+        spFactory.setNamespaceAware(true);
+        spFactory.setValidating(false);
+        spFactory.setXIncludeAware(true);
+        spFactory.setFeature("http://xml.org/sax/features/validation", false);
+        spFactory.setFeature("http://xml.org/sax/features/external-general-entities", true);
+        spFactory.setFeature("http://xml.org/sax/features/external-parameter-entities", true);
+        spFactory.setFeature("http://xml.org/sax/features/lexical-handler/parameter-entities", false);
+        return spFactory.newSAXParser().getXMLReader();
+    }
+
+    /**
+     * Returns an {@link XMLReader} obtained via {@link #obtainXmlReader()} to the pool once
+     * it has finished parsing, detaching the handlers used for that parse.
+     */
+    private void releaseXmlReader(final XMLReader xmlReader) {
+        xmlReader.setContentHandler(NULL_HANDLER);
+        xmlReader.setErrorHandler(NULL_HANDLER);
+        xmlReader.setEntityResolver(NULL_HANDLER);
+        xmlReaderPool.offer(xmlReader);
+    }
+
     /**
      * Compiles a schema from the given list of URIs.
      */
@@ -381,23 +550,50 @@ public final class XmlResourceReader {
     }
 
     /**
-     * Trivial extension of {@link EntityResourceResolver} that handles failed
+     * Extension of {@link EntityResourceResolver} that handles failed
      * resolutions by recording the offending systemId then simply returning an
      * empty document.
+     * <p>
+     * It also digests the raw bytes of each entity it resolves (which includes any
+     * XIncluded resources), so that these can be folded into the content digest.
      */
     static class FailureEntityResolver extends EntityResourceResolver {
 
         private final List<String> unresolvedEntitySystemIds;
+        private final List<String> resolvedEntitySystemIds;
+        private final List<MessageDigest> resolvedEntityDigesters;
 
         public FailureEntityResolver(final ResourceLocator resourceLocator) {
             super(resourceLocator);
             this.unresolvedEntitySystemIds = new ArrayList<String>();
+            this.resolvedEntitySystemIds = new ArrayList<String>();
+            this.resolvedEntityDigesters = new ArrayList<MessageDigest>();
         }
 
         public List<String> getUnresolvedEntitySystemIds() {
             return unresolvedEntitySystemIds;
         }
 
+        public List<String> getResolvedEntitySystemIds() {
+            return resolvedEntitySystemIds;
+        }
+
+        public List<MessageDigest> getResolvedEntityDigesters() {
+            return resolvedEntityDigesters;
+        }
+
+        @Override
+        public InputSource resolveEntity(final String publicId, final String systemId) {
+            final InputSource result = super.resolveEntity(publicId, systemId);
+            if (result!=null && result.getByteStream()!=null) {
+                final MessageDigest entityDigester = createContentDigester();
+                result.setByteStream(new DigestInputStream(result.getByteStream(), entityDigester));
+                resolvedEntitySystemIds.add(systemId);
+                resolvedEntityDigesters.add(entityDigester);
+            }
+            return result;
+        }
+
         @Override
         public InputSource onMiss(final String publicId, final String systemId) {
             unresolvedEntitySystemIds.add(systemId);
@@ -487,6 +683,44 @@ public final class XmlResourceReader {
         return inputStream;
     }
 
+    private static MessageDigest createContentDigester() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        }
+        catch (final NoSuchAlgorithmException e) {
+            throw new XmlResourceReaderException("Unexpected Exception", e);
+        }
+    }
+
+    /**
+     * Completes the content digest of a successful parse, folding in the digests of any external
+     * entities or XIncluded resources that were loaded along the way.
+     */
+    private static String completeContentDigest(final MessageDigest contentDigester,
+            final FailureEntityResolver failureEntityResolver) {
+        final List<String> resolvedEntitySystemIds = failureEntityResolver.getResolvedEntitySystemIds();
+        final List<MessageDigest> resolvedEntityDigesters = failureEntityResolver.getResolvedEntityDigesters();
+        for (int i=0; i<resolvedEntitySystemIds.size(); i++) {
+            try {
+                contentDigester.update(resolvedEntitySystemIds.get(i).getBytes("UTF-8"));
+            }
+            catch (final UnsupportedEncodingException e) {
+                throw new XmlResourceReaderException("Unexpected Exception", e);
+            }
+            contentDigester.update(resolvedEntityDigesters.get(i).digest());
+        }
+        return toHexString(contentDigester.digest());
+    }
+
+    private static String toHexString(final byte[] digest) {
+        final StringBuilder result = new StringBuilder(2 * digest.length);
+        for (final byte b : digest) {
+            result.append(Character.forDigit((b >> 4) & 0xf, 16))
+                .append(Character.forDigit(b & 0xf, 16));
+        }
+        return result.toString();
+    }
+
     public static XmlSourceLocationInformation extractLocationInformation(final Node elementOrTextNode) {
         XmlSourceLocationInformation result = null;
         final Object locationData = elementOrTextNode.getUserData(LOCATION_INFORMATION_NAME);
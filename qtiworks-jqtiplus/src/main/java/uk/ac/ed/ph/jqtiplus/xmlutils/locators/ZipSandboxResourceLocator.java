@@ -0,0 +1,256 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.xmlutils.locators;
+
+import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
+import uk.ac.ed.ph.jqtiplus.xmlutils.CustomUriScheme;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Counterpart of {@link FileSandboxResourceLocator} that maps a custom pseudo-URI scheme to
+ * entries within a ZIP file, which allows resources within a content package to be read
+ * in place without having to unpack it first.
+ * <p>
+ * Example with a {@link CustomUriScheme} using the 'package' scheme:
+ *
+ * <code>package:/a/b/c.xml</code> -> <code>entry a/b/c.xml within the ZIP file</code>
+ *
+ * The ZIP file is opened (and its central directory indexed) when this locator is created, and
+ * stays open until {@link #close()} is called and all streams returned by
+ * {@link #findResource(URI)} have been closed. As with {@link FileSandboxResourceLocator},
+ * paths that try to escape the "sandbox" of the ZIP file are not resolved.
+ * <p>
+ * Usage: this is reusable and safe for concurrent use. It may still be used after being closed
+ * (e.g. by a caller that obtained it from a cache that has since evicted it), in which case the
+ * ZIP file is reopened for as long as the resulting streams remain open.
+ *
+ * @author David McKain
+ */
+public class ZipSandboxResourceLocator implements ResourceLocator, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ZipSandboxResourceLocator.class);
+
+    private final CustomUriScheme uriScheme;
+    private final File zipFile;
+
+    /** Open ZIP file, or null if this has been closed and has no open streams */
+    private ZipFile zip;
+
+    /** Number of streams returned by {@link #findResource(URI)} that are still open */
+    private int openStreamCount;
+
+    /** Whether {@link #close()} has been called */
+    private boolean closed;
+
+    /** Non-directory entries in the ZIP file, keyed on normalized entry name */
+    private final Map<String, ZipEntry> entryMap;
+
+    /**
+     * Opens the given ZIP file for reading.
+     *
+     * @throws IOException if the ZIP file could not be opened. (This will be a
+     *   {@link ZipException} if the file is not a valid ZIP file.)
+     */
+    public ZipSandboxResourceLocator(final CustomUriScheme uriScheme, final File zipFile) throws IOException {
+        Assert.notNull(uriScheme, "uriScheme");
+        Assert.notNull(zipFile, "zipFile");
+        this.uriScheme = uriScheme;
+        this.zipFile = zipFile;
+        this.zip = new ZipFile(zipFile);
+        this.entryMap = new HashMap<String, ZipEntry>();
+        try {
+            final Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                final ZipEntry entry = entries.nextElement();
+                if (!entry.isDirectory()) {
+                    entryMap.put(normalizeEntryName(entry.getName()), entry);
+                }
+            }
+        }
+        catch (final IllegalArgumentException e) {
+            /* (This happens if an entry name is not encoded in UTF-8) */
+            zip.close();
+            throw (ZipException) new ZipException("Could not read entry names in ZIP file " + zipFile).initCause(e);
+        }
+    }
+
+    private static String normalizeEntryName(final String entryName) {
+        String result = entryName.replace('\\', '/');
+        while (result.startsWith("/") || result.startsWith("./")) {
+            result = result.substring(result.charAt(0)=='/' ? 1 : 2);
+        }
+        return result;
+    }
+
+    @Override
+    public InputStream findResource(final URI systemIdUri) {
+        final ZipEntry zipEntry = findSandboxEntry(systemIdUri);
+        if (zipEntry!=null) {
+            synchronized (this) {
+                try {
+                    if (zip==null) {
+                        /* (We've been closed, so reopen the ZIP file while this stream is in use) */
+                        zip = new ZipFile(zipFile);
+                    }
+                    final InputStream result = new EntryInputStream(zip.getInputStream(zipEntry));
+                    openStreamCount++;
+                    return result;
+                }
+                catch (final IOException e) {
+                    logger.warn("Could not read entry {} from ZIP file {}", zipEntry.getName(), zipFile);
+                    closeIfUnused();
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    private synchronized void streamClosed() {
+        openStreamCount--;
+        closeIfUnused();
+    }
+
+    /** (Callers must hold the lock on this locator) */
+    private void closeIfUnused() {
+        if (closed && openStreamCount==0 && zip!=null) {
+            try {
+                zip.close();
+            }
+            catch (final IOException e) {
+                logger.warn("Could not close ZIP file {}", zipFile);
+            }
+            finally {
+                zip = null;
+            }
+        }
+    }
+
+    public ZipEntry findSandboxEntry(final URI systemIdUri) {
+        final URI normalizedUri = systemIdUri.normalize();
+        if (uriScheme.isInScheme(normalizedUri)) {
+            final String normalizedPath = uriScheme.uriToDecodedPath(normalizedUri);
+            if (normalizedPath.startsWith("..")) {
+                /* This is trying to go outside the package, so we'll return null here */
+                logger.trace("URI {} normalized to path {} which is 'outside' the package so returning null for safety", systemIdUri, normalizedPath);
+                return null;
+            }
+            final ZipEntry result = entryMap.get(normalizedPath);
+            if (result==null) {
+                logger.trace("URI {} successfully mapped to non-existent entry {}", systemIdUri, normalizedPath);
+                return null;
+            }
+            logger.trace("URI {} successfully mapped to good entry {}", systemIdUri, result.getName());
+            return result;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of (non-directory) entries in the ZIP file.
+     */
+    public int getEntryCount() {
+        return entryMap.size();
+    }
+
+    public CustomUriScheme getUriScheme() {
+        return uriScheme;
+    }
+
+    public File getZipFile() {
+        return zipFile;
+    }
+
+    /**
+     * Closes the underlying ZIP file, deferring this until any streams returned by
+     * {@link #findResource(URI)} have been closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        if (openStreamCount==0 && zip!=null) {
+            final ZipFile toClose = zip;
+            zip = null;
+            toClose.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this))
+                + "(uriScheme=" + uriScheme
+                + ",zipFile=" + zipFile
+                + ")";
+    }
+
+    /**
+     * Wraps the stream for a ZIP entry so that we know when it has been closed.
+     */
+    private final class EntryInputStream extends FilterInputStream {
+
+        private boolean streamClosed;
+
+        public EntryInputStream(final InputStream entryStream) {
+            super(entryStream);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!streamClosed) {
+                streamClosed = true;
+                try {
+                    super.close();
+                }
+                finally {
+                    streamClosed();
+                }
+            }
+        }
+    }
+}
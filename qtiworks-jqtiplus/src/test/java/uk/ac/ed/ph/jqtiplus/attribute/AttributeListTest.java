@@ -0,0 +1,130 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.attribute;
+
+import uk.ac.ed.ph.jqtiplus.exception.QtiAttributeException;
+import uk.ac.ed.ph.jqtiplus.node.IdentifiableNode;
+import uk.ac.ed.ph.jqtiplus.node.item.AssessmentItem;
+
+import java.util.Iterator;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests {@link AttributeList}, in particular that lookups still work once attributes have
+ * moved away from their usual slots.
+ *
+ * @author David McKain
+ */
+public final class AttributeListTest {
+
+    @Test
+    public void testGet() {
+        final AssessmentItem item = new AssessmentItem();
+        final AttributeList attributes = item.getAttributes();
+        Assert.assertEquals(IdentifiableNode.ATTR_IDENTIFIER_NAME, attributes.get(IdentifiableNode.ATTR_IDENTIFIER_NAME).getLocalName());
+        Assert.assertEquals(AssessmentItem.ATTR_TITLE_NAME, attributes.get(AssessmentItem.ATTR_TITLE_NAME).getLocalName());
+    }
+
+    @Test
+    public void testGetAfterInsert() {
+        final AssessmentItem item = new AssessmentItem();
+        final AttributeList attributes = item.getAttributes();
+        final int size = attributes.size();
+        final ForeignAttribute foreignAttribute = new ForeignAttribute(item, AssessmentItem.ATTR_TITLE_NAME, "urn:test");
+        attributes.add(0, foreignAttribute);
+        Assert.assertEquals(size + 1, attributes.size());
+        Assert.assertSame(foreignAttribute, attributes.get(0));
+        Assert.assertSame(foreignAttribute, attributes.get(AssessmentItem.ATTR_TITLE_NAME, "urn:test"));
+        Assert.assertEquals("", attributes.get(AssessmentItem.ATTR_TITLE_NAME).getNamespaceUri());
+        Assert.assertEquals(IdentifiableNode.ATTR_IDENTIFIER_NAME, attributes.get(IdentifiableNode.ATTR_IDENTIFIER_NAME).getLocalName());
+    }
+
+    @Test
+    public void testRemove() {
+        final AssessmentItem item = new AssessmentItem();
+        final AttributeList attributes = item.getAttributes();
+        final int size = attributes.size();
+        attributes.remove(attributes.get(IdentifiableNode.ATTR_IDENTIFIER_NAME));
+        Assert.assertEquals(size - 1, attributes.size());
+        Assert.assertFalse(attributes.contains(IdentifiableNode.ATTR_IDENTIFIER_NAME));
+        Assert.assertEquals(AssessmentItem.ATTR_TITLE_NAME, attributes.get(AssessmentItem.ATTR_TITLE_NAME).getLocalName());
+    }
+
+    @Test
+    public void testIteratorRemove() {
+        final AssessmentItem item = new AssessmentItem();
+        final AttributeList attributes = item.getAttributes();
+        final int size = attributes.size();
+        final Iterator<Attribute<?>> iterator = attributes.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getLocalName().equals(IdentifiableNode.ATTR_IDENTIFIER_NAME)) {
+                iterator.remove();
+            }
+        }
+        Assert.assertEquals(size - 1, attributes.size());
+        Assert.assertFalse(attributes.contains(IdentifiableNode.ATTR_IDENTIFIER_NAME));
+        int count = 0;
+        for (final Attribute<?> attribute : attributes) {
+            Assert.assertNotNull(attribute);
+            count++;
+        }
+        Assert.assertEquals(size - 1, count);
+    }
+
+    @Test
+    public void testTrimToSize() {
+        final AssessmentItem item = new AssessmentItem();
+        final AttributeList attributes = item.getAttributes();
+        final int size = attributes.size();
+        attributes.trimToSize();
+        Assert.assertEquals(size, attributes.size());
+        Assert.assertSame(attributes.get(size - 1), attributes.get(attributes.get(size - 1).getLocalName()));
+        attributes.add(new ForeignAttribute(item, "extra", "urn:test"));
+        Assert.assertEquals(size + 1, attributes.size());
+        Assert.assertEquals("extra", attributes.get(size).getLocalName());
+    }
+
+    @Test(expected=QtiAttributeException.class)
+    public void testDuplicate() {
+        final AssessmentItem item = new AssessmentItem();
+        item.getAttributes().add(new ForeignAttribute(item, AssessmentItem.ATTR_TITLE_NAME, ""));
+    }
+
+    @Test(expected=QtiAttributeException.class)
+    public void testMissing() {
+        new AssessmentItem().getAttributes().get("notAnAttribute");
+    }
+}
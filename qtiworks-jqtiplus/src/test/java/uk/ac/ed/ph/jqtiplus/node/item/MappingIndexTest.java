@@ -0,0 +1,182 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.node.item;
+
+import static org.junit.Assert.assertEquals;
+
+import uk.ac.ed.ph.jqtiplus.node.expression.operator.Shape;
+import uk.ac.ed.ph.jqtiplus.node.item.response.declaration.AreaMapEntry;
+import uk.ac.ed.ph.jqtiplus.node.item.response.declaration.AreaMapping;
+import uk.ac.ed.ph.jqtiplus.node.item.response.declaration.MapEntry;
+import uk.ac.ed.ph.jqtiplus.node.item.response.declaration.Mapping;
+import uk.ac.ed.ph.jqtiplus.node.item.response.declaration.ResponseDeclaration;
+import uk.ac.ed.ph.jqtiplus.state.AreaMappingIndex;
+import uk.ac.ed.ph.jqtiplus.state.MappingIndex;
+import uk.ac.ed.ph.jqtiplus.testutils.UnitTestHelper;
+import uk.ac.ed.ph.jqtiplus.types.Identifier;
+import uk.ac.ed.ph.jqtiplus.value.IdentifierValue;
+import uk.ac.ed.ph.jqtiplus.value.MultipleValue;
+import uk.ac.ed.ph.jqtiplus.value.NullValue;
+import uk.ac.ed.ph.jqtiplus.value.PointValue;
+import uk.ac.ed.ph.jqtiplus.value.SingleValue;
+import uk.ac.ed.ph.jqtiplus.value.Value;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks that {@link MappingIndex} and {@link AreaMappingIndex} give the same results as
+ * {@link Mapping} and {@link AreaMapping} on mappings with many entries.
+ */
+public class MappingIndexTest {
+
+    private static final Identifier RESPONSE = Identifier.assumedLegal("RESPONSE");
+
+    private static ResponseDeclaration loadResponseDeclaration(final String fileName) {
+        final AssessmentItem item = UnitTestHelper.resolveUnitTestAssessmentItem("item/mapResponse/" + fileName)
+                .getRootNodeLookup().extractAssumingSuccessful();
+        return item.getResponseDeclaration(RESPONSE);
+    }
+
+    private static AreaMapping createAreaMapping(final ResponseDeclaration responseDeclaration, final Random random) {
+        final AreaMapping areaMapping = new AreaMapping(responseDeclaration);
+        areaMapping.setDefaultValue(Double.valueOf(-0.25));
+        final Shape[] shapes = { Shape.RECT, Shape.CIRCLE, Shape.ELLIPSE, Shape.POLY };
+        for (int i=0; i<200; i++) {
+            final AreaMapEntry entry = new AreaMapEntry(areaMapping);
+            final Shape shape = shapes[i % shapes.length];
+            final int x = random.nextInt(500);
+            final int y = random.nextInt(500);
+            final int w = 1 + random.nextInt(40);
+            final int h = 1 + random.nextInt(40);
+            entry.setShape(shape);
+            switch (shape) {
+                case RECT:
+                    entry.setCoordinates(Arrays.asList(x, y, x + w, y + h));
+                    break;
+                case CIRCLE:
+                    entry.setCoordinates(Arrays.asList(x, y, w));
+                    break;
+                case ELLIPSE:
+                    entry.setCoordinates(Arrays.asList(x, y, w, h));
+                    break;
+                default:
+                    entry.setCoordinates(Arrays.asList(x, y, x + w, y, x, y + h));
+                    break;
+            }
+            entry.setMappedValue(Double.valueOf(i));
+            areaMapping.getAreaMapEntries().add(entry);
+        }
+        return areaMapping;
+    }
+
+    private static PointValue randomPoint(final Random random) {
+        return new PointValue(random.nextInt(560) - 30, random.nextInt(560) - 30);
+    }
+
+    @Test
+    public void testAreaMappingSingle() {
+        final Random random = new Random(1234L);
+        final AreaMapping areaMapping = createAreaMapping(loadResponseDeclaration("MapResponsePoint-Single.xml"), random);
+        final AreaMappingIndex areaMappingIndex = new AreaMappingIndex(areaMapping);
+        for (int i=0; i<2000; i++) {
+            final PointValue point = randomPoint(random);
+            assertEquals("Point " + point, areaMapping.getTargetValue(point), areaMappingIndex.computeTargetValue(point));
+        }
+    }
+
+    @Test
+    public void testAreaMappingMultiple() {
+        final Random random = new Random(5678L);
+        final AreaMapping areaMapping = createAreaMapping(loadResponseDeclaration("MapResponsePoint-Multiple.xml"), random);
+        final AreaMappingIndex areaMappingIndex = new AreaMappingIndex(areaMapping);
+        for (int i=0; i<200; i++) {
+            final List<PointValue> points = new ArrayList<PointValue>();
+            for (int j=0; j<20; j++) {
+                points.add(randomPoint(random));
+            }
+            points.add(points.get(0)); /* (Include a duplicate) */
+            final Value response = MultipleValue.createMultipleValue(points);
+            assertEquals(areaMapping.getTargetValue(response), areaMappingIndex.computeTargetValue(response));
+        }
+        assertEquals(areaMapping.getTargetValue(NullValue.INSTANCE), areaMappingIndex.computeTargetValue(NullValue.INSTANCE));
+    }
+
+    @Test
+    public void testMapping() {
+        final Random random = new Random(9012L);
+        final ResponseDeclaration responseDeclaration = loadResponseDeclaration("MapResponse-Multiple.xml");
+        final Mapping mapping = new Mapping(responseDeclaration);
+        mapping.setDefaultValue(Double.valueOf(-1.0));
+        mapping.setUpperBound(Double.valueOf(50.0));
+        for (int i=0; i<100; i++) {
+            final MapEntry entry = new MapEntry(mapping);
+            entry.setMapKey(new IdentifierValue("K" + random.nextInt(60)));
+            entry.setMappedValue(Double.valueOf(i % 7));
+            mapping.getMapEntries().add(entry);
+        }
+        final MappingIndex mappingIndex = new MappingIndex(mapping);
+        for (int i=0; i<500; i++) {
+            final List<SingleValue> values = new ArrayList<SingleValue>();
+            for (int j=0; j<1 + random.nextInt(10); j++) {
+                values.add(new IdentifierValue("K" + random.nextInt(80)));
+            }
+            final Value response = MultipleValue.createMultipleValue(values);
+            assertEquals(mapping.computeTargetValue(response), mappingIndex.computeTargetValue(response));
+        }
+    }
+
+    @Test
+    public void testCaseInsensitiveMapping() {
+        final ResponseDeclaration responseDeclaration = loadResponseDeclaration("MapResponse-Single.xml");
+        final Mapping mapping = new Mapping(responseDeclaration);
+        final String[][] entries = { { "abc", "true" }, { "ABC", "false" }, { "Def", "false" }, { "def", "true" } };
+        for (int i=0; i<entries.length; i++) {
+            final MapEntry entry = new MapEntry(mapping);
+            entry.setMapKey(new IdentifierValue(entries[i][0]));
+            entry.setCaseSensitive(Boolean.valueOf(entries[i][1]));
+            entry.setMappedValue(Double.valueOf(i + 1));
+            mapping.getMapEntries().add(entry);
+        }
+        final MappingIndex mappingIndex = new MappingIndex(mapping);
+        for (final String key : new String[] { "abc", "ABC", "aBc", "Def", "def", "DEF", "xyz" }) {
+            final Value response = new IdentifierValue(key);
+            assertEquals(key, mapping.computeTargetValue(response), mappingIndex.computeTargetValue(response));
+        }
+    }
+}
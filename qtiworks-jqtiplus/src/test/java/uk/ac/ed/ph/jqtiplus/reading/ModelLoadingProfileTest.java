@@ -0,0 +1,182 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.reading;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import uk.ac.ed.ph.jqtiplus.node.content.ItemBody;
+import uk.ac.ed.ph.jqtiplus.node.content.basic.Block;
+import uk.ac.ed.ph.jqtiplus.node.content.xhtml.text.Div;
+import uk.ac.ed.ph.jqtiplus.node.content.xhtml.text.P;
+import uk.ac.ed.ph.jqtiplus.node.item.AssessmentItem;
+import uk.ac.ed.ph.jqtiplus.node.item.interaction.ChoiceInteraction;
+import uk.ac.ed.ph.jqtiplus.node.item.interaction.TextEntryInteraction;
+import uk.ac.ed.ph.jqtiplus.resolution.ResolvedAssessmentItem;
+import uk.ac.ed.ph.jqtiplus.running.ItemProcessingInitializer;
+import uk.ac.ed.ph.jqtiplus.running.ItemSessionController;
+import uk.ac.ed.ph.jqtiplus.running.ItemSessionControllerSettings;
+import uk.ac.ed.ph.jqtiplus.state.ItemProcessingMap;
+import uk.ac.ed.ph.jqtiplus.state.ItemSessionState;
+import uk.ac.ed.ph.jqtiplus.testutils.UnitTestHelper;
+import uk.ac.ed.ph.jqtiplus.types.Identifier;
+import uk.ac.ed.ph.jqtiplus.types.ResponseData;
+import uk.ac.ed.ph.jqtiplus.types.StringResponseData;
+import uk.ac.ed.ph.jqtiplus.validation.ItemValidationResult;
+import uk.ac.ed.ph.jqtiplus.value.FloatValue;
+
+import java.net.URI;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests loading items using the various {@link ModelLoadingProfile}s
+ *
+ * @author David McKain
+ */
+public final class ModelLoadingProfileTest {
+
+    private static final URI PROCESSING_ONLY_URI = UnitTestHelper.createTestResourceUri("running/processing-only.xml");
+    private static final URI PROCESSING_ONLY_SHUFFLED_URI = UnitTestHelper.createTestResourceUri("running/processing-only-shuffled.xml");
+    private static final Identifier CHOICE = Identifier.assumedLegal("CHOICE");
+
+    @Test
+    public void testFullIsValid() {
+        final ItemValidationResult result = UnitTestHelper.createUnitTestAssessmentObjectXmlLoader()
+                .loadResolveAndValidateItem(PROCESSING_ONLY_URI);
+        assertTrue(result.isValid());
+    }
+
+    @Test
+    public void testFull() {
+        final AssessmentItem item = loadItem(ModelLoadingProfile.FULL).getRootNodeLookup().extractIfSuccessful();
+
+        assertNotNull(item.getSourceLocation());
+        assertEquals(1, item.getStylesheets().size());
+        assertEquals(1, item.getModalFeedbacks().size());
+        assertEquals(4, item.getItemBody().getBlocks().size());
+        assertEquals(2, item.getItemBody().findInteractions().size());
+    }
+
+    @Test
+    public void testProcessing() {
+        final ResolvedAssessmentItem resolvedAssessmentItem = loadItem(ModelLoadingProfile.PROCESSING);
+        final AssessmentItem item = resolvedAssessmentItem.getRootNodeLookup().extractIfSuccessful();
+
+        assertNull(item.getSourceLocation());
+        assertTrue(item.getStylesheets().isEmpty());
+        assertTrue(item.getModalFeedbacks().isEmpty());
+        final QtiObjectReadResult<?> readResult = (QtiObjectReadResult<?>) resolvedAssessmentItem.getRootNodeLookup().getRootNodeHolder();
+        assertEquals(ModelLoadingProfile.PROCESSING, readResult.getModelLoadingProfile());
+
+        /* Only the 2nd div (and its p) should remain, followed by the choiceInteraction */
+        final ItemBody itemBody = item.getItemBody();
+        final List<Block> blocks = itemBody.getBlocks();
+        assertEquals(2, blocks.size());
+        assertEquals(Div.class, blocks.get(0).getClass());
+        assertEquals(ChoiceInteraction.class, blocks.get(1).getClass());
+        final P p = (P) ((Div) blocks.get(0)).getFlows().get(0);
+        assertEquals(1, p.getInlines().size());
+        assertEquals(TextEntryInteraction.class, p.getInlines().get(0).getClass());
+
+        /* Interaction content must be kept intact */
+        final ChoiceInteraction choiceInteraction = (ChoiceInteraction) blocks.get(1);
+        assertNotNull(choiceInteraction.getPrompt());
+        assertEquals(2, choiceInteraction.getSimpleChoices().size());
+        assertEquals(2, itemBody.findInteractions().size());
+    }
+
+    @Test
+    public void testProcessingScoresSameAsFull() {
+        assertEquals(runItem(ModelLoadingProfile.FULL), runItem(ModelLoadingProfile.PROCESSING));
+        assertEquals(new FloatValue(2.0), runItem(ModelLoadingProfile.PROCESSING));
+    }
+
+    /**
+     * Skipping content within the itemBody must not change how interactions are shuffled, as
+     * sessions may be loaded using different profiles over their lifetimes.
+     */
+    @Test
+    public void testProcessingShufflesSameAsFull() {
+        for (long seed=0; seed<10; seed++) {
+            final List<Identifier> fullChoiceOrder = shuffleItem(ModelLoadingProfile.FULL, seed);
+            assertEquals(8, fullChoiceOrder.size());
+            assertEquals(fullChoiceOrder, shuffleItem(ModelLoadingProfile.DELIVERY, seed));
+            assertEquals(fullChoiceOrder, shuffleItem(ModelLoadingProfile.PROCESSING, seed));
+        }
+    }
+
+    private ResolvedAssessmentItem loadItem(final ModelLoadingProfile modelLoadingProfile) {
+        return loadItem(modelLoadingProfile, PROCESSING_ONLY_URI);
+    }
+
+    private ResolvedAssessmentItem loadItem(final ModelLoadingProfile modelLoadingProfile, final URI itemUri) {
+        final AssessmentObjectXmlLoader loader = new AssessmentObjectXmlLoader(UnitTestHelper.createUnitTestQtiXmlReader(),
+                UnitTestHelper.createTestFileResourceLocator(), modelLoadingProfile);
+        return loader.loadAndResolveAssessmentItem(itemUri);
+    }
+
+    private List<Identifier> shuffleItem(final ModelLoadingProfile modelLoadingProfile, final long seed) {
+        final ItemProcessingMap itemProcessingMap = new ItemProcessingInitializer(loadItem(modelLoadingProfile, PROCESSING_ONLY_SHUFFLED_URI), true).initialize();
+        final ItemSessionController itemSessionController = new ItemSessionController(UnitTestHelper.createJqtiExtensionManager(),
+                new ItemSessionControllerSettings(), itemProcessingMap, new ItemSessionState());
+        itemSessionController.setRandomSeed(Long.valueOf(seed));
+        itemSessionController.initialize(new Date());
+        return itemSessionController.getItemSessionState().getShuffledInteractionChoiceOrder(CHOICE);
+    }
+
+    private FloatValue runItem(final ModelLoadingProfile modelLoadingProfile) {
+        final ItemProcessingMap itemProcessingMap = new ItemProcessingInitializer(loadItem(modelLoadingProfile), true).initialize();
+        final ItemSessionController itemSessionController = new ItemSessionController(UnitTestHelper.createJqtiExtensionManager(),
+                new ItemSessionControllerSettings(), itemProcessingMap, new ItemSessionState());
+
+        final Date timestamp = new Date();
+        final Map<Identifier, ResponseData> responseMap = new HashMap<Identifier, ResponseData>();
+        responseMap.put(CHOICE, new StringResponseData("B"));
+        responseMap.put(Identifier.assumedLegal("TEXT"), new StringResponseData("Edinburgh"));
+        itemSessionController.initialize(timestamp);
+        itemSessionController.performTemplateProcessing(timestamp);
+        itemSessionController.enterItem(timestamp);
+        assertTrue(itemSessionController.bindResponses(timestamp, responseMap));
+        itemSessionController.commitResponses(timestamp);
+        itemSessionController.performResponseProcessing(timestamp);
+        return (FloatValue) itemSessionController.getItemSessionState().getOutcomeValue(Identifier.assumedLegal("SCORE"));
+    }
+}
@@ -35,6 +35,7 @@ package uk.ac.ed.ph.jqtiplus.reading;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 
 import uk.ac.ed.ph.jqtiplus.QtiConstants;
 import uk.ac.ed.ph.jqtiplus.node.RootNode;
@@ -104,4 +105,24 @@ public final class QtiObjectReaderTest {
     public void testLookupChoiceItemWrongRoot() throws Exception {
         qtiObjectReader.lookupRootNode(choiceUri, AssessmentTest.class);
     }
+
+    @Test
+    public void testLookupFullProfileRecordsSourceLocations() throws Exception {
+        final AssessmentItem item = qtiObjectReader.lookupRootNode(choiceUri, AssessmentItem.class).getRootNode();
+
+        assertEquals(ModelLoadingProfile.FULL, qtiObjectReader.getModelLoadingProfile());
+        assertNotNull(item.getSourceLocation());
+        assertNotNull(item.getItemBody().getSourceLocation());
+    }
+
+    @Test
+    public void testLookupDeliveryProfileOmitsSourceLocations() throws Exception {
+        final QtiObjectReader deliveryReader = UnitTestHelper.createUnitTestQtiXmlReader()
+                .createQtiObjectReader(UnitTestHelper.createTestFileResourceLocator(), false, ModelLoadingProfile.DELIVERY);
+        final AssessmentItem item = deliveryReader.lookupRootNode(choiceUri, AssessmentItem.class).getRootNode();
+
+        assertNull(item.getSourceLocation());
+        assertNull(item.getItemBody().getSourceLocation());
+        assertEquals(1, item.getResponseDeclarations().size());
+    }
 }
\ No newline at end of file
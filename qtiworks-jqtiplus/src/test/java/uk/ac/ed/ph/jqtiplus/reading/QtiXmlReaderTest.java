@@ -42,6 +42,7 @@ import static org.junit.Assert.assertTrue;
 import uk.ac.ed.ph.jqtiplus.testutils.UnitTestHelper;
 import uk.ac.ed.ph.jqtiplus.xmlutils.XmlParseResult;
 import uk.ac.ed.ph.jqtiplus.xmlutils.XmlReadResult;
+import uk.ac.ed.ph.jqtiplus.xmlutils.SimpleSchemaCache;
 import uk.ac.ed.ph.jqtiplus.xmlutils.XmlResourceNotFoundException;
 import uk.ac.ed.ph.jqtiplus.xmlutils.locators.ClassPathResourceLocator;
 
@@ -107,6 +108,24 @@ public class QtiXmlReaderTest {
         assertEquals(0, parseResult.getUnsupportedSchemaNamespaces().size());
     }
 
+    @Test
+    public void testContentDigest() throws Exception {
+        final String choiceDigest = readUnitTestFile("choice.xml", false).getXmlParseResult().getContentDigest();
+        assertNotNull(choiceDigest);
+        assertEquals(choiceDigest, readUnitTestFile("choice.xml", true).getXmlParseResult().getContentDigest());
+        assertFalse(choiceDigest.equals(readUnitTestFile("invalid.xml", false).getXmlParseResult().getContentDigest()));
+        assertNull(readUnitTestFile("illformed.xml", false).getXmlParseResult().getContentDigest());
+    }
+
+    @Test
+    public void testContentDigestCoversXInclude() throws Exception {
+        final XmlReadResult resultA = readUnitTestFile("xinclude-a/item.xml", false);
+        final XmlReadResult resultB = readUnitTestFile("xinclude-b/item.xml", false);
+        assertTrue(resultA.getXmlParseResult().isParsed());
+        assertTrue(resultB.getXmlParseResult().isParsed());
+        assertFalse(resultA.getXmlParseResult().getContentDigest().equals(resultB.getXmlParseResult().getContentDigest()));
+    }
+
     @Test
     public void testReadIllFormed() throws Exception {
         final String fileName = "illformed.xml";
@@ -177,6 +196,25 @@ public class QtiXmlReaderTest {
         assertEquals(1, parseResult.getUnsupportedSchemaNamespaces().size()); /* (Unsupported) */
     }
 
+    @Test
+    public void testRepeatedReadsWithPreloadedSchemas() throws Exception {
+        final QtiXmlReader reader = new QtiXmlReader(UnitTestHelper.createJqtiExtensionManager(), new SimpleSchemaCache());
+        reader.preloadSchemas();
+        for (int i=0; i<3; i++) {
+            final XmlParseResult parseResult = reader.read(UnitTestHelper.createTestFileResourceLocator(),
+                    makeSystemId("invalid.xml"), true).getXmlParseResult();
+            assertTrue(parseResult.isValidated());
+            assertFalse(parseResult.isSchemaValid());
+            assertEquals(1, parseResult.getErrors().size());
+
+            /* (Make sure errors from the previous read don't leak through pooled validators) */
+            final XmlParseResult goodResult = reader.read(UnitTestHelper.createTestFileResourceLocator(),
+                    makeSystemId("choice.xml"), true).getXmlParseResult();
+            assertTrue(goodResult.isSchemaValid());
+            assertEquals(0, goodResult.getErrors().size());
+        }
+    }
+
     //-------------------------------
 
     private XmlReadResult readUnitTestFile(final String testFilePath, final boolean schemaValiadating)
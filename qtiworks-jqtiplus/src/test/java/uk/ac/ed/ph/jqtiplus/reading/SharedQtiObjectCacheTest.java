@@ -0,0 +1,142 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.reading;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import uk.ac.ed.ph.jqtiplus.node.item.AssessmentItem;
+import uk.ac.ed.ph.jqtiplus.node.item.response.processing.ResponseProcessing;
+import uk.ac.ed.ph.jqtiplus.resolution.AssessmentObjectResolver;
+import uk.ac.ed.ph.jqtiplus.resolution.ResolvedAssessmentItem;
+import uk.ac.ed.ph.jqtiplus.testutils.UnitTestHelper;
+
+import java.net.URI;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link SharedQtiObjectCache}
+ *
+ * @author David McKain
+ */
+public final class SharedQtiObjectCacheTest {
+
+    private static final URI MATCH_CORRECT_URI = URI.create("http://www.imsglobal.org/question/qti_v2p1/rptemplates/match_correct");
+    private static final URI MAP_RESPONSE_URI = URI.create("http://www.imsglobal.org/question/qti_v2p1/rptemplates/map_response");
+
+    private URI choiceUri;
+
+    @Before
+    public void before() {
+        choiceUri = UnitTestHelper.createTestResourceUri("reading/choice.xml");
+    }
+
+    @Test
+    public void testTemplateShared() {
+        final SharedQtiObjectCache cache = new SharedQtiObjectCache();
+        final QtiXmlReader qtiXmlReader = createQtiXmlReader(cache);
+
+        final ResolvedAssessmentItem resolved1 = resolveChoiceItem(qtiXmlReader);
+        final ResolvedAssessmentItem resolved2 = resolveChoiceItem(qtiXmlReader);
+
+        /* Template should have been shared, but not the items themselves */
+        assertSame(extractTemplate(resolved1), extractTemplate(resolved2));
+        assertNotSame(extractItem(resolved1), extractItem(resolved2));
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testTemplateNotSharedWithoutCache() {
+        final QtiXmlReader qtiXmlReader = createQtiXmlReader(null);
+
+        final ResolvedAssessmentItem resolved1 = resolveChoiceItem(qtiXmlReader);
+        final ResolvedAssessmentItem resolved2 = resolveChoiceItem(qtiXmlReader);
+
+        assertNotSame(extractTemplate(resolved1), extractTemplate(resolved2));
+    }
+
+    @Test
+    public void testProfilesNotMixed() throws Exception {
+        final SharedQtiObjectCache cache = new SharedQtiObjectCache();
+        final QtiXmlReader qtiXmlReader = createQtiXmlReader(cache);
+
+        final ResponseProcessing full = qtiXmlReader.createQtiObjectReader(UnitTestHelper.createTestFileResourceLocator(), false, ModelLoadingProfile.FULL)
+                .lookupRootNode(MATCH_CORRECT_URI, ResponseProcessing.class).getRootNode();
+        final ResponseProcessing delivery = qtiXmlReader.createQtiObjectReader(UnitTestHelper.createTestFileResourceLocator(), false, ModelLoadingProfile.DELIVERY)
+                .lookupRootNode(MATCH_CORRECT_URI, ResponseProcessing.class).getRootNode();
+
+        assertNotSame(full, delivery);
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testBounded() throws Exception {
+        final SharedQtiObjectCache cache = new SharedQtiObjectCache(1);
+        final QtiObjectReader qtiObjectReader = createQtiXmlReader(cache).createQtiObjectReader(UnitTestHelper.createTestFileResourceLocator(), false);
+
+        final ResponseProcessing matchCorrect = qtiObjectReader.lookupRootNode(MATCH_CORRECT_URI, ResponseProcessing.class).getRootNode();
+        qtiObjectReader.lookupRootNode(MAP_RESPONSE_URI, ResponseProcessing.class);
+        assertEquals(1, cache.size());
+
+        /* match_correct should have been evicted */
+        assertNotSame(matchCorrect, qtiObjectReader.lookupRootNode(MATCH_CORRECT_URI, ResponseProcessing.class).getRootNode());
+        assertEquals(0, cache.getHitCount());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testBadMaxSize() {
+        new SharedQtiObjectCache(0);
+    }
+
+    private QtiXmlReader createQtiXmlReader(final SharedQtiObjectCache cache) {
+        return new QtiXmlReader(UnitTestHelper.createJqtiExtensionManager(), null, cache);
+    }
+
+    private ResolvedAssessmentItem resolveChoiceItem(final QtiXmlReader qtiXmlReader) {
+        final QtiObjectReader qtiObjectReader = qtiXmlReader.createQtiObjectReader(UnitTestHelper.createTestFileResourceLocator(), false);
+        return new AssessmentObjectResolver(qtiObjectReader).resolveAssessmentItem(choiceUri);
+    }
+
+    private static AssessmentItem extractItem(final ResolvedAssessmentItem resolvedAssessmentItem) {
+        return resolvedAssessmentItem.getItemLookup().extractIfSuccessful();
+    }
+
+    private static ResponseProcessing extractTemplate(final ResolvedAssessmentItem resolvedAssessmentItem) {
+        return resolvedAssessmentItem.getResolvedResponseProcessingTemplateLookup().extractIfSuccessful();
+    }
+}
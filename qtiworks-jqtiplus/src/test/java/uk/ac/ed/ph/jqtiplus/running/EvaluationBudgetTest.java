@@ -0,0 +1,146 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.running;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import uk.ac.ed.ph.jqtiplus.exception.QtiEvaluationBudgetException;
+import uk.ac.ed.ph.jqtiplus.node.item.response.processing.ResponseProcessing;
+import uk.ac.ed.ph.jqtiplus.notification.Notification;
+import uk.ac.ed.ph.jqtiplus.notification.NotificationLevel;
+import uk.ac.ed.ph.jqtiplus.notification.NotificationRecorder;
+import uk.ac.ed.ph.jqtiplus.testutils.UnitTestHelper;
+import uk.ac.ed.ph.jqtiplus.types.Identifier;
+import uk.ac.ed.ph.jqtiplus.types.ResponseData;
+import uk.ac.ed.ph.jqtiplus.types.StringResponseData;
+import uk.ac.ed.ph.jqtiplus.value.BooleanValue;
+import uk.ac.ed.ph.jqtiplus.value.FloatValue;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests the enforcement of an {@link EvaluationBudget} using the standard <code>choice.xml</code> item
+ *
+ * @author David McKain
+ */
+public final class EvaluationBudgetTest {
+
+    public static final String TEST_FILE_PATH = "running/choice.xml";
+
+    private static final Identifier TP_DONE = Identifier.assumedLegal("TP_DONE");
+    private static final Identifier RP_DONE = Identifier.assumedLegal("RP_DONE");
+    private static final Identifier SCORE = Identifier.assumedLegal("SCORE");
+
+    @Test
+    public void testNoLimits() {
+        final ItemSessionController itemSessionController = UnitTestHelper.loadUnitTestAssessmentItemForControl(TEST_FILE_PATH, true);
+        assertNull(itemSessionController.getEvaluationBudget());
+    }
+
+    @Test
+    public void testWithinStepLimit() {
+        final NotificationRecorder notificationRecorder = new NotificationRecorder(NotificationLevel.ERROR);
+        final ItemSessionController itemSessionController = createItemSessionController(10);
+        itemSessionController.addNotificationListener(notificationRecorder);
+        runItem(itemSessionController);
+
+        assertEquals(BooleanValue.TRUE, itemSessionController.getItemSessionState().getTemplateValue(TP_DONE));
+        assertEquals(BooleanValue.TRUE, itemSessionController.getItemSessionState().getOutcomeValue(RP_DONE));
+        assertEquals(new FloatValue(1.0), itemSessionController.getItemSessionState().getOutcomeValue(SCORE));
+        assertTrue(notificationRecorder.getNotifications().isEmpty());
+        assertFalse(itemSessionController.getEvaluationBudget().isRunning());
+    }
+
+    @Test
+    public void testResponseProcessingExceedsStepLimit() {
+        /* TP evaluates a single baseValue, so will complete. RP will be stopped at the match */
+        final NotificationRecorder notificationRecorder = new NotificationRecorder(NotificationLevel.ERROR);
+        final ItemSessionController itemSessionController = createItemSessionController(1);
+        itemSessionController.addNotificationListener(notificationRecorder);
+        runItem(itemSessionController);
+
+        assertEquals(BooleanValue.TRUE, itemSessionController.getItemSessionState().getTemplateValue(TP_DONE));
+        assertEquals(BooleanValue.FALSE, itemSessionController.getItemSessionState().getOutcomeValue(RP_DONE));
+        assertEquals(new FloatValue(0.0), itemSessionController.getItemSessionState().getOutcomeValue(SCORE));
+
+        final List<Notification> errors = notificationRecorder.getNotifications();
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0).getQtiNode() instanceof ResponseProcessing);
+        assertFalse(itemSessionController.getEvaluationBudget().isRunning());
+    }
+
+    @Test(expected=QtiEvaluationBudgetException.class)
+    public void testStepLimit() {
+        final EvaluationBudget evaluationBudget = new EvaluationBudget(2, 0L);
+        evaluationBudget.start();
+        evaluationBudget.step();
+        evaluationBudget.step();
+        evaluationBudget.step();
+    }
+
+    @Test
+    public void testStepsNotCountedWhenStopped() {
+        final EvaluationBudget evaluationBudget = new EvaluationBudget(1, 0L);
+        evaluationBudget.step();
+        evaluationBudget.step();
+        assertEquals(0, evaluationBudget.getStepCount());
+    }
+
+    private static ItemSessionController createItemSessionController(final int stepLimit) {
+        final ItemSessionControllerSettings itemSessionControllerSettings = new ItemSessionControllerSettings();
+        itemSessionControllerSettings.setEvaluationStepLimit(stepLimit);
+        return UnitTestHelper.loadUnitTestAssessmentItemForControl(TEST_FILE_PATH, true, itemSessionControllerSettings);
+    }
+
+    private static void runItem(final ItemSessionController itemSessionController) {
+        final Date timestamp = new Date();
+        final Map<Identifier, ResponseData> responseMap = new HashMap<Identifier, ResponseData>();
+        responseMap.put(Identifier.assumedLegal("RESPONSE"), new StringResponseData("ChoiceA"));
+
+        itemSessionController.initialize(timestamp);
+        itemSessionController.performTemplateProcessing(timestamp);
+        itemSessionController.enterItem(timestamp);
+        itemSessionController.bindResponses(timestamp, responseMap);
+        itemSessionController.commitResponses(timestamp);
+        itemSessionController.performResponseProcessing(timestamp);
+    }
+}
@@ -0,0 +1,130 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.running;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import uk.ac.ed.ph.jqtiplus.running.EvaluationProfileEntry.EntryType;
+import uk.ac.ed.ph.jqtiplus.testutils.UnitTestHelper;
+import uk.ac.ed.ph.jqtiplus.types.Identifier;
+import uk.ac.ed.ph.jqtiplus.types.ResponseData;
+import uk.ac.ed.ph.jqtiplus.types.StringResponseData;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link EvaluationProfiler} using the standard <code>choice.xml</code> item
+ *
+ * @author David McKain
+ */
+public final class EvaluationProfilerTest {
+
+    public static final String TEST_FILE_PATH = "running/choice.xml";
+
+    @Test
+    public void testProfilingDisabled() {
+        final ItemSessionController itemSessionController = UnitTestHelper.loadUnitTestAssessmentItemForControl(TEST_FILE_PATH, true);
+        runItem(itemSessionController);
+
+        assertNull(itemSessionController.getEvaluationProfiler());
+        assertNull(itemSessionController.getEvaluationProfile());
+    }
+
+    @Test
+    public void testProfilingEnabled() {
+        final ItemSessionControllerSettings itemSessionControllerSettings = new ItemSessionControllerSettings();
+        itemSessionControllerSettings.setProfilingEnabled(true);
+        final ItemSessionController itemSessionController = UnitTestHelper.loadUnitTestAssessmentItemForControl(TEST_FILE_PATH, true,
+                itemSessionControllerSettings);
+        runItem(itemSessionController);
+
+        final EvaluationProfile profile = itemSessionController.getEvaluationProfile();
+        assertNotNull(profile);
+
+        /* TP: setTemplateValue + baseValue.
+         * RP: setOutcomeValue + baseValue, responseCondition, match + variable + correct,
+         *     setOutcomeValue + baseValue within responseIf. (responseElse is never reached)
+         */
+        final List<EvaluationProfileEntry> entries = profile.getEntries();
+        assertEquals(10, entries.size());
+        assertEquals(4L, profile.getInvocationCount(EntryType.RULE));
+        assertEquals(6L, profile.getInvocationCount(EntryType.EXPRESSION));
+
+        long previousSelfNanos = Long.MAX_VALUE;
+        for (final EvaluationProfileEntry entry : entries) {
+            assertEquals(1L, entry.getInvocationCount());
+            assertTrue(entry.getSelfNanos() <= entry.getTotalNanos());
+            assertTrue(entry.getSelfNanos() <= previousSelfNanos);
+            previousSelfNanos = entry.getSelfNanos();
+            if (entry.getEntryType()==EntryType.EXPRESSION) {
+                assertEquals(1L, entry.getSingleValueCount() + entry.getNullResultCount());
+            }
+        }
+
+        final EvaluationProfileEntry matchEntry = findEntry(entries, "match");
+        assertEquals(EntryType.EXPRESSION, matchEntry.getEntryType());
+        assertEquals(EntryType.RULE, findEntry(entries, "responseCondition").getEntryType());
+        assertTrue(findEntry(entries, "responseCondition").getTotalNanos() >= matchEntry.getTotalNanos());
+    }
+
+    private static EvaluationProfileEntry findEntry(final List<EvaluationProfileEntry> entries, final String qtiClassName) {
+        for (final EvaluationProfileEntry entry : entries) {
+            if (qtiClassName.equals(entry.getQtiClassName())) {
+                return entry;
+            }
+        }
+        throw new AssertionError("No entry found for " + qtiClassName);
+    }
+
+    private static void runItem(final ItemSessionController itemSessionController) {
+        final Date timestamp = new Date();
+        final Map<Identifier, ResponseData> responseMap = new HashMap<Identifier, ResponseData>();
+        responseMap.put(Identifier.assumedLegal("RESPONSE"), new StringResponseData("ChoiceA"));
+
+        itemSessionController.initialize(timestamp);
+        itemSessionController.performTemplateProcessing(timestamp);
+        itemSessionController.enterItem(timestamp);
+        itemSessionController.bindResponses(timestamp, responseMap);
+        itemSessionController.commitResponses(timestamp);
+        itemSessionController.performResponseProcessing(timestamp);
+    }
+}
@@ -0,0 +1,115 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.running;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import uk.ac.ed.ph.jqtiplus.state.TestPlanNode;
+import uk.ac.ed.ph.jqtiplus.testutils.UnitTestHelper;
+import uk.ac.ed.ph.jqtiplus.types.Identifier;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link TestProcessingController#computeItemSubset(Identifier, List, List)}
+ *
+ * @author David McKain
+ */
+public final class ItemSubsetComputationTest {
+
+    private static final String TEST_FILE_PATH = "running/test-item-subset.xml";
+
+    private TestSessionController testSessionController;
+
+    @Before
+    public void before() {
+        testSessionController = UnitTestHelper.loadUnitTestAssessmentTestForControl(TEST_FILE_PATH, true);
+    }
+
+    @Test
+    public void testAllItems() {
+        assertItemSubset(null, null, null, "i111", "i12", "i21", "i22");
+    }
+
+    @Test
+    public void testSection() {
+        assertItemSubset("s1", null, null, "i111", "i12");
+        assertItemSubset("s11", null, null, "i111");
+        assertItemSubset("s2", null, null, "i21", "i22");
+        assertItemSubset("nope", null, null);
+    }
+
+    @Test
+    public void testCategories() {
+        assertItemSubset(null, Arrays.asList("x"), null, "i111", "i21");
+        assertItemSubset(null, Arrays.asList("x", "y"), null, "i111", "i12", "i21");
+        assertItemSubset(null, null, Arrays.asList("x"), "i12", "i22");
+        assertItemSubset(null, Arrays.asList("y"), Arrays.asList("x"), "i12");
+        assertItemSubset("s2", Arrays.asList("x"), null, "i21");
+    }
+
+    @Test
+    public void testCaching() {
+        final Identifier s1 = Identifier.assumedLegal("s1");
+        assertNotSame(testSessionController.computeItemSubset(s1, null, null),
+                testSessionController.computeItemSubset(s1, null, null));
+
+        testSessionController.startItemSubsetCaching();
+        final List<TestPlanNode> cached = testSessionController.computeItemSubset(s1, Arrays.asList("y"), null);
+        assertSame(cached, testSessionController.computeItemSubset(Identifier.assumedLegal("s1"), Arrays.asList("y"), null));
+        assertNotSame(cached, testSessionController.computeItemSubset(s1, Arrays.asList("x"), null));
+
+        testSessionController.endItemSubsetCaching();
+        assertNotSame(cached, testSessionController.computeItemSubset(s1, Arrays.asList("y"), null));
+    }
+
+    private void assertItemSubset(final String sectionIdentifier, final List<String> includeCategories,
+            final List<String> excludeCategories, final String... expectedItemRefIdentifiers) {
+        final List<TestPlanNode> itemSubset = testSessionController.computeItemSubset(
+                sectionIdentifier!=null ? Identifier.assumedLegal(sectionIdentifier) : null,
+                includeCategories, excludeCategories);
+        final List<String> itemRefIdentifiers = new ArrayList<String>();
+        for (final TestPlanNode testPlanNode : itemSubset) {
+            itemRefIdentifiers.add(testPlanNode.getIdentifier().toString());
+        }
+        assertEquals(Arrays.asList(expectedItemRefIdentifiers), itemRefIdentifiers);
+    }
+}
@@ -0,0 +1,90 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.running;
+
+import uk.ac.ed.ph.jqtiplus.testutils.UnitTestHelper;
+import uk.ac.ed.ph.jqtiplus.types.Identifier;
+import uk.ac.ed.ph.jqtiplus.value.Value;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests {@link RandomSource}, and its use for seeding item processing
+ *
+ * @author David McKain
+ */
+public final class RandomSourceTest {
+
+    private static final Identifier X = Identifier.assumedLegal("X");
+
+    @Test
+    public void testSplitDeterministic() {
+        final RandomSource source1 = new RandomSource(42L);
+        final RandomSource source2 = new RandomSource(42L);
+        Assert.assertEquals(source1.split(3), source2.split(3));
+        Assert.assertEquals(source1.split("a").split(7), source2.split("a").split(7));
+        Assert.assertEquals(source1.createRandom().nextLong(), source2.createRandom().nextLong());
+    }
+
+    @Test
+    public void testSplitsDistinct() {
+        final RandomSource source = new RandomSource(42L);
+        final Set<Long> seeds = new HashSet<Long>();
+        seeds.add(Long.valueOf(source.getSeed()));
+        for (int i=0; i<1000; i++) {
+            seeds.add(Long.valueOf(source.split(i).getSeed()));
+            seeds.add(Long.valueOf(source.split("x" + i).getSeed()));
+        }
+        Assert.assertEquals(2001, seeds.size());
+    }
+
+    @Test
+    public void testSeededItemReproducible() {
+        final Date timestamp = new Date();
+        final Set<Value> values = new HashSet<Value>();
+        for (int i=0; i<5; i++) {
+            final ItemSessionController itemSessionController = UnitTestHelper.loadUnitTestAssessmentItemForControl("running/template-constraint.xml", true);
+            itemSessionController.setRandomSeed(Long.valueOf(1234L));
+            itemSessionController.initialize(timestamp);
+            itemSessionController.performTemplateProcessing(timestamp);
+            values.add(itemSessionController.getItemSessionState().getTemplateValue(X));
+        }
+        Assert.assertEquals(1, values.size());
+    }
+}
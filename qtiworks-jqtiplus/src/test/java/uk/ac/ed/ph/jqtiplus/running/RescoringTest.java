@@ -0,0 +1,145 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.running;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
+import uk.ac.ed.ph.jqtiplus.node.result.SessionStatus;
+import uk.ac.ed.ph.jqtiplus.resolution.ResolvedAssessmentItem;
+import uk.ac.ed.ph.jqtiplus.state.ItemProcessingMap;
+import uk.ac.ed.ph.jqtiplus.state.ItemSessionState;
+import uk.ac.ed.ph.jqtiplus.state.TestPlanNode;
+import uk.ac.ed.ph.jqtiplus.state.TestSessionState;
+import uk.ac.ed.ph.jqtiplus.testutils.UnitTestHelper;
+import uk.ac.ed.ph.jqtiplus.types.Identifier;
+import uk.ac.ed.ph.jqtiplus.types.ResponseData;
+import uk.ac.ed.ph.jqtiplus.types.StringResponseData;
+import uk.ac.ed.ph.jqtiplus.value.FloatValue;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link ItemSessionController#rescoreResponses()} and {@link TestSessionController#rescoreTest()}
+ *
+ * @author David McKain
+ */
+public final class RescoringTest {
+
+    private static final Identifier RESPONSE = Identifier.assumedLegal("RESPONSE");
+    private static final Identifier SCORE = Identifier.assumedLegal("SCORE");
+    private static final Identifier TEST_SCORE = Identifier.assumedLegal("TEST_SCORE");
+
+    private Date timestamp = new Date();
+
+    private Date nextTimestamp() {
+        timestamp = ObjectUtilities.addToTime(timestamp, 1000L);
+        return timestamp;
+    }
+
+    @Test
+    public void testRescoreRekeyedItem() {
+        final ItemSessionController itemSessionController = UnitTestHelper.loadUnitTestAssessmentItemForControl("running/choice.xml", true);
+        final ItemSessionState itemSessionState = itemSessionController.getItemSessionState();
+        itemSessionController.initialize(nextTimestamp());
+        itemSessionController.performTemplateProcessing(nextTimestamp());
+        itemSessionController.enterItem(nextTimestamp());
+        itemSessionController.bindResponses(nextTimestamp(), createChoiceResponseMap("ChoiceB"));
+        itemSessionController.commitResponses(nextTimestamp());
+        itemSessionController.performResponseProcessing(nextTimestamp());
+        itemSessionController.endItem(nextTimestamp());
+        assertEquals(new FloatValue(0.0), itemSessionState.getOutcomeValue(SCORE));
+        final double duration = itemSessionState.computeDuration();
+
+        /* Now rescore the same state against the fixed item */
+        final ItemSessionController rekeyedController = new ItemSessionController(UnitTestHelper.createJqtiExtensionManager(),
+                new ItemSessionControllerSettings(), createItemProcessingMap("running/choice-rekeyed.xml"), itemSessionState);
+        assertTrue(rekeyedController.rescoreResponses());
+        assertEquals(new FloatValue(1.0), itemSessionState.getOutcomeValue(SCORE));
+        assertEquals(1, itemSessionState.getNumAttempts());
+        assertEquals(SessionStatus.FINAL, itemSessionState.getSessionStatus());
+        assertTrue(itemSessionState.isEnded());
+        assertEquals(duration, itemSessionState.computeDuration(), 0.0);
+    }
+
+    @Test
+    public void testRescoreUnprocessedItem() {
+        final ItemSessionController itemSessionController = UnitTestHelper.loadUnitTestAssessmentItemForControl("running/choice.xml", true);
+        itemSessionController.initialize(nextTimestamp());
+        itemSessionController.performTemplateProcessing(nextTimestamp());
+        assertFalse(itemSessionController.rescoreResponses());
+        assertEquals(SessionStatus.INITIAL, itemSessionController.getItemSessionState().getSessionStatus());
+    }
+
+    @Test
+    public void testRescoreTest() {
+        final TestSessionController testSessionController = UnitTestHelper.loadUnitTestAssessmentTestForControl("running/simple-nonlinear-individual.xml", true);
+        final TestSessionState testSessionState = testSessionController.getTestSessionState();
+        testSessionController.initialize(nextTimestamp());
+        testSessionController.enterTest(nextTimestamp());
+        testSessionController.enterNextAvailableTestPart(nextTimestamp());
+        final TestPlanNode i1Node = testSessionState.getTestPlan().getNodes(Identifier.assumedLegal("i1")).get(0);
+        testSessionController.selectItemNonlinear(nextTimestamp(), i1Node.getKey());
+        testSessionController.handleResponsesToCurrentItem(nextTimestamp(), createChoiceResponseMap("ChoiceA"));
+        assertEquals(new FloatValue(1.0), testSessionState.getOutcomeValue(TEST_SCORE));
+
+        /* Tamper with the recorded scores, then check rescoring puts things right */
+        final ItemSessionState i1State = testSessionState.getItemSessionStates().get(i1Node.getKey());
+        i1State.setOutcomeValue(SCORE, new FloatValue(5.0));
+        testSessionState.setOutcomeValue(TEST_SCORE, new FloatValue(5.0));
+        final int numAttempts = i1State.getNumAttempts();
+
+        assertEquals(1, testSessionController.rescoreTest());
+        assertEquals(new FloatValue(1.0), i1State.getOutcomeValue(SCORE));
+        assertEquals(new FloatValue(1.0), testSessionState.getOutcomeValue(TEST_SCORE));
+        assertEquals(numAttempts, i1State.getNumAttempts());
+    }
+
+    private static Map<Identifier, ResponseData> createChoiceResponseMap(final String choiceIdentifier) {
+        final Map<Identifier, ResponseData> responseMap = new HashMap<Identifier, ResponseData>();
+        responseMap.put(RESPONSE, new StringResponseData(choiceIdentifier));
+        return responseMap;
+    }
+
+    private static ItemProcessingMap createItemProcessingMap(final String testFilePath) {
+        final ResolvedAssessmentItem resolvedAssessmentItem = UnitTestHelper.resolveUnitTestAssessmentItem(testFilePath);
+        return new ItemProcessingInitializer(resolvedAssessmentItem, true).initialize();
+    }
+}
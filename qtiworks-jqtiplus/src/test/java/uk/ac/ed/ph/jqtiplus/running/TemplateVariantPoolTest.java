@@ -0,0 +1,153 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.running;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import uk.ac.ed.ph.jqtiplus.resolution.ResolvedAssessmentItem;
+import uk.ac.ed.ph.jqtiplus.state.ItemProcessingMap;
+import uk.ac.ed.ph.jqtiplus.state.ItemSessionState;
+import uk.ac.ed.ph.jqtiplus.state.TemplateVariant;
+import uk.ac.ed.ph.jqtiplus.state.TemplateVariantPool;
+import uk.ac.ed.ph.jqtiplus.state.marshalling.TemplateVariantPoolXmlMarshaller;
+import uk.ac.ed.ph.jqtiplus.testutils.UnitTestHelper;
+import uk.ac.ed.ph.jqtiplus.types.Identifier;
+import uk.ac.ed.ph.jqtiplus.value.IntegerValue;
+import uk.ac.ed.ph.jqtiplus.value.Value;
+
+import java.util.Date;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link TemplateVariantGenerator} and use of the resulting {@link TemplateVariantPool}
+ * by the {@link ItemSessionController}
+ *
+ * @author David McKain
+ */
+public final class TemplateVariantPoolTest {
+
+    public static final String TEST_FILE_PATH = "running/template-constraint.xml";
+    public static final String CHOICE_FILE_PATH = "running/choice.xml";
+
+    private static final Identifier X = Identifier.assumedLegal("X");
+    private static final Identifier RESPONSE = Identifier.assumedLegal("RESPONSE");
+
+    private ItemProcessingMap itemProcessingMap;
+    private TemplateVariantGenerator templateVariantGenerator;
+
+    @Before
+    public void setup() {
+        itemProcessingMap = createItemProcessingMap(TEST_FILE_PATH);
+        templateVariantGenerator = new TemplateVariantGenerator(UnitTestHelper.createJqtiExtensionManager(),
+                new ItemSessionControllerSettings());
+    }
+
+    @Test
+    public void testIsPoolable() {
+        assertTrue(TemplateVariantGenerator.isPoolable(itemProcessingMap));
+        assertFalse(TemplateVariantGenerator.isPoolable(createItemProcessingMap(CHOICE_FILE_PATH)));
+    }
+
+    @Test
+    public void testGeneratedVariantsSatisfyConstraint() {
+        final TemplateVariantPool pool = templateVariantGenerator.generateTemplateVariantPool(itemProcessingMap, 20, Long.valueOf(42L));
+        assertNotNull(pool);
+        assertEquals(20, pool.size());
+        for (final TemplateVariant templateVariant : pool.getTemplateVariants()) {
+            final int x = ((IntegerValue) templateVariant.getTemplateValues().get(X)).intValue();
+            assertEquals(0, x % 2);
+            assertEquals(new IntegerValue(x), templateVariant.getOverriddenCorrectResponseValues().get(RESPONSE));
+        }
+    }
+
+    @Test
+    public void testFailedRunsDiscarded() {
+        /* With a limit of 1 run, odd values of X will fail the constraint and be discarded */
+        final ItemSessionControllerSettings itemSessionControllerSettings = new ItemSessionControllerSettings();
+        itemSessionControllerSettings.setTemplateProcessingLimit(1);
+        final TemplateVariantGenerator generator = new TemplateVariantGenerator(UnitTestHelper.createJqtiExtensionManager(),
+                itemSessionControllerSettings);
+        final TemplateVariantPool pool = generator.generateTemplateVariantPool(itemProcessingMap, 50, Long.valueOf(42L));
+        assertNotNull(pool);
+        assertTrue(pool.size() < 50);
+        for (final TemplateVariant templateVariant : pool.getTemplateVariants()) {
+            assertEquals(0, ((IntegerValue) templateVariant.getTemplateValues().get(X)).intValue() % 2);
+        }
+    }
+
+    @Test
+    public void testDrawFromPool() {
+        final TemplateVariantPool pool = templateVariantGenerator.generateTemplateVariantPool(itemProcessingMap, 10, Long.valueOf(42L));
+        final ItemSessionControllerSettings itemSessionControllerSettings = new ItemSessionControllerSettings();
+        itemSessionControllerSettings.setTemplateVariantPool(pool);
+        final ItemSessionController itemSessionController = UnitTestHelper.loadUnitTestAssessmentItemForControl(TEST_FILE_PATH,
+                true, itemSessionControllerSettings);
+        final Date timestamp = new Date();
+        itemSessionController.initialize(timestamp);
+        itemSessionController.performTemplateProcessing(timestamp);
+
+        final ItemSessionState itemSessionState = itemSessionController.getItemSessionState();
+        assertTrue(pool.getTemplateVariants().contains(TemplateVariant.fromItemSessionState(itemSessionState)));
+        final Value x = itemSessionState.getTemplateValue(X);
+        assertEquals(x, itemSessionState.getOverriddenCorrectResponseValue(RESPONSE));
+    }
+
+    @Test
+    public void testMarshalling() {
+        final TemplateVariantPool pool = templateVariantGenerator.generateTemplateVariantPool(itemProcessingMap, 5, null);
+        final TemplateVariantPool unmarshalled = TemplateVariantPoolXmlMarshaller.unmarshal(
+                TemplateVariantPoolXmlMarshaller.marshal(pool).getDocumentElement());
+        assertEquals(pool, unmarshalled);
+    }
+
+    @Test
+    public void testNoVariants() {
+        final ItemSessionControllerSettings itemSessionControllerSettings = new ItemSessionControllerSettings();
+        itemSessionControllerSettings.setTemplateProcessingLimit(0);
+        final TemplateVariantGenerator generator = new TemplateVariantGenerator(UnitTestHelper.createJqtiExtensionManager(),
+                itemSessionControllerSettings);
+        assertNull(generator.generateTemplateVariantPool(itemProcessingMap, 5, null));
+    }
+
+    private static ItemProcessingMap createItemProcessingMap(final String testFilePath) {
+        final ResolvedAssessmentItem resolvedAssessmentItem = UnitTestHelper.resolveUnitTestAssessmentItem(testFilePath);
+        return new ItemProcessingInitializer(resolvedAssessmentItem, true).initialize();
+    }
+}
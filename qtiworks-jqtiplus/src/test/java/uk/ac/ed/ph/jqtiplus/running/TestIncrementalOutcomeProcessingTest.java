@@ -0,0 +1,151 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.running;
+
+import uk.ac.ed.ph.jqtiplus.node.shared.VariableDeclaration;
+import uk.ac.ed.ph.jqtiplus.node.shared.VariableType;
+import uk.ac.ed.ph.jqtiplus.state.OutcomeRuleDependencies;
+import uk.ac.ed.ph.jqtiplus.state.TestPlanNode;
+import uk.ac.ed.ph.jqtiplus.testutils.UnitTestHelper;
+import uk.ac.ed.ph.jqtiplus.types.Identifier;
+import uk.ac.ed.ph.jqtiplus.value.BooleanValue;
+import uk.ac.ed.ph.jqtiplus.value.FloatValue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests incremental outcome processing, driven by the items changed since outcome
+ * processing was last performed.
+ *
+ * @see OutcomeRuleDependencies
+ *
+ * @author David McKain
+ */
+public final class TestIncrementalOutcomeProcessingTest extends SimpleProcessingTestBase {
+
+    public static final Identifier SCORE = Identifier.assumedLegal("SCORE");
+    public static final Identifier I2_SCORE = Identifier.assumedLegal("I2_SCORE");
+    public static final Identifier PASSED = Identifier.assumedLegal("PASSED");
+
+    @Override
+    protected String getTestFilePath() {
+        return "running/test-incremental-outcome-processing.xml";
+    }
+
+    //-------------------------------------------------------
+
+    @Test
+    public void testOutcomeRuleDependencies() {
+        final List<OutcomeRuleDependencies> dependencies = testSessionController.getTestProcessingMap().getOutcomeRuleDependencies();
+        Assert.assertNotNull(dependencies);
+        Assert.assertEquals(4, dependencies.size());
+
+        Assert.assertEquals(Collections.emptySet(), dependencies.get(0).getItemRefIdentifiers());
+        Assert.assertEquals(Collections.singleton(TEST_OP_DONE), dependencies.get(0).getWrittenOutcomeIdentifiers());
+
+        Assert.assertEquals(Collections.singleton(Identifier.assumedLegal("i2")), dependencies.get(1).getItemRefIdentifiers());
+
+        Assert.assertEquals(new HashSet<Identifier>(Arrays.asList(Identifier.assumedLegal("i1"), Identifier.assumedLegal("i2"))),
+                dependencies.get(2).getItemRefIdentifiers());
+
+        Assert.assertEquals(Collections.emptySet(), dependencies.get(3).getItemRefIdentifiers());
+        Assert.assertEquals(Collections.singleton(TEST_SCORE), dependencies.get(3).getReadOutcomeIdentifiers());
+
+        for (final OutcomeRuleDependencies ruleDependencies : dependencies) {
+            Assert.assertFalse(ruleDependencies.isAlwaysEvaluate());
+        }
+    }
+
+    @Test
+    public void testNoOutcomeProcessing() {
+        final TestSessionController controller = UnitTestHelper.loadUnitTestAssessmentTestForControl("running/test-item-subset.xml", true);
+        Assert.assertNull(controller.getTestProcessingMap().getOutcomeRuleDependencies());
+    }
+
+    @Test
+    public void testRespondItem1ThenItem2() {
+        testSessionController.enterTest(testEntryTimestamp);
+        testSessionController.enterNextAvailableTestPart(testPartEntryTimestamp);
+        Assert.assertFalse(testSessionState.isOutcomeProcessingPerformed());
+
+        /* Answer item 1 correctly. This will be a full run */
+        testSessionController.selectItemNonlinear(operationTimestamp, getTestNodeKey("i1"));
+        handleChoiceResponse("ChoiceA");
+        assertOutcomeProcessingRun();
+        Assert.assertTrue(testSessionState.isOutcomeProcessingPerformed());
+        Assert.assertTrue(testSessionState.getDirtyItemKeys().isEmpty());
+        assertTestScore(1.0);
+        Assert.assertEquals(FloatValue.ZERO, testSessionState.getOutcomeValue(I2_SCORE));
+        Assert.assertEquals(BooleanValue.FALSE, testSessionState.getOutcomeValue(PASSED));
+
+        /* Select item 2, which will be recorded as changed */
+        testSessionController.selectItemNonlinear(operationTimestamp, getTestNodeKey("i2"));
+        Assert.assertTrue(testSessionState.getDirtyItemKeys().contains(getTestNodeKey("i2")));
+
+        /* Answer it correctly. This will be an incremental run, with the change to TEST_SCORE
+         * propagating through to PASSED */
+        handleChoiceResponse("ChoiceA");
+        assertOutcomeProcessingRun();
+        Assert.assertTrue(testSessionState.getDirtyItemKeys().isEmpty());
+        assertTestScore(2.0);
+        Assert.assertEquals(new FloatValue(1.0), testSessionState.getOutcomeValue(I2_SCORE));
+        Assert.assertEquals(BooleanValue.TRUE, testSessionState.getOutcomeValue(PASSED));
+    }
+
+    @Test
+    public void testChangeThroughItemSessionController() {
+        testSessionController.enterTest(testEntryTimestamp);
+        testSessionController.enterNextAvailableTestPart(testPartEntryTimestamp);
+
+        /* Answer item 1 correctly, which performs a full run */
+        testSessionController.selectItemNonlinear(operationTimestamp, getTestNodeKey("i1"));
+        handleChoiceResponse("ChoiceA");
+        assertOutcomeProcessingRun();
+        Assert.assertTrue(testSessionState.getDirtyItemKeys().isEmpty());
+        Assert.assertEquals(FloatValue.ZERO, testSessionState.getOutcomeValue(I2_SCORE));
+
+        /* Change item 2 through its controller, which must be recorded for the next incremental run */
+        final TestPlanNode item2RefNode = testSessionState.getTestPlan().getNode(getTestNodeKey("i2"));
+        final ItemSessionController item2SessionController = testSessionController.getItemSessionController(item2RefNode);
+        final VariableDeclaration scoreDeclaration = item2SessionController.ensureVariableDeclaration(SCORE, VariableType.OUTCOME);
+        item2SessionController.setVariableValue(scoreDeclaration, new FloatValue(1.0));
+        Assert.assertEquals(Collections.singleton(getTestNodeKey("i2")), testSessionState.getDirtyItemKeys());
+    }
+}
@@ -0,0 +1,160 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.running;
+
+import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
+import uk.ac.ed.ph.jqtiplus.state.ItemSessionState;
+import uk.ac.ed.ph.jqtiplus.state.TestPlanNode;
+import uk.ac.ed.ph.jqtiplus.state.TestPlanNode.TestNodeType;
+import uk.ac.ed.ph.jqtiplus.state.TestSessionState;
+import uk.ac.ed.ph.jqtiplus.state.marshalling.TestSessionStateXmlMarshaller;
+import uk.ac.ed.ph.jqtiplus.testutils.UnitTestHelper;
+import uk.ac.ed.ph.jqtiplus.types.Identifier;
+import uk.ac.ed.ph.jqtiplus.types.ResponseData;
+import uk.ac.ed.ph.jqtiplus.types.StringResponseData;
+import uk.ac.ed.ph.jqtiplus.value.BooleanValue;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+/**
+ * Tests {@link TestSessionControllerSettings#isLazyItemSessionInitialization()}
+ *
+ * @author David McKain
+ */
+public final class TestLazyItemSessionTest {
+
+    private Date timestamp = new Date();
+
+    private static TestSessionController createController(final String testFilePath, final boolean lazy) {
+        final TestSessionControllerSettings testSessionControllerSettings = new TestSessionControllerSettings();
+        testSessionControllerSettings.setLazyItemSessionInitialization(lazy);
+        return UnitTestHelper.loadUnitTestAssessmentTestForControl(testFilePath, true, testSessionControllerSettings);
+    }
+
+    private Date nextTimestamp() {
+        timestamp = ObjectUtilities.addToTime(timestamp, 1000L);
+        return timestamp;
+    }
+
+    @Test
+    public void testDeferredUntilUsed() {
+        final TestSessionController testSessionController = createController("running/simple-nonlinear-individual.xml", true);
+        final TestSessionState testSessionState = testSessionController.getTestSessionState();
+        testSessionController.initialize(nextTimestamp());
+        final TestPlanNode i1Node = testSessionState.getTestPlan().getNodes(Identifier.assumedLegal("i1")).get(0);
+        final TestPlanNode i2Node = testSessionState.getTestPlan().getNodes(Identifier.assumedLegal("i2")).get(0);
+        final ItemSessionState i1State = testSessionState.getItemSessionStates().get(i1Node.getKey());
+        final ItemSessionState i2State = testSessionState.getItemSessionStates().get(i2Node.getKey());
+        Assert.assertFalse(i1State.isInitialized());
+        Assert.assertFalse(i2State.isInitialized());
+
+        /* Entering the testPart defers template processing */
+        testSessionController.enterTest(nextTimestamp());
+        testSessionController.enterNextAvailableTestPart(nextTimestamp());
+        Assert.assertEquals(2, testSessionState.getPendingTemplateProcessingKeys().size());
+        Assert.assertFalse(i1State.isInitialized());
+
+        /* Selecting i1 brings it into being, but leaves i2 alone */
+        testSessionController.selectItemNonlinear(nextTimestamp(), i1Node.getKey());
+        Assert.assertTrue(i1State.isInitialized());
+        Assert.assertEquals(BooleanValue.TRUE, i1State.getTemplateValue(TestTestBase.CHOICE_ITEM_TP_DONE));
+        Assert.assertTrue(i1State.isEntered());
+        Assert.assertFalse(i2State.isInitialized());
+
+        /* Responding to i1 runs outcome processing, which uses i2 */
+        handleChoiceResponse(testSessionController, "ChoiceA");
+        Assert.assertTrue(i2State.isInitialized());
+        Assert.assertEquals(BooleanValue.TRUE, i2State.getTemplateValue(TestTestBase.CHOICE_ITEM_TP_DONE));
+        Assert.assertFalse(i2State.isEntered());
+        Assert.assertTrue(testSessionState.getPendingTemplateProcessingKeys().isEmpty());
+
+        /* Check marshalling of deferred state */
+        final Document document = TestSessionStateXmlMarshaller.marshal(testSessionState);
+        Assert.assertEquals(testSessionState, TestSessionStateXmlMarshaller.unmarshal(document.getDocumentElement()));
+    }
+
+    @Test
+    public void testLinearPreConditionSameAsEager() {
+        assertLinearSameAsEager("running/test-linear-preCondition.xml");
+    }
+
+    @Test
+    public void testLinearBranchRuleSameAsEager() {
+        assertLinearSameAsEager("running/test-linear-branchRule.xml");
+    }
+
+    private void assertLinearSameAsEager(final String testFilePath) {
+        final TestSessionState eagerState = runLinearTest(testFilePath, false);
+        final TestSessionState lazyState = runLinearTest(testFilePath, true);
+        Assert.assertTrue(lazyState.getPendingTemplateProcessingKeys().isEmpty());
+        Assert.assertEquals(eagerState.getOutcomeValues(), lazyState.getOutcomeValues());
+        Assert.assertEquals(eagerState.getTestPartSessionStates(), lazyState.getTestPartSessionStates());
+        Assert.assertEquals(eagerState.getAssessmentSectionSessionStates(), lazyState.getAssessmentSectionSessionStates());
+        Assert.assertEquals(eagerState.getItemSessionStates(), lazyState.getItemSessionStates());
+    }
+
+    private TestSessionState runLinearTest(final String testFilePath, final boolean lazy) {
+        timestamp = new Date(0L);
+        final TestSessionController testSessionController = createController(testFilePath, lazy);
+        final TestSessionState testSessionState = testSessionController.getTestSessionState();
+        testSessionController.initialize(nextTimestamp());
+        testSessionController.enterTest(nextTimestamp());
+        while (testSessionController.enterNextAvailableTestPart(nextTimestamp())!=null) {
+            while (testSessionState.getCurrentItemKey()!=null) {
+                handleChoiceResponse(testSessionController, "ChoiceA");
+                testSessionController.advanceItemLinear(nextTimestamp());
+            }
+        }
+        testSessionController.exitTest(nextTimestamp());
+
+        /* Computing the result will use every item */
+        testSessionController.computeAssessmentResult(nextTimestamp(), null, null);
+        for (final TestPlanNode itemRefNode : testSessionState.getTestPlan().searchNodes(TestNodeType.ASSESSMENT_ITEM_REF)) {
+            Assert.assertTrue(testSessionState.getItemSessionStates().get(itemRefNode.getKey()).isInitialized());
+        }
+        return testSessionState;
+    }
+
+    private void handleChoiceResponse(final TestSessionController testSessionController, final String choiceIdentifier) {
+        final Map<Identifier, ResponseData> responseMap = new HashMap<Identifier, ResponseData>();
+        responseMap.put(TestTestBase.CHOICE_ITEM_RESPONSE, new StringResponseData(choiceIdentifier));
+        testSessionController.handleResponsesToCurrentItem(nextTimestamp(), responseMap);
+    }
+}
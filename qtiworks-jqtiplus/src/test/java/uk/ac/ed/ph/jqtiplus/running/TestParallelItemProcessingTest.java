@@ -0,0 +1,115 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.running;
+
+import uk.ac.ed.ph.jqtiplus.state.ItemSessionState;
+import uk.ac.ed.ph.jqtiplus.state.TestPlanNode;
+import uk.ac.ed.ph.jqtiplus.state.TestPlanNode.TestNodeType;
+import uk.ac.ed.ph.jqtiplus.state.TestSessionState;
+import uk.ac.ed.ph.jqtiplus.testutils.UnitTestHelper;
+import uk.ac.ed.ph.jqtiplus.types.Identifier;
+import uk.ac.ed.ph.jqtiplus.value.Value;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link TestProcessingController#setItemProcessingExecutor(java.util.concurrent.Executor)}
+ *
+ * @author David McKain
+ */
+public final class TestParallelItemProcessingTest {
+
+    private static final String TEST_FILE_PATH = "running/test-parallel-template-processing.xml";
+    private static final Identifier X = Identifier.assumedLegal("X");
+    private static final Long RANDOM_SEED = Long.valueOf(1234L);
+
+    private ExecutorService executorService;
+
+    @Before
+    public void createExecutor() {
+        executorService = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void shutdownExecutor() {
+        executorService.shutdownNow();
+    }
+
+    private TestSessionState runTestEntry(final boolean parallel) {
+        final TestSessionController testSessionController = UnitTestHelper.loadUnitTestAssessmentTestForControl(TEST_FILE_PATH, true);
+        testSessionController.setRandomSeed(RANDOM_SEED);
+        if (parallel) {
+            testSessionController.setItemProcessingExecutor(executorService);
+        }
+        final Date timestamp = new Date(1000000L);
+        testSessionController.initialize(timestamp);
+        testSessionController.enterTest(timestamp);
+        testSessionController.enterNextAvailableTestPart(timestamp);
+        return testSessionController.getTestSessionState();
+    }
+
+    @Test
+    public void testParallelMatchesSerial() {
+        final TestSessionState serialState = runTestEntry(false);
+        final TestSessionState parallelState = runTestEntry(true);
+        /* (Test plans are created with different planner seeds, so compare item states only) */
+        Assert.assertEquals(serialState.getItemSessionStates(), parallelState.getItemSessionStates());
+        for (final ItemSessionState itemSessionState : parallelState.getItemSessionStates().values()) {
+            Assert.assertTrue(itemSessionState.isInitialized());
+        }
+    }
+
+    @Test
+    public void testItemSeedsDiffer() {
+        final TestSessionState testSessionState = runTestEntry(true);
+        final Set<Value> xValues = new HashSet<Value>();
+        for (final TestPlanNode itemRefNode : testSessionState.getTestPlan().searchNodes(TestNodeType.ASSESSMENT_ITEM_REF)) {
+            final Value xValue = testSessionState.getItemSessionStates().get(itemRefNode.getKey()).getTemplateValue(X);
+            if (xValue!=null) {
+                xValues.add(xValue);
+            }
+        }
+        /* (Each instance of the templated item gets its own seed, so they shouldn't all be the same) */
+        Assert.assertTrue(xValues.size() > 1);
+    }
+}
@@ -0,0 +1,176 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.running;
+
+import uk.ac.ed.ph.jqtiplus.state.EffectiveItemSessionControl;
+import uk.ac.ed.ph.jqtiplus.state.TestPlan;
+import uk.ac.ed.ph.jqtiplus.state.TestPlanNode;
+import uk.ac.ed.ph.jqtiplus.state.TestPlanNode.TestNodeType;
+import uk.ac.ed.ph.jqtiplus.state.TestPlanNodeKey;
+import uk.ac.ed.ph.jqtiplus.state.TestProcessingMap;
+import uk.ac.ed.ph.jqtiplus.state.TestSessionState;
+import uk.ac.ed.ph.jqtiplus.state.marshalling.TestSessionStateXmlMarshaller;
+import uk.ac.ed.ph.jqtiplus.state.marshalling.XmlUnmarshallingException;
+import uk.ac.ed.ph.jqtiplus.testutils.UnitTestHelper;
+import uk.ac.ed.ph.jqtiplus.types.Identifier;
+
+import java.net.URI;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+/**
+ * Tests sharing of invariant {@link TestPlan}s and regeneration of randomised
+ * {@link TestPlan}s from their planner seeds.
+ *
+ * @author David McKain
+ */
+public final class TestPlanRegenerationTest {
+
+    private static TestProcessingMap loadTestProcessingMap(final String testFilePath) {
+        return UnitTestHelper.loadUnitTestAssessmentTestForControl(testFilePath, true).getTestProcessingMap();
+    }
+
+    @Test
+    public void testInvariantPlanShared() {
+        final TestProcessingMap testProcessingMap = loadTestProcessingMap("running/simple-nonlinear-individual.xml");
+        Assert.assertTrue(testProcessingMap.isTestPlanInvariant());
+
+        final TestPlan testPlan = testProcessingMap.getInvariantTestPlan();
+        Assert.assertNotNull(testPlan);
+        Assert.assertSame(testPlan, testProcessingMap.getInvariantTestPlan());
+        Assert.assertEquals(testPlan.debugStructure(), new TestPlanner(testProcessingMap).generateTestPlan().debugStructure());
+    }
+
+    @Test
+    public void testRandomisedPlanNotShared() {
+        final TestProcessingMap testProcessingMap = loadTestProcessingMap("running/test-randomised-test-plan.xml");
+        Assert.assertFalse(testProcessingMap.isTestPlanInvariant());
+        Assert.assertNull(testProcessingMap.getInvariantTestPlan());
+    }
+
+    @Test
+    public void testSameSeedSamePlan() {
+        final TestProcessingMap testProcessingMap = loadTestProcessingMap("running/test-randomised-test-plan.xml");
+        for (long seed=0; seed<20; seed++) {
+            final TestPlan testPlan1 = new TestPlanner(testProcessingMap, seed).generateTestPlan();
+            final TestPlan testPlan2 = new TestPlanner(testProcessingMap, seed).generateTestPlan();
+            Assert.assertEquals(Long.valueOf(seed), testPlan1.getPlannerSeed());
+            Assert.assertEquals(testPlan1, testPlan2);
+            Assert.assertEquals(testPlan1.computePlanHash(), testPlan2.computePlanHash());
+        }
+    }
+
+    @Test
+    public void testReferenceRoundTripInvariant() {
+        final TestProcessingMap testProcessingMap = loadTestProcessingMap("running/simple-nonlinear-individual.xml");
+        final TestSessionState testSessionState = new TestSessionState(testProcessingMap.getInvariantTestPlan());
+
+        final Document document = TestSessionStateXmlMarshaller.marshal(testSessionState, false);
+        final TestSessionState unmarshalled = TestSessionStateXmlMarshaller.unmarshal(document.getDocumentElement(), testProcessingMap);
+        Assert.assertEquals(testSessionState, unmarshalled);
+    }
+
+    @Test
+    public void testReferenceRoundTripRandomised() {
+        final TestProcessingMap testProcessingMap = loadTestProcessingMap("running/test-randomised-test-plan.xml");
+        final TestSessionState testSessionState = new TestSessionState(new TestPlanner(testProcessingMap, 42L).generateTestPlan());
+
+        final Document document = TestSessionStateXmlMarshaller.marshal(testSessionState, false);
+        final TestSessionState unmarshalled = TestSessionStateXmlMarshaller.unmarshal(document.getDocumentElement(), testProcessingMap);
+        Assert.assertEquals(testSessionState, unmarshalled);
+    }
+
+    @Test
+    public void testReferenceTestSource() {
+        final TestProcessingMap testProcessingMap = loadTestProcessingMap("running/simple-nonlinear-individual.xml");
+        final TestSessionState testSessionState = new TestSessionState(testProcessingMap.getInvariantTestPlan());
+
+        final Document referenceDocument = TestSessionStateXmlMarshaller.marshal(testSessionState, false, "42");
+        Assert.assertEquals("42", TestSessionStateXmlMarshaller.extractTestPlanReferenceSource(referenceDocument.getDocumentElement()));
+        Assert.assertEquals(testSessionState, TestSessionStateXmlMarshaller.unmarshal(referenceDocument.getDocumentElement(), testProcessingMap));
+
+        final Document embeddedDocument = TestSessionStateXmlMarshaller.marshal(testSessionState, true, "42");
+        Assert.assertNull(TestSessionStateXmlMarshaller.extractTestPlanReferenceSource(embeddedDocument.getDocumentElement()));
+    }
+
+    @Test
+    public void testPlanHashCoversNodeDetails() {
+        final TestPlan testPlan = createItemTestPlan("Title", URI.create("urn:item"), EffectiveItemSessionControl.createDefault());
+        final String planHash = testPlan.computePlanHash();
+        Assert.assertEquals(planHash, createItemTestPlan("Title", URI.create("urn:item"), EffectiveItemSessionControl.createDefault()).computePlanHash());
+
+        final EffectiveItemSessionControl changedItemSessionControl = new EffectiveItemSessionControl(5, true, true, false, false, true, false);
+        final TestPlan[] changedPlans = new TestPlan[] {
+                createItemTestPlan("Changed", URI.create("urn:item"), EffectiveItemSessionControl.createDefault()),
+                createItemTestPlan("Title", URI.create("urn:changed"), EffectiveItemSessionControl.createDefault()),
+                createItemTestPlan("Title", URI.create("urn:item"), changedItemSessionControl)
+        };
+        for (final TestPlan changedPlan : changedPlans) {
+            Assert.assertEquals(testPlan.debugStructure(), changedPlan.debugStructure());
+            Assert.assertFalse(planHash.equals(changedPlan.computePlanHash()));
+        }
+    }
+
+    @Test(expected=XmlUnmarshallingException.class)
+    public void testReferenceToDifferentTest() {
+        final TestProcessingMap testProcessingMap = loadTestProcessingMap("running/test-randomised-test-plan.xml");
+        final TestSessionState testSessionState = new TestSessionState(new TestPlanner(testProcessingMap, 42L).generateTestPlan());
+
+        final Document document = TestSessionStateXmlMarshaller.marshal(testSessionState, false);
+        TestSessionStateXmlMarshaller.unmarshal(document.getDocumentElement(), loadTestProcessingMap("running/simple-nonlinear-individual.xml"));
+    }
+
+    @Test(expected=XmlUnmarshallingException.class)
+    public void testReferenceWithoutMap() {
+        final TestProcessingMap testProcessingMap = loadTestProcessingMap("running/simple-nonlinear-individual.xml");
+        final TestSessionState testSessionState = new TestSessionState(testProcessingMap.getInvariantTestPlan());
+
+        final Document document = TestSessionStateXmlMarshaller.marshal(testSessionState, false);
+        TestSessionStateXmlMarshaller.unmarshal(document.getDocumentElement());
+    }
+
+    private static TestPlan createItemTestPlan(final String itemTitle, final URI itemSystemId,
+            final EffectiveItemSessionControl itemSessionControl) {
+        final TestPlanNode rootNode = TestPlanNode.createRoot();
+        final TestPlanNode testPartNode = new TestPlanNode(TestNodeType.TEST_PART,
+                new TestPlanNodeKey(Identifier.assumedLegal("P"), 0, 1), EffectiveItemSessionControl.createDefault());
+        final TestPlanNode itemRefNode = new TestPlanNode(TestNodeType.ASSESSMENT_ITEM_REF,
+                new TestPlanNodeKey(Identifier.assumedLegal("I"), 1, 1), itemSessionControl, itemTitle, itemSystemId);
+        rootNode.addChild(testPartNode);
+        testPartNode.addChild(itemRefNode);
+        return new TestPlan(rootNode);
+    }
+}
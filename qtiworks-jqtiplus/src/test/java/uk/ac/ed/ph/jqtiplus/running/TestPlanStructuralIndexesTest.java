@@ -0,0 +1,102 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.running;
+
+import uk.ac.ed.ph.jqtiplus.state.TestPlan;
+import uk.ac.ed.ph.jqtiplus.state.TestPlanNode;
+import uk.ac.ed.ph.jqtiplus.state.TestPlanNode.TestNodeType;
+import uk.ac.ed.ph.jqtiplus.testutils.UnitTestHelper;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Checks the precomputed structural indexes in {@link TestPlan} against the results
+ * of the equivalent searches on the {@link TestPlanNode} tree.
+ *
+ * @author David McKain
+ */
+@RunWith(Parameterized.class)
+public final class TestPlanStructuralIndexesTest {
+
+    @Parameters
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][] {
+                { "running/test-linear-preCondition.xml" },
+                { "running/test-linear-branchRule.xml" },
+                { "running/test-nonlinear.xml" },
+                { "running/test-item-subset.xml" },
+        });
+    }
+
+    private final TestPlan testPlan;
+
+    public TestPlanStructuralIndexesTest(final String testFilePath) {
+        this.testPlan = UnitTestHelper.loadUnitTestAssessmentTestForControl(testFilePath, true)
+                .getTestSessionState().getTestPlan();
+    }
+
+    @Test
+    public void testGlobalIndexes() {
+        final List<TestPlanNode> testPlanNodeList = testPlan.getTestPlanNodeList();
+        for (int i=0; i<testPlanNodeList.size(); i++) {
+            Assert.assertEquals(i, testPlan.getGlobalIndex(testPlanNodeList.get(i)));
+        }
+    }
+
+    @Test
+    public void testTestPartIndexes() {
+        for (final TestPlanNode testPartNode : testPlan.getTestPartNodes()) {
+            Assert.assertEquals(testPartNode.searchDescendants(TestNodeType.ASSESSMENT_ITEM_REF), testPlan.getItemRefNodes(testPartNode));
+            Assert.assertEquals(testPartNode.searchDescendants(TestNodeType.ASSESSMENT_SECTION), testPlan.getSectionNodes(testPartNode));
+        }
+        Assert.assertEquals(testPlan.getTestPlanRootNode().searchDescendants(TestNodeType.ASSESSMENT_ITEM_REF),
+                testPlan.searchNodes(TestNodeType.ASSESSMENT_ITEM_REF));
+    }
+
+    @Test
+    public void testEnclosingNodes() {
+        for (final TestPlanNode testPlanNode : testPlan.getTestPlanNodeList()) {
+            Assert.assertEquals(testPlanNode.searchAncestors(TestNodeType.ASSESSMENT_SECTION), testPlan.getEnclosingSectionNodes(testPlanNode));
+            Assert.assertEquals(testPlanNode.searchEnclosingTestPartNode(), testPlan.getEnclosingTestPartNode(testPlanNode));
+        }
+    }
+}
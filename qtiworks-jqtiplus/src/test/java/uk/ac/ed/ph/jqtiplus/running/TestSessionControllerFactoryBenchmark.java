@@ -0,0 +1,118 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.running;
+
+import uk.ac.ed.ph.jqtiplus.JqtiExtensionManager;
+import uk.ac.ed.ph.jqtiplus.state.TestPlanNode;
+import uk.ac.ed.ph.jqtiplus.state.TestPlanNode.TestNodeType;
+import uk.ac.ed.ph.jqtiplus.state.TestProcessingMap;
+import uk.ac.ed.ph.jqtiplus.state.TestSessionState;
+import uk.ac.ed.ph.jqtiplus.testutils.UnitTestHelper;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Crude microbenchmark comparing the cost of creating a {@link TestSessionController} (and the
+ * {@link ItemSessionController}s for each item) from scratch with creating it via a reused
+ * {@link TestSessionControllerFactory}, as happens for each candidate request.
+ * <p>
+ * This is not run as part of the unit tests. Run it manually via its <code>main()</code> method.
+ *
+ * @author David McKain
+ */
+public final class TestSessionControllerFactoryBenchmark {
+
+    private static final String TEST_FILE_PATH = "running/test-parallel-template-processing.xml";
+
+    private static final int CONSTRUCTIONS = 200000;
+
+    private static final int ROUNDS = 5;
+
+    public static void main(final String[] args) {
+        /* Set up an initialized session to bind controllers to */
+        final TestSessionController setupController = UnitTestHelper.loadUnitTestAssessmentTestForControl(TEST_FILE_PATH, true);
+        final Date timestamp = new Date();
+        setupController.initialize(timestamp);
+        setupController.enterTest(timestamp);
+        setupController.enterNextAvailableTestPart(timestamp);
+
+        final JqtiExtensionManager jqtiExtensionManager = setupController.getJqtiExtensionManager();
+        final TestSessionControllerSettings testSessionControllerSettings = setupController.getTestSessionControllerSettings();
+        final TestProcessingMap testProcessingMap = setupController.getTestProcessingMap();
+        final TestSessionState testSessionState = setupController.getTestSessionState();
+        final List<TestPlanNode> itemRefNodes = testSessionState.getTestPlan().searchNodes(TestNodeType.ASSESSMENT_ITEM_REF);
+        final TestSessionControllerFactory factory = new TestSessionControllerFactory(jqtiExtensionManager,
+                testSessionControllerSettings, testProcessingMap);
+
+        System.out.println("direct(ns/op)\tfactory(ns/op)");
+        for (int round=0; round<ROUNDS; round++) {
+            final boolean report = round==ROUNDS-1; /* Earlier rounds are warm-up */
+
+            int hits = 0;
+            long start = System.nanoTime();
+            for (int i=0; i<CONSTRUCTIONS; i++) {
+                final TestSessionController controller = new TestSessionController(jqtiExtensionManager,
+                        testSessionControllerSettings, testProcessingMap, testSessionState);
+                hits += touchItems(controller, itemRefNodes);
+            }
+            final double direct = (double) (System.nanoTime() - start) / CONSTRUCTIONS;
+
+            start = System.nanoTime();
+            for (int i=0; i<CONSTRUCTIONS; i++) {
+                final TestSessionController controller = factory.createTestSessionController(testSessionState);
+                hits += touchItems(controller, itemRefNodes);
+            }
+            final double factoried = (double) (System.nanoTime() - start) / CONSTRUCTIONS;
+
+            if (report) {
+                System.out.printf("%.1f\t%.1f%n", direct, factoried);
+            }
+            if (hits < 0) {
+                /* (Stop the JIT optimising the loops away) */
+                System.out.println(hits);
+            }
+        }
+    }
+
+    private static int touchItems(final TestSessionController controller, final List<TestPlanNode> itemRefNodes) {
+        int hits = 0;
+        for (final TestPlanNode itemRefNode : itemRefNodes) {
+            if (controller.getItemSessionController(itemRefNode)!=null) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,89 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.running;
+
+import uk.ac.ed.ph.jqtiplus.state.TestPlanNode;
+import uk.ac.ed.ph.jqtiplus.state.TestPlanNode.TestNodeType;
+import uk.ac.ed.ph.jqtiplus.state.TestSessionState;
+import uk.ac.ed.ph.jqtiplus.testutils.UnitTestHelper;
+
+import java.util.Date;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests {@link TestSessionControllerFactory}
+ *
+ * @author David McKain
+ */
+public final class TestSessionControllerFactoryTest {
+
+    private static final String TEST_FILE_PATH = "running/test-parallel-template-processing.xml";
+
+    @Test
+    public void testFactoryControllersMatchDirect() {
+        final TestSessionController directController = UnitTestHelper.loadUnitTestAssessmentTestForControl(TEST_FILE_PATH, true);
+        final TestSessionControllerFactory factory = new TestSessionControllerFactory(directController.getJqtiExtensionManager(),
+                directController.getTestSessionControllerSettings(), directController.getTestProcessingMap());
+
+        /* Run two sessions through the factory, seeded as per the original */
+        final Date timestamp = new Date();
+        final TestSessionState directState = runTestEntry(directController, timestamp);
+        final TestSessionState factoryState1 = runTestEntry(factory.createTestSessionController(new TestSessionState(directState.getTestPlan())), timestamp);
+        final TestSessionState factoryState2 = runTestEntry(factory.createTestSessionController(new TestSessionState(directState.getTestPlan())), timestamp);
+        Assert.assertEquals(directState, factoryState1);
+        Assert.assertEquals(directState, factoryState2);
+        Assert.assertNotSame(factoryState1, factoryState2);
+
+        /* Make sure item settings are wired up as before */
+        final TestSessionController factoryController = factory.createTestSessionController(factoryState1);
+        for (final TestPlanNode itemRefNode : directState.getTestPlan().searchNodes(TestNodeType.ASSESSMENT_ITEM_REF)) {
+            final ItemSessionControllerSettings directSettings = directController.getItemSessionController(itemRefNode).getItemSessionControllerSettings();
+            final ItemSessionControllerSettings factorySettings = factoryController.getItemSessionController(itemRefNode).getItemSessionControllerSettings();
+            Assert.assertEquals(directSettings.getMaxAttempts(), factorySettings.getMaxAttempts());
+            Assert.assertEquals(directSettings.getTemplateProcessingLimit(), factorySettings.getTemplateProcessingLimit());
+            Assert.assertEquals(directSettings.getEvaluationStepLimit(), factorySettings.getEvaluationStepLimit());
+            Assert.assertSame(directSettings.getTemplateVariantPool(), factorySettings.getTemplateVariantPool());
+        }
+    }
+
+    private TestSessionState runTestEntry(final TestSessionController testSessionController, final Date timestamp) {
+        testSessionController.setRandomSeed(Long.valueOf(5678L));
+        testSessionController.initialize(timestamp);
+        testSessionController.enterTest(timestamp);
+        testSessionController.enterNextAvailableTestPart(timestamp);
+        return testSessionController.getTestSessionState();
+    }
+}
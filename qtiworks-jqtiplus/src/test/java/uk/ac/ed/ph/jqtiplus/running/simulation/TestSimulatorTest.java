@@ -0,0 +1,135 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.running.simulation;
+
+import static org.junit.Assert.assertEquals;
+
+import uk.ac.ed.ph.jqtiplus.reading.ModelLoadingProfile;
+import uk.ac.ed.ph.jqtiplus.resolution.ResolvedAssessmentTest;
+import uk.ac.ed.ph.jqtiplus.running.TestProcessingInitializer;
+import uk.ac.ed.ph.jqtiplus.state.TestProcessingMap;
+import uk.ac.ed.ph.jqtiplus.testutils.UnitTestHelper;
+import uk.ac.ed.ph.jqtiplus.types.Identifier;
+import uk.ac.ed.ph.jqtiplus.types.ResponseData;
+import uk.ac.ed.ph.jqtiplus.types.StringResponseData;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link TestSimulator}
+ *
+ * @author David McKain
+ */
+public final class TestSimulatorTest {
+
+    private static final int CANDIDATE_COUNT = 40;
+    private static final Identifier RESPONSE = Identifier.assumedLegal("RESPONSE");
+    private static final Identifier TEST_SCORE = Identifier.assumedLegal("TEST_SCORE");
+
+    private static TestSimulator createSimulator(final String testFilePath, final SimulationResponseStrategy responseStrategy) {
+        final ResolvedAssessmentTest resolvedAssessmentTest = UnitTestHelper.resolveUnitTestAssessmentTest(testFilePath, ModelLoadingProfile.PROCESSING);
+        final TestProcessingMap testProcessingMap = new TestProcessingInitializer(resolvedAssessmentTest, true).initialize();
+        final TestSimulator testSimulator = new TestSimulator(UnitTestHelper.createJqtiExtensionManager(),
+                testProcessingMap, responseStrategy);
+        testSimulator.setThreadCount(4);
+        testSimulator.setRandomSeed(Long.valueOf(42L));
+        return testSimulator;
+    }
+
+    @Test
+    public void testBranchRulesAndPreConditions() throws Exception {
+        final TestSimulator testSimulator = createSimulator("running/test-linear-branchRule.xml", new RandomResponseStrategy(0.5));
+        final SimulationReport report = testSimulator.runSimulation(CANDIDATE_COUNT);
+        assertEquals(CANDIDATE_COUNT, report.getCompletedCount());
+        assertEquals(0L, report.getFailedCount());
+
+        final Map<Identifier, ItemRefStatistics> itemRefStatisticsMap = report.getItemRefStatisticsMap();
+        for (final String presented : new String[] { "i1111", "i1113", "i1122", "i1131", "i211" }) {
+            final ItemRefStatistics itemRefStatistics = itemRefStatisticsMap.get(Identifier.assumedLegal(presented));
+            assertEquals(CANDIDATE_COUNT, itemRefStatistics.getPresentedCount());
+            assertEquals(CANDIDATE_COUNT, itemRefStatistics.getRespondedCount());
+        }
+        for (final String jumped : new String[] { "i1112", "i1114", "i1123", "i1132" }) {
+            final ItemRefStatistics itemRefStatistics = itemRefStatisticsMap.get(Identifier.assumedLegal(jumped));
+            assertEquals(0L, itemRefStatistics.getPresentedCount());
+            assertEquals(CANDIDATE_COUNT, itemRefStatistics.getJumpedByBranchRuleCount());
+        }
+        assertEquals(CANDIDATE_COUNT, itemRefStatisticsMap.get(Identifier.assumedLegal("i1121")).getPreConditionFailedCount());
+        assertEquals(0L, itemRefStatisticsMap.get(Identifier.assumedLegal("i311")).getPresentedCount());
+        assertEquals(CANDIDATE_COUNT * 5, report.getLatencyStatisticsMap().get(SimulationOperation.SUBMIT_RESPONSES).getCount());
+    }
+
+    @Test
+    public void testScriptedScores() throws Exception {
+        final Map<Identifier, Map<Identifier, ResponseData>> script = new HashMap<Identifier, Map<Identifier, ResponseData>>();
+        script.put(Identifier.assumedLegal("i1"), Collections.<Identifier, ResponseData>singletonMap(RESPONSE, new StringResponseData("ChoiceA")));
+        script.put(Identifier.assumedLegal("i2"), Collections.<Identifier, ResponseData>singletonMap(RESPONSE, new StringResponseData("ChoiceB")));
+        final TestSimulator testSimulator = createSimulator("running/simple-nonlinear-individual.xml", new ScriptedResponseStrategy(script));
+        final SimulationReport report = testSimulator.runSimulation(CANDIDATE_COUNT);
+        assertEquals(CANDIDATE_COUNT, report.getCompletedCount());
+
+        final OutcomeStatistics testScoreStatistics = report.getOutcomeStatisticsMap().get(TEST_SCORE);
+        assertEquals(CANDIDATE_COUNT, testScoreStatistics.getCount());
+        assertEquals(Collections.singletonMap(Double.valueOf(1.0), Long.valueOf(CANDIDATE_COUNT)), testScoreStatistics.getFrequencies());
+        assertEquals(CANDIDATE_COUNT, report.getItemRefStatisticsMap().get(Identifier.assumedLegal("i1")).getCorrectCount());
+        assertEquals(0L, report.getItemRefStatisticsMap().get(Identifier.assumedLegal("i2")).getCorrectCount());
+    }
+
+    @Test
+    public void testRepeatable() throws Exception {
+        final SimulationReport report1 = createSimulator("running/simple-nonlinear-individual.xml", new RandomResponseStrategy(0.5))
+                .runSimulation(CANDIDATE_COUNT);
+        final SimulationReport report2 = createSimulator("running/simple-nonlinear-individual.xml", new RandomResponseStrategy(0.5))
+                .runSimulation(CANDIDATE_COUNT);
+        assertEquals(report1.getOutcomeStatisticsMap().get(TEST_SCORE).getFrequencies(),
+                report2.getOutcomeStatisticsMap().get(TEST_SCORE).getFrequencies());
+    }
+
+    @Test
+    public void testLatencyPercentiles() {
+        final LatencyStatistics latencyStatistics = new LatencyStatistics();
+        for (long i=1; i<=1000; i++) {
+            latencyStatistics.record(i * 1000L);
+        }
+        assertEquals(1000L, latencyStatistics.getCount());
+        assertEquals(1000L, latencyStatistics.getMinNanos());
+        assertEquals(1000000L, latencyStatistics.getMaxNanos());
+        final long median = latencyStatistics.getPercentileNanos(50.0);
+        assertEquals(500000.0, median, 500000.0 * 0.125);
+    }
+}
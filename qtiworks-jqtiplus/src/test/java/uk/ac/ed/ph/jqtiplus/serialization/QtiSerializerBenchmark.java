@@ -0,0 +1,120 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.serialization;
+
+import uk.ac.ed.ph.jqtiplus.JqtiExtensionManager;
+import uk.ac.ed.ph.jqtiplus.node.QtiNode;
+import uk.ac.ed.ph.jqtiplus.node.result.AssessmentResult;
+import uk.ac.ed.ph.jqtiplus.running.ItemSessionController;
+import uk.ac.ed.ph.jqtiplus.testutils.UnitTestHelper;
+import uk.ac.ed.ph.jqtiplus.xmlutils.xslt.XsltSerializationOptions;
+import uk.ac.ed.ph.jqtiplus.xmlutils.xslt.XsltStylesheetManager;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Date;
+
+import javax.xml.transform.sax.TransformerHandler;
+import javax.xml.transform.stream.StreamResult;
+
+import org.xml.sax.SAXException;
+
+/**
+ * Crude microbenchmark comparing the cost of serializing an {@link AssessmentResult} via the
+ * XSLT identity transform with the direct path now used by {@link QtiSerializer}.
+ * <p>
+ * This is not run as part of the unit tests. Run it manually via its <code>main()</code> method.
+ *
+ * @author David McKain
+ */
+public final class QtiSerializerBenchmark {
+
+    private static final String ITEM_FILE_PATH = "running/choice.xml";
+
+    private static final int SERIALIZATIONS = 20000;
+
+    private static final int ROUNDS = 5;
+
+    public static void main(final String[] args) throws SAXException {
+        final ItemSessionController itemSessionController = UnitTestHelper.loadUnitTestAssessmentItemForControl(ITEM_FILE_PATH, true);
+        final Date timestamp = new Date();
+        itemSessionController.initialize(timestamp);
+        itemSessionController.performTemplateProcessing(timestamp);
+        itemSessionController.enterItem(timestamp);
+        final AssessmentResult assessmentResult = itemSessionController.computeAssessmentResult();
+
+        final JqtiExtensionManager jqtiExtensionManager = itemSessionController.getJqtiExtensionManager();
+        final QtiSerializer qtiSerializer = new QtiSerializer(jqtiExtensionManager);
+        final XsltSerializationOptions xsltSerializationOptions = new XsltSerializationOptions();
+        xsltSerializationOptions.setIndenting(true);
+        final SaxFiringOptions saxFiringOptions = new SaxFiringOptions();
+
+        System.out.println("transformer(us/op)\tdirect(us/op)");
+        for (int round=0; round<ROUNDS; round++) {
+            final boolean report = round==ROUNDS-1; /* Earlier rounds are warm-up */
+
+            long bytes = 0;
+            long start = System.nanoTime();
+            for (int i=0; i<SERIALIZATIONS; i++) {
+                bytes += serializeViaTransformer(jqtiExtensionManager, assessmentResult, saxFiringOptions, xsltSerializationOptions);
+            }
+            final double transformer = (System.nanoTime() - start) / 1000.0 / SERIALIZATIONS;
+
+            start = System.nanoTime();
+            for (int i=0; i<SERIALIZATIONS; i++) {
+                final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                qtiSerializer.serializeJqtiObject(assessmentResult, new StreamResult(outputStream), saxFiringOptions, xsltSerializationOptions);
+                bytes += outputStream.size();
+            }
+            final double direct = (System.nanoTime() - start) / 1000.0 / SERIALIZATIONS;
+
+            if (report) {
+                System.out.printf("%.1f\t%.1f%n", transformer, direct);
+            }
+            if (bytes < 0) {
+                /* (Stop the JIT optimising the loops away) */
+                System.out.println(bytes);
+            }
+        }
+    }
+
+    private static int serializeViaTransformer(final JqtiExtensionManager jqtiExtensionManager, final QtiNode node,
+            final SaxFiringOptions saxFiringOptions, final XsltSerializationOptions xsltSerializationOptions)
+            throws SAXException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        final TransformerHandler serializerHandler = XsltStylesheetManager.createSerializerHandler(xsltSerializationOptions);
+        serializerHandler.setResult(new StreamResult(outputStream));
+        new QtiSaxDocumentFirer(jqtiExtensionManager, serializerHandler, saxFiringOptions).fireSaxDocument(node);
+        return outputStream.size();
+    }
+}
@@ -0,0 +1,137 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.serialization;
+
+import uk.ac.ed.ph.jqtiplus.JqtiExtensionManager;
+import uk.ac.ed.ph.jqtiplus.QtiConstants;
+import uk.ac.ed.ph.jqtiplus.node.QtiNode;
+import uk.ac.ed.ph.jqtiplus.node.RootNode;
+import uk.ac.ed.ph.jqtiplus.node.result.AssessmentResult;
+import uk.ac.ed.ph.jqtiplus.running.ItemSessionController;
+import uk.ac.ed.ph.jqtiplus.testutils.UnitTestHelper;
+import uk.ac.ed.ph.jqtiplus.xmlutils.xslt.XsltSerializationOptions;
+import uk.ac.ed.ph.jqtiplus.xmlutils.xslt.XsltStylesheetManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.util.Date;
+
+import javax.xml.transform.sax.TransformerHandler;
+import javax.xml.transform.stream.StreamResult;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+/**
+ * Checks that the direct serialization path used by {@link QtiSerializer} produces exactly the
+ * same output as serializing via the XSLT identity transform.
+ *
+ * @author David McKain
+ */
+public class StreamingSerializationTest {
+
+    private static final String[] TEST_FILE_PATHS = {
+        "serialization/escaping.xml",
+        "running/choice.xml",
+        "running/template-constraint.xml",
+        "running/test-nonlinear.xml",
+        "item/interactions/TextEntryInteraction-basic-record.xml"
+    };
+
+    private final JqtiExtensionManager jqtiExtensionManager = UnitTestHelper.createJqtiExtensionManager();
+    private final QtiSerializer qtiSerializer = new QtiSerializer(jqtiExtensionManager);
+
+    @Test
+    public void testMatchesTransformerOutput() throws Exception {
+        for (final String testFilePath : TEST_FILE_PATHS) {
+            assertAllOptionsMatch(testFilePath, lookupRootNode(testFilePath));
+        }
+    }
+
+    @Test
+    public void testAssessmentResultMatchesTransformerOutput() throws SAXException {
+        final ItemSessionController itemSessionController = UnitTestHelper.loadUnitTestAssessmentItemForControl("running/choice.xml", true);
+        final Date timestamp = new Date();
+        itemSessionController.initialize(timestamp);
+        itemSessionController.performTemplateProcessing(timestamp);
+        itemSessionController.enterItem(timestamp);
+        final AssessmentResult assessmentResult = itemSessionController.computeAssessmentResult();
+
+        assertAllOptionsMatch("assessmentResult", assessmentResult);
+    }
+
+    @Test
+    public void testOutputStreamMatchesWriter() throws Exception {
+        final RootNode rootNode = lookupRootNode("serialization/escaping.xml");
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        qtiSerializer.serializeJqtiObject(rootNode, outputStream);
+
+        Assert.assertEquals(qtiSerializer.serializeJqtiObject(rootNode), outputStream.toString("UTF-8"));
+    }
+
+    private static RootNode lookupRootNode(final String testFilePath) throws Exception {
+        return UnitTestHelper.createUnitTestQtiObjectReader(false)
+                .lookupRootNode(UnitTestHelper.createTestResourceUri(testFilePath), RootNode.class)
+                .getRootNode();
+    }
+
+    private void assertAllOptionsMatch(final String description, final QtiNode node) throws SAXException {
+        for (int i=0; i<8; i++) {
+            final XsltSerializationOptions xsltSerializationOptions = new XsltSerializationOptions();
+            xsltSerializationOptions.setIndenting((i & 1)!=0);
+            xsltSerializationOptions.setIncludingXMLDeclaration((i & 2)!=0);
+            final SaxFiringOptions saxFiringOptions = new SaxFiringOptions();
+            if ((i & 4)!=0) {
+                xsltSerializationOptions.setIndent(4);
+                saxFiringOptions.setOmitSchemaLocation(true);
+                saxFiringOptions.getPreferredPrefixMappings().registerLax(QtiConstants.QTI_21_NAMESPACE_URI, "q");
+                saxFiringOptions.getPreferredPrefixMappings().registerLax(QtiConstants.MATHML_NAMESPACE_URI, "m");
+            }
+
+            final String expected = serializeViaTransformer(node, saxFiringOptions, xsltSerializationOptions);
+            final String actual = qtiSerializer.serializeJqtiObject(node, saxFiringOptions, xsltSerializationOptions);
+            Assert.assertEquals(description + " with " + xsltSerializationOptions, expected, actual);
+        }
+    }
+
+    private String serializeViaTransformer(final QtiNode node, final SaxFiringOptions saxFiringOptions,
+            final XsltSerializationOptions xsltSerializationOptions) throws SAXException {
+        final StringWriter resultWriter = new StringWriter();
+        final TransformerHandler serializerHandler = XsltStylesheetManager.createSerializerHandler(xsltSerializationOptions);
+        serializerHandler.setResult(new StreamResult(resultWriter));
+        new QtiSaxDocumentFirer(jqtiExtensionManager, serializerHandler, saxFiringOptions).fireSaxDocument(node);
+        return resultWriter.toString();
+    }
+}
@@ -36,6 +36,7 @@ package uk.ac.ed.ph.jqtiplus.testutils;
 import uk.ac.ed.ph.jqtiplus.JqtiExtensionManager;
 import uk.ac.ed.ph.jqtiplus.internal.util.ObjectDumper;
 import uk.ac.ed.ph.jqtiplus.reading.AssessmentObjectXmlLoader;
+import uk.ac.ed.ph.jqtiplus.reading.ModelLoadingProfile;
 import uk.ac.ed.ph.jqtiplus.reading.QtiObjectReader;
 import uk.ac.ed.ph.jqtiplus.reading.QtiXmlReader;
 import uk.ac.ed.ph.jqtiplus.resolution.ResolvedAssessmentItem;
@@ -126,11 +127,23 @@ public final class UnitTestHelper {
         return assessmentObjectXmlLoader.loadAndResolveAssessmentTest(testFileUri);
     }
 
+    public static ResolvedAssessmentTest resolveUnitTestAssessmentTest(final String testFilePath,
+            final ModelLoadingProfile modelLoadingProfile) {
+        final AssessmentObjectXmlLoader assessmentObjectXmlLoader = new AssessmentObjectXmlLoader(createUnitTestQtiXmlReader(),
+                createTestFileResourceLocator(), modelLoadingProfile);
+        final URI testFileUri = createTestResourceUri(testFilePath);
+        return assessmentObjectXmlLoader.loadAndResolveAssessmentTest(testFileUri);
+    }
+
     public static ItemSessionController loadUnitTestAssessmentItemForControl(final String testFilePath, final boolean isValid) {
+        return loadUnitTestAssessmentItemForControl(testFilePath, isValid, new ItemSessionControllerSettings());
+    }
+
+    public static ItemSessionController loadUnitTestAssessmentItemForControl(final String testFilePath, final boolean isValid,
+            final ItemSessionControllerSettings itemSessionControllerSettings) {
         final ResolvedAssessmentItem resolvedAssessmentItem = resolveUnitTestAssessmentItem(testFilePath);
         assertSuccessfulResolution(resolvedAssessmentItem);
 
-        final ItemSessionControllerSettings itemSessionControllerSettings = new ItemSessionControllerSettings();
         final ItemProcessingMap itemProcessingMap = new ItemProcessingInitializer(resolvedAssessmentItem, isValid).initialize();
         final ItemSessionState itemSessionState = new ItemSessionState();
         return new ItemSessionController(createJqtiExtensionManager(), itemSessionControllerSettings,
@@ -138,10 +151,14 @@ public final class UnitTestHelper {
     }
 
     public static TestSessionController loadUnitTestAssessmentTestForControl(final String testFilePath, final boolean isValid) {
+        return loadUnitTestAssessmentTestForControl(testFilePath, isValid, new TestSessionControllerSettings());
+    }
+
+    public static TestSessionController loadUnitTestAssessmentTestForControl(final String testFilePath, final boolean isValid,
+            final TestSessionControllerSettings testSessionControllerSettings) {
         final ResolvedAssessmentTest resolvedAssessmentTest = resolveUnitTestAssessmentTest(testFilePath);
         assertSuccessfulResolution(resolvedAssessmentTest);
 
-        final TestSessionControllerSettings testSessionControllerSettings = new TestSessionControllerSettings();
         final TestProcessingMap testProcessingMap = new TestProcessingInitializer(resolvedAssessmentTest, isValid).initialize();
         final TestPlanner testPlanner = new TestPlanner(testProcessingMap);
         final TestPlan testPlan = testPlanner.generateTestPlan();
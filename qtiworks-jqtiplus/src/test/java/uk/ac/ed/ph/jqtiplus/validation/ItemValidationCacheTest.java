@@ -0,0 +1,96 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.validation;
+
+import uk.ac.ed.ph.jqtiplus.reading.AssessmentObjectXmlLoader;
+import uk.ac.ed.ph.jqtiplus.testutils.UnitTestHelper;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests {@link ItemValidationCache}
+ *
+ * @author David McKain
+ */
+public final class ItemValidationCacheTest {
+
+    private static final String TEST_FILE_PATH = "running/test-parallel-validation.xml";
+
+    private TestValidationResult validateTest(final ItemValidationCache itemValidationCache) {
+        final AssessmentObjectXmlLoader assessmentObjectXmlLoader = UnitTestHelper.createUnitTestAssessmentObjectXmlLoader();
+        assessmentObjectXmlLoader.setItemValidationCache(itemValidationCache);
+        return assessmentObjectXmlLoader.loadResolveAndValidateTest(UnitTestHelper.createTestResourceUri(TEST_FILE_PATH));
+    }
+
+    @Test
+    public void testValidItemsRecorded() {
+        final ItemValidationCache itemValidationCache = new ItemValidationCache();
+        validateTest(itemValidationCache);
+
+        /* (choice.xml and template-constraint.xml are valid. The other items aren't recorded) */
+        Assert.assertEquals(2, itemValidationCache.size());
+        Assert.assertEquals(0, itemValidationCache.getHitCount());
+    }
+
+    @Test
+    public void testSecondValidationMatchesFirst() {
+        final ItemValidationCache itemValidationCache = new ItemValidationCache();
+        final TestValidationResult uncachedResult = validateTest(null);
+        validateTest(itemValidationCache);
+        final TestValidationResult cachedResult = validateTest(itemValidationCache);
+
+        Assert.assertEquals(2, itemValidationCache.getHitCount());
+        Assert.assertEquals(uncachedResult.isValid(), cachedResult.isValid());
+        Assert.assertEquals(uncachedResult.getNotifications().size(), cachedResult.getNotifications().size());
+        for (int i=0; i<uncachedResult.getItemValidationResults().size(); i++) {
+            final ItemValidationResult uncachedItemResult = uncachedResult.getItemValidationResults().get(i);
+            final ItemValidationResult cachedItemResult = cachedResult.getItemValidationResults().get(i);
+            Assert.assertEquals(uncachedItemResult.isValid(), cachedItemResult.isValid());
+            Assert.assertEquals(uncachedItemResult.getNotifications().size(), cachedItemResult.getNotifications().size());
+        }
+    }
+
+    @Test
+    public void testEviction() {
+        final ItemValidationCache itemValidationCache = new ItemValidationCache(1);
+        validateTest(itemValidationCache);
+        Assert.assertEquals(1, itemValidationCache.size());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testBadMaxSize() {
+        new ItemValidationCache(0);
+    }
+}
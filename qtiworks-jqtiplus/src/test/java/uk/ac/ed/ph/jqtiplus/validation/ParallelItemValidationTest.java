@@ -0,0 +1,105 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.validation;
+
+import uk.ac.ed.ph.jqtiplus.notification.Notification;
+import uk.ac.ed.ph.jqtiplus.reading.AssessmentObjectXmlLoader;
+import uk.ac.ed.ph.jqtiplus.testutils.UnitTestHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link AssessmentObjectValidator#setItemValidationExecutor(java.util.concurrent.Executor)}
+ *
+ * @author David McKain
+ */
+public final class ParallelItemValidationTest {
+
+    private static final String TEST_FILE_PATH = "running/test-parallel-validation.xml";
+
+    private ExecutorService executorService;
+
+    @Before
+    public void createExecutor() {
+        executorService = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void shutdownExecutor() {
+        executorService.shutdownNow();
+    }
+
+    private TestValidationResult validateTest(final boolean parallel) {
+        final AssessmentObjectXmlLoader assessmentObjectXmlLoader = UnitTestHelper.createUnitTestAssessmentObjectXmlLoader();
+        if (parallel) {
+            assessmentObjectXmlLoader.setItemValidationExecutor(executorService);
+        }
+        return assessmentObjectXmlLoader.loadResolveAndValidateTest(UnitTestHelper.createTestResourceUri(TEST_FILE_PATH));
+    }
+
+    @Test
+    public void testParallelMatchesSerial() {
+        final TestValidationResult serialResult = validateTest(false);
+        final TestValidationResult parallelResult = validateTest(true);
+
+        Assert.assertFalse(serialResult.isValid());
+        Assert.assertEquals(describe(serialResult.getNotifications()), describe(parallelResult.getNotifications()));
+
+        final List<ItemValidationResult> serialItemResults = serialResult.getItemValidationResults();
+        final List<ItemValidationResult> parallelItemResults = parallelResult.getItemValidationResults();
+        Assert.assertEquals(4, parallelItemResults.size()); /* (choice.xml is only validated once) */
+        for (int i=0; i<serialItemResults.size(); i++) {
+            Assert.assertEquals(serialItemResults.get(i).getResolvedAssessmentItem().getItemLookup().getSystemId(),
+                    parallelItemResults.get(i).getResolvedAssessmentItem().getItemLookup().getSystemId());
+            Assert.assertEquals(describe(serialItemResults.get(i).getNotifications()),
+                    describe(parallelItemResults.get(i).getNotifications()));
+        }
+    }
+
+    private static List<String> describe(final List<Notification> notifications) {
+        final List<String> result = new ArrayList<String>(notifications.size());
+        for (final Notification notification : notifications) {
+            result.add(notification.getNotificationLevel() + ": " + notification.getMessage());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,118 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.value;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Crude microbenchmark comparing linear scans of {@link ListValue} contents with lookups via
+ * its hash multiset index, used to choose {@link ListValue#HASH_INDEX_THRESHOLD}.
+ * <p>
+ * This is not run as part of the unit tests. Run it manually via its <code>main()</code> method
+ * and look for the container size at which the "indexed" column drops below the "linear" one.
+ *
+ * @author David McKain
+ */
+public final class ListValueIndexBenchmark {
+
+    private static final int[] SIZES = { 2, 4, 6, 8, 10, 12, 16, 24, 32, 48, 64, 128 };
+
+    private static final int LOOKUPS = 2000000;
+
+    private static final int ROUNDS = 5;
+
+    public static void main(final String[] args) {
+        System.out.println("size\tlinear(ns/op)\tindexed(ns/op)");
+        for (int round=0; round<ROUNDS; round++) {
+            final boolean report = round==ROUNDS-1; /* Earlier rounds are warm-up */
+            for (final int size : SIZES) {
+                final List<SingleValue> values = new ArrayList<SingleValue>(size);
+                for (int i=0; i<size; i++) {
+                    values.add(new DirectedPairValue("S" + i, "T" + i));
+                }
+                final ListValue container = (ListValue) MultipleValue.createMultipleValue(values);
+
+                /* Probe with fresh instances, half of which will be present */
+                final SingleValue[] probes = new SingleValue[size * 2];
+                for (int i=0; i<probes.length; i++) {
+                    probes[i] = new DirectedPairValue("S" + i, "T" + i);
+                }
+
+                final double linear = timeLinear(container, probes);
+                final double indexed = timeIndexed(container, probes);
+                if (report) {
+                    System.out.printf("%d\t%.1f\t%.1f%n", size, linear, indexed);
+                }
+            }
+        }
+    }
+
+    private static double timeLinear(final ListValue container, final SingleValue[] probes) {
+        int hits = 0;
+        final long start = System.nanoTime();
+        for (int i=0; i<LOOKUPS; i++) {
+            final SingleValue probe = probes[i % probes.length];
+            for (final SingleValue value : container) {
+                if (value.equals(probe)) {
+                    hits++;
+                    break;
+                }
+            }
+        }
+        return finish(start, hits);
+    }
+
+    private static double timeIndexed(final ListValue container, final SingleValue[] probes) {
+        int hits = 0;
+        final long start = System.nanoTime();
+        final Map<SingleValue, Integer> index = container.getOccurrenceIndex();
+        for (int i=0; i<LOOKUPS; i++) {
+            if (index.containsKey(probes[i % probes.length])) {
+                hits++;
+            }
+        }
+        return finish(start, hits);
+    }
+
+    private static double finish(final long start, final int hits) {
+        final long elapsed = System.nanoTime() - start;
+        if (hits < 0) {
+            /* (Stop the JIT optimising the loops away) */
+            System.out.println(hits);
+        }
+        return (double) elapsed / LOOKUPS;
+    }
+}
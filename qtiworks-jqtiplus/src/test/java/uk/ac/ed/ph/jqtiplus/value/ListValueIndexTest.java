@@ -0,0 +1,124 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.value;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests the lookup methods of {@link ListValue}, {@link MultipleValue} and {@link OrderedValue}
+ * on containers large enough to use the hash multiset index, checking they agree with the
+ * results of a linear scan.
+ */
+public class ListValueIndexTest {
+
+    private static final int SIZE = ListValue.HASH_INDEX_THRESHOLD * 3;
+
+    private static List<SingleValue> createIntegers(final int from, final int to, final int repeats) {
+        final List<SingleValue> result = new ArrayList<SingleValue>();
+        for (int i=from; i<to; i++) {
+            for (int j=0; j<repeats; j++) {
+                result.add(new IntegerValue(i));
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void testContainsSingle() {
+        final ListValue value = (ListValue) MultipleValue.createMultipleValue(createIntegers(0, SIZE, 1));
+        assertTrue(value.contains(new IntegerValue(0)));
+        assertTrue(value.contains(new IntegerValue(SIZE - 1)));
+        assertFalse(value.contains(new IntegerValue(SIZE)));
+        assertFalse(value.contains(new IdentifierValue("x")));
+    }
+
+    @Test
+    public void testCount() {
+        final ListValue value = (ListValue) OrderedValue.createOrderedValue(createIntegers(0, SIZE, 3));
+        assertEquals(3, value.count(new IntegerValue(0)));
+        assertEquals(3, value.count(new IntegerValue(SIZE - 1)));
+        assertEquals(0, value.count(new IntegerValue(-1)));
+    }
+
+    @Test
+    public void testMultipleContains() {
+        final MultipleValue big = (MultipleValue) MultipleValue.createMultipleValue(createIntegers(0, SIZE, 2));
+        final MultipleValue sub = (MultipleValue) MultipleValue.createMultipleValue(createIntegers(1, SIZE / 2, 2));
+        final MultipleValue tooMany = (MultipleValue) MultipleValue.createMultipleValue(createIntegers(1, 2, 3));
+        assertTrue(big.contains(sub));
+        assertFalse(sub.contains(big));
+        assertFalse(big.contains(tooMany));
+    }
+
+    @Test
+    public void testMultipleEquals() {
+        final List<SingleValue> values = createIntegers(0, SIZE, 2);
+        final MultipleValue forwards = (MultipleValue) MultipleValue.createMultipleValue(values);
+        final List<SingleValue> reversedValues = new ArrayList<SingleValue>(values);
+        Collections.reverse(reversedValues);
+        final MultipleValue backwards = (MultipleValue) MultipleValue.createMultipleValue(reversedValues);
+        assertTrue(forwards.equals(backwards));
+
+        reversedValues.set(0, new IntegerValue(0));
+        assertFalse(forwards.equals(MultipleValue.createMultipleValue(reversedValues)));
+    }
+
+    @Test
+    public void testOrderedContains() {
+        final OrderedValue big = (OrderedValue) OrderedValue.createOrderedValue(createIntegers(0, SIZE, 1));
+        assertTrue(big.contains((OrderedValue) OrderedValue.createOrderedValue(createIntegers(5, 10, 1))));
+        assertFalse(big.contains((OrderedValue) OrderedValue.createOrderedValue(createIntegers(SIZE, SIZE + 2, 1))));
+        assertFalse(big.contains((OrderedValue) OrderedValue.createOrderedValue(new IntegerValue(6), new IntegerValue(5))));
+    }
+
+    @Test
+    public void testSignedZeroFloats() {
+        /* Float containers are not indexed, so 0.0 and -0.0 must still match */
+        final List<SingleValue> values = new ArrayList<SingleValue>();
+        for (int i=0; i<SIZE; i++) {
+            values.add(new FloatValue(i));
+        }
+        final ListValue value = (ListValue) MultipleValue.createMultipleValue(values);
+        assertTrue(value.contains(new FloatValue(-0.0)));
+        assertEquals(1, value.count(new FloatValue(-0.0)));
+    }
+}
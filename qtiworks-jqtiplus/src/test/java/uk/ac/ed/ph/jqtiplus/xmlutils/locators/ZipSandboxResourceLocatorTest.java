@@ -0,0 +1,182 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.xmlutils.locators;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import uk.ac.ed.ph.jqtiplus.testutils.UnitTestHelper;
+import uk.ac.ed.ph.jqtiplus.utils.contentpackaging.ContentPackageResource;
+import uk.ac.ed.ph.jqtiplus.utils.contentpackaging.QtiContentPackageExtractor;
+import uk.ac.ed.ph.jqtiplus.utils.contentpackaging.QtiContentPackageSummary;
+import uk.ac.ed.ph.jqtiplus.xmlutils.CustomUriScheme;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the {@link ZipSandboxResourceLocator} class
+ *
+ * @author David McKain
+ */
+public class ZipSandboxResourceLocatorTest {
+
+    private static final CustomUriScheme PACKAGE_URI_SCHEME = QtiContentPackageExtractor.PACKAGE_URI_SCHEME;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private ZipSandboxResourceLocator locator;
+
+    @Before
+    public void before() throws IOException {
+        final File zipFile = temporaryFolder.newFile("package.zip");
+        final ZipOutputStream zipOutputStream = new ZipOutputStream(new FileOutputStream(zipFile));
+        try {
+            addEntry(zipOutputStream, "imsmanifest.xml", readTestResource("reading/imsmanifest.xml"));
+            addEntry(zipOutputStream, "./cannon-qti.xml", readTestResource("reading/choice.xml"));
+            zipOutputStream.putNextEntry(new ZipEntry("images/"));
+            zipOutputStream.closeEntry();
+            addEntry(zipOutputStream, "images/a b.png", new byte[] { 1, 2, 3 });
+        }
+        finally {
+            zipOutputStream.close();
+        }
+        locator = new ZipSandboxResourceLocator(PACKAGE_URI_SCHEME, zipFile);
+    }
+
+    @After
+    public void after() throws IOException {
+        locator.close();
+    }
+
+    @Test
+    public void testFindResource() throws IOException {
+        assertEquals(3, locator.getEntryCount());
+        assertResource(new byte[] { 1, 2, 3 }, PACKAGE_URI_SCHEME.decodedPathToUri("images/a b.png"));
+        assertResource(readTestResource("reading/choice.xml"), PACKAGE_URI_SCHEME.decodedPathToUri("cannon-qti.xml"));
+        assertResource(readTestResource("reading/choice.xml"), PACKAGE_URI_SCHEME.decodedPathToUri("images/../cannon-qti.xml"));
+    }
+
+    @Test
+    public void testFindBadResources() {
+        assertNull(locator.findResource(PACKAGE_URI_SCHEME.decodedPathToUri("missing.xml")));
+        assertNull(locator.findResource(PACKAGE_URI_SCHEME.decodedPathToUri("images")));
+        assertNull(locator.findResource(PACKAGE_URI_SCHEME.decodedPathToUri("../package.zip")));
+        assertNull(locator.findResource(URI.create("other-scheme:/cannon-qti.xml")));
+    }
+
+    @Test
+    public void testExtractContentPackage() throws Exception {
+        final QtiContentPackageSummary summary = new QtiContentPackageExtractor(locator).parse();
+        final List<ContentPackageResource> itemResources = summary.getItemResources();
+        assertEquals(1, itemResources.size());
+        assertEquals(URI.create("cannon-qti.xml"), itemResources.get(0).getHref());
+    }
+
+    @Test
+    public void testCloseWithOpenStream() throws IOException {
+        final InputStream inputStream = locator.findResource(PACKAGE_URI_SCHEME.decodedPathToUri("images/a b.png"));
+        assertNotNull(inputStream);
+        locator.close();
+        assertEquals(new String(new byte[] { 1, 2, 3 }, "ISO-8859-1"), new String(readFully(inputStream), "ISO-8859-1"));
+    }
+
+    @Test
+    public void testFindResourceAfterClose() throws IOException {
+        locator.close();
+        assertResource(readTestResource("reading/choice.xml"), PACKAGE_URI_SCHEME.decodedPathToUri("cannon-qti.xml"));
+        assertNull(locator.findResource(PACKAGE_URI_SCHEME.decodedPathToUri("missing.xml")));
+    }
+
+    @Test(expected=ZipException.class)
+    public void testNotZip() throws IOException {
+        final File notZipFile = temporaryFolder.newFile("notzip.zip");
+        final FileOutputStream outputStream = new FileOutputStream(notZipFile);
+        try {
+            outputStream.write(readTestResource("reading/choice.xml"));
+        }
+        finally {
+            outputStream.close();
+        }
+        new ZipSandboxResourceLocator(PACKAGE_URI_SCHEME, notZipFile);
+    }
+
+    private void assertResource(final byte[] expected, final URI systemId) throws IOException {
+        final InputStream inputStream = locator.findResource(systemId);
+        assertNotNull(inputStream);
+        assertEquals(new String(expected, "ISO-8859-1"), new String(readFully(inputStream), "ISO-8859-1"));
+    }
+
+    private static void addEntry(final ZipOutputStream zipOutputStream, final String name, final byte[] data)
+            throws IOException {
+        zipOutputStream.putNextEntry(new ZipEntry(name));
+        zipOutputStream.write(data);
+        zipOutputStream.closeEntry();
+    }
+
+    private static byte[] readTestResource(final String testFilePath) throws IOException {
+        return readFully(new ClassPathResourceLocator().findResource(UnitTestHelper.createTestResourceUri(testFilePath)));
+    }
+
+    private static byte[] readFully(final InputStream inputStream) throws IOException {
+        try {
+            final ByteArrayOutputStream result = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[4096];
+            int count;
+            while ((count = inputStream.read(buffer))!=-1) {
+                result.write(buffer, 0, count);
+            }
+            return result.toByteArray();
+        }
+        finally {
+            inputStream.close();
+        }
+    }
+}